@@ -0,0 +1,193 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.slf4j.Logger;
+
+/**
+ * The default {@link FcrepoTransport}, executing blocking requests with an Apache {@link CloseableHttpClient} and
+ * asynchronous requests with an Apache {@link CloseableHttpAsyncClient}.
+ *
+ * @author agent
+ */
+public class ApacheHttpClientTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(ApacheHttpClientTransport.class);
+
+    private final CloseableHttpClient httpclient;
+
+    private final FcrepoHttpClientBuilder httpClientBuilder;
+
+    private volatile CloseableHttpAsyncClient asyncHttpClient;
+
+    /**
+     * Create a transport for the given http client. The async http client is built from the given builder the
+     * first time an asynchronous request is made, or with default settings if no builder is provided.
+     *
+     * @param httpclient the http client used for blocking requests
+     * @param httpClientBuilder optional builder for the async http client
+     */
+    public ApacheHttpClientTransport(final CloseableHttpClient httpclient,
+                                     final FcrepoHttpClientBuilder httpClientBuilder) {
+        this.httpclient = httpclient;
+        this.httpClientBuilder = httpClientBuilder;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request) throws IOException {
+        final CloseableHttpResponse response = httpclient.execute(request);
+        final InputStream body = getEntityContent(response);
+        if (body == null) {
+            // Nothing will be read from the response, so hand its connection back straight away
+            free(response);
+        }
+        return toFcrepoResponse(url, response, body);
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final Future<HttpResponse> execution = getAsyncHttpClient().execute(request,
+                new FutureCallback<HttpResponse>() {
+
+                    @Override
+                    public void completed(final HttpResponse response) {
+                        result.complete(toFcrepoResponse(url, response, getEntityContent(response)));
+                    }
+
+                    @Override
+                    public void failed(final Exception ex) {
+                        result.completeExceptionally(ex);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        result.cancel(false);
+                    }
+                });
+
+        // Cancelling the returned future aborts the exchange and releases its connection
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                execution.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Retrieve the non-blocking http client used for asynchronous requests, building and starting it on first use.
+     *
+     * @return the async http client
+     */
+    private CloseableHttpAsyncClient getAsyncHttpClient() {
+        CloseableHttpAsyncClient client = asyncHttpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = asyncHttpClient;
+                if (client == null) {
+                    final FcrepoHttpClientBuilder builder = httpClientBuilder != null ? httpClientBuilder :
+                            new FcrepoHttpClientBuilder(null, null, null);
+                    client = builder.buildAsync();
+                    asyncHttpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            httpclient.close();
+        } finally {
+            if (asyncHttpClient != null) {
+                asyncHttpClient.close();
+            }
+        }
+    }
+
+    private static FcrepoResponse toFcrepoResponse(final URI url, final HttpResponse response,
+                                                   final InputStream body) {
+        final FcrepoResponse fcrepoResponse = new FcrepoResponse(url, response.getStatusLine().getStatusCode(),
+                getHeaders(response), body);
+        fcrepoResponse.setStatusText(response.getStatusLine().getReasonPhrase());
+        return fcrepoResponse;
+    }
+
+    /**
+     * Frees resources associated with the HTTP response. Specifically, closing the {@code response} frees the
+     * connection of the {@link org.apache.http.conn.HttpClientConnectionManager} underlying the http client.
+     *
+     * @param response the response object to close
+     */
+    private static void free(final CloseableHttpResponse response) {
+        try {
+            response.close();
+        } catch (final IOException e) {
+            LOGGER.warn("Unable to close HTTP response.", e);
+        }
+    }
+
+    /**
+     * Extract the response body as an input stream
+     */
+    private static InputStream getEntityContent(final HttpResponse response) {
+        try {
+            final HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return null;
+            } else {
+                return entity.getContent();
+            }
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to extract HttpEntity response into an InputStream: ", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieve all header values
+     *
+     * @param response response from request
+     * @return Map of all values for all response headers
+     */
+    private static Map<String, List<String>> getHeaders(final HttpResponse response) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (final Header header : response.getAllHeaders()) {
+            final List<String> values;
+            if (headers.containsKey(header.getName())) {
+                values = headers.get(header.getName());
+            } else {
+                values = new ArrayList<>();
+                headers.put(header.getName(), values);
+            }
+            values.add(header.getValue());
+        }
+        return headers;
+    }
+}
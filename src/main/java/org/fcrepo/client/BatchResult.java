@@ -0,0 +1,124 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Outcome of one transaction of a {@link BatchWriter}: how many operations and bytes it carried, how long it took to
+ * write them and to commit, and whether it was committed.
+ *
+ * @author agent
+ */
+public class BatchResult {
+
+    private final URI transactionUri;
+
+    private final int operations;
+
+    private final long bytes;
+
+    private final Duration writeDuration;
+
+    private final Duration commitLatency;
+
+    private final Throwable failure;
+
+    /**
+     * Create a batch result
+     *
+     * @param transactionUri the URI of the transaction of the batch
+     * @param operations the number of operations of the batch
+     * @param bytes the number of bytes of the request bodies of the batch
+     * @param writeDuration the time from the start of the batch until its commit was requested
+     * @param commitLatency the time the commit, or the rollback, took
+     * @param failure why the batch was rolled back, or null if it was committed
+     */
+    BatchResult(final URI transactionUri, final int operations, final long bytes, final Duration writeDuration,
+            final Duration commitLatency, final Throwable failure) {
+        this.transactionUri = transactionUri;
+        this.operations = operations;
+        this.bytes = bytes;
+        this.writeDuration = writeDuration;
+        this.commitLatency = commitLatency;
+        this.failure = failure;
+    }
+
+    /**
+     * @return the URI of the transaction of the batch
+     */
+    public URI getTransactionUri() {
+        return transactionUri;
+    }
+
+    /**
+     * @return the number of operations of the batch
+     */
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the number of bytes of the request bodies of the batch, as far as their length was known
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the time from the start of the batch until its commit was requested
+     */
+    public Duration getWriteDuration() {
+        return writeDuration;
+    }
+
+    /**
+     * @return the time the commit, or the rollback of a failed batch, took
+     */
+    public Duration getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @return the number of operations committed per second, from the start of the batch until its commit completed
+     */
+    public double getOperationsPerSecond() {
+        return isCommitted() ? operations / seconds() : 0;
+    }
+
+    /**
+     * @return the number of bytes committed per second, from the start of the batch until its commit completed
+     */
+    public double getBytesPerSecond() {
+        return isCommitted() ? bytes / seconds() : 0;
+    }
+
+    /**
+     * @return true if the transaction of the batch was committed
+     */
+    public boolean isCommitted() {
+        return failure == null;
+    }
+
+    /**
+     * @return the failure of an operation or of the commit, for which the batch was rolled back, or null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    private double seconds() {
+        return Math.max(1, writeDuration.plus(commitLatency).toNanos()) / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{transaction=" + transactionUri + ", operations=" + operations + ", bytes=" + bytes +
+                ", writeDuration=" + writeDuration + ", commitLatency=" + commitLatency + ", committed=" +
+                isCommitted() + "}";
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.slf4j.Logger;
+
+/**
+ * Writer of a stream of operations in transactions of bounded size. Operations are submitted as functions building
+ * the request, such as a PUT or a DELETE, on the {@link TransactionalFcrepoClient} of the current batch. A batch is
+ * committed once it holds a number of operations or bytes of request bodies, or once it has been open for some time,
+ * and the transaction of the following batch is started while the commit is in flight. Within a batch, a bounded
+ * number of operations are sent at once; submitting more waits for one of them to complete.
+ * <p>
+ * A batch in which an operation failed, by an exception or a 4xx or 5xx response, is rolled back. The outcome of
+ * every batch, with its throughput and commit latency, is reported to the listener of the writer.
+ * </p>
+ *
+ * <pre>
+ * try (BatchWriter writer = new BatchWriter(client, URI.create("http://localhost/rest")).maxOperations(200)) {
+ *     for (Resource resource : resources) {
+ *         writer.submit(tx -&gt; tx.put(resource.uri()).body(resource.body(), "text/turtle"));
+ *     }
+ * }
+ * </pre>
+ *
+ * @author agent
+ */
+public class BatchWriter implements Closeable {
+
+    private static final Logger LOGGER = getLogger(BatchWriter.class);
+
+    private final FcrepoClient client;
+
+    private final URI txEndpoint;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "fcrepo-batch-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int maxOperations = 500;
+
+    private long maxBytes = 256L * 1024 * 1024;
+
+    private long maxDuration = 60000;
+
+    private int parallelism = 4;
+
+    private TransactionKeepAlive keepAlive;
+
+    private Consumer<BatchResult> listener = result -> { };
+
+    private Batch current;
+
+    // transaction started ahead of the batch which will use it
+    private CompletableFuture<TransactionalFcrepoClient> next;
+
+    private final Set<CompletableFuture<BatchResult>> commits = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong committedBatches = new AtomicLong();
+
+    private final AtomicLong failedBatches = new AtomicLong();
+
+    private final AtomicLong committedOperations = new AtomicLong();
+
+    private boolean closed;
+
+    /**
+     * Create a batch writer
+     *
+     * @param client the client starting the transactions
+     * @param uri the base rest endpoint or the transaction endpoint of the repository
+     * @throws IllegalArgumentException if the uri is not the base rest endpoint or the transaction endpoint
+     */
+    public BatchWriter(final FcrepoClient client, final URI uri) {
+        this.client = client;
+        this.txEndpoint = client.getTxEndpoint(uri);
+    }
+
+    /**
+     * Set the number of operations after which a batch is committed
+     *
+     * @param maxOperations the number of operations
+     * @return this writer
+     */
+    public synchronized BatchWriter maxOperations(final int maxOperations) {
+        this.maxOperations = maxOperations;
+        return this;
+    }
+
+    /**
+     * Set the size of the request bodies after which a batch is committed
+     *
+     * @param maxBytes the size in bytes
+     * @return this writer
+     */
+    public synchronized BatchWriter maxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Set how long a batch is open at most before it is committed
+     *
+     * @param maxDuration the duration in milliseconds
+     * @return this writer
+     */
+    public synchronized BatchWriter maxDuration(final long maxDuration) {
+        this.maxDuration = maxDuration;
+        return this;
+    }
+
+    /**
+     * Set how many operations of a batch are sent at once
+     *
+     * @param parallelism the number of operations
+     * @return this writer
+     */
+    public synchronized BatchWriter parallelism(final int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Keep the transactions of the batches alive with the given renewer
+     *
+     * @param keepAlive the renewer
+     * @return this writer
+     */
+    public synchronized BatchWriter keepAlive(final TransactionKeepAlive keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Set the listener told the outcome of each batch. It runs on the thread completing the commit, and should not
+     * block.
+     *
+     * @param listener the listener
+     * @return this writer
+     */
+    public synchronized BatchWriter listener(final Consumer<BatchResult> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * @return the number of batches committed
+     */
+    public long getCommittedBatches() {
+        return committedBatches.get();
+    }
+
+    /**
+     * @return the number of batches rolled back
+     */
+    public long getFailedBatches() {
+        return failedBatches.get();
+    }
+
+    /**
+     * @return the number of operations of the committed batches
+     */
+    public long getCommittedOperations() {
+        return committedOperations.get();
+    }
+
+    /**
+     * Submit an operation to the current batch, starting a batch if there is none. The call waits while the batch has
+     * as many operations in flight as the parallelism allows. The returned response does not mean the operation is
+     * committed: that is known once its batch is.
+     *
+     * @param operation builds the request of the operation on the client of the transaction
+     * @return a future which completes with the response to the operation
+     * @throws FcrepoOperationFailedException if no transaction could be started for the batch
+     * @throws IllegalStateException if the writer is closed
+     */
+    public synchronized CompletableFuture<FcrepoResponse> submit(
+            final Function<TransactionalFcrepoClient, ? extends RequestBuilder> operation)
+            throws FcrepoOperationFailedException {
+        if (closed) {
+            throw new IllegalStateException("The batch writer is closed");
+        }
+        final Batch batch = currentBatch();
+        final RequestBuilder builder = operation.apply(batch.tx);
+        try {
+            batch.permits.acquire();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FcrepoOperationFailedException(builder.targetUri, -1,
+                    "Interrupted while waiting for an operation of the batch to complete");
+        }
+
+        final CompletableFuture<FcrepoResponse> response;
+        try {
+            response = builder.performAsync();
+        } catch (final RuntimeException ex) {
+            batch.permits.release();
+            throw ex;
+        }
+        response.whenComplete((r, ex) -> batch.permits.release());
+        batch.operations.add(response);
+        batch.bytes += contentLength(builder);
+        if (batch.operations.size() >= maxOperations || batch.bytes >= maxBytes) {
+            rotate();
+        }
+        return response;
+    }
+
+    /**
+     * Commit the current batch, without waiting for later operations to fill it
+     *
+     * @return a future which completes with the outcome of the batch, or with null if there was no batch
+     */
+    public synchronized CompletableFuture<BatchResult> flush() {
+        final CompletableFuture<BatchResult> result = rotate();
+        return result == null ? CompletableFuture.completedFuture(null) : result;
+    }
+
+    /**
+     * Commit the current batch, wait for the commits in flight, and roll back the transaction started ahead for a
+     * batch which will not come
+     */
+    @Override
+    public void close() {
+        final CompletableFuture<TransactionalFcrepoClient> unused;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            rotate();
+            unused = next;
+            next = null;
+        }
+        CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])).join();
+        if (unused != null) {
+            try {
+                unused.join().rollback().perform().close();
+            } catch (final CompletionException | FcrepoOperationFailedException | IOException ex) {
+                LOGGER.debug("Unable to roll back the unused transaction of the batch writer", ex);
+            }
+        }
+        timer.shutdownNow();
+    }
+
+    private Batch currentBatch() throws FcrepoOperationFailedException {
+        if (current != null) {
+            return current;
+        }
+        TransactionalFcrepoClient tx = next == null ? null : startedAhead(next);
+        next = null;
+        if (tx == null) {
+            tx = await(start());
+        }
+        if (keepAlive != null) {
+            tx.autoKeepAlive(keepAlive);
+        }
+        final Batch batch = new Batch(tx, parallelism);
+        batch.deadline = timer.schedule(() -> timeout(batch), maxDuration, MILLISECONDS);
+        current = batch;
+        LOGGER.debug("Started batch in transaction {}", tx.getTransactionURI());
+        return batch;
+    }
+
+    /**
+     * @return the transaction started ahead, or null if it could not be started or has expired while waiting
+     */
+    private TransactionalFcrepoClient startedAhead(final CompletableFuture<TransactionalFcrepoClient> started) {
+        try {
+            final TransactionalFcrepoClient tx = started.join();
+            final Instant expires = tx.getExpires();
+            if (expires == null || expires.isAfter(Instant.now())) {
+                return tx;
+            }
+        } catch (final CompletionException ex) {
+            LOGGER.debug("Transaction started ahead failed, starting another", ex);
+        }
+        return null;
+    }
+
+    private synchronized void timeout(final Batch batch) {
+        if (current == batch) {
+            rotate();
+        }
+    }
+
+    /**
+     * End the current batch, start the transaction of the next one and commit the current one
+     *
+     * @return the outcome of the batch, or null if there was no batch
+     */
+    private CompletableFuture<BatchResult> rotate() {
+        final Batch batch = current;
+        if (batch == null) {
+            return null;
+        }
+        current = null;
+        batch.deadline.cancel(false);
+        if (!closed) {
+            next = start();
+        }
+        final CompletableFuture<BatchResult> result = finish(batch);
+        commits.add(result);
+        result.whenComplete((r, ex) -> commits.remove(result));
+        return result;
+    }
+
+    /**
+     * Wait for the operations of a batch, then commit it, or roll it back if an operation failed
+     */
+    private CompletableFuture<BatchResult> finish(final Batch batch) {
+        final List<CompletableFuture<FcrepoResponse>> operations = batch.operations;
+        final int count = operations.size();
+        final long bytes = batch.bytes;
+        final URI txUri = batch.tx.getTransactionURI();
+        return CompletableFuture.allOf(operations.toArray(new CompletableFuture<?>[0]))
+                .handle((v, ex) -> failureOf(operations))
+                .thenCompose(failure -> {
+                    final long commitStart = System.nanoTime();
+                    final RequestBuilder end = failure == null ? batch.tx.commit() : batch.tx.rollback();
+                    return end.performAsync().handle((response, ex) -> {
+                        Throwable error = failure;
+                        if (error == null && ex != null) {
+                            error = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        } else if (error == null && response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                            error = new FcrepoOperationFailedException(txUri, response.getStatusCode(),
+                                    response.getStatusText());
+                        }
+                        final BatchResult result = new BatchResult(txUri, count, bytes,
+                                Duration.ofNanos(commitStart - batch.started),
+                                Duration.ofNanos(System.nanoTime() - commitStart), error);
+                        completed(result);
+                        return result;
+                    });
+                });
+    }
+
+    private void completed(final BatchResult result) {
+        if (result.isCommitted()) {
+            committedBatches.incrementAndGet();
+            committedOperations.addAndGet(result.getOperations());
+            LOGGER.debug("Committed {}", result);
+        } else {
+            failedBatches.incrementAndGet();
+            LOGGER.warn("Rolled back {}", result, result.getFailure());
+        }
+        try {
+            listener.accept(result);
+        } catch (final RuntimeException ex) {
+            LOGGER.warn("Batch listener failed", ex);
+        }
+    }
+
+    /**
+     * @return the first failure among the operations of a batch, or null if they all succeeded
+     */
+    private static Throwable failureOf(final List<CompletableFuture<FcrepoResponse>> operations) {
+        for (final CompletableFuture<FcrepoResponse> operation : operations) {
+            try {
+                final FcrepoResponse response = operation.join();
+                if (response.getStatusCode() >= HttpStatus.SC_BAD_REQUEST) {
+                    return new FcrepoOperationFailedException(response.getUrl(), response.getStatusCode(),
+                            response.getStatusText());
+                }
+            } catch (final CompletionException ex) {
+                return ex.getCause() != null ? ex.getCause() : ex;
+            } catch (final RuntimeException ex) {
+                return ex;
+            }
+        }
+        return null;
+    }
+
+    private CompletableFuture<TransactionalFcrepoClient> start() {
+        return client.startTransactionClientAsync(txEndpoint);
+    }
+
+    private TransactionalFcrepoClient await(final CompletableFuture<TransactionalFcrepoClient> started)
+            throws FcrepoOperationFailedException {
+        try {
+            return started.join();
+        } catch (final CompletionException ex) {
+            if (ex.getCause() instanceof FcrepoOperationFailedException) {
+                throw (FcrepoOperationFailedException) ex.getCause();
+            }
+            throw new FcrepoOperationFailedException(txEndpoint, -1, String.valueOf(ex.getCause()));
+        }
+    }
+
+    private static long contentLength(final RequestBuilder builder) {
+        if (builder.request instanceof HttpEntityEnclosingRequestBase) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequestBase) builder.request).getEntity();
+            if (entity != null) {
+                return Math.max(0, entity.getContentLength());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Operations written in one transaction
+     */
+    private static class Batch {
+
+        private final TransactionalFcrepoClient tx;
+
+        private final Semaphore permits;
+
+        private final List<CompletableFuture<FcrepoResponse>> operations = new ArrayList<>();
+
+        private final long started = System.nanoTime();
+
+        private long bytes;
+
+        private ScheduledFuture<?> deadline;
+
+        Batch(final TransactionalFcrepoClient tx, final int parallelism) {
+            this.tx = tx;
+            this.permits = new Semaphore(parallelism);
+        }
+    }
+}
@@ -0,0 +1,708 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.fcrepo.client.FedoraHeaderConstants.DIGEST;
+import static org.fcrepo.client.FedoraHeaderConstants.ETAG;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+
+/**
+ * Persistent cache of binary (NonRDFSource) content on local disk, bounded by size with least recently used
+ * eviction. Content is stored once per digest, taken from the {@code Digest} header of the response when it uses a
+ * known algorithm and computed as SHA-256 otherwise, and every resource URI maps to the content of its current ETag.
+ * Evicting content also drops the entries pointing to it.
+ * Cached content is validated with the repository through {@code If-None-Match} on each use.
+ * <p>
+ * The cache survives restarts: the index and content are plain files under the cache directory. Content is checked
+ * against its digest while it is downloaded and again the first time it is served after the cache was opened, so that
+ * a file damaged on disk is dropped and fetched again rather than served.
+ * </p>
+ *
+ * @author agent
+ */
+public class BinaryCache {
+
+    private static final Logger LOGGER = getLogger(BinaryCache.class);
+
+    private static final String ENTRIES = "entries";
+
+    private static final String BLOBS = "blobs";
+
+    private static final String TMP = "tmp";
+
+    private static final String HEADER_PREFIX = "header.";
+
+    // Digest algorithms of the Digest header which can be used to address content, by preference
+    private static final Map<String, String> ALGORITHMS = new LinkedHashMap<>();
+
+    static {
+        ALGORITHMS.put("sha-512", "SHA-512");
+        ALGORITHMS.put("sha-256", "SHA-256");
+        ALGORITHMS.put("sha", "SHA-1");
+        ALGORITHMS.put("md5", "MD5");
+    }
+
+    // Digest algorithm asked of the repository, and used when a response declares none
+    static final String DEFAULT_ALGORITHM = "sha-256";
+
+    private final Path directory;
+
+    private long maxBytes = 10L * 1024 * 1024 * 1024;
+
+    // content files by name with their size, least recently used first
+    private final LinkedHashMap<String, Long> blobs = new LinkedHashMap<>(16, 0.75f, true);
+
+    // entries by name with the content file they point to, and the reverse
+    private final Map<String, String> blobOfEntry = new HashMap<>();
+
+    private final Map<String, Set<String>> entriesOfBlob = new HashMap<>();
+
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long corrupted;
+
+    private long evictions;
+
+    /**
+     * Open a binary cache in the given directory, picking up the content cached by previous runs
+     *
+     * @param directory the cache directory, created if missing
+     * @throws IOException if the directory cannot be created or read
+     */
+    public BinaryCache(final Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.resolve(ENTRIES));
+        Files.createDirectories(directory.resolve(BLOBS));
+        Files.createDirectories(directory.resolve(TMP));
+        load();
+    }
+
+    /**
+     * Set the maximum total size of the cached content, evicting the least recently used content above it
+     *
+     * @param maxBytes maximum size in bytes
+     * @return this cache
+     */
+    public synchronized BinaryCache maxBytes(final long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        evict();
+        return this;
+    }
+
+    /**
+     * @return the directory of the cache
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the total size of the cached content in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of requests served from the cache after revalidation
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of binaries downloaded into the cache
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of cached files found not to match their digest
+     */
+    public synchronized long getCorrupted() {
+        return corrupted;
+    }
+
+    /**
+     * @return the number of content files evicted to stay within the size limit
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Forget the cached content of a resource
+     *
+     * @param uri the URI of the resource
+     */
+    public void invalidate(final URI uri) {
+        final String entry = entryOf(uri);
+        try {
+            Files.deleteIfExists(entryFile(entry));
+        } catch (final IOException ex) {
+            LOGGER.warn("Unable to remove binary cache entry for {}", uri, ex);
+        }
+        synchronized (this) {
+            unlink(entry);
+        }
+    }
+
+    /**
+     * Look up the cached content of a resource
+     *
+     * @param uri the URI of the resource
+     * @return the entry, or null if no content is cached
+     */
+    Entry lookup(final URI uri) {
+        final Properties properties = new Properties();
+        try {
+            load(properties, entryFile(entryOf(uri)));
+        } catch (final NoSuchFileException ex) {
+            return null;
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to read binary cache entry for {}", uri, ex);
+            return null;
+        }
+        final String blob = properties.getProperty("blob");
+        final String etag = properties.getProperty("etag");
+        final boolean present;
+        synchronized (this) {
+            present = blob != null && etag != null && blobs.containsKey(blob);
+        }
+        if (!present) {
+            // the content is gone, so the entry is of no further use
+            invalidate(uri);
+            return null;
+        }
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (final String name : properties.stringPropertyNames()) {
+            if (name.startsWith(HEADER_PREFIX)) {
+                final String value = properties.getProperty(name);
+                final int colon = value.indexOf(':');
+                headers.computeIfAbsent(value.substring(0, colon), k -> new ArrayList<>())
+                        .add(value.substring(colon + 1));
+            }
+        }
+        return new Entry(uri, etag, blob, headers);
+    }
+
+    /**
+     * Serve the cached content of an entry whose ETag the repository confirmed
+     *
+     * @param entry the entry
+     * @param url the requested URL
+     * @return the response, or null if the content is missing or corrupted
+     */
+    FcrepoResponse serve(final Entry entry, final URI url) {
+        final Path file = blobFile(entry.blob);
+        try {
+            if (!verified.contains(entry.blob)) {
+                if (!entry.blob.equals(digestOf(file, algorithmOf(entry.blob)))) {
+                    LOGGER.warn("Cached content of {} does not match its digest, dropping it", entry.uri);
+                    synchronized (this) {
+                        corrupted++;
+                    }
+                    drop(entry.blob);
+                    invalidate(entry.uri);
+                    return null;
+                }
+                verified.add(entry.blob);
+            }
+            final CachedBinaryInputStream body = new CachedBinaryInputStream(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                blobs.get(entry.blob);
+                hits++;
+            }
+            final FcrepoResponse response = new FcrepoResponse(url, 200, copyOf(entry.headers), body);
+            response.setFromCache(true);
+            return response;
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to serve cached content of {}", entry.uri, ex);
+            invalidate(entry.uri);
+            return null;
+        }
+    }
+
+    /**
+     * Copy the body of a binary response into the cache as the caller reads it. The content is only added once it
+     * has been read to the end and matches its digest.
+     *
+     * @param uri the URI of the resource
+     * @param response the response
+     * @return the response, whose body now feeds the cache
+     */
+    FcrepoResponse capture(final URI uri, final FcrepoResponse response) {
+        final String etag = response.getHeaderValue(ETAG);
+        if (etag == null || response.getBody() == null) {
+            return response;
+        }
+        final Declared declared = declaredDigest(response);
+        try {
+            final Path temp = Files.createTempFile(directory.resolve(TMP), "download", ".tmp");
+            final MessageDigest digest = MessageDigest.getInstance(ALGORITHMS.get(declared.algorithm));
+            response.setBody(new CapturingInputStream(response.getBody(), temp, digest, () -> {
+                final String blob = declared.algorithm + "-" + hex(digest.digest());
+                if (declared.value != null && !declared.matches(blob)) {
+                    LOGGER.warn("Content of {} does not match its {} digest, not caching it", uri,
+                            declared.algorithm);
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                final String length = response.getHeaderValue("Content-Length");
+                if (length != null && !length.trim().equals(Long.toString(Files.size(temp)))) {
+                    LOGGER.warn("Content of {} is truncated, not caching it", uri);
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                commit(uri, etag, response.getHeaders(), temp, blob);
+            }));
+        } catch (final IOException | NoSuchAlgorithmException ex) {
+            LOGGER.debug("Unable to cache content of {}", uri, ex);
+        }
+        return response;
+    }
+
+    private void commit(final URI uri, final String etag, final Map<String, List<String>> headers, final Path temp,
+            final String blob) throws IOException {
+        final Path file = blobFile(blob);
+        final long length = Files.size(temp);
+        Files.move(temp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        verified.add(blob);
+
+        final Properties properties = new Properties();
+        properties.setProperty("uri", uri.toString());
+        properties.setProperty("etag", etag);
+        properties.setProperty("blob", blob);
+        int i = 0;
+        for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (final String value : header.getValue()) {
+                properties.setProperty(HEADER_PREFIX + i++, header.getKey() + ":" + value);
+            }
+        }
+        final Path entryTemp = Files.createTempFile(directory.resolve(TMP), "entry", ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(entryTemp, UTF_8)) {
+            properties.store(writer, null);
+        }
+        final String entry = entryOf(uri);
+        Files.move(entryTemp, entryFile(entry), ATOMIC_MOVE, REPLACE_EXISTING);
+
+        synchronized (this) {
+            final Long previous = blobs.put(blob, length);
+            size += length - (previous == null ? 0 : previous);
+            link(entry, blob);
+            misses++;
+            evict();
+        }
+    }
+
+    /**
+     * Pick up the content left by previous runs, least recently used first, along with the entries pointing to it,
+     * and clear interrupted downloads and entries whose content is gone
+     */
+    private void load() throws IOException {
+        try (final DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory.resolve(TMP))) {
+            for (final Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        final List<Path> files = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve(BLOBS))) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(BinaryCache::lastModified));
+        synchronized (this) {
+            for (final Path file : files) {
+                final long length = Files.size(file);
+                blobs.put(file.getFileName().toString(), length);
+                size += length;
+            }
+        }
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory.resolve(ENTRIES))) {
+            for (final Path file : stream) {
+                final Properties properties = new Properties();
+                try {
+                    load(properties, file);
+                } catch (final IOException ex) {
+                    LOGGER.debug("Unable to read binary cache entry {}", file, ex);
+                }
+                final String name = file.getFileName().toString();
+                final String entry = name.substring(0, name.length() - ".properties".length());
+                final String blob = properties.getProperty("blob");
+                synchronized (this) {
+                    if (blob != null && blobs.containsKey(blob)) {
+                        link(entry, blob);
+                        continue;
+                    }
+                }
+                Files.deleteIfExists(file);
+            }
+        }
+        synchronized (this) {
+            evict();
+        }
+    }
+
+    private static void load(final Properties properties, final Path file) throws IOException {
+        try (final Reader reader = Files.newBufferedReader(file, UTF_8)) {
+            properties.load(reader);
+        }
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Long>> lru = blobs.entrySet().iterator();
+        while (size > maxBytes && lru.hasNext()) {
+            final Map.Entry<String, Long> eldest = lru.next();
+            lru.remove();
+            size -= eldest.getValue();
+            evictions++;
+            verified.remove(eldest.getKey());
+            try {
+                deleteEntries(eldest.getKey());
+                Files.deleteIfExists(blobFile(eldest.getKey()));
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to delete cached content {}", eldest.getKey(), ex);
+            }
+        }
+    }
+
+    private void drop(final String blob) throws IOException {
+        synchronized (this) {
+            final Long length = blobs.remove(blob);
+            if (length != null) {
+                size -= length;
+            }
+            deleteEntries(blob);
+        }
+        verified.remove(blob);
+        Files.deleteIfExists(blobFile(blob));
+    }
+
+    /**
+     * Delete the entries pointing to a content file which is going away
+     */
+    private void deleteEntries(final String blob) throws IOException {
+        final Set<String> entries = entriesOfBlob.remove(blob);
+        if (entries == null) {
+            return;
+        }
+        for (final String entry : entries) {
+            blobOfEntry.remove(entry);
+            Files.deleteIfExists(entryFile(entry));
+        }
+    }
+
+    private void link(final String entry, final String blob) {
+        unlink(entry);
+        blobOfEntry.put(entry, blob);
+        entriesOfBlob.computeIfAbsent(blob, k -> new HashSet<>()).add(entry);
+    }
+
+    private void unlink(final String entry) {
+        final String blob = blobOfEntry.remove(entry);
+        final Set<String> entries = blob == null ? null : entriesOfBlob.get(blob);
+        if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+            entriesOfBlob.remove(blob);
+        }
+    }
+
+    private static String entryOf(final URI uri) {
+        return hash(uri.toString());
+    }
+
+    private Path entryFile(final String entry) {
+        return directory.resolve(ENTRIES).resolve(entry + ".properties");
+    }
+
+    private Path blobFile(final String blob) {
+        return directory.resolve(BLOBS).resolve(blob);
+    }
+
+    private static String algorithmOf(final String blob) {
+        return blob.substring(0, blob.lastIndexOf('-'));
+    }
+
+    private static String digestOf(final Path file, final String algorithm) throws IOException {
+        try (final InputStream in = Files.newInputStream(file)) {
+            final MessageDigest digest = MessageDigest.getInstance(ALGORITHMS.get(algorithm));
+            final byte[] buffer = new byte[65536];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return algorithm + "-" + hex(digest.digest());
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String hash(final String value) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8)));
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static FileTime lastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (final IOException ex) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static Map<String, List<String>> copyOf(final Map<String, List<String>> headers) {
+        final Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, values) -> copy.put(name, new ArrayList<>(values)));
+        return copy;
+    }
+
+    /**
+     * Find the digest declared by a response in the most preferred known algorithm
+     */
+    private static Declared declaredDigest(final FcrepoResponse response) {
+        final Map<String, String> values = new TreeMap<>();
+        for (final String header : response.getHeaderValues(DIGEST)) {
+            for (final String part : header.split(",")) {
+                final int eq = part.indexOf('=');
+                if (eq > 0) {
+                    values.put(part.substring(0, eq).trim().toLowerCase(Locale.ROOT), part.substring(eq + 1).trim());
+                }
+            }
+        }
+        for (final String algorithm : ALGORITHMS.keySet()) {
+            if (values.containsKey(algorithm)) {
+                return new Declared(algorithm, values.get(algorithm));
+            }
+        }
+        return new Declared(DEFAULT_ALGORITHM, null);
+    }
+
+    /**
+     * Cached content of a resource
+     */
+    static class Entry {
+
+        private final URI uri;
+
+        private final String etag;
+
+        private final String blob;
+
+        private final Map<String, List<String>> headers;
+
+        Entry(final URI uri, final String etag, final String blob, final Map<String, List<String>> headers) {
+            this.uri = uri;
+            this.etag = etag;
+            this.blob = blob;
+            this.headers = headers;
+        }
+
+        String getEtag() {
+            return etag;
+        }
+    }
+
+    /**
+     * Digest declared by the repository
+     */
+    private static class Declared {
+
+        private final String algorithm;
+
+        private final String value;
+
+        Declared(final String algorithm, final String value) {
+            this.algorithm = algorithm;
+            this.value = value;
+        }
+
+        /**
+         * @param blob the name of the content file, holding the computed digest in hex
+         * @return true if the declared value, in base64 or hex, matches the computed digest
+         */
+        boolean matches(final String blob) {
+            final String hex = blob.substring(algorithm.length() + 1);
+            if (value.equalsIgnoreCase(hex)) {
+                return true;
+            }
+            try {
+                return hex(Base64.getDecoder().decode(value)).equals(hex);
+            } catch (final IllegalArgumentException ex) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Action run once a captured body has been read to the end
+     */
+    @FunctionalInterface
+    private interface Completion {
+        void run() throws IOException;
+    }
+
+    /**
+     * Stream copying what the caller reads to a temporary file while computing its digest. Closing the stream before
+     * the end, or failing to write the copy, abandons the copy without disturbing the caller.
+     */
+    private static class CapturingInputStream extends FilterInputStream {
+
+        private final Path temp;
+
+        private final MessageDigest digest;
+
+        private final Completion completion;
+
+        private OutputStream copy;
+
+        CapturingInputStream(final InputStream in, final Path temp, final MessageDigest digest,
+                             final Completion completion) throws IOException {
+            super(in);
+            this.temp = temp;
+            this.digest = digest;
+            this.completion = completion;
+            this.copy = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                complete();
+            } else if (copy != null) {
+                capture(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n < 0) {
+                complete();
+            } else if (copy != null) {
+                capture(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes are not seen, so the copy would be incomplete
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void capture(final byte[] b, final int off, final int len) {
+            try {
+                copy.write(b, off, len);
+                digest.update(b, off, len);
+            } catch (final IOException ex) {
+                LOGGER.debug("Unable to write cached copy", ex);
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                copy = null;
+                completion.run();
+            } catch (final IOException ex) {
+                LOGGER.debug("Unable to add content to the binary cache", ex);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+            } catch (final IOException ex) {
+                LOGGER.debug("Unable to close cached copy", ex);
+            }
+            copy = null;
+            try {
+                Files.deleteIfExists(temp);
+            } catch (final IOException ex) {
+                LOGGER.debug("Unable to delete cached copy {}", temp, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT_DATETIME;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_MODIFIED_SINCE;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_NONE_MATCH;
+import static org.fcrepo.client.FedoraHeaderConstants.RANGE;
+import static org.fcrepo.client.FedoraHeaderConstants.WANT_DIGEST;
+import static org.fcrepo.client.FedoraTypes.LDP_NON_RDF_SOURCE;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.BinaryCache.Entry;
+
+/**
+ * {@link FcrepoTransport} decorator keeping the content of binary resources in a {@link BinaryCache}. Each GET of a
+ * cached binary is made conditional on the ETag of the cached copy, and a {@code 304 Not Modified} answer is served
+ * from local disk. Unless the caller asks for another digest, requests ask for the SHA-256 digest of the content, so
+ * that the digest computed by the repository addresses and checks the cached copy. Writes through this transport
+ * invalidate the cached copy of the resource.
+ *
+ * @author agent
+ */
+public class BinaryCachingTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final BinaryCache cache;
+
+    /**
+     * Create a binary caching transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param cache the binary cache
+     */
+    public BinaryCachingTransport(final FcrepoTransport delegate, final BinaryCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        final URI target = request.getURI();
+        if (ResponseCache.isWrite(request)) {
+            try {
+                return delegate.execute(url, request);
+            } finally {
+                cache.invalidate(target);
+            }
+        }
+        if (!isCacheable(request)) {
+            return delegate.execute(url, request);
+        }
+
+        if (!request.containsHeader(WANT_DIGEST)) {
+            request.setHeader(WANT_DIGEST, BinaryCache.DEFAULT_ALGORITHM);
+        }
+        final Entry cached = cache.lookup(target);
+        if (cached != null) {
+            request.setHeader(IF_NONE_MATCH, cached.getEtag());
+        }
+        final FcrepoResponse response;
+        try {
+            response = delegate.execute(url, request);
+        } finally {
+            request.removeHeaders(IF_NONE_MATCH);
+        }
+        final FcrepoResponse local = handle(url, target, cached, response);
+        if (local != null) {
+            return local;
+        }
+        // the cached copy was unusable, fetch the content again
+        return handle(url, target, null, delegate.execute(url, request));
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final URI target = request.getURI();
+        if (ResponseCache.isWrite(request)) {
+            final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+            exchange.whenComplete((response, ex) -> cache.invalidate(target));
+            return exchange;
+        }
+        if (!isCacheable(request)) {
+            return delegate.executeAsync(url, request);
+        }
+
+        if (!request.containsHeader(WANT_DIGEST)) {
+            request.setHeader(WANT_DIGEST, BinaryCache.DEFAULT_ALGORITHM);
+        }
+        final Entry cached = cache.lookup(target);
+        if (cached != null) {
+            request.setHeader(IF_NONE_MATCH, cached.getEtag());
+        }
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        exchange.whenComplete((response, ex) -> {
+            request.removeHeaders(IF_NONE_MATCH);
+            if (ex != null) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            try {
+                final FcrepoResponse local = handle(url, target, cached, response);
+                if (local != null) {
+                    result.complete(local);
+                } else {
+                    // the cached copy was unusable, fetch the content again
+                    delegate.executeAsync(url, request).whenComplete((retry, failure) -> {
+                        if (failure != null) {
+                            result.completeExceptionally(failure);
+                            return;
+                        }
+                        try {
+                            result.complete(handle(url, target, null, retry));
+                        } catch (final IOException error) {
+                            result.completeExceptionally(error);
+                        }
+                    });
+                }
+            } catch (final IOException failure) {
+                result.completeExceptionally(failure);
+            }
+        });
+
+        // Cancelling the returned future aborts the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Serve the cached copy on a 304 response, and capture the content of a binary
+     *
+     * @return the response to give to the caller, or null if the cached copy could not be served
+     */
+    private FcrepoResponse handle(final URI url, final URI target, final Entry cached,
+            final FcrepoResponse response) throws IOException {
+        final int status = response.getStatusCode();
+        if (cached != null && status == HttpStatus.SC_NOT_MODIFIED) {
+            response.close();
+            return cache.serve(cached, url);
+        }
+        if (status == HttpStatus.SC_OK && response.hasType(LDP_NON_RDF_SOURCE)) {
+            return cache.capture(target, response);
+        }
+        if (status < HttpStatus.SC_INTERNAL_SERVER_ERROR && status != HttpStatus.SC_NOT_MODIFIED) {
+            cache.invalidate(target);
+        }
+        return response;
+    }
+
+    /**
+     * @return true for a GET of the whole current content, without conditions of the caller
+     */
+    private static boolean isCacheable(final HttpRequestBase request) {
+        return "GET".equals(request.getMethod()) && !request.containsHeader(RANGE) &&
+                !request.containsHeader(ATOMIC_ID) && !request.containsHeader(ACCEPT_DATETIME) &&
+                !request.containsHeader(IF_NONE_MATCH) && !request.containsHeader(IF_MODIFIED_SINCE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
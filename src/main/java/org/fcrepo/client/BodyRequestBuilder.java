@@ -7,14 +7,17 @@ package org.fcrepo.client;
 
 import static org.fcrepo.client.FedoraHeaderConstants.CONTENT_TYPE;
 import static org.fcrepo.client.FedoraHeaderConstants.DIGEST;
+import static org.fcrepo.client.FedoraHeaderConstants.ETAG;
 import static org.fcrepo.client.FedoraHeaderConstants.IF_MATCH;
 import static org.fcrepo.client.FedoraHeaderConstants.IF_STATE_TOKEN;
 import static org.fcrepo.client.FedoraHeaderConstants.IF_UNMODIFIED_SINCE;
 import static org.fcrepo.client.FedoraHeaderConstants.LINK;
+import static org.fcrepo.client.FedoraHeaderConstants.STATE_TOKEN;
 import static org.fcrepo.client.LinkHeaderConstants.ACL_REL;
 import static org.fcrepo.client.LinkHeaderConstants.EXTERNAL_CONTENT_HANDLING;
 import static org.fcrepo.client.LinkHeaderConstants.EXTERNAL_CONTENT_REL;
 import static org.fcrepo.client.LinkHeaderConstants.TYPE_REL;
+import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -22,11 +25,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.Args;
 import org.fcrepo.client.FcrepoLink.Builder;
+import org.slf4j.Logger;
 
 /**
  * Request builder which includes a body component
@@ -36,8 +45,15 @@ import org.fcrepo.client.FcrepoLink.Builder;
 public abstract class BodyRequestBuilder extends
         RequestBuilder {
 
+    private static final Logger LOGGER = getLogger(BodyRequestBuilder.class);
+
     private StringJoiner digestJoiner;
 
+    // whether the if-match and if-state-token headers are set to the current values of the resource
+    private boolean ifMatchCurrent;
+
+    private boolean ifStateTokenCurrent;
+
     /**
      * Instantiate builder
      *
@@ -86,9 +102,15 @@ public abstract class BodyRequestBuilder extends
      * @param contentType the Content-Type of the body
      * @return this builder
      * @throws IOException when unable to stream the body file
+     * @throws IllegalArgumentException if the file is null
      */
     protected BodyRequestBuilder body(final File file, final String contentType) throws IOException {
-        return body(new FileInputStream(file), contentType);
+        Args.notNull(file, "file");
+        // fail early on unreadable files, the entity itself is repeatable so that the request can be retried
+        new FileInputStream(file).close();
+        ((HttpEntityEnclosingRequestBase) request).setEntity(new FileBodyEntity(file));
+        request.addHeader(CONTENT_TYPE, contentType == null ? "application/octet-stream" : contentType);
+        return this;
     }
 
     /**
@@ -256,4 +278,128 @@ public abstract class BodyRequestBuilder extends
         }
         return this;
     }
+
+    /**
+     * Make this request conditional on the current ETag of the resource, as known to the client. The ETag is taken
+     * from the client's {@link MetadataCache} when it holds fresh metadata for the resource, and from a HEAD request
+     * otherwise. If the request fails with a 412 because the cached ETag was out of date, it is retried once with the
+     * ETag returned by the repository, provided its body can be sent again.
+     *
+     * @return this builder
+     */
+    protected BodyRequestBuilder ifMatchCurrent() {
+        this.ifMatchCurrent = true;
+        return this;
+    }
+
+    /**
+     * Make this request conditional on the current state token of the resource, as known to the client, in the same
+     * manner as {@link #ifMatchCurrent()}.
+     *
+     * @return this builder
+     */
+    protected BodyRequestBuilder ifStateTokenCurrent() {
+        this.ifStateTokenCurrent = true;
+        return this;
+    }
+
+    @Override
+    public FcrepoResponse perform() throws FcrepoOperationFailedException {
+        if (!ifMatchCurrent && !ifStateTokenCurrent) {
+            return super.perform();
+        }
+        final FcrepoResponse head = client.head(targetUri).perform();
+        close(head);
+        final boolean cached = addCurrentConditions(head);
+        final FcrepoResponse response;
+        try {
+            response = super.perform();
+        } catch (final FcrepoOperationFailedException ex) {
+            if (!isOutdated(ex.getStatusCode(), cached)) {
+                throw ex;
+            }
+            return retryWithCurrentConditions();
+        }
+        if (!isOutdated(response.getStatusCode(), cached)) {
+            return response;
+        }
+        close(response);
+        return retryWithCurrentConditions();
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> performAsync() {
+        if (!ifMatchCurrent && !ifStateTokenCurrent) {
+            return super.performAsync();
+        }
+        return client.head(targetUri).performAsync().thenCompose(head -> {
+            close(head);
+            final boolean cached = addCurrentConditions(head);
+            return super.performAsync().handle((response, ex) -> {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ?
+                        ex.getCause() : ex;
+                final int status = cause instanceof FcrepoOperationFailedException ?
+                        ((FcrepoOperationFailedException) cause).getStatusCode() :
+                        response != null ? response.getStatusCode() : -1;
+                if (!isOutdated(status, cached)) {
+                    return cause == null ? CompletableFuture.completedFuture(response) :
+                            CompletableFuture.<FcrepoResponse>failedFuture(cause);
+                }
+                if (response != null) {
+                    close(response);
+                }
+                return client.head(targetUri).performAsync().thenCompose(current -> {
+                    close(current);
+                    addCurrentConditions(current);
+                    return super.performAsync();
+                });
+            }).thenCompose(result -> result);
+        });
+    }
+
+    private FcrepoResponse retryWithCurrentConditions() throws FcrepoOperationFailedException {
+        // the write invalidated the cached metadata, so this asks the repository
+        final FcrepoResponse head = client.head(targetUri).perform();
+        close(head);
+        addCurrentConditions(head);
+        return super.perform();
+    }
+
+    /**
+     * Set the conditions of the request from the headers of the resource
+     *
+     * @param head response to a HEAD request for the resource
+     * @return true if the headers came from the client's cache
+     */
+    private boolean addCurrentConditions(final FcrepoResponse head) {
+        if (ifMatchCurrent) {
+            request.removeHeaders(IF_MATCH);
+            ifMatch(head.getHeaderValue(ETAG));
+        }
+        if (ifStateTokenCurrent) {
+            request.removeHeaders(IF_STATE_TOKEN);
+            ifStateToken(head.getHeaderValue(STATE_TOKEN));
+        }
+        return head.isFromCache();
+    }
+
+    /**
+     * @return true if a request failed on conditions taken from cached metadata, and can be sent again
+     */
+    private boolean isOutdated(final int status, final boolean cached) {
+        if (status != HttpStatus.SC_PRECONDITION_FAILED || !cached) {
+            return false;
+        }
+        final HttpEntity entity = request instanceof HttpEntityEnclosingRequestBase ?
+                ((HttpEntityEnclosingRequestBase) request).getEntity() : null;
+        return entity == null || entity.isRepeatable();
+    }
+
+    private static void close(final FcrepoResponse response) {
+        try {
+            response.close();
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to close response to {}", response.getUrl(), ex);
+        }
+    }
 }
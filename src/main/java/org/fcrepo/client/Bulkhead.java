@@ -0,0 +1,178 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FcrepoClient.TRANSACTION_ENDPOINT;
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT;
+import static org.fcrepo.client.FedoraHeaderConstants.CONTENT_TYPE;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Isolates traffic classes from each other, so that large binary transfers cannot take every connection needed by
+ * metadata requests or by the control of transactions. Each class gets its own connection pool and its own limit of
+ * requests in flight, with a queue for requests over the limit. A download stays in flight until its body is read to
+ * its end or closed.
+ * <p>
+ * Requests to a transaction URI, such as commit, keep-alive and rollback, are transaction control. HEAD, OPTIONS,
+ * DELETE and PATCH requests, GET requests accepting an RDF format or addressed to {@code fcr:metadata},
+ * {@code fcr:acl} or {@code fcr:versions}, and PUT or POST requests with an RDF body or no body at all are
+ * metadata. Everything else, notably a GET without an Accept header, is considered a binary transfer. The
+ * classification can be replaced with {@link #classifier(Function)}.
+ * </p>
+ *
+ * @author agent
+ */
+public class Bulkhead {
+
+    /**
+     * Class of traffic with its own connection pool and limits
+     */
+    public enum TrafficClass {
+        /** uploads and downloads of binary content */
+        BINARY,
+        /** RDF and header requests */
+        METADATA,
+        /** requests controlling a transaction */
+        TRANSACTION
+    }
+
+    private static final Set<String> RDF_TYPES = Set.of("text/turtle", "application/ld+json",
+            "application/n-triples", "application/rdf+xml", "text/n3", "text/rdf+n3", "application/sparql-update");
+
+    private static final Set<String> METADATA_ENDPOINTS = Set.of("fcr:metadata", "fcr:acl", "fcr:versions");
+
+    private final Map<TrafficClass, Integer> maxConnections = new EnumMap<>(Map.of(
+            TrafficClass.BINARY, 10, TrafficClass.METADATA, 20, TrafficClass.TRANSACTION, 5));
+
+    private final Map<TrafficClass, ConcurrencyLimiter> limiters = new EnumMap<>(TrafficClass.class);
+
+    private Function<HttpRequestBase, TrafficClass> classifier = Bulkhead::classify;
+
+    /**
+     * Create a bulkhead with default limits of 10 binary transfers, 20 metadata requests and 5 transaction control
+     * requests in flight, each class queueing up to 100 requests for up to 30 seconds
+     */
+    public Bulkhead() {
+        for (final TrafficClass trafficClass : TrafficClass.values()) {
+            limiters.put(trafficClass, fixedLimiter(maxConnections.get(trafficClass)));
+        }
+    }
+
+    /**
+     * Set the connection pool size and limit of requests in flight of a traffic class
+     *
+     * @param trafficClass the traffic class
+     * @param maxConcurrent maximum number of requests in flight, and of pooled connections
+     * @return this bulkhead
+     */
+    public Bulkhead limit(final TrafficClass trafficClass, final int maxConcurrent) {
+        limiters.get(trafficClass).limitBounds(maxConcurrent, maxConcurrent);
+        maxConnections.put(trafficClass, maxConcurrent);
+        return this;
+    }
+
+    /**
+     * Set how many requests of a traffic class may wait for the limit, and for how long
+     *
+     * @param trafficClass the traffic class
+     * @param maxQueueDepth maximum number of waiting requests, zero to fail fast
+     * @param queueTimeout maximum time to wait in milliseconds
+     * @return this bulkhead
+     */
+    public Bulkhead queue(final TrafficClass trafficClass, final int maxQueueDepth, final long queueTimeout) {
+        limiters.get(trafficClass).queue(maxQueueDepth, queueTimeout);
+        return this;
+    }
+
+    /**
+     * Replace the function deciding the traffic class of requests
+     *
+     * @param classifier the classifier
+     * @return this bulkhead
+     */
+    public Bulkhead classifier(final Function<HttpRequestBase, TrafficClass> classifier) {
+        this.classifier = classifier;
+        return this;
+    }
+
+    /**
+     * Get the limiter of a traffic class, which reports its requests in flight, queue depth and rejections
+     *
+     * @param trafficClass the traffic class
+     * @return the limiter of the traffic class
+     */
+    public ConcurrencyLimiter getLimiter(final TrafficClass trafficClass) {
+        return limiters.get(trafficClass);
+    }
+
+    /**
+     * @param trafficClass the traffic class
+     * @return the size of the connection pool of the traffic class
+     */
+    int getMaxConnections(final TrafficClass trafficClass) {
+        return maxConnections.get(trafficClass);
+    }
+
+    /**
+     * @param request a request
+     * @return the traffic class of the request according to the classifier
+     */
+    TrafficClass trafficClassOf(final HttpRequestBase request) {
+        return classifier.apply(request);
+    }
+
+    /**
+     * Default classification of requests
+     *
+     * @param request a request
+     * @return the traffic class of the request
+     */
+    public static TrafficClass classify(final HttpRequestBase request) {
+        final String path = request.getURI().getPath() == null ? "" : request.getURI().getPath();
+        if (path.contains("/" + TRANSACTION_ENDPOINT)) {
+            return TrafficClass.TRANSACTION;
+        }
+        switch (request.getMethod()) {
+            case "GET":
+                final String endpoint = path.substring(path.lastIndexOf('/') + 1);
+                return METADATA_ENDPOINTS.contains(endpoint) || isRdf(request.getFirstHeader(ACCEPT)) ?
+                        TrafficClass.METADATA : TrafficClass.BINARY;
+            case "PUT":
+            case "POST":
+                final boolean hasBody = request instanceof HttpEntityEnclosingRequest &&
+                        ((HttpEntityEnclosingRequest) request).getEntity() != null;
+                return !hasBody || isRdf(request.getFirstHeader(CONTENT_TYPE)) ?
+                        TrafficClass.METADATA : TrafficClass.BINARY;
+            default:
+                return TrafficClass.METADATA;
+        }
+    }
+
+    private static boolean isRdf(final Header header) {
+        if (header == null) {
+            return false;
+        }
+        for (final String type : header.getValue().split(",")) {
+            final String mediaType = type.split(";")[0].trim().toLowerCase();
+            if (RDF_TYPES.contains(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ConcurrencyLimiter fixedLimiter(final int limit) {
+        return new ConcurrencyLimiter().limitBounds(limit, limit);
+    }
+}
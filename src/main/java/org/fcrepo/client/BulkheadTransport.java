@@ -0,0 +1,100 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.Bulkhead.TrafficClass;
+
+/**
+ * {@link FcrepoTransport} routing each request to the transport of its {@link Bulkhead} traffic class, held to the
+ * limit of requests in flight of that class.
+ *
+ * @author agent
+ */
+public class BulkheadTransport implements FcrepoTransport {
+
+    private final Bulkhead bulkhead;
+
+    private final Map<TrafficClass, FcrepoTransport> delegates = new EnumMap<>(TrafficClass.class);
+
+    private final Map<TrafficClass, FcrepoTransport> limited = new EnumMap<>(TrafficClass.class);
+
+    /**
+     * Create a bulkhead transport sending every traffic class through the same transport. The traffic classes only
+     * get separate limits of requests in flight, which suits a multiplexed HTTP/2 transport.
+     *
+     * @param delegate the transport making the actual requests
+     * @param bulkhead the bulkhead
+     */
+    public BulkheadTransport(final FcrepoTransport delegate, final Bulkhead bulkhead) {
+        this(delegateForAll(delegate), bulkhead);
+    }
+
+    /**
+     * Create a bulkhead transport with a transport, and therefore a connection pool, per traffic class
+     *
+     * @param delegates the transport of each traffic class
+     * @param bulkhead the bulkhead
+     */
+    public BulkheadTransport(final Map<TrafficClass, FcrepoTransport> delegates, final Bulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+        for (final TrafficClass trafficClass : TrafficClass.values()) {
+            final FcrepoTransport delegate = delegates.get(trafficClass);
+            if (delegate == null) {
+                throw new IllegalArgumentException("No transport for traffic class " + trafficClass);
+            }
+            this.delegates.put(trafficClass, delegate);
+            this.limited.put(trafficClass,
+                    new ConcurrencyLimitingTransport(delegate, bulkhead.getLimiter(trafficClass)));
+        }
+    }
+
+    private static Map<TrafficClass, FcrepoTransport> delegateForAll(final FcrepoTransport delegate) {
+        final Map<TrafficClass, FcrepoTransport> delegates = new EnumMap<>(TrafficClass.class);
+        for (final TrafficClass trafficClass : TrafficClass.values()) {
+            delegates.put(trafficClass, delegate);
+        }
+        return delegates;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        return limited.get(bulkhead.trafficClassOf(request)).execute(url, request);
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        return limited.get(bulkhead.trafficClassOf(request)).executeAsync(url, request);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // a transport shared between traffic classes is closed once
+        final Set<FcrepoTransport> transports = Collections.newSetFromMap(new IdentityHashMap<>());
+        transports.addAll(delegates.values());
+        IOException failure = null;
+        for (final FcrepoTransport transport : transports) {
+            try {
+                transport.close();
+            } catch (final IOException ex) {
+                failure = ex;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
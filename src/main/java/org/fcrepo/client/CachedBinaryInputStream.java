@@ -0,0 +1,150 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Body of a response served from a {@link BinaryCache}. Reads are served from memory-mapped regions of the cached
+ * file, so the content goes from the page cache to the caller's buffer without an intermediate copy on the heap, and
+ * {@link #transferTo(OutputStream)} hands the file to the kernel when the target is a file. The underlying
+ * {@link FileChannel} is also available for callers which can write channels directly, such as NIO servers.
+ *
+ * @author agent
+ */
+public class CachedBinaryInputStream extends InputStream {
+
+    private static final long REGION_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private long position;
+
+    private long mark;
+
+    private MappedByteBuffer region;
+
+    private long regionStart;
+
+    /**
+     * Open a cached file
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be opened
+     */
+    CachedBinaryInputStream(final Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /**
+     * Get the channel of the cached file. Reading from the channel does not advance this stream.
+     *
+     * @return the file channel
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the size of the cached content in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        final int b = mapped().get((int) (position - regionStart)) & 0xff;
+        position++;
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= size) {
+            return -1;
+        }
+        final MappedByteBuffer buffer = mapped();
+        final int n = (int) Math.min(len, regionStart + buffer.capacity() - position);
+        buffer.duplicate().position((int) (position - regionStart)).get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) {
+        final long skipped = Math.max(0, Math.min(n, size - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, size - position);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = mark;
+    }
+
+    @Override
+    public long transferTo(final OutputStream out) throws IOException {
+        final WritableByteChannel target = out instanceof FileOutputStream ?
+                ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+        final long start = position;
+        while (position < size) {
+            position += channel.transferTo(position, size - position, target);
+        }
+        return position - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+
+    /**
+     * @return the mapped region holding the current position
+     */
+    private MappedByteBuffer mapped() throws IOException {
+        if (region == null || position < regionStart || position >= regionStart + region.capacity()) {
+            regionStart = position - position % REGION_SIZE;
+            region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart,
+                    Math.min(REGION_SIZE, size - regionStart));
+        }
+        return region;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.IF_MODIFIED_SINCE;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_NONE_MATCH;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.ResponseCache.Entry;
+import org.slf4j.Logger;
+
+/**
+ * {@link FcrepoTransport} decorator serving GET requests from a {@link ResponseCache}, and invalidating the cached
+ * responses of resources written through it.
+ *
+ * @author agent
+ */
+public class CachingTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(CachingTransport.class);
+
+    private final FcrepoTransport delegate;
+
+    private final ResponseCache cache;
+
+    /**
+     * Create a caching transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param cache the response cache
+     */
+    public CachingTransport(final FcrepoTransport delegate, final ResponseCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        if (ResponseCache.isWrite(request)) {
+            final URI target = request.getURI();
+            cache.startWrite(request, target);
+            try {
+                return delegate.execute(url, request);
+            } finally {
+                cache.completeWrite(request, target);
+            }
+        }
+        final String key = ResponseCache.keyOf(request);
+        if (key == null) {
+            return delegate.execute(url, request);
+        }
+
+        final Entry cached = cache.get(key);
+        final FcrepoResponse local = serveLocally(url, request, key, cached);
+        if (local != null) {
+            return local;
+        }
+        final boolean conditional = cached != null && cached.addValidators(request);
+        final FcrepoResponse response;
+        try {
+            response = delegate.execute(url, request);
+        } catch (final IOException | FcrepoOperationFailedException ex) {
+            if (canServeOnError(request, cached)) {
+                return serveOnError(url, cached, ex);
+            }
+            throw ex;
+        } finally {
+            removeValidators(request, conditional);
+        }
+        if (isServerError(response) && canServeOnError(request, cached)) {
+            response.close();
+            return serveOnError(url, cached, null);
+        }
+        return handle(key, conditional ? cached : null, response);
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        if (ResponseCache.isWrite(request)) {
+            final URI target = request.getURI();
+            cache.startWrite(request, target);
+            final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+            exchange.whenComplete((response, ex) -> cache.completeWrite(request, target));
+            return exchange;
+        }
+        final String key = ResponseCache.keyOf(request);
+        if (key == null) {
+            return delegate.executeAsync(url, request);
+        }
+
+        final Entry cached = cache.get(key);
+        final FcrepoResponse local = serveLocally(url, request, key, cached);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        final boolean conditional = cached != null && cached.addValidators(request);
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        exchange.whenComplete((response, ex) -> {
+            removeValidators(request, conditional);
+            final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            try {
+                if (cause != null && !(cause instanceof CancellationException) &&
+                        canServeOnError(request, cached)) {
+                    result.complete(serveOnError(url, cached, cause));
+                } else if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else if (isServerError(response) && canServeOnError(request, cached)) {
+                    response.close();
+                    result.complete(serveOnError(url, cached, null));
+                } else {
+                    result.complete(handle(key, conditional ? cached : null, response));
+                }
+            } catch (final IOException failure) {
+                result.completeExceptionally(failure);
+            }
+        });
+
+        // Cancelling the returned future aborts the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Serve a request from a fresh entry, or from a stale one while it is refreshed in the background
+     *
+     * @return the cached response, or null if the repository must be asked
+     */
+    private FcrepoResponse serveLocally(final URI url, final HttpRequestBase request, final String key,
+            final Entry cached) {
+        if (cached == null || ResponseCache.requiresRevalidation(request)) {
+            return null;
+        }
+        if (cached.isFresh()) {
+            cache.recordHit();
+            return cached.toResponse();
+        }
+        if (cached.isStaleWithin(cache.staleWhileRevalidateFor(request))) {
+            cache.recordStaleHit();
+            refresh(url, request, key, cached);
+            return cached.toResponse();
+        }
+        return null;
+    }
+
+    /**
+     * Revalidate a stale entry in the background, unless a refresh is already in progress
+     */
+    private void refresh(final URI url, final HttpRequestBase request, final String key, final Entry cached) {
+        if (!cached.startRefresh()) {
+            return;
+        }
+        final HttpRequestBase copy;
+        try {
+            copy = (HttpRequestBase) request.clone();
+        } catch (final CloneNotSupportedException ex) {
+            cached.endRefresh();
+            return;
+        }
+        final boolean conditional = cached.addValidators(copy);
+        LOGGER.debug("Refreshing cached response to {} in the background", url);
+        delegate.executeAsync(url, copy).whenComplete((response, ex) -> {
+            try {
+                if (ex != null) {
+                    LOGGER.debug("Background refresh of {} failed: {}", url, ex.getMessage());
+                } else if (conditional && response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    response.close();
+                    cache.refresh(cached, response);
+                } else if (response.getStatusCode() == HttpStatus.SC_OK) {
+                    store(key, response).close();
+                } else {
+                    response.close();
+                    if (!isServerError(response)) {
+                        cache.remove(key);
+                    }
+                }
+            } catch (final IOException failure) {
+                LOGGER.debug("Background refresh of {} failed: {}", url, failure.getMessage());
+            } finally {
+                cached.endRefresh();
+            }
+        });
+    }
+
+    private boolean canServeOnError(final HttpRequestBase request, final Entry cached) {
+        return cached != null && cached.isStaleWithin(cache.staleIfErrorFor(request));
+    }
+
+    private FcrepoResponse serveOnError(final URI url, final Entry cached, final Throwable ex) {
+        LOGGER.debug("Serving stale response to {} after the repository failed: {}", url,
+                ex == null ? "server error" : ex.getMessage());
+        cache.recordStaleIfErrorHit();
+        return cached.toResponse();
+    }
+
+    /**
+     * Serve a revalidated entry on a 304 response, and cache a full response
+     *
+     * @param key the cache key of the request
+     * @param cached the entry which was revalidated, if any
+     * @param response the response of the repository
+     * @return the response to give to the caller
+     */
+    private FcrepoResponse handle(final String key, final Entry cached, final FcrepoResponse response)
+            throws IOException {
+        final int status = response.getStatusCode();
+        if (cached != null && status == HttpStatus.SC_NOT_MODIFIED) {
+            response.close();
+            cache.refresh(cached, response);
+            cache.recordRevalidation();
+            return cached.toResponse();
+        }
+
+        cache.recordMiss();
+        if (status != HttpStatus.SC_OK) {
+            // keep the last good copy through server errors
+            if (!isServerError(response)) {
+                cache.remove(key);
+            }
+            return response;
+        }
+        return store(key, response);
+    }
+
+    /**
+     * Read the body of a response into the cache, unless it exceeds the maximum size of an entry
+     */
+    private FcrepoResponse store(final String key, final FcrepoResponse response) throws IOException {
+        final long limit = cache.getMaxEntryBytes();
+        if (contentLength(response) > limit) {
+            cache.remove(key);
+            return response;
+        }
+
+        final InputStream body = response.getBody();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (body != null) {
+            final byte[] chunk = new byte[8192];
+            int n;
+            while ((n = body.read(chunk, 0, (int) Math.min(chunk.length, limit + 1 - buffer.size()))) > 0) {
+                buffer.write(chunk, 0, n);
+                if (buffer.size() > limit) {
+                    // too large to cache: hand back what was read followed by the rest of the stream
+                    LOGGER.debug("Response to {} is too large to cache", response.getUrl());
+                    cache.remove(key);
+                    response.setBody(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), body));
+                    return response;
+                }
+            }
+            body.close();
+        }
+        final byte[] bytes = buffer.toByteArray();
+        response.setBody(new ByteArrayInputStream(bytes));
+        cache.put(key, response, bytes);
+        return response;
+    }
+
+    private static boolean isServerError(final FcrepoResponse response) {
+        return response.getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    private static long contentLength(final FcrepoResponse response) {
+        final String length = response.getHeaderValue("Content-Length");
+        try {
+            return length == null ? -1 : Long.parseLong(length.trim());
+        } catch (final NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static void removeValidators(final HttpRequestBase request, final boolean conditional) {
+        if (conditional) {
+            request.removeHeaders(IF_NONE_MATCH);
+            request.removeHeaders(IF_MODIFIED_SINCE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
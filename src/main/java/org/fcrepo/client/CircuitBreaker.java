@@ -0,0 +1,330 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+
+/**
+ * Circuit breakers keyed per repository host. Each host's breaker watches the outcome of the last calls made to it:
+ * once enough calls have been made and the rate of failed calls (connection failures and 5xx responses) or of slow
+ * calls reaches its threshold, the breaker opens and calls to the host fail fast with a
+ * {@link CircuitBreakerOpenException}. After the open duration a few trial calls are let through in the half-open
+ * state; the breaker closes again if they succeed and reopens otherwise.
+ *
+ * @author agent
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = getLogger(CircuitBreaker.class);
+
+    /**
+     * State of the breaker of a host
+     */
+    public enum State {
+        /** calls go through and their outcome is recorded */
+        CLOSED,
+        /** calls are rejected without being sent */
+        OPEN,
+        /** a limited number of trial calls go through to decide whether to close */
+        HALF_OPEN
+    }
+
+    private int windowSize = 50;
+
+    private int minimumCalls = 10;
+
+    private double failureRateThreshold = 0.5;
+
+    private double slowCallRateThreshold = 1.0;
+
+    private long slowCallDuration = 10000;
+
+    private long openDuration = 30000;
+
+    private int halfOpenCalls = 5;
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * Set the number of most recent calls the failure and slow call rates are computed from, and how many calls must
+     * have been made before the breaker may open
+     *
+     * @param windowSize number of calls in the sliding window
+     * @param minimumCalls minimum number of calls before the rates are considered
+     * @return this circuit breaker
+     */
+    public CircuitBreaker window(final int windowSize, final int minimumCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+            throw new IllegalArgumentException("Window size and minimum calls must be positive, with the minimum " +
+                    "calls at most the window size");
+        }
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        return this;
+    }
+
+    /**
+     * Set the rate of failed calls at which the breaker opens
+     *
+     * @param failureRateThreshold rate between 0 and 1
+     * @return this circuit breaker
+     */
+    public CircuitBreaker failureRateThreshold(final double failureRateThreshold) {
+        this.failureRateThreshold = requireRate(failureRateThreshold);
+        return this;
+    }
+
+    /**
+     * Set the rate of slow calls at which the breaker opens
+     *
+     * @param slowCallRateThreshold rate between 0 and 1
+     * @param slowCallDuration duration above which a call is slow, in milliseconds
+     * @return this circuit breaker
+     */
+    public CircuitBreaker slowCallRateThreshold(final double slowCallRateThreshold, final long slowCallDuration) {
+        this.slowCallRateThreshold = requireRate(slowCallRateThreshold);
+        this.slowCallDuration = slowCallDuration;
+        return this;
+    }
+
+    /**
+     * Set how long the breaker stays open, and how many trial calls are made in the half-open state
+     *
+     * @param openDuration time the breaker stays open in milliseconds
+     * @param halfOpenCalls number of trial calls deciding whether the breaker closes
+     * @return this circuit breaker
+     */
+    public CircuitBreaker halfOpen(final long openDuration, final int halfOpenCalls) {
+        if (halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Half-open calls must be at least 1");
+        }
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+        return this;
+    }
+
+    /**
+     * Get the state of the breaker of the host of a URI
+     *
+     * @param uri a URI on the host
+     * @return the state of the breaker
+     */
+    public State getState(final URI uri) {
+        final Circuit circuit = circuits.get(hostOf(uri));
+        return circuit == null ? State.CLOSED : circuit.getState();
+    }
+
+    /**
+     * @return the state of the breaker of every host called so far, keyed by scheme and authority
+     */
+    public Map<String, State> getStates() {
+        final Map<String, State> states = new TreeMap<>();
+        circuits.forEach((host, circuit) -> states.put(host, circuit.getState()));
+        return states;
+    }
+
+    /**
+     * Get the rate of failed calls to the host of a URI over the sliding window
+     *
+     * @param uri a URI on the host
+     * @return rate between 0 and 1
+     */
+    public double getFailureRate(final URI uri) {
+        final Circuit circuit = circuits.get(hostOf(uri));
+        return circuit == null ? 0 : circuit.getFailureRate();
+    }
+
+    /**
+     * Get the rate of slow calls to the host of a URI over the sliding window
+     *
+     * @param uri a URI on the host
+     * @return rate between 0 and 1
+     */
+    public double getSlowCallRate(final URI uri) {
+        final Circuit circuit = circuits.get(hostOf(uri));
+        return circuit == null ? 0 : circuit.getSlowCallRate();
+    }
+
+    /**
+     * Get the number of calls to the host of a URI rejected because its breaker was open
+     *
+     * @param uri a URI on the host
+     * @return the number of rejected calls
+     */
+    public long getRejected(final URI uri) {
+        final Circuit circuit = circuits.get(hostOf(uri));
+        return circuit == null ? 0 : circuit.getRejected();
+    }
+
+    /**
+     * Get the breaker of the host of a URI
+     *
+     * @param uri a URI on the host
+     * @return the breaker of the host
+     */
+    Circuit circuitFor(final URI uri) {
+        return circuits.computeIfAbsent(hostOf(uri), Circuit::new);
+    }
+
+    private static String hostOf(final URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    private static double requireRate(final double rate) {
+        if (rate <= 0 || rate > 1) {
+            throw new IllegalArgumentException("Rate thresholds must be greater than 0 and at most 1");
+        }
+        return rate;
+    }
+
+    /**
+     * Breaker of a single host
+     */
+    class Circuit {
+
+        private static final byte FAILED = 1;
+
+        private static final byte SLOW = 2;
+
+        private final String host;
+
+        private final byte[] outcomes = new byte[windowSize];
+
+        private int calls;
+
+        private int next;
+
+        private int failures;
+
+        private int slowCalls;
+
+        private State state = State.CLOSED;
+
+        private long openedAt;
+
+        private int trialsStarted;
+
+        private long rejected;
+
+        Circuit(final String host) {
+            this.host = host;
+        }
+
+        /**
+         * Ask for permission to make a call
+         *
+         * @return true if the call may be made
+         */
+        synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < MILLISECONDS.toNanos(openDuration)) {
+                    rejected++;
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= halfOpenCalls) {
+                    rejected++;
+                    return false;
+                }
+                trialsStarted++;
+            }
+            return true;
+        }
+
+        /**
+         * Record the outcome of a permitted call
+         *
+         * @param duration duration of the call in nanoseconds
+         * @param failed true if the call failed
+         */
+        synchronized void record(final long duration, final boolean failed) {
+            if (state == State.OPEN) {
+                // a call started before the breaker opened
+                return;
+            }
+            final boolean slow = NANOSECONDS.toMillis(duration) > slowCallDuration;
+            final byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+            if (calls == outcomes.length) {
+                final byte evicted = outcomes[next];
+                failures -= evicted & FAILED;
+                slowCalls -= (evicted & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            outcomes[next] = outcome;
+            next = (next + 1) % outcomes.length;
+            failures += failed ? 1 : 0;
+            slowCalls += slow ? 1 : 0;
+
+            if (state == State.HALF_OPEN) {
+                if (calls >= Math.min(halfOpenCalls, outcomes.length)) {
+                    transition(overThreshold() ? State.OPEN : State.CLOSED);
+                }
+            } else if (calls >= minimumCalls && overThreshold()) {
+                transition(State.OPEN);
+            }
+        }
+
+        /**
+         * Give back the permission of a call which was aborted, without recording an outcome
+         */
+        synchronized void release() {
+            if (state == State.HALF_OPEN && trialsStarted > 0) {
+                trialsStarted--;
+            }
+        }
+
+        private boolean overThreshold() {
+            return (double) failures / calls >= failureRateThreshold ||
+                    (double) slowCalls / calls >= slowCallRateThreshold;
+        }
+
+        private void transition(final State target) {
+            LOGGER.info("Circuit breaker for {} changed from {} to {}", host, state, target);
+            state = target;
+            calls = 0;
+            next = 0;
+            failures = 0;
+            slowCalls = 0;
+            trialsStarted = 0;
+            if (target == State.OPEN) {
+                openedAt = System.nanoTime();
+            }
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        synchronized double getFailureRate() {
+            return calls == 0 ? 0 : (double) failures / calls;
+        }
+
+        synchronized double getSlowCallRate() {
+            return calls == 0 ? 0 : (double) slowCalls / calls;
+        }
+
+        synchronized long getRejected() {
+            return rejected;
+        }
+
+        String getHost() {
+            return host;
+        }
+    }
+}
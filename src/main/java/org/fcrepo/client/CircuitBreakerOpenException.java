@@ -0,0 +1,28 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.net.URI;
+
+/**
+ * Signals that a request was rejected without being sent, because the {@link CircuitBreaker} of its host is open.
+ *
+ * @author agent
+ */
+public class CircuitBreakerOpenException extends FcrepoOperationFailedException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a CircuitBreakerOpenException
+     *
+     * @param url the requested url
+     * @param statusText the reason the request was rejected
+     */
+    public CircuitBreakerOpenException(final URI url, final String statusText) {
+        super(url, -1, statusText);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.CircuitBreaker.Circuit;
+import org.slf4j.Logger;
+
+/**
+ * {@link FcrepoTransport} decorator failing fast while the {@link CircuitBreaker} of the requested host is open.
+ *
+ * @author agent
+ */
+public class CircuitBreakingTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(CircuitBreakingTransport.class);
+
+    private final FcrepoTransport delegate;
+
+    private final CircuitBreaker breaker;
+
+    /**
+     * Create a circuit breaking transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param breaker the circuit breaker
+     */
+    public CircuitBreakingTransport(final FcrepoTransport delegate, final CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        final Circuit circuit = breaker.circuitFor(url);
+        if (!circuit.tryAcquire()) {
+            throw rejected(url, circuit);
+        }
+
+        final long start = System.nanoTime();
+        final FcrepoResponse response;
+        try {
+            response = delegate.execute(url, request);
+        } catch (final IOException ex) {
+            circuit.record(System.nanoTime() - start, true);
+            throw ex;
+        } catch (final FcrepoOperationFailedException | RuntimeException | Error ex) {
+            // rejected before reaching the host, such as by a rate limiter or bulkhead below
+            circuit.release();
+            throw ex;
+        }
+        circuit.record(System.nanoTime() - start, isFailure(response));
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final Circuit circuit = breaker.circuitFor(url);
+        if (!circuit.tryAcquire()) {
+            return CompletableFuture.failedFuture(rejected(url, circuit));
+        }
+
+        final long start = System.nanoTime();
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        exchange.whenComplete((response, ex) -> {
+            final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            if (cause != null && !(cause instanceof IOException)) {
+                // an aborted call, or one rejected before reaching the host, says nothing about its health
+                circuit.release();
+                return;
+            }
+            circuit.record(System.nanoTime() - start, cause != null || isFailure(response));
+        });
+        return exchange;
+    }
+
+    private static CircuitBreakerOpenException rejected(final URI url, final Circuit circuit) {
+        LOGGER.debug("Rejecting request to {}: circuit breaker is {}", url, circuit.getState());
+        return new CircuitBreakerOpenException(url, "Circuit breaker for " + circuit.getHost() + " is " +
+                circuit.getState());
+    }
+
+    private static boolean isFailure(final FcrepoResponse response) {
+        return response.getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
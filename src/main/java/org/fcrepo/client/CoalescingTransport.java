@@ -0,0 +1,385 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+
+/**
+ * {@link FcrepoTransport} decorator letting concurrent identical GET and HEAD requests share one exchange with the
+ * repository, as configured by a {@link RequestCoalescer}. Requests are identical when they have the same method, URL
+ * and headers, including Accept, Prefer and Atomic-ID. A request arriving while an identical one waits for its
+ * response joins it; once the response arrives, later requests start a new exchange.
+ * <p>
+ * When a single request was waiting, it receives the response as is, so coalescing adds no buffering to requests
+ * which were not coalesced. Otherwise, the body is read once and each request receives its own stream over the
+ * shared copy. Cancelling a coalesced request only detaches it, and the exchange is aborted once every request
+ * sharing it was cancelled.
+ * </p>
+ *
+ * @author agent
+ */
+public class CoalescingTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(CoalescingTransport.class);
+
+    private final FcrepoTransport delegate;
+
+    private final RequestCoalescer coalescer;
+
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Create a coalescing transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param coalescer the settings and statistics of coalescing
+     */
+    public CoalescingTransport(final FcrepoTransport delegate, final RequestCoalescer coalescer) {
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        if (!isCoalescable(request)) {
+            return delegate.execute(url, request);
+        }
+        coalescer.recordRequest();
+        final String key = keyOf(url, request);
+        while (true) {
+            final Flight flight = new Flight();
+            final Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                final CompletableFuture<FcrepoResponse> own = flight.join();
+                try {
+                    resolve(key, flight, delegate.execute(url, request), null);
+                } catch (final IOException | FcrepoOperationFailedException | RuntimeException ex) {
+                    resolve(key, flight, null, ex);
+                }
+                return await(own);
+            }
+            final CompletableFuture<FcrepoResponse> joined = existing.join();
+            if (joined != null) {
+                coalescer.recordCoalesced();
+                return await(joined);
+            }
+            // the response arrived in the meantime, and the flight is no longer listed
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        if (!isCoalescable(request)) {
+            return delegate.executeAsync(url, request);
+        }
+        coalescer.recordRequest();
+        final String key = keyOf(url, request);
+        while (true) {
+            final Flight flight = new Flight();
+            final Flight existing = flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                final CompletableFuture<FcrepoResponse> own = flight.join();
+                final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+                flight.setExchange(exchange);
+                exchange.whenComplete((response, ex) -> resolve(key, flight, response,
+                        ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex));
+                return own;
+            }
+            final CompletableFuture<FcrepoResponse> joined = existing.join();
+            if (joined != null) {
+                coalescer.recordCoalesced();
+                return joined;
+            }
+        }
+    }
+
+    /**
+     * Hand the outcome of an exchange to the requests sharing it
+     */
+    private void resolve(final String key, final Flight flight, final FcrepoResponse response, final Throwable ex) {
+        flights.remove(key, flight);
+        final List<CompletableFuture<FcrepoResponse>> participants = flight.resolve();
+        if (ex != null) {
+            participants.forEach(participant -> participant.completeExceptionally(ex));
+            return;
+        }
+        if (participants.size() == 1 && participants.get(0).complete(response)) {
+            return;
+        }
+        if (participants.size() <= 1) {
+            close(response);
+            return;
+        }
+
+        final SharedBody body;
+        try {
+            body = SharedBody.read(response, coalescer);
+        } catch (final IOException failure) {
+            participants.forEach(participant -> participant.completeExceptionally(failure));
+            return;
+        }
+        LOGGER.debug("Sharing response of {} between {} requests", response.getUrl(), participants.size());
+        for (final CompletableFuture<FcrepoResponse> participant : participants) {
+            final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            if (response.getHeaders() != null) {
+                response.getHeaders().forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+            }
+            final InputStream stream;
+            try {
+                stream = body == null ? null : body.open();
+            } catch (final IOException failure) {
+                participant.completeExceptionally(failure);
+                continue;
+            }
+            final FcrepoResponse copy = new FcrepoResponse(response.getUrl(), response.getStatusCode(), headers,
+                    stream);
+            copy.setStatusText(response.getStatusText());
+            copy.setFromCache(response.isFromCache());
+            copy.setAge(response.getAge());
+            if (!participant.complete(copy)) {
+                close(copy);
+            }
+        }
+        if (body != null) {
+            body.release();
+        }
+    }
+
+    /**
+     * Wait for the response of a request made on the calling thread
+     */
+    private static FcrepoResponse await(final CompletableFuture<FcrepoResponse> future)
+            throws IOException, FcrepoOperationFailedException {
+        try {
+            return future.get();
+        } catch (final InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interrupted = new InterruptedIOException("Interrupted waiting for response");
+            interrupted.initCause(ex);
+            throw interrupted;
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof FcrepoOperationFailedException) {
+                throw (FcrepoOperationFailedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static boolean isCoalescable(final HttpRequestBase request) {
+        final String method = request.getMethod();
+        return "GET".equals(method) || "HEAD".equals(method);
+    }
+
+    private static String keyOf(final URI url, final HttpRequestBase request) {
+        final StringBuilder key = new StringBuilder(request.getMethod()).append(' ').append(url);
+        final Header[] headers = request.getAllHeaders();
+        Arrays.sort(headers, Comparator.comparing((Header header) -> header.getName().toLowerCase(Locale.ROOT))
+                .thenComparing(Header::getValue));
+        for (final Header header : headers) {
+            key.append('\n').append(header.getName().toLowerCase(Locale.ROOT)).append(':').append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    private static void close(final FcrepoResponse response) {
+        try {
+            response.close();
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to close response to {}", response.getUrl(), ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * An exchange in flight, with the requests waiting for its response
+     */
+    private static class Flight {
+
+        private final List<CompletableFuture<FcrepoResponse>> participants = new ArrayList<>();
+
+        private boolean resolved;
+
+        private CompletableFuture<FcrepoResponse> exchange;
+
+        /**
+         * @return the future of a new request sharing the exchange, or null if its response already arrived
+         */
+        synchronized CompletableFuture<FcrepoResponse> join() {
+            if (resolved) {
+                return null;
+            }
+            final CompletableFuture<FcrepoResponse> participant = new CompletableFuture<>();
+            participants.add(participant);
+            participant.whenComplete((response, ex) -> {
+                if (participant.isCancelled()) {
+                    leave(participant);
+                }
+            });
+            return participant;
+        }
+
+        void setExchange(final CompletableFuture<FcrepoResponse> exchange) {
+            final boolean abandoned;
+            synchronized (this) {
+                this.exchange = exchange;
+                abandoned = !resolved && participants.isEmpty();
+            }
+            if (abandoned) {
+                exchange.cancel(true);
+            }
+        }
+
+        synchronized List<CompletableFuture<FcrepoResponse>> resolve() {
+            resolved = true;
+            return new ArrayList<>(participants);
+        }
+
+        private void leave(final CompletableFuture<FcrepoResponse> participant) {
+            CompletableFuture<FcrepoResponse> abandoned = null;
+            synchronized (this) {
+                participants.remove(participant);
+                if (!resolved && participants.isEmpty()) {
+                    abandoned = exchange;
+                }
+            }
+            if (abandoned != null) {
+                abandoned.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Response body read once and shared between requests, held in memory or in a temporary file, which is deleted
+     * once every stream over it is closed
+     */
+    private static class SharedBody {
+
+        private final byte[] bytes;
+
+        private final Path file;
+
+        // streams open over the body, plus one for the transport handing them out
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private SharedBody(final byte[] bytes, final Path file) {
+            this.bytes = bytes;
+            this.file = file;
+        }
+
+        /**
+         * @return the body of the response, or null if it has none
+         */
+        static SharedBody read(final FcrepoResponse response, final RequestCoalescer coalescer) throws IOException {
+            try (final InputStream in = response.getBody()) {
+                if (in == null) {
+                    return null;
+                }
+                final long threshold = coalescer.getMemoryThreshold();
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                final byte[] chunk = new byte[8192];
+                int n;
+                while ((n = in.read(chunk)) > 0) {
+                    if (buffer.size() + n > threshold) {
+                        return new SharedBody(null, spill(buffer, chunk, n, in, coalescer.getSpillDirectory()));
+                    }
+                    buffer.write(chunk, 0, n);
+                }
+                return new SharedBody(buffer.toByteArray(), null);
+            } finally {
+                close(response);
+            }
+        }
+
+        private static Path spill(final ByteArrayOutputStream buffer, final byte[] chunk, final int n,
+                final InputStream rest, final Path directory) throws IOException {
+            final Path file = Files.createTempFile(directory, "fcrepo-coalesced", ".tmp");
+            try (final OutputStream out = Files.newOutputStream(file)) {
+                buffer.writeTo(out);
+                out.write(chunk, 0, n);
+                rest.transferTo(out);
+            } catch (final IOException ex) {
+                Files.deleteIfExists(file);
+                throw ex;
+            }
+            return file;
+        }
+
+        InputStream open() throws IOException {
+            references.incrementAndGet();
+            final InputStream in;
+            try {
+                in = bytes != null ? new ByteArrayInputStream(bytes) : Files.newInputStream(file);
+            } catch (final IOException ex) {
+                release();
+                throw ex;
+            }
+            final AtomicBoolean closed = new AtomicBoolean();
+            return new FilterInputStream(in) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (closed.compareAndSet(false, true)) {
+                            release();
+                        }
+                    }
+                }
+            };
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0 && file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (final IOException ex) {
+                    LOGGER.warn("Unable to delete shared response body {}", file, ex);
+                }
+            }
+        }
+    }
+}
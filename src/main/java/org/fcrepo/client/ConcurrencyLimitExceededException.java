@@ -0,0 +1,29 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.net.URI;
+
+/**
+ * Signals that a request was rejected by the client's {@link ConcurrencyLimiter} without being sent, because the
+ * limit of in-flight requests was reached and the request could not be queued or waited too long in the queue.
+ *
+ * @author agent
+ */
+public class ConcurrencyLimitExceededException extends FcrepoOperationFailedException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create a ConcurrencyLimitExceededException
+     *
+     * @param url the requested url
+     * @param statusText the reason the request was rejected
+     */
+    public ConcurrencyLimitExceededException(final URI url, final String statusText) {
+        super(url, -1, statusText);
+    }
+}
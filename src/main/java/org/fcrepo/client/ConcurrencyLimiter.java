@@ -0,0 +1,236 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive limit on the number of requests in flight to the repository, adjusted with AIMD (additive increase,
+ * multiplicative decrease). The limit grows by one for every limit's worth of successful requests while it is
+ * fully used, and is cut by the backoff ratio whenever a request times out, fails with a 5xx status or takes
+ * longer than the latency threshold.
+ * <p>
+ * Requests over the limit wait in a bounded queue; with a queue depth of zero they are rejected immediately.
+ * The current limit, the number of requests in flight and the queue depth can be read at any time for metrics.
+ * </p>
+ *
+ * @author agent
+ */
+public class ConcurrencyLimiter {
+
+    private int minLimit = 1;
+
+    private int maxLimit = 200;
+
+    private double backoffRatio = 0.9;
+
+    private long latencyThreshold = 5000;
+
+    private int maxQueueDepth = 100;
+
+    private long queueTimeout = 30000;
+
+    private double limit = 20;
+
+    private int inFlight;
+
+    private final Deque<CompletableFuture<Void>> queue = new ArrayDeque<>();
+
+    private long rejected;
+
+    /**
+     * Set the initial limit of requests in flight
+     *
+     * @param initialLimit the initial limit
+     * @return this limiter
+     */
+    public synchronized ConcurrencyLimiter initialLimit(final int initialLimit) {
+        this.limit = clamp(initialLimit);
+        return this;
+    }
+
+    /**
+     * Set the bounds of the limit
+     *
+     * @param minLimit the lowest the limit will be reduced to
+     * @param maxLimit the highest the limit will be raised to
+     * @return this limiter
+     */
+    public synchronized ConcurrencyLimiter limitBounds(final int minLimit, final int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limits must be positive with the max limit at least the min limit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = clamp(limit);
+        return this;
+    }
+
+    /**
+     * Set the ratio by which the limit is multiplied when the repository shows signs of overload
+     *
+     * @param backoffRatio ratio between 0 and 1
+     * @return this limiter
+     */
+    public synchronized ConcurrencyLimiter backoffRatio(final double backoffRatio) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * Set the latency above which a request counts as a sign of overload
+     *
+     * @param latencyThreshold latency threshold in milliseconds
+     * @return this limiter
+     */
+    public synchronized ConcurrencyLimiter latencyThreshold(final long latencyThreshold) {
+        this.latencyThreshold = latencyThreshold;
+        return this;
+    }
+
+    /**
+     * Set how many requests may wait for the limit, and for how long. Requests are rejected with a
+     * {@link ConcurrencyLimitExceededException} when the queue is full or they waited for the whole timeout.
+     *
+     * @param maxQueueDepth maximum number of waiting requests, zero to fail fast
+     * @param queueTimeout maximum time to wait in milliseconds
+     * @return this limiter
+     */
+    public synchronized ConcurrencyLimiter queue(final int maxQueueDepth, final long queueTimeout) {
+        this.maxQueueDepth = maxQueueDepth;
+        this.queueTimeout = queueTimeout;
+        return this;
+    }
+
+    /**
+     * @return the current limit of requests in flight
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return the number of requests waiting for the limit
+     */
+    public synchronized int getQueueDepth() {
+        queue.removeIf(CompletableFuture::isDone);
+        return queue.size();
+    }
+
+    /**
+     * @return the total number of requests rejected by this limiter
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the maximum time a request waits in the queue, in milliseconds
+     */
+    synchronized long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * Acquire a permit for a request. The returned future completes once the request may be sent, or exceptionally
+     * with a {@link java.util.concurrent.TimeoutException} if it waited for the whole queue timeout. Null is
+     * returned if the request is rejected straight away because the queue is full.
+     *
+     * @return a future completing with the permit, or null if rejected
+     */
+    CompletableFuture<Void> acquire() {
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight < (int) limit && queue.isEmpty()) {
+                inFlight++;
+                permit.complete(null);
+                return permit;
+            }
+            queue.removeIf(CompletableFuture::isDone);
+            if (queue.size() >= maxQueueDepth) {
+                rejected++;
+                return null;
+            }
+            queue.add(permit);
+        }
+        permit.orTimeout(queueTimeout, TimeUnit.MILLISECONDS).whenComplete((v, ex) -> {
+            if (ex != null) {
+                synchronized (this) {
+                    rejected++;
+                }
+            }
+        });
+        return permit;
+    }
+
+    /**
+     * Release a permit, adjusting the limit from the outcome of the request
+     *
+     * @param latency time the request took, in nanoseconds
+     * @param overloaded true if the request failed in a way that indicates overload, such as a 5xx or a timeout
+     */
+    void release(final long latency, final boolean overloaded) {
+        synchronized (this) {
+            final boolean slow = TimeUnit.NANOSECONDS.toMillis(latency) > latencyThreshold;
+            if (overloaded || slow) {
+                limit = clamp(limit * backoffRatio);
+            } else if (inFlight >= (int) limit) {
+                limit = clamp(limit + 1 / limit);
+            }
+        }
+        releasePermit();
+    }
+
+    /**
+     * Give back a permit granted to a request which was never sent, leaving the limit as it is
+     */
+    void releaseUnused() {
+        releasePermit();
+    }
+
+    /**
+     * Release a permit, handing it over to waiting requests while the limit allows
+     */
+    private void releasePermit() {
+        final List<CompletableFuture<Void>> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                final CompletableFuture<Void> next = queue.poll();
+                if (!next.isDone()) {
+                    inFlight++;
+                    granted.add(next);
+                }
+            }
+        }
+        // Waiters are resumed outside of the lock, since they go on to send their request on this thread
+        for (final CompletableFuture<Void> next : granted) {
+            if (!next.complete(null)) {
+                // lost a race with the queue timeout
+                releasePermit();
+            }
+        }
+    }
+
+    private double clamp(final double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+
+/**
+ * {@link FcrepoTransport} decorator holding requests to the adaptive limit of a {@link ConcurrencyLimiter}. A
+ * request keeps its permit until the body of its response is read to its end or closed, as it keeps a slot of the
+ * {@link RequestScheduler}, so that large downloads count against the limit.
+ *
+ * @author agent
+ */
+public class ConcurrencyLimitingTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(ConcurrencyLimitingTransport.class);
+
+    private final FcrepoTransport delegate;
+
+    private final ConcurrencyLimiter limiter;
+
+    /**
+     * Create a concurrency limiting transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param limiter the limiter
+     */
+    public ConcurrencyLimitingTransport(final FcrepoTransport delegate, final ConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        final CompletableFuture<Void> permit = limiter.acquire();
+        if (permit == null) {
+            throw rejected(url, "queue is full");
+        }
+        try {
+            permit.get();
+        } catch (final InterruptedException ex) {
+            if (!permit.cancel(false)) {
+                // the permit was granted while the interrupt arrived
+                limiter.releaseUnused();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+        } catch (final ExecutionException ex) {
+            throw rejected(url, "timed out in queue");
+        }
+
+        final long start = System.nanoTime();
+        boolean overloaded = true;
+        boolean held = false;
+        try {
+            final FcrepoResponse response = delegate.execute(url, request);
+            overloaded = isOverloaded(response);
+            if (response.getBody() != null) {
+                // the latency to the headers adjusts the limit, the permit is held as long as the connection is
+                final long latency = System.nanoTime() - start;
+                final boolean failed = overloaded;
+                response.setBody(new ReleasingInputStream(response.getBody(),
+                        () -> limiter.release(latency, failed)));
+                held = true;
+            }
+            return response;
+        } catch (final IOException ex) {
+            overloaded = isOverloaded(ex);
+            throw ex;
+        } finally {
+            if (!held) {
+                limiter.release(System.nanoTime() - start, overloaded);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final CompletableFuture<Void> permit = limiter.acquire();
+        if (permit == null) {
+            return CompletableFuture.failedFuture(rejected(url, "queue is full"));
+        }
+
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final AtomicReference<CompletableFuture<FcrepoResponse>> exchange = new AtomicReference<>();
+        permit.whenComplete((v, waitFailure) -> {
+            if (waitFailure != null) {
+                result.completeExceptionally(waitFailure instanceof TimeoutException ?
+                        rejected(url, "timed out in queue") : waitFailure);
+                return;
+            }
+            if (result.isCancelled()) {
+                // the permit was granted after the caller gave up
+                limiter.releaseUnused();
+                return;
+            }
+            final long start = System.nanoTime();
+            final CompletableFuture<FcrepoResponse> sent = delegate.executeAsync(url, request);
+            exchange.set(sent);
+            // the body is buffered by the time the exchange completes, which ends the use of the permit
+            sent.whenComplete((response, ex) -> {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ?
+                        ex.getCause() : ex;
+                limiter.release(System.nanoTime() - start, cause != null ? isOverloaded(cause) :
+                        isOverloaded(response));
+                if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else {
+                    result.complete(response);
+                }
+            });
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+
+        // Cancelling the returned future gives up the place in the queue or aborts the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                permit.cancel(false);
+                final CompletableFuture<FcrepoResponse> sent = exchange.get();
+                if (sent != null) {
+                    sent.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    private ConcurrencyLimitExceededException rejected(final URI url, final String reason) {
+        LOGGER.debug("Rejecting request to {}: {}", url, reason);
+        return new ConcurrencyLimitExceededException(url, "Concurrency limit of " + limiter.getLimit() +
+                " reached, " + reason + " (waited up to " + MILLISECONDS.toSeconds(limiter.getQueueTimeout()) + "s)");
+    }
+
+    private static boolean isOverloaded(final FcrepoResponse response) {
+        return response.getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    private static boolean isOverloaded(final Throwable ex) {
+        return ex instanceof SocketTimeoutException || ex instanceof ConnectTimeoutException ||
+                ex instanceof java.net.http.HttpTimeoutException;
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -8,6 +8,7 @@ package org.fcrepo.client;
 import java.net.URI;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 
 /**
  * Builds a request to delete a resource
@@ -36,6 +37,16 @@ public class DeleteBuilder extends RequestBuilder {
         return (DeleteBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public DeleteBuilder priority(final Priority priority) {
+        return (DeleteBuilder) super.priority(priority);
+    }
+
+    @Override
+    public DeleteBuilder caller(final String caller) {
+        return (DeleteBuilder) super.caller(caller);
+    }
+
     @Override
     public DeleteBuilder addTransaction(final URI transaction) {
         return (DeleteBuilder) super.addTransaction(transaction);
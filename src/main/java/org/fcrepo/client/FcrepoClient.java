@@ -9,22 +9,25 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.fcrepo.client.Bulkhead.TrafficClass;
+import org.fcrepo.client.RequestScheduler.Priority;
 import org.slf4j.Logger;
 
 /**
@@ -48,11 +51,15 @@ import org.slf4j.Logger;
  */
 public class FcrepoClient implements Closeable {
 
-    private CloseableHttpClient httpclient;
-    private FcrepoHttpClientBuilder httpClientBuilder;
+    // replaced by decorators while requests may be in flight on other threads
+    private volatile FcrepoTransport transport;
 
     private Boolean throwExceptionOnFailure = true;
 
+    private boolean closeTransport = true;
+
+    private RequestScheduler scheduler;
+
     public static final String TRANSACTION_ENDPOINT = "fcr:tx";
 
     private static final Logger LOGGER = getLogger(FcrepoClient.class);
@@ -86,9 +93,7 @@ public class FcrepoClient implements Closeable {
      * @param throwExceptionOnFailure whether to throw an exception on any non-2xx or 3xx HTTP responses
      */
     protected FcrepoClient(final FcrepoHttpClientBuilder httpClientBuilder, final Boolean throwExceptionOnFailure) {
-        this.throwExceptionOnFailure = throwExceptionOnFailure;
-        this.httpclient = httpClientBuilder.build();
-        this.httpClientBuilder = httpClientBuilder;
+        this(new ApacheHttpClientTransport(httpClientBuilder.build(), httpClientBuilder), throwExceptionOnFailure);
     }
 
     /**
@@ -99,8 +104,51 @@ public class FcrepoClient implements Closeable {
      * @param throwExceptionOnFailure whether to throw an exception on any non-2xx or 3xx HTTP responses
      */
     protected FcrepoClient(final CloseableHttpClient httpClient, final Boolean throwExceptionOnFailure) {
+        this(new ApacheHttpClientTransport(httpClient, null), throwExceptionOnFailure);
+    }
+
+    /**
+     * Create a FcrepoClient which sends its requests through the given {@link FcrepoTransport}.
+     * FcrepoClient will close the transport when {@link #close()} is called.
+     *
+     * @param transport the transport used to connect to the repository
+     * @param throwExceptionOnFailure whether to throw an exception on any non-2xx or 3xx HTTP responses
+     */
+    protected FcrepoClient(final FcrepoTransport transport, final Boolean throwExceptionOnFailure) {
         this.throwExceptionOnFailure = throwExceptionOnFailure;
-        this.httpclient = httpClient;
+        this.transport = transport;
+    }
+
+    /**
+     * Create a FcrepoClient which shares the transport, and therefore the connection pool, of the given parent
+     * client. The parent remains the owner of the transport, so calling {@link #close()} on this client does not
+     * close it.
+     *
+     * @param parent the client whose transport is shared
+     */
+    protected FcrepoClient(final FcrepoClient parent) {
+        this.throwExceptionOnFailure = parent.throwExceptionOnFailure;
+        this.transport = parent.transport;
+        this.scheduler = parent.scheduler;
+        this.closeTransport = false;
+    }
+
+    /**
+     * @return the transport making the requests of this client
+     */
+    FcrepoTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Replace the transport of this client, such as with a decorator of its current transport. The owner of the
+     * transport, which closes it, is unchanged. Requests already in flight finish on the transport they started
+     * with; callers decorating the current transport serialize their replacements, so that none is lost.
+     *
+     * @param transport the transport
+     */
+    void setTransport(final FcrepoTransport transport) {
+        this.transport = transport;
     }
 
     /**
@@ -185,7 +233,26 @@ public class FcrepoClient implements Closeable {
         }
     }
 
-    private URI getTxEndpoint(final URI uri) {
+    /**
+     * Start a transaction without blocking the calling thread
+     *
+     * @param uri the base rest endpoint or the transaction endpoint
+     * @return a future which completes with the TransactionalFcrepoClient, or exceptionally with a
+     *         {@link FcrepoOperationFailedException} if the transaction could not be started
+     * @throws IllegalArgumentException if the uri is not the Fedora transaction endpoint
+     */
+    public CompletableFuture<TransactionalFcrepoClient> startTransactionClientAsync(final URI uri) {
+        final var target = getTxEndpoint(uri);
+        return post(target).performAsync().thenApply(response -> {
+            if (response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES || response.getTransactionUri() == null) {
+                throw new CompletionException(new FcrepoOperationFailedException(target, response.getStatusCode(),
+                        "Unable to start a transaction: " + response.getStatusText()));
+            }
+            return transactionalClient(response);
+        });
+    }
+
+    URI getTxEndpoint(final URI uri) {
         final var isRoot = Pattern.compile("rest/?$").asPredicate();
         final var isTx = Pattern.compile("rest/" + TRANSACTION_ENDPOINT + "/?$").asPredicate();
         final var base = uri.toString();
@@ -201,14 +268,63 @@ public class FcrepoClient implements Closeable {
     }
 
     /**
-     * Create a new {@link TransactionalFcrepoClient} which adds the transaction {@link URI} to each request
+     * Create a new {@link TransactionalFcrepoClient} which adds the transaction {@link URI} to each request. The
+     * transactional client shares the http client of this client.
      *
      * @param response the FcrepoResponse with an Atomic-ID Header
      * @return a TransactionFcrepoClient
      * @throws IllegalArgumentException if the FcrepoResponse does not contain a transaction location
      */
     public TransactionalFcrepoClient transactionalClient(final FcrepoResponse response) {
-        return new TransactionalFcrepoClient(response.getTransactionUri(), httpClientBuilder, throwExceptionOnFailure);
+        final TransactionalFcrepoClient client = new TransactionalFcrepoClient(response.getTransactionUri(), this);
+        client.setExpires(TransactionKeepAlive.expiresOf(response));
+        return client;
+    }
+
+    /**
+     * Run the body within the scope of a new transaction, forking its requests on a pool of
+     * {@value TransactionScope#DEFAULT_PARALLELISM} threads of its own. The transaction is committed once the body and
+     * every task it forked have succeeded, and rolled back otherwise.
+     *
+     * @param uri the base rest endpoint or the transaction endpoint
+     * @param body the body forking the requests of the transaction
+     * @param <T> the type of the value of the body
+     * @return the value returned by the body, once the transaction is committed
+     * @throws IOException if the body, a task, or the commit failed with one
+     * @throws IllegalArgumentException if the uri is not the Fedora transaction endpoint
+     * @throws FcrepoOperationFailedException if the transaction cannot be started, or the body, a task, or the
+     *         commit failed with one
+     */
+    public <T> T inTransaction(final URI uri, final TransactionScope.Body<T> body)
+        throws IOException, FcrepoOperationFailedException {
+        final ExecutorService executor = TransactionScope.defaultExecutor();
+        try {
+            return inTransaction(uri, executor, body);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Run the body within the scope of a new transaction, forking its requests on the given executor. The
+     * transaction is committed once the body and every task it forked have succeeded. Otherwise the remaining tasks
+     * are cancelled and, once those already running have settled, the transaction is rolled back.
+     *
+     * @param uri the base rest endpoint or the transaction endpoint
+     * @param executor the executor running the forked tasks
+     * @param body the body forking the requests of the transaction
+     * @param <T> the type of the value of the body
+     * @return the value returned by the body, once the transaction is committed
+     * @throws IOException if the body, a task, or the commit failed with one
+     * @throws IllegalArgumentException if the uri is not the Fedora transaction endpoint
+     * @throws FcrepoOperationFailedException if the transaction cannot be started, or the body, a task, or the
+     *         commit failed with one
+     */
+    public <T> T inTransaction(final URI uri, final Executor executor, final TransactionScope.Body<T> body)
+        throws IOException, FcrepoOperationFailedException {
+        try (final TransactionalFcrepoClient tx = startTransactionClient(uri)) {
+            return new TransactionScope(tx, executor).run(body);
+        }
     }
 
     /**
@@ -251,9 +367,17 @@ public class FcrepoClient implements Closeable {
         return new OptionsBuilder(url, this);
     }
 
+    /**
+     * Close the transport of this FcrepoClient. Clients sharing the transport of another client, such as a
+     * {@link TransactionalFcrepoClient}, leave the shared transport open.
+     *
+     * @throws IOException if the transport could not be closed
+     */
     @Override
     public void close() throws IOException {
-        this.httpclient.close();
+        if (closeTransport) {
+            this.transport.close();
+        }
     }
 
     /**
@@ -266,49 +390,196 @@ public class FcrepoClient implements Closeable {
      */
     public FcrepoResponse executeRequest(final URI url, final HttpRequestBase request)
             throws FcrepoOperationFailedException {
+        return executeRequest(url, request, null, null);
+    }
+
+    /**
+     * Execute a HTTP request, waiting for a slot of the request scheduler of this client if it has one. The slot is
+     * held for as long as the connection is: until the body of the response is read to its end or the response is
+     * closed, so that large downloads count against the limit of the scheduler.
+     *
+     * @param url URI the request is made to
+     * @param request the request
+     * @param priority the priority of the request, null for the default priority
+     * @param caller the key of the caller sharing the scheduler fairly, null for the default caller
+     * @return the repository response
+     * @throws FcrepoOperationFailedException when the underlying HTTP request results in an error
+     */
+    FcrepoResponse executeRequest(final URI url, final HttpRequestBase request, final Priority priority,
+            final String caller) throws FcrepoOperationFailedException {
         LOGGER.debug("Fcrepo {} request to resource {}", request.getMethod(), url);
-        final CloseableHttpResponse response = executeRequest(request);
+        if (scheduler == null) {
+            return fcrepoGenericResponse(executeTransport(url, request), throwExceptionOnFailure);
+        }
 
-        return fcrepoGenericResponse(url, response, throwExceptionOnFailure);
+        final CompletableFuture<Void> permit = scheduler.acquire(priority, caller);
+        try {
+            permit.get();
+        } catch (final InterruptedException ex) {
+            if (!permit.cancel(true)) {
+                scheduler.release();
+            }
+            Thread.currentThread().interrupt();
+            throw new FcrepoOperationFailedException(request.getURI(), -1,
+                    "Interrupted while waiting for a request slot");
+        } catch (final ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+        final FcrepoResponse response;
+        try {
+            response = executeTransport(url, request);
+        } catch (final FcrepoOperationFailedException | RuntimeException | Error ex) {
+            scheduler.release();
+            throw ex;
+        }
+        if (response.getBody() == null) {
+            scheduler.release();
+        } else {
+            response.setBody(new ReleasingInputStream(response.getBody(), scheduler::release));
+        }
+        return fcrepoGenericResponse(response, throwExceptionOnFailure);
     }
 
     /**
-     * Execute the HTTP request
+     * Execute a HTTP request without blocking the calling thread. The returned future completes with the repository
+     * response, or exceptionally with a {@link FcrepoOperationFailedException} under the same conditions in which
+     * {@link #executeRequest(URI, HttpRequestBase)} would throw one. The response entity is buffered in memory before
+     * the future completes, so the underlying connection has already been released at that point.
+     *
+     * @param url URI the request is made to
+     * @param request the request
+     * @return a future for the repository response
      */
-    private CloseableHttpResponse executeRequest(final HttpRequestBase request)
+    public CompletableFuture<FcrepoResponse> executeRequestAsync(final URI url, final HttpRequestBase request) {
+        return executeRequestAsync(url, request, null, null);
+    }
+
+    /**
+     * Execute a HTTP request without blocking the calling thread, once the request scheduler of this client, if it
+     * has one, grants a slot. Cancelling the returned future before then gives up the place in the queue.
+     *
+     * @param url URI the request is made to
+     * @param request the request
+     * @param priority the priority of the request, null for the default priority
+     * @param caller the key of the caller sharing the scheduler fairly, null for the default caller
+     * @return a future for the repository response
+     */
+    CompletableFuture<FcrepoResponse> executeRequestAsync(final URI url, final HttpRequestBase request,
+            final Priority priority, final String caller) {
+        LOGGER.debug("Fcrepo async {} request to resource {}", request.getMethod(), url);
+        if (scheduler == null) {
+            return send(url, request);
+        }
+
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final CompletableFuture<Void> permit = scheduler.acquire(priority, caller);
+        final AtomicReference<CompletableFuture<FcrepoResponse>> exchange = new AtomicReference<>();
+        permit.thenRun(() -> {
+            final CompletableFuture<FcrepoResponse> sent = send(url, request);
+            exchange.set(sent);
+            sent.whenComplete((response, ex) -> {
+                scheduler.release();
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else {
+                    result.complete(response);
+                }
+            });
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+
+        // Cancelling the returned future gives up the place in the queue or aborts the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                permit.cancel(true);
+                final CompletableFuture<FcrepoResponse> sent = exchange.get();
+                if (sent != null) {
+                    sent.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send a request with the transport, mapping its outcome as for a synchronous request
+     */
+    private CompletableFuture<FcrepoResponse> send(final URI url, final HttpRequestBase request) {
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final CompletableFuture<FcrepoResponse> exchange = transport.executeAsync(url, request);
+        exchange.whenComplete((response, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(toOperationFailure(request, ex));
+            } else {
+                try {
+                    result.complete(fcrepoGenericResponse(response, throwExceptionOnFailure));
+                } catch (final FcrepoOperationFailedException failure) {
+                    result.completeExceptionally(failure);
+                }
+            }
+        });
+
+        // Cancelling the returned future aborts the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Execute the HTTP request with the transport
+     */
+    private FcrepoResponse executeTransport(final URI url, final HttpRequestBase request)
             throws FcrepoOperationFailedException {
         try {
-            return httpclient.execute(request);
+            return transport.execute(url, request);
         } catch (final IOException ex) {
             LOGGER.debug("HTTP Operation failed: ", ex);
             throw new FcrepoOperationFailedException(request.getURI(), -1, ex.getMessage());
         }
     }
 
+    /**
+     * Map the failure of an asynchronous exchange to a FcrepoOperationFailedException
+     */
+    private static FcrepoOperationFailedException toOperationFailure(final HttpRequestBase request,
+            final Throwable ex) {
+        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof FcrepoOperationFailedException) {
+            return (FcrepoOperationFailedException) cause;
+        }
+        LOGGER.debug("HTTP Operation failed: ", cause);
+        return new FcrepoOperationFailedException(request.getURI(), -1, cause.getMessage());
+    }
+
     /**
      * Handle the general case with responses.
      */
-    private FcrepoResponse fcrepoGenericResponse(final URI url, final CloseableHttpResponse response,
+    private FcrepoResponse fcrepoGenericResponse(final FcrepoResponse response,
             final Boolean throwExceptionOnFailure) throws FcrepoOperationFailedException {
-        final int status = response.getStatusLine().getStatusCode();
-        final Map<String, List<String>> headers = getHeaders(response);
+        final int status = response.getStatusCode();
 
         if ((status >= HttpStatus.SC_OK && status < HttpStatus.SC_BAD_REQUEST) || !throwExceptionOnFailure) {
-            return new FcrepoResponse(url, status, headers, getEntityContent(response));
+            return response;
         } else {
             free(response);
-            throw new FcrepoOperationFailedException(url, status,
-                    response.getStatusLine().getReasonPhrase());
+            final String statusText = response.getStatusText() != null ? response.getStatusText() :
+                    EnglishReasonPhraseCatalog.INSTANCE.getReason(status, null);
+            throw new FcrepoOperationFailedException(response.getUrl(), status, statusText);
         }
     }
 
     /**
-     * Frees resources associated with the HTTP response. Specifically, closing the {@code response} frees the
-     * connection of the {@link org.apache.http.conn.HttpClientConnectionManager} underlying this {@link #httpclient}.
+     * Frees resources associated with the response. Specifically, closing the body of the {@code response} frees the
+     * connection held by the transport.
      *
      * @param response the response object to close
      */
-    private void free(final CloseableHttpResponse response) {
+    private void free(final FcrepoResponse response) {
         // Free resources associated with the response.
         try {
             response.close();
@@ -317,45 +588,6 @@ public class FcrepoClient implements Closeable {
         }
     }
 
-    /**
-     * Extract the response body as an input stream
-     */
-    private static InputStream getEntityContent(final HttpResponse response) {
-        try {
-            final HttpEntity entity = response.getEntity();
-            if (entity == null) {
-                return null;
-            } else {
-                return entity.getContent();
-            }
-        } catch (final IOException ex) {
-            LOGGER.debug("Unable to extract HttpEntity response into an InputStream: ", ex);
-            return null;
-        }
-    }
-
-    /**
-     * Retrieve all header values
-     *
-     * @param response response from request
-     * @return Map of all values for all response headers
-     */
-    private static Map<String, List<String>> getHeaders(final HttpResponse response) {
-        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-
-        for (final Header header : response.getAllHeaders()) {
-            final List<String> values;
-            if (headers.containsKey(header.getName())) {
-                values = headers.get(header.getName());
-            } else {
-                values = new ArrayList<>();
-                headers.put(header.getName(), values);
-            }
-            values.add(header.getValue());
-        }
-        return headers;
-    }
-
     /**
      * Builds an FcrepoClient
      *
@@ -371,6 +603,36 @@ public class FcrepoClient implements Closeable {
 
         private boolean throwExceptionOnFailure;
 
+        private FcrepoTransport transport;
+
+        private boolean http2;
+
+        private RetryPolicy retryPolicy;
+
+        private ConcurrencyLimiter concurrencyLimiter;
+
+        private LoadBalancer loadBalancer;
+
+        private CircuitBreaker circuitBreaker;
+
+        private RateLimiter rateLimiter;
+
+        private Bulkhead bulkhead;
+
+        private RequestScheduler scheduler;
+
+        private ResponseCache responseCache;
+
+        private BinaryCache binaryCache;
+
+        private MetadataCache metadataCache;
+
+        private NegativeCache negativeCache;
+
+        private RequestCoalescer requestCoalescer;
+
+        private final FcrepoHttpClientBuilder httpClientBuilder = new FcrepoHttpClientBuilder(null, null, null);
+
         /**
          * Add basic authentication credentials to this client
          *
@@ -406,14 +668,349 @@ public class FcrepoClient implements Closeable {
             return this;
         }
 
+        /**
+         * Set the maximum number of pooled connections across all routes
+         *
+         * @param maxTotalConnections maximum number of pooled connections
+         * @return this builder
+         */
+        public FcrepoClientBuilder maxTotalConnections(final int maxTotalConnections) {
+            this.httpClientBuilder.maxTotalConnections(maxTotalConnections);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of pooled connections to a single route
+         *
+         * @param maxConnectionsPerRoute maximum number of pooled connections per route
+         * @return this builder
+         */
+        public FcrepoClientBuilder maxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+            this.httpClientBuilder.maxConnectionsPerRoute(maxConnectionsPerRoute);
+            return this;
+        }
+
+        /**
+         * Set the period of inactivity after which a pooled connection is validated before reuse
+         *
+         * @param validateAfterInactivity inactivity period in milliseconds
+         * @return this builder
+         */
+        public FcrepoClientBuilder validateAfterInactivity(final int validateAfterInactivity) {
+            this.httpClientBuilder.validateAfterInactivity(validateAfterInactivity);
+            return this;
+        }
+
+        /**
+         * Set the maximum lifetime of pooled connections
+         *
+         * @param timeToLive time to live for pooled connections
+         * @param unit the unit of the time to live
+         * @return this builder
+         */
+        public FcrepoClientBuilder connectionTimeToLive(final long timeToLive, final TimeUnit unit) {
+            this.httpClientBuilder.connectionTimeToLive(timeToLive, unit);
+            return this;
+        }
+
+        /**
+         * Set the connect timeout
+         *
+         * @param connectTimeout timeout in milliseconds
+         * @return this builder
+         */
+        public FcrepoClientBuilder connectTimeout(final int connectTimeout) {
+            this.httpClientBuilder.connectTimeout(connectTimeout);
+            return this;
+        }
+
+        /**
+         * Set the timeout for leasing a connection from the pool
+         *
+         * @param connectionRequestTimeout timeout in milliseconds
+         * @return this builder
+         */
+        public FcrepoClientBuilder connectionRequestTimeout(final int connectionRequestTimeout) {
+            this.httpClientBuilder.connectionRequestTimeout(connectionRequestTimeout);
+            return this;
+        }
+
+        /**
+         * Set the socket timeout
+         *
+         * @param socketTimeout timeout in milliseconds
+         * @return this builder
+         */
+        public FcrepoClientBuilder socketTimeout(final int socketTimeout) {
+            this.httpClientBuilder.socketTimeout(socketTimeout);
+            return this;
+        }
+
+        /**
+         * Enable or disable TCP_NODELAY on pooled connections
+         *
+         * @param tcpNoDelay true to disable Nagle's algorithm
+         * @return this builder
+         */
+        public FcrepoClientBuilder tcpNoDelay(final boolean tcpNoDelay) {
+            this.httpClientBuilder.tcpNoDelay(tcpNoDelay);
+            return this;
+        }
+
+        /**
+         * Set the socket send and receive buffer sizes of pooled connections
+         *
+         * @param sendBufferSize send buffer size in bytes
+         * @param receiveBufferSize receive buffer size in bytes
+         * @return this builder
+         */
+        public FcrepoClientBuilder socketBufferSizes(final int sendBufferSize, final int receiveBufferSize) {
+            this.httpClientBuilder.socketBufferSizes(sendBufferSize, receiveBufferSize);
+            return this;
+        }
+
+        /**
+         * Send requests over HTTP/2 using the JDK http client, instead of the default Apache http client. Concurrent
+         * requests to the same host are then multiplexed over a single connection.
+         *
+         * @return this builder
+         */
+        public FcrepoClientBuilder http2() {
+            this.http2 = true;
+            return this;
+        }
+
+        /**
+         * Send requests through a custom {@link FcrepoTransport}. The connection, timeout and credential settings of
+         * this builder do not apply to a custom transport.
+         *
+         * @param transport the transport used to connect to the repository
+         * @return this builder
+         */
+        public FcrepoClientBuilder transport(final FcrepoTransport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * Retry failed requests according to the given policy
+         *
+         * @param retryPolicy the retry policy
+         * @return this builder
+         */
+        public FcrepoClientBuilder retryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Hold requests to the adaptive limit of the given concurrency limiter. Each attempt of a retried request
+         * takes its own place within the limit.
+         *
+         * @param concurrencyLimiter the concurrency limiter
+         * @return this builder
+         */
+        public FcrepoClientBuilder concurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+            this.concurrencyLimiter = concurrencyLimiter;
+            return this;
+        }
+
+        /**
+         * Spread requests addressed to any of the load balancer's endpoints across its healthy nodes
+         *
+         * @param loadBalancer the load balancer
+         * @return this builder
+         */
+        public FcrepoClientBuilder loadBalancer(final LoadBalancer loadBalancer) {
+            this.loadBalancer = loadBalancer;
+            return this;
+        }
+
+        /**
+         * Fail fast on requests to hosts whose breaker in the given circuit breaker is open
+         *
+         * @param circuitBreaker the circuit breaker
+         * @return this builder
+         */
+        public FcrepoClientBuilder circuitBreaker(final CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /**
+         * Hold the requests and bytes exchanged with each host to the rates of the given rate limiter. The limits of
+         * the rate limiter may be changed while the client is in use.
+         *
+         * @param rateLimiter the rate limiter
+         * @return this builder
+         */
+        public FcrepoClientBuilder rateLimiter(final RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Isolate binary transfers, metadata requests and transaction control from each other. Unless the client
+         * uses HTTP/2 or a custom transport, each traffic class gets its own connection pool sized to its limit.
+         *
+         * @param bulkhead the bulkhead
+         * @return this builder
+         */
+        public FcrepoClientBuilder bulkhead(final Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+            return this;
+        }
+
+        /**
+         * Queue requests for the slots of the given scheduler by priority, sharing them fairly between callers. The
+         * priority and caller of a request are set on its request builder.
+         *
+         * @param scheduler the request scheduler
+         * @return this builder
+         */
+        public FcrepoClientBuilder scheduler(final RequestScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Serve GET requests from the given response cache, revalidating stale entries with the repository. Writes
+         * made through the client invalidate the cached responses of the resources they modify.
+         *
+         * @param responseCache the response cache
+         * @return this builder
+         */
+        public FcrepoClientBuilder responseCache(final ResponseCache responseCache) {
+            this.responseCache = responseCache;
+            return this;
+        }
+
+        /**
+         * Keep the content of binary resources in the given disk cache, downloading it again only when its ETag
+         * changed. Writes made through the client invalidate the cached content of the resources they modify.
+         *
+         * @param binaryCache the binary cache
+         * @return this builder
+         */
+        public FcrepoClientBuilder binaryCache(final BinaryCache binaryCache) {
+            this.binaryCache = binaryCache;
+            return this;
+        }
+
+        /**
+         * Answer HEAD requests from the given metadata cache, filled from the HEAD and GET responses of the client.
+         * Writes made through the client invalidate the metadata of the resources they modify.
+         *
+         * @param metadataCache the metadata cache
+         * @return this builder
+         */
+        public FcrepoClientBuilder metadataCache(final MetadataCache metadataCache) {
+            this.metadataCache = metadataCache;
+            return this;
+        }
+
+        /**
+         * Answer HEAD and GET requests for resources recently found missing or deleted from the given negative cache.
+         * PUT and POST requests made through the client invalidate the answers for the resources they may create.
+         *
+         * @param negativeCache the negative cache
+         * @return this builder
+         */
+        public FcrepoClientBuilder negativeCache(final NegativeCache negativeCache) {
+            this.negativeCache = negativeCache;
+            return this;
+        }
+
+        /**
+         * Let concurrent identical GET and HEAD requests share a single exchange with the repository.
+         *
+         * @param requestCoalescer the settings and statistics of coalescing
+         * @return this builder
+         */
+        public FcrepoClientBuilder requestCoalescer(final RequestCoalescer requestCoalescer) {
+            this.requestCoalescer = requestCoalescer;
+            return this;
+        }
+
         /**
          * Get the client
          *
          * @return the client constructed by this builder
          */
         public FcrepoClient build() {
-            final FcrepoHttpClientBuilder httpClient = new FcrepoHttpClientBuilder(authUser, authPassword, authHost);
-            return new FcrepoClient(httpClient, throwExceptionOnFailure);
+            final FcrepoClient client = new FcrepoClient(buildTransport(), throwExceptionOnFailure);
+            client.scheduler = scheduler;
+            return client;
+        }
+
+        /**
+         * Assemble the transport of the client, wrapping the connection to the repository with the configured
+         * request handling.
+         *
+         * @return the transport
+         */
+        private FcrepoTransport buildTransport() {
+            FcrepoTransport result = transport;
+            if (result == null) {
+                httpClientBuilder.credentials(authUser, authPassword, authHost);
+                if (bulkhead != null && !http2) {
+                    result = buildBulkheadTransport();
+                } else {
+                    result = http2 ? httpClientBuilder.buildHttp2Transport() :
+                            new ApacheHttpClientTransport(httpClientBuilder.build(), httpClientBuilder);
+                }
+            }
+            if (bulkhead != null && !(result instanceof BulkheadTransport)) {
+                result = new BulkheadTransport(result, bulkhead);
+            }
+            if (rateLimiter != null) {
+                result = new RateLimitingTransport(result, rateLimiter);
+            }
+            if (circuitBreaker != null) {
+                result = new CircuitBreakingTransport(result, circuitBreaker);
+            }
+            if (loadBalancer != null) {
+                result = new LoadBalancingTransport(result, loadBalancer);
+            }
+            if (concurrencyLimiter != null) {
+                result = new ConcurrencyLimitingTransport(result, concurrencyLimiter);
+            }
+            if (retryPolicy != null) {
+                result = new RetryingTransport(result, retryPolicy);
+            }
+            if (binaryCache != null) {
+                result = new BinaryCachingTransport(result, binaryCache);
+            }
+            if (responseCache != null) {
+                result = new CachingTransport(result, responseCache);
+            }
+            if (metadataCache != null) {
+                result = new MetadataCachingTransport(result, metadataCache);
+            }
+            if (negativeCache != null) {
+                result = new NegativeCachingTransport(result, negativeCache);
+            }
+            if (requestCoalescer != null) {
+                result = new CoalescingTransport(result, requestCoalescer);
+            }
+            return result;
+        }
+
+        /**
+         * Build a transport with a connection pool per traffic class of the bulkhead
+         *
+         * @return the transport
+         */
+        private BulkheadTransport buildBulkheadTransport() {
+            final Map<TrafficClass, FcrepoTransport> transports = new EnumMap<>(TrafficClass.class);
+            for (final TrafficClass trafficClass : TrafficClass.values()) {
+                final int maxConnections = bulkhead.getMaxConnections(trafficClass);
+                final FcrepoHttpClientBuilder builder = httpClientBuilder.copy()
+                        .maxTotalConnections(maxConnections)
+                        .maxConnectionsPerRoute(maxConnections);
+                transports.put(trafficClass, new ApacheHttpClientTransport(builder.build(), builder));
+            }
+            return new BulkheadTransport(transports, bulkhead);
         }
     }
 }
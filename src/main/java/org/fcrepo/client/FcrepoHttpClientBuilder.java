@@ -9,6 +9,13 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
@@ -19,11 +26,23 @@ import org.apache.http.auth.AuthState;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 import org.slf4j.Logger;
@@ -42,6 +61,26 @@ public class FcrepoHttpClientBuilder {
 
     private String host;
 
+    private Integer maxTotalConnections;
+
+    private Integer maxConnectionsPerRoute;
+
+    private Integer validateAfterInactivity;
+
+    private Long connectionTimeToLive;
+
+    private Integer connectTimeout;
+
+    private Integer connectionRequestTimeout;
+
+    private Integer socketTimeout;
+
+    private Boolean tcpNoDelay;
+
+    private Integer sendBufferSize;
+
+    private Integer receiveBufferSize;
+
     private static final Logger LOGGER = getLogger(FcrepoHttpClientBuilder.class);
 
     /**
@@ -53,11 +92,144 @@ public class FcrepoHttpClientBuilder {
      * @param host an optional realm for authentication
      */
     public FcrepoHttpClientBuilder(final String username, final String password, final String host) {
+        credentials(username, password, host);
+    }
+
+    /**
+     * Set the authentication values used by clients built by this builder
+     *
+     * @param username an optional username for authentication
+     * @param password an optional password for authentication
+     * @param host an optional realm for authentication
+     */
+    void credentials(final String username, final String password, final String host) {
         this.username = username;
         this.password = password;
         this.host = host;
     }
 
+    /**
+     * Copy the settings of this builder into a new builder, for building clients with separate connection pools
+     *
+     * @return a new builder with the same settings
+     */
+    FcrepoHttpClientBuilder copy() {
+        final FcrepoHttpClientBuilder copy = new FcrepoHttpClientBuilder(username, password, host);
+        copy.maxTotalConnections = maxTotalConnections;
+        copy.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        copy.validateAfterInactivity = validateAfterInactivity;
+        copy.connectionTimeToLive = connectionTimeToLive;
+        copy.connectTimeout = connectTimeout;
+        copy.connectionRequestTimeout = connectionRequestTimeout;
+        copy.socketTimeout = socketTimeout;
+        copy.tcpNoDelay = tcpNoDelay;
+        copy.sendBufferSize = sendBufferSize;
+        copy.receiveBufferSize = receiveBufferSize;
+        return copy;
+    }
+
+    /**
+     * Set the maximum number of connections held by the connection pool across all routes
+     *
+     * @param maxTotalConnections maximum number of pooled connections
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder maxTotalConnections(final int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of pooled connections to a single route, e.g. a single Fedora host
+     *
+     * @param maxConnectionsPerRoute maximum number of pooled connections per route
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder maxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        return this;
+    }
+
+    /**
+     * Set the period of inactivity after which a pooled connection is validated before being leased
+     *
+     * @param validateAfterInactivity inactivity period in milliseconds, or a non-positive value to disable
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder validateAfterInactivity(final int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+        return this;
+    }
+
+    /**
+     * Set the maximum lifetime of a pooled connection, regardless of its activity
+     *
+     * @param timeToLive time to live for pooled connections
+     * @param unit the unit of the time to live
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder connectionTimeToLive(final long timeToLive, final TimeUnit unit) {
+        this.connectionTimeToLive = unit.toMillis(timeToLive);
+        return this;
+    }
+
+    /**
+     * Set the timeout for establishing a connection
+     *
+     * @param connectTimeout timeout in milliseconds, zero is interpreted as infinite
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder connectTimeout(final int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * Set the timeout for leasing a connection from the connection pool
+     *
+     * @param connectionRequestTimeout timeout in milliseconds, zero is interpreted as infinite
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder connectionRequestTimeout(final int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+        return this;
+    }
+
+    /**
+     * Set the socket timeout (SO_TIMEOUT), the maximum period of inactivity while waiting for data
+     *
+     * @param socketTimeout timeout in milliseconds, zero is interpreted as infinite
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder socketTimeout(final int socketTimeout) {
+        this.socketTimeout = socketTimeout;
+        return this;
+    }
+
+    /**
+     * Enable or disable Nagle's algorithm (TCP_NODELAY) on pooled connections
+     *
+     * @param tcpNoDelay true to disable Nagle's algorithm
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder tcpNoDelay(final boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * Set the socket send and receive buffer sizes (SO_SNDBUF and SO_RCVBUF) of pooled connections
+     *
+     * @param sendBufferSize send buffer size in bytes, zero to use the system default
+     * @param receiveBufferSize receive buffer size in bytes, zero to use the system default
+     * @return this builder
+     */
+    public FcrepoHttpClientBuilder socketBufferSizes(final int sendBufferSize, final int receiveBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
     /**
      *  Build an HttpClient
      *
@@ -65,28 +237,203 @@ public class FcrepoHttpClientBuilder {
      */
     public CloseableHttpClient build() {
 
-        if (isBlank(username) || isBlank(password)) {
+        if (!hasCredentials() && !isPoolConfigured()) {
             return HttpClients.createSystem();
-        } else {
+        }
+        return build(isPoolConfigured() ? buildConnectionManager() : null);
+    }
+
+    /**
+     * Build an HttpClient leasing its connections from the given connection manager
+     *
+     * @param connectionManager the connection manager, or null for the system one
+     * @return an HttpClient
+     */
+    CloseableHttpClient build(final PoolingHttpClientConnectionManager connectionManager) {
+        final HttpClientBuilder builder = HttpClients.custom().useSystemProperties();
+
+        if (connectionManager != null) {
+            builder.setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(buildRequestConfig());
+        }
+
+        if (hasCredentials()) {
             LOGGER.debug("Accessing fcrepo with user credentials");
+            builder.setDefaultCredentialsProvider(buildCredentialsProvider())
+                    .addInterceptorFirst(new PreemptiveAuthInterceptor());
+        }
+        return builder.build();
+    }
 
-            final CredentialsProvider credsProvider = new BasicCredentialsProvider();
-            AuthScope scope = null;
+    /**
+     * Build and start a non-blocking HttpAsyncClient with the same connection limits, timeouts and credentials as
+     * the client returned by {@link #build()}. Response entities are buffered in memory by the async client, so it
+     * is best suited to metadata and HEAD requests rather than large binaries.
+     *
+     * @return a started HttpAsyncClient
+     */
+    public CloseableHttpAsyncClient buildAsync() {
+        final HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                .useSystemProperties()
+                .setDefaultRequestConfig(buildRequestConfig())
+                .setDefaultIOReactorConfig(buildIOReactorConfig());
 
-            if (isBlank(host)) {
-                scope = new AuthScope(AuthScope.ANY);
-            } else {
-                scope = new AuthScope(new HttpHost(host));
-            }
-            credsProvider.setCredentials(
-                    scope,
-                    new UsernamePasswordCredentials(username, password));
-            return HttpClients.custom()
-                    .setDefaultCredentialsProvider(credsProvider)
-                    .useSystemProperties()
-                    .addInterceptorFirst(new PreemptiveAuthInterceptor())
-                    .build();
+        if (maxTotalConnections != null) {
+            builder.setMaxConnTotal(maxTotalConnections);
+        }
+        if (maxConnectionsPerRoute != null) {
+            builder.setMaxConnPerRoute(maxConnectionsPerRoute);
+        }
+        if (connectionTimeToLive != null) {
+            builder.setConnectionTimeToLive(connectionTimeToLive, TimeUnit.MILLISECONDS);
+        }
+
+        if (hasCredentials()) {
+            LOGGER.debug("Accessing fcrepo asynchronously with user credentials");
+            builder.setDefaultCredentialsProvider(buildCredentialsProvider())
+                    .addInterceptorFirst(new PreemptiveAuthInterceptor());
+        }
+
+        final CloseableHttpAsyncClient client = builder.build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * Build a {@link FcrepoTransport} on the JDK http client which negotiates HTTP/2, multiplexing concurrent requests
+     * over a few connections. The connect timeout, socket timeout (applied as the timeout for receiving response
+     * headers) and credentials of this builder are honored; the connection pool settings only apply to the Apache
+     * http clients. Closing the transport shuts down the threads of its http clients.
+     *
+     * @return a HTTP/2 transport
+     */
+    public Http2Transport buildHttp2Transport() {
+        final Duration requestTimeout = socketTimeout == null || socketTimeout <= 0 ? null :
+                Duration.ofMillis(socketTimeout);
+        final AtomicInteger count = new AtomicInteger();
+        final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            final Thread thread = new Thread(r, "fcrepo-http2-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new Http2Transport(buildJdkHttpClient(Redirect.NORMAL, executor),
+                buildJdkHttpClient(Redirect.NEVER, executor), requestTimeout, username, password, host, executor);
+    }
+
+    private java.net.http.HttpClient buildJdkHttpClient(final Redirect redirect, final ExecutorService executor) {
+        final java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(Version.HTTP_2)
+                .followRedirects(redirect)
+                .executor(executor);
+        if (connectTimeout != null && connectTimeout > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        return builder.build();
+    }
+
+    private boolean hasCredentials() {
+        return !isBlank(username) && !isBlank(password);
+    }
+
+    private CredentialsProvider buildCredentialsProvider() {
+        final CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        AuthScope scope = null;
+
+        if (isBlank(host)) {
+            scope = new AuthScope(AuthScope.ANY);
+        } else {
+            scope = new AuthScope(new HttpHost(host));
+        }
+        credsProvider.setCredentials(
+                scope,
+                new UsernamePasswordCredentials(username, password));
+        return credsProvider;
+    }
+
+    /**
+     * Whether any connection pool or socket setting differs from the system defaults
+     */
+    private boolean isPoolConfigured() {
+        return maxTotalConnections != null || maxConnectionsPerRoute != null || validateAfterInactivity != null ||
+                connectionTimeToLive != null || connectTimeout != null || connectionRequestTimeout != null ||
+                socketTimeout != null || tcpNoDelay != null || sendBufferSize != null || receiveBufferSize != null;
+    }
+
+    /**
+     * Build the pooling connection manager from the configured limits. The system socket factories are used so that
+     * SSL system properties are honored in the same way as a client built with {@link HttpClients#createSystem()}.
+     */
+    PoolingHttpClientConnectionManager buildConnectionManager() {
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSystemSocketFactory())
+                        .build(),
+                null, null, null,
+                connectionTimeToLive == null ? -1 : connectionTimeToLive, TimeUnit.MILLISECONDS);
+
+        if (maxTotalConnections != null) {
+            connectionManager.setMaxTotal(maxTotalConnections);
+        }
+        if (maxConnectionsPerRoute != null) {
+            connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        }
+        if (validateAfterInactivity != null) {
+            connectionManager.setValidateAfterInactivity(validateAfterInactivity);
+        }
+
+        final SocketConfig.Builder socketConfig = SocketConfig.custom();
+        if (socketTimeout != null) {
+            socketConfig.setSoTimeout(socketTimeout);
+        }
+        if (tcpNoDelay != null) {
+            socketConfig.setTcpNoDelay(tcpNoDelay);
+        }
+        if (sendBufferSize != null) {
+            socketConfig.setSndBufSize(sendBufferSize);
+        }
+        if (receiveBufferSize != null) {
+            socketConfig.setRcvBufSize(receiveBufferSize);
+        }
+        connectionManager.setDefaultSocketConfig(socketConfig.build());
+
+        LOGGER.debug("Using pooled connections with max total {} and max per route {}",
+                connectionManager.getMaxTotal(), connectionManager.getDefaultMaxPerRoute());
+        return connectionManager;
+    }
+
+    private IOReactorConfig buildIOReactorConfig() {
+        final IOReactorConfig.Builder ioReactorConfig = IOReactorConfig.custom();
+        if (connectTimeout != null) {
+            ioReactorConfig.setConnectTimeout(connectTimeout);
+        }
+        if (socketTimeout != null) {
+            ioReactorConfig.setSoTimeout(socketTimeout);
+        }
+        if (tcpNoDelay != null) {
+            ioReactorConfig.setTcpNoDelay(tcpNoDelay);
+        }
+        if (sendBufferSize != null) {
+            ioReactorConfig.setSndBufSize(sendBufferSize);
+        }
+        if (receiveBufferSize != null) {
+            ioReactorConfig.setRcvBufSize(receiveBufferSize);
+        }
+        return ioReactorConfig.build();
+    }
+
+    private RequestConfig buildRequestConfig() {
+        final RequestConfig.Builder requestConfig = RequestConfig.custom();
+        if (connectTimeout != null) {
+            requestConfig.setConnectTimeout(connectTimeout);
+        }
+        if (connectionRequestTimeout != null) {
+            requestConfig.setConnectionRequestTimeout(connectionRequestTimeout);
+        }
+        if (socketTimeout != null) {
+            requestConfig.setSocketTimeout(socketTimeout);
         }
+        return requestConfig.build();
     }
 
     static class PreemptiveAuthInterceptor implements HttpRequestInterceptor {
@@ -95,7 +442,7 @@ public class FcrepoHttpClientBuilder {
             final AuthState authState = (AuthState) context.getAttribute(HttpClientContext.TARGET_AUTH_STATE);
             // If no auth scheme available yet, try to initialize it
             // preemptively
-            if (authState.getAuthScheme() == null) {
+            if (authState != null && authState.getAuthScheme() == null) {
                 final CredentialsProvider credsProvider = (CredentialsProvider)
                         context.getAttribute(HttpClientContext.CREDS_PROVIDER);
                 final HttpHost targetHost = (HttpHost) context.getAttribute(HttpCoreContext.HTTP_TARGET_HOST);
@@ -19,6 +19,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,8 @@ public class FcrepoResponse implements Closeable {
 
     private int statusCode;
 
+    private String statusText;
+
     private URI location;
 
     private Map<String, List<String>> headers;
@@ -65,6 +68,10 @@ public class FcrepoResponse implements Closeable {
 
     private boolean closed = false;
 
+    private boolean fromCache = false;
+
+    private Duration age = Duration.ZERO;
+
     /**
      * Create a FcrepoResponse object from the http response
      *
@@ -147,6 +154,24 @@ public class FcrepoResponse implements Closeable {
         this.statusCode = statusCode;
     }
 
+    /**
+     * statusText getter
+     *
+     * @return the reason phrase of the HTTP status, or null if the transport did not provide one
+     */
+    public String getStatusText() {
+        return statusText;
+    }
+
+    /**
+     * statusText setter
+     *
+     * @param statusText the reason phrase of the HTTP status
+     */
+    public void setStatusText(final String statusText) {
+        this.statusText = statusText;
+    }
+
     /**
      * body getter
      *
@@ -340,4 +365,43 @@ public class FcrepoResponse implements Closeable {
         return transactionUri;
     }
 
+    /**
+     * Whether this response was served from a client-side cache, such as a {@link ResponseCache} or a
+     * {@link MetadataCache}, rather than received from the repository. A cached response revalidated with the
+     * repository is also served from the cache.
+     *
+     * @return {@code true} if the response came from the cache
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * fromCache setter
+     *
+     * @param fromCache whether the response came from the cache
+     */
+    public void setFromCache(final boolean fromCache) {
+        this.fromCache = fromCache;
+    }
+
+    /**
+     * Get the time since the repository last confirmed the content of this response. Responses received from the
+     * repository have an age of zero.
+     *
+     * @return the age of the response
+     */
+    public Duration getAge() {
+        return age;
+    }
+
+    /**
+     * age setter
+     *
+     * @param age the age of the response
+     */
+    public void setAge(final Duration age) {
+        this.age = age;
+    }
+
 }
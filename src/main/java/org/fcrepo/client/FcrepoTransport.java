@@ -0,0 +1,47 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * The HTTP engine used by a {@link FcrepoClient} to exchange requests with Fedora. Request builders always produce
+ * an {@link HttpRequestBase}; the transport is responsible for sending it over the wire and returning the response,
+ * whatever its status. Mapping error statuses to {@link FcrepoOperationFailedException} is left to the client.
+ *
+ * @author agent
+ */
+public interface FcrepoTransport extends Closeable {
+
+    /**
+     * Execute a request, blocking until the response headers are available. The body of the returned response
+     * holds the underlying connection until it is closed or fully read.
+     *
+     * @param url URI the request is made to
+     * @param request the request
+     * @return the response, for any HTTP status
+     * @throws IOException if the request could not be executed
+     * @throws FcrepoOperationFailedException if the request was refused by the client without being sent
+     */
+    FcrepoResponse execute(URI url, HttpRequestBase request) throws IOException, FcrepoOperationFailedException;
+
+    /**
+     * Execute a request without blocking the calling thread. The future completes once the response body has been
+     * buffered, or exceptionally with an {@link IOException} if the request could not be executed or a
+     * {@link FcrepoOperationFailedException} if it was refused by the client. Cancelling the future aborts the
+     * exchange.
+     *
+     * @param url URI the request is made to
+     * @param request the request
+     * @return a future for the response, for any HTTP status
+     */
+    CompletableFuture<FcrepoResponse> executeAsync(URI url, HttpRequestBase request);
+}
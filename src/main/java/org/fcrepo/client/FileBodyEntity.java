@@ -0,0 +1,35 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.io.File;
+
+import org.apache.http.entity.FileEntity;
+
+/**
+ * Request body read from a file, which tells the file it is read from, so that the body can be sent again without
+ * being copied, such as when a {@link TransactionJournal} replays the request.
+ *
+ * @author agent
+ */
+class FileBodyEntity extends FileEntity {
+
+    /**
+     * Create a file body
+     *
+     * @param file the file to send
+     */
+    FileBodyEntity(final File file) {
+        super(file);
+    }
+
+    /**
+     * @return the file the body is read from
+     */
+    File getFile() {
+        return file;
+    }
+}
@@ -6,6 +6,7 @@
 package org.fcrepo.client;
 
 import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT;
+import static org.fcrepo.client.FedoraHeaderConstants.CACHE_CONTROL;
 import static org.fcrepo.client.FedoraHeaderConstants.IF_MODIFIED_SINCE;
 import static org.fcrepo.client.FedoraHeaderConstants.IF_NONE_MATCH;
 import static org.fcrepo.client.FedoraHeaderConstants.PREFER;
@@ -16,7 +17,9 @@ import java.util.List;
 import java.util.StringJoiner;
 import java.util.stream.Collectors;
 
+import org.apache.http.Header;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 
 /**
  * Builds a GET request to retrieve the content of a resource from the Fedora HTTP API
@@ -148,6 +151,40 @@ public class GetBuilder extends RetrieveRequestBuilder {
         return this;
     }
 
+    /**
+     * Let the client's response cache serve this request from a stale entry, while refreshing it in the background,
+     * for up to the given time after the entry became stale. Overrides the setting of the cache for this request.
+     *
+     * @param seconds how long after becoming stale an entry may be served
+     * @return this builder
+     */
+    public GetBuilder staleWhileRevalidate(final long seconds) {
+        return addCacheDirective("stale-while-revalidate=" + seconds);
+    }
+
+    /**
+     * Let the client's response cache serve this request from a stale entry if the repository answers with a server
+     * error or cannot be reached, for up to the given time after the entry became stale. Overrides the setting of the
+     * cache for this request.
+     *
+     * @param seconds how long after becoming stale an entry may be served
+     * @return this builder
+     */
+    public GetBuilder staleIfError(final long seconds) {
+        return addCacheDirective("stale-if-error=" + seconds);
+    }
+
+    private GetBuilder addCacheDirective(final String directive) {
+        final Header cacheControl = request.getFirstHeader(CACHE_CONTROL);
+        request.setHeader(CACHE_CONTROL, cacheControl == null ? directive : cacheControl.getValue() + ", " + directive);
+        return this;
+    }
+
+    @Override
+    public GetBuilder hedge(final HedgingPolicy hedgingPolicy) {
+        return (GetBuilder) super.hedge(hedgingPolicy);
+    }
+
     @Override
     public GetBuilder disableRedirects() {
         return (GetBuilder) super.disableRedirects();
@@ -178,6 +215,16 @@ public class GetBuilder extends RetrieveRequestBuilder {
         return (GetBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public GetBuilder priority(final Priority priority) {
+        return (GetBuilder) super.priority(priority);
+    }
+
+    @Override
+    public GetBuilder caller(final String caller) {
+        return (GetBuilder) super.caller(caller);
+    }
+
     @Override
     public GetBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (GetBuilder) super.addLinkHeader(linkHeader);
@@ -0,0 +1,426 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+
+/**
+ * Coordinator grouping the small writes of many concurrent callers into shared transactions. Each operation joins
+ * the open group and is sent as soon as the transaction of the group is started; the group is committed once it
+ * holds a number of operations or has been open for some time, and the future of each caller completes with the
+ * response to its operation when the group is committed.
+ * <p>
+ * When an operation of a group fails, by an exception or a 4xx or 5xx response, the group is rolled back. The other
+ * operations are submitted again to a fresh group, and the failed operation is retried in a group of its own, so
+ * that it fails no one else. When the commit of a group fails, as when one of its operations conflicts with a
+ * concurrent change, each of its operations is retried in a group of its own, isolating the one at fault. Only the
+ * caller of an operation still failing on its own, after the configured number of attempts, sees the failure; if the
+ * transaction of a group cannot be started, the callers of its operations see that failure straight away. The
+ * responses to the operations of a group which is not committed are closed. Operations are functions building their
+ * request on the {@link TransactionalFcrepoClient} of the group, and may therefore be called more than once: the
+ * bodies they send must be repeatable.
+ * </p>
+ *
+ * @author agent
+ */
+public class GroupCommitCoordinator implements Closeable {
+
+    private static final Logger LOGGER = getLogger(GroupCommitCoordinator.class);
+
+    private final FcrepoClient client;
+
+    private final URI txEndpoint;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "fcrepo-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int maxGroupSize = 100;
+
+    private long maxDelay = 100;
+
+    private int maxAttempts = 3;
+
+    private Group current;
+
+    private final Set<CompletableFuture<FcrepoResponse>> outstanding = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong committedGroups = new AtomicLong();
+
+    private final AtomicLong rolledBackGroups = new AtomicLong();
+
+    private final AtomicLong committedOperations = new AtomicLong();
+
+    private final AtomicLong isolatedOperations = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Create a group commit coordinator
+     *
+     * @param client the client starting the transactions
+     * @param uri the base rest endpoint or the transaction endpoint of the repository
+     * @throws IllegalArgumentException if the uri is not the base rest endpoint or the transaction endpoint
+     */
+    public GroupCommitCoordinator(final FcrepoClient client, final URI uri) {
+        this.client = client;
+        this.txEndpoint = client.getTxEndpoint(uri);
+    }
+
+    /**
+     * Set the number of operations after which a group is committed
+     *
+     * @param maxGroupSize the number of operations
+     * @return this coordinator
+     */
+    public synchronized GroupCommitCoordinator maxGroupSize(final int maxGroupSize) {
+        this.maxGroupSize = maxGroupSize;
+        return this;
+    }
+
+    /**
+     * Set how long a group waits for more operations before it is committed
+     *
+     * @param maxDelay the delay in milliseconds
+     * @return this coordinator
+     */
+    public synchronized GroupCommitCoordinator maxDelay(final long maxDelay) {
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * Set how many times an operation is attempted, counting failures of its own and of the commit of its group,
+     * before its caller is told of the failure
+     *
+     * @param maxAttempts the number of attempts
+     * @return this coordinator
+     */
+    public synchronized GroupCommitCoordinator maxAttempts(final int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @return the number of groups committed
+     */
+    public long getCommittedGroups() {
+        return committedGroups.get();
+    }
+
+    /**
+     * @return the number of groups rolled back
+     */
+    public long getRolledBackGroups() {
+        return rolledBackGroups.get();
+    }
+
+    /**
+     * @return the number of operations committed
+     */
+    public long getCommittedOperations() {
+        return committedOperations.get();
+    }
+
+    /**
+     * @return the number of times a failed operation was retried in a group of its own
+     */
+    public long getIsolatedOperations() {
+        return isolatedOperations.get();
+    }
+
+    /**
+     * @return the average number of operations of the committed groups
+     */
+    public double getAverageGroupSize() {
+        final long groups = committedGroups.get();
+        return groups == 0 ? 0 : (double) committedOperations.get() / groups;
+    }
+
+    /**
+     * Submit an operation to be written in a shared transaction
+     *
+     * @param operation builds the request of the operation on the client of the transaction, and may be called again
+     *        when the operation is retried
+     * @return a future which completes with the response to the operation once its transaction is committed, or
+     *         exceptionally if the operation kept failing
+     * @throws IllegalStateException if the coordinator is closed
+     */
+    public CompletableFuture<FcrepoResponse> submit(
+            final Function<TransactionalFcrepoClient, ? extends RequestBuilder> operation) {
+        if (closed) {
+            throw new IllegalStateException("The group commit coordinator is closed");
+        }
+        final Entry entry = new Entry(operation);
+        outstanding.add(entry.result);
+        entry.result.whenComplete((r, ex) -> outstanding.remove(entry.result));
+        join(entry);
+        return entry.result;
+    }
+
+    /**
+     * Add an operation to the open group, opening one if there is none
+     */
+    private synchronized void join(final Entry entry) {
+        if (current == null) {
+            final Group group = new Group(client.startTransactionClientAsync(txEndpoint));
+            group.deadline = timer.schedule(() -> timeout(group), maxDelay, MILLISECONDS);
+            current = group;
+        }
+        current.add(entry);
+        if (current.entries.size() >= maxGroupSize) {
+            seal(current);
+        }
+    }
+
+    /**
+     * Retry a failed operation in a group of its own
+     */
+    private void isolate(final Entry entry) {
+        isolatedOperations.incrementAndGet();
+        final Group group = new Group(client.startTransactionClientAsync(txEndpoint));
+        group.add(entry);
+        complete(group);
+    }
+
+    private synchronized void timeout(final Group group) {
+        if (current == group) {
+            seal(group);
+        }
+    }
+
+    private void seal(final Group group) {
+        current = null;
+        group.deadline.cancel(false);
+        complete(group);
+    }
+
+    /**
+     * Wait for the operations of a group, then commit it, or roll it back and resubmit its operations
+     */
+    private void complete(final Group group) {
+        final List<CompletableFuture<FcrepoResponse>> sent = group.sent;
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).handle((v, ex) -> {
+            // the operations are sent once the transaction is started, so it is done by now
+            if (group.tx.isCompletedExceptionally()) {
+                // the transaction could not be started: nothing was written
+                final Throwable failure = failureOf(group.tx);
+                LOGGER.warn("Unable to start a transaction for {} operations", group.entries.size(), failure);
+                group.entries.forEach(entry -> entry.result.completeExceptionally(failure));
+                return null;
+            }
+            final TransactionalFcrepoClient tx = group.tx.join();
+
+            final List<Throwable> failures = new ArrayList<>();
+            boolean failed = false;
+            for (final CompletableFuture<FcrepoResponse> operation : sent) {
+                final Throwable failure = failureOf(operation);
+                failures.add(failure);
+                failed |= failure != null;
+            }
+            if (failed) {
+                rollback(tx, group, failures);
+            } else {
+                commit(tx, group);
+            }
+            return null;
+        });
+    }
+
+    private void commit(final TransactionalFcrepoClient tx, final Group group) {
+        tx.commit().performAsync().whenComplete((response, ex) -> {
+            final Throwable failure = ex != null ? unwrap(ex) :
+                    response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES ?
+                    new FcrepoOperationFailedException(tx.getTransactionURI(), response.getStatusCode(),
+                            response.getStatusText()) : null;
+            if (failure != null) {
+                LOGGER.warn("Commit of transaction {} failed", tx.getTransactionURI(), failure);
+                rolledBackGroups.incrementAndGet();
+                if (response != null) {
+                    close(response);
+                }
+                discard(group);
+                // any of the operations may be at fault, so each is retried on its own
+                group.entries.forEach(entry -> {
+                    entry.isolated = true;
+                    retry(entry, failure);
+                });
+                return;
+            }
+            committedGroups.incrementAndGet();
+            committedOperations.addAndGet(group.entries.size());
+            for (int i = 0; i < group.entries.size(); i++) {
+                group.entries.get(i).result.complete(group.sent.get(i).join());
+            }
+        });
+    }
+
+    private void rollback(final TransactionalFcrepoClient tx, final Group group, final List<Throwable> failures) {
+        rolledBackGroups.incrementAndGet();
+        tx.rollback().performAsync().whenComplete((response, ex) -> {
+            if (ex != null) {
+                LOGGER.debug("Rollback of transaction {} failed", tx.getTransactionURI(), ex);
+            }
+        });
+        discard(group);
+        for (int i = 0; i < group.entries.size(); i++) {
+            final Entry entry = group.entries.get(i);
+            final Throwable failure = failures.get(i);
+            if (failure == null) {
+                // not at fault: back into a shared group
+                join(entry);
+            } else {
+                entry.isolated = true;
+                retry(entry, failure);
+            }
+        }
+    }
+
+    /**
+     * Close the responses to the operations of a group which was not committed
+     */
+    private static void discard(final Group group) {
+        for (final CompletableFuture<FcrepoResponse> operation : group.sent) {
+            if (!operation.isCompletedExceptionally()) {
+                close(operation.join());
+            }
+        }
+    }
+
+    private static void close(final FcrepoResponse response) {
+        try {
+            response.close();
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to close the response to {}", response.getUrl(), ex);
+        }
+    }
+
+    /**
+     * Attempt an operation again after a failure, on its own if it failed by itself, or tell its caller of the failure
+     * once it has no attempts left
+     */
+    private void retry(final Entry entry, final Throwable failure) {
+        entry.attempts++;
+        if (entry.attempts >= maxAttempts) {
+            entry.result.completeExceptionally(failure);
+        } else if (entry.isolated) {
+            isolate(entry);
+        } else {
+            join(entry);
+        }
+    }
+
+    /**
+     * @return the failure of a completed operation, counting 4xx and 5xx responses, or null if it succeeded
+     */
+    private static Throwable failureOf(final CompletableFuture<?> future) {
+        try {
+            final Object result = future.join();
+            if (result instanceof FcrepoResponse) {
+                final FcrepoResponse response = (FcrepoResponse) result;
+                if (response.getStatusCode() >= HttpStatus.SC_BAD_REQUEST) {
+                    return new FcrepoOperationFailedException(response.getUrl(), response.getStatusCode(),
+                            response.getStatusText());
+                }
+            }
+            return null;
+        } catch (final CompletionException ex) {
+            return unwrap(ex);
+        } catch (final RuntimeException ex) {
+            return ex;
+        }
+    }
+
+    private static Throwable unwrap(final Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    /**
+     * Commit the open group and wait until every submitted operation is committed or has failed
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // retries may open further groups, sealed by the timer
+        while (!outstanding.isEmpty()) {
+            synchronized (this) {
+                if (current != null) {
+                    seal(current);
+                }
+            }
+            CompletableFuture.allOf(outstanding.toArray(new CompletableFuture<?>[0])).handle((v, ex) -> null).join();
+        }
+        timer.shutdownNow();
+    }
+
+    /**
+     * An operation and the future of its caller
+     */
+    private static class Entry {
+
+        private final Function<TransactionalFcrepoClient, ? extends RequestBuilder> operation;
+
+        private final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+
+        private int attempts;
+
+        private boolean isolated;
+
+        Entry(final Function<TransactionalFcrepoClient, ? extends RequestBuilder> operation) {
+            this.operation = operation;
+        }
+    }
+
+    /**
+     * Operations written in one transaction
+     */
+    private static class Group {
+
+        private final CompletableFuture<TransactionalFcrepoClient> tx;
+
+        private final List<Entry> entries = new ArrayList<>();
+
+        // responses to the operations, in the order of the entries
+        private final List<CompletableFuture<FcrepoResponse>> sent = new ArrayList<>();
+
+        private ScheduledFuture<?> deadline;
+
+        Group(final CompletableFuture<TransactionalFcrepoClient> tx) {
+            this.tx = tx;
+        }
+
+        void add(final Entry entry) {
+            entries.add(entry);
+            sent.add(tx.thenCompose(client -> entry.operation.apply(client).performAsync()));
+        }
+    }
+}
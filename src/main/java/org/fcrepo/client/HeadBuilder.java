@@ -9,6 +9,7 @@ import java.net.URI;
 import java.time.Instant;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 
 /**
  * Builds a HEAD request to retrieve resource headers.
@@ -33,6 +34,11 @@ public class HeadBuilder extends RetrieveRequestBuilder {
         return HttpMethods.HEAD.createRequest(targetUri);
     }
 
+    @Override
+    public HeadBuilder hedge(final HedgingPolicy hedgingPolicy) {
+        return (HeadBuilder) super.hedge(hedgingPolicy);
+    }
+
     @Override
     public HeadBuilder disableRedirects() {
         return (HeadBuilder) super.disableRedirects();
@@ -63,6 +69,16 @@ public class HeadBuilder extends RetrieveRequestBuilder {
         return (HeadBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public HeadBuilder priority(final Priority priority) {
+        return (HeadBuilder) super.priority(priority);
+    }
+
+    @Override
+    public HeadBuilder caller(final String caller) {
+        return (HeadBuilder) super.caller(caller);
+    }
+
     @Override
     public HeadBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (HeadBuilder) super.addLinkHeader(linkHeader);
@@ -0,0 +1,348 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
+import org.fcrepo.client.RetryPolicy.RetryBudget;
+import org.slf4j.Logger;
+
+/**
+ * Policy for hedging GET and HEAD requests: when no response has arrived after a delay derived from a percentile of
+ * recent response times, a duplicate request is sent and whichever response arrives first is used. The other
+ * request is aborted, releasing its connection. Hedges draw from a budget so they stay a small fraction of the
+ * request rate.
+ * <p>
+ * One policy is meant to be shared by all the requests it applies to, since it learns the hedging delay from them and
+ * collects their metrics. Hedged responses are buffered in memory, as with {@link RequestBuilder#performAsync()}.
+ * </p>
+ *
+ * @author agent
+ */
+public class HedgingPolicy {
+
+    private static final Logger LOGGER = getLogger(HedgingPolicy.class);
+
+    private static final int WINDOW_SIZE = 1000;
+
+    private static final int MIN_SAMPLES = 20;
+
+    private static final int DELAY_REFRESH_SAMPLES = 50;
+
+    private double percentile = 0.95;
+
+    private long minDelay = 10;
+
+    private long maxDelay = 1000;
+
+    private RetryBudget budget = new RetryBudget(0.05, 1);
+
+    private final LatencyWindow attemptLatency = new LatencyWindow(WINDOW_SIZE);
+
+    private final LatencyWindow latency = new LatencyWindow(WINDOW_SIZE);
+
+    private final LatencyWindow unhedgedLatency = new LatencyWindow(WINDOW_SIZE);
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private volatile long hedgeDelay = -1;
+
+    private volatile long hedgeDelayRecorded;
+
+    /**
+     * Set the percentile of recent response times after which a hedge is sent
+     *
+     * @param percentile percentile between 0 and 1, such as 0.95
+     * @return this policy
+     */
+    public HedgingPolicy percentile(final double percentile) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1");
+        }
+        this.percentile = percentile;
+        this.hedgeDelay = -1;
+        return this;
+    }
+
+    /**
+     * Set the bounds of the hedging delay. The max delay is also used until enough responses have been observed.
+     *
+     * @param minDelay shortest delay in milliseconds
+     * @param maxDelay longest delay in milliseconds
+     * @return this policy
+     */
+    public HedgingPolicy delayBounds(final long minDelay, final long maxDelay) {
+        if (minDelay < 0 || maxDelay < minDelay) {
+            throw new IllegalArgumentException("Delays must be positive with the max delay at least the min delay");
+        }
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.hedgeDelay = -1;
+        return this;
+    }
+
+    /**
+     * Set the hedging budget. Every request deposits {@code ratio} tokens and the budget is refilled with
+     * {@code minHedgesPerSecond} tokens per second, so hedges are limited to roughly {@code ratio} of the request
+     * rate.
+     *
+     * @param ratio tokens deposited per request
+     * @param minHedgesPerSecond tokens added per second regardless of traffic
+     * @return this policy
+     */
+    public HedgingPolicy budget(final double ratio, final int minHedgesPerSecond) {
+        this.budget = new RetryBudget(ratio, minHedgesPerSecond);
+        return this;
+    }
+
+    /**
+     * @return the current delay before a hedge is sent, in milliseconds
+     */
+    public long getHedgeDelay() {
+        if (attemptLatency.size() < MIN_SAMPLES) {
+            return maxDelay;
+        }
+        // Sorting the window for every request is wasteful, the delay is refreshed every few responses instead
+        final long recorded = attemptLatency.recorded();
+        if (hedgeDelay < 0 || recorded - hedgeDelayRecorded >= DELAY_REFRESH_SAMPLES) {
+            final long delay = NANOSECONDS.toMillis(attemptLatency.percentile(percentile));
+            hedgeDelay = Math.max(minDelay, Math.min(maxDelay, delay));
+            hedgeDelayRecorded = recorded;
+        }
+        return hedgeDelay;
+    }
+
+    /**
+     * @return the number of requests made with this policy
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of hedges sent
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * @return the number of requests answered by their hedge rather than the original request
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * Get a percentile of the response times of recent requests, hedges included
+     *
+     * @param percentile percentile between 0 and 1, such as 0.99
+     * @return the response time in milliseconds
+     */
+    public long getLatency(final double percentile) {
+        return NANOSECONDS.toMillis(latency.percentile(percentile));
+    }
+
+    /**
+     * Get a percentile of the response times of recent requests had they not been hedged. The original request is
+     * aborted when its hedge wins, so its response time then counts as the time it had taken so far, making this an
+     * underestimate. Comparing it with {@link #getLatency(double)} shows the improvement brought by hedging.
+     *
+     * @param percentile percentile between 0 and 1, such as 0.99
+     * @return the response time in milliseconds
+     */
+    public long getUnhedgedLatency(final double percentile) {
+        return NANOSECONDS.toMillis(unhedgedLatency.percentile(percentile));
+    }
+
+    /**
+     * Execute a request, sending a hedge if it is slow to respond
+     *
+     * @param client the client executing the requests
+     * @param url URI the request is made to
+     * @param request the request, which is copied for the hedge
+     * @param priority the scheduling priority of the request and its hedge
+     * @param caller the caller the request and its hedge are scheduled for
+     * @return a future for the first response
+     */
+    CompletableFuture<FcrepoResponse> execute(final FcrepoClient client, final URI url,
+                                              final HttpRequestBase request, final Priority priority,
+                                              final String caller) {
+        requests.incrementAndGet();
+        budget.deposit();
+        final long start = System.nanoTime();
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final CompletableFuture<FcrepoResponse> primary = client.executeRequestAsync(url, request, priority, caller);
+        final AtomicReference<CompletableFuture<FcrepoResponse>> hedge = new AtomicReference<>();
+
+        primary.whenComplete((response, ex) -> {
+            final long now = System.nanoTime();
+            // the original request is timed even when aborted, as a lower bound of its response time
+            unhedgedLatency.record(now - start);
+            complete(result, response, ex, start, start, hedge.get());
+        });
+
+        CompletableFuture.delayedExecutor(getHedgeDelay(), MILLISECONDS).execute(() -> {
+            if (result.isDone() || !budget.tryWithdraw()) {
+                return;
+            }
+            final HttpRequestBase copy;
+            try {
+                copy = (HttpRequestBase) request.clone();
+            } catch (final CloneNotSupportedException ex) {
+                LOGGER.debug("Unable to copy request to {} for hedging", url);
+                return;
+            }
+            hedges.incrementAndGet();
+            LOGGER.debug("Hedging {} request to {}", request.getMethod(), url);
+            final long hedgeStart = System.nanoTime();
+            final CompletableFuture<FcrepoResponse> exchange = client.executeRequestAsync(url, copy, priority, caller);
+            hedge.set(exchange);
+            exchange.whenComplete((response, ex) -> {
+                if (complete(result, response, ex, start, hedgeStart, primary)) {
+                    hedgeWins.incrementAndGet();
+                }
+            });
+            if (result.isDone()) {
+                exchange.cancel(true);
+            }
+        });
+
+        // Cancelling the returned future aborts both requests
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                primary.cancel(true);
+                final CompletableFuture<FcrepoResponse> exchange = hedge.get();
+                if (exchange != null) {
+                    exchange.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Handle the completion of one of the requests, using it as the result unless another one is already in use or
+     * it failed to reach the repository while the other one may still succeed
+     *
+     * @return true if this request provided the result
+     */
+    private boolean complete(final CompletableFuture<FcrepoResponse> result, final FcrepoResponse response,
+                             final Throwable ex, final long start, final long attemptStart,
+                             final CompletableFuture<FcrepoResponse> other) {
+        final long now = System.nanoTime();
+        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof CancellationException) {
+            return false;
+        }
+        attemptLatency.record(now - attemptStart);
+
+        if (cause != null) {
+            final boolean unreachable = cause instanceof FcrepoOperationFailedException &&
+                    ((FcrepoOperationFailedException) cause).getStatusCode() < 0;
+            if (unreachable && other != null && !other.isDone()) {
+                return false;
+            }
+            // the other request is aborted first, so that it is released by the time the caller sees the result
+            if (!result.isDone()) {
+                cancel(other);
+            }
+            if (result.completeExceptionally(cause)) {
+                latency.record(now - start);
+                return true;
+            }
+            return false;
+        }
+
+        if (!result.isDone()) {
+            cancel(other);
+        }
+        if (result.complete(response)) {
+            latency.record(now - start);
+            return true;
+        }
+        // lost the race, release the response
+        try {
+            response.close();
+        } catch (final IOException e) {
+            LOGGER.debug("Unable to close hedged response", e);
+        }
+        return false;
+    }
+
+    private static void cancel(final CompletableFuture<FcrepoResponse> attempt) {
+        if (attempt != null) {
+            attempt.cancel(true);
+        }
+    }
+
+    /**
+     * Sliding window of the most recent latencies
+     */
+    static class LatencyWindow {
+
+        private final long[] samples;
+
+        private int count;
+
+        private int next;
+
+        private long recorded;
+
+        LatencyWindow(final int size) {
+            this.samples = new long[size];
+        }
+
+        synchronized void record(final long latency) {
+            samples[next] = latency;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            recorded++;
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        synchronized long recorded() {
+            return recorded;
+        }
+
+        /**
+         * @param percentile percentile between 0 and 1
+         * @return the latency at the percentile, or zero without samples
+         */
+        long percentile(final double percentile) {
+            final long[] sorted;
+            synchronized (this) {
+                if (count == 0) {
+                    return 0;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(sorted);
+            final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+}
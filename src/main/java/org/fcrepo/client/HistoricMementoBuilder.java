@@ -17,6 +17,7 @@ import java.net.URI;
 import java.time.Instant;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 import org.springframework.http.ContentDisposition;
 
 /**
@@ -121,6 +122,16 @@ public class HistoricMementoBuilder extends BodyRequestBuilder {
         return (HistoricMementoBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public HistoricMementoBuilder priority(final Priority priority) {
+        return (HistoricMementoBuilder) super.priority(priority);
+    }
+
+    @Override
+    public HistoricMementoBuilder caller(final String caller) {
+        return (HistoricMementoBuilder) super.caller(caller);
+    }
+
     @Override
     public HistoricMementoBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (HistoricMementoBuilder) super.addLinkHeader(linkHeader);
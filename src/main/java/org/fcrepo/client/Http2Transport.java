@@ -0,0 +1,301 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+
+/**
+ * A {@link FcrepoTransport} on the JDK {@link HttpClient}, negotiating HTTP/2 so that concurrent requests to the
+ * same Fedora host are multiplexed over a single connection with compressed headers. Plain http URIs are upgraded
+ * to h2c where the server supports it, and fall back to HTTP/1.1 otherwise.
+ *
+ * @author agent
+ */
+public class Http2Transport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(Http2Transport.class);
+
+    // Headers managed by the JDK client, which it refuses to accept from the caller
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(List.of("Connection", "Content-Length", "Date", "Expect", "From", "Host",
+                "Upgrade", "Via", "Warning"));
+    }
+
+    private final HttpClient httpClient;
+
+    private final HttpClient noRedirectHttpClient;
+
+    private final Duration requestTimeout;
+
+    private final String authorization;
+
+    private final String authHost;
+
+    // executor of the http clients owned by this transport, if any
+    private final ExecutorService executor;
+
+    // Authorities of plain http hosts with which an h2c connection has been established
+    private final Set<String> h2cAuthorities = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a HTTP/2 transport
+     *
+     * @param httpClient the client used for requests which follow redirects
+     * @param noRedirectHttpClient the client used for requests with redirects disabled
+     * @param requestTimeout optional timeout for receiving the response headers of a request
+     * @param username an optional username for preemptive basic authentication
+     * @param password an optional password for preemptive basic authentication
+     * @param authHost an optional host to which the credentials are restricted
+     */
+    public Http2Transport(final HttpClient httpClient, final HttpClient noRedirectHttpClient,
+                          final Duration requestTimeout, final String username, final String password,
+                          final String authHost) {
+        this(httpClient, noRedirectHttpClient, requestTimeout, username, password, authHost, null);
+    }
+
+    /**
+     * Create a HTTP/2 transport owning the executor of its http clients, which is shut down when the transport is
+     * closed
+     *
+     * @param httpClient the client used for requests which follow redirects
+     * @param noRedirectHttpClient the client used for requests with redirects disabled
+     * @param requestTimeout optional timeout for receiving the response headers of a request
+     * @param username an optional username for preemptive basic authentication
+     * @param password an optional password for preemptive basic authentication
+     * @param authHost an optional host to which the credentials are restricted
+     * @param executor the executor of both http clients, or null if the transport does not own it
+     */
+    Http2Transport(final HttpClient httpClient, final HttpClient noRedirectHttpClient,
+                   final Duration requestTimeout, final String username, final String password,
+                   final String authHost, final ExecutorService executor) {
+        this.httpClient = httpClient;
+        this.executor = executor;
+        this.noRedirectHttpClient = noRedirectHttpClient;
+        this.requestTimeout = requestTimeout;
+        this.authHost = authHost;
+        if (username != null && password != null && !username.isBlank() && !password.isBlank()) {
+            this.authorization = "Basic " + Base64.getEncoder().encodeToString((username + ":" + password)
+                    .getBytes(UTF_8));
+        } else {
+            this.authorization = null;
+        }
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request) throws IOException {
+        final CompletableFuture<HttpResponse<InputStream>> exchange = clientFor(request)
+                .sendAsync(toHttpRequest(request), BodyHandlers.ofInputStream());
+        // aborting the request, as callers do with the Apache transport, abandons the exchange or its body
+        request.setCancellable(() -> {
+            if (!exchange.cancel(true)) {
+                exchange.thenAccept(response -> closeQuietly(response.body()));
+            }
+            return true;
+        });
+        if (request.isAborted()) {
+            exchange.cancel(true);
+        }
+        try {
+            final HttpResponse<InputStream> response = exchange.get();
+            recordVersion(response);
+            return new FcrepoResponse(url, response.statusCode(), getHeaders(response), response.body());
+        } catch (final InterruptedException ex) {
+            exchange.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.getURI());
+        } catch (final CancellationException ex) {
+            throw new IOException("Request aborted");
+        } catch (final ExecutionException ex) {
+            final Throwable cause = ex.getCause() instanceof UncheckedIOException ? ex.getCause().getCause() :
+                    ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static void closeQuietly(final InputStream body) {
+        try {
+            body.close();
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to close aborted response body", ex);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final HttpRequest httpRequest;
+        try {
+            httpRequest = toHttpRequest(request);
+        } catch (final IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        final CompletableFuture<HttpResponse<byte[]>> exchange = clientFor(request)
+                .sendAsync(httpRequest, BodyHandlers.ofByteArray());
+        final CompletableFuture<FcrepoResponse> result = exchange.thenApply(response -> {
+            recordVersion(response);
+            return new FcrepoResponse(url, response.statusCode(), getHeaders(response),
+                    new ByteArrayInputStream(response.body()));
+        });
+
+        // Cancelling the returned future abandons the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The JDK client redirect policy is fixed per client, so requests with redirects disabled use a second client.
+     * So do requests with a streamed body, which the JDK client would otherwise send again, already consumed, to the
+     * target of a redirect.
+     */
+    private HttpClient clientFor(final HttpRequestBase request) {
+        final RequestConfig config = request.getConfig();
+        if (config != null && !config.isRedirectsEnabled()) {
+            return noRedirectHttpClient;
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && !entity.isRepeatable()) {
+                return noRedirectHttpClient;
+            }
+        }
+        return httpClient;
+    }
+
+    /**
+     * Convert the request produced by a request builder into a JDK http request
+     */
+    private HttpRequest toHttpRequest(final HttpRequestBase request) throws IOException {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(request.getURI());
+
+        BodyPublisher body = BodyPublishers.noBody();
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                body = toBodyPublisher(entity);
+                // Servers generally refuse to upgrade a request with a body to h2c, so until a body-less request
+                // has established the HTTP/2 connection such requests are sent over HTTP/1.1
+                final URI uri = request.getURI();
+                if ("http".equalsIgnoreCase(uri.getScheme()) && !h2cAuthorities.contains(uri.getAuthority())) {
+                    builder.version(Version.HTTP_1_1);
+                }
+            }
+        }
+        builder.method(request.getMethod(), body);
+
+        for (final Header header : request.getAllHeaders()) {
+            if (RESTRICTED_HEADERS.contains(header.getName())) {
+                LOGGER.debug("Dropping header {} which is managed by the transport", header.getName());
+            } else {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+
+        if (authorization != null && request.getFirstHeader("Authorization") == null &&
+                (authHost == null || authHost.isBlank() || authHost.equalsIgnoreCase(request.getURI().getHost()))) {
+            builder.header("Authorization", authorization);
+        }
+
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        return builder.build();
+    }
+
+    private void recordVersion(final HttpResponse<?> response) {
+        final URI uri = response.request().uri();
+        if (response.version() == Version.HTTP_2 && "http".equalsIgnoreCase(uri.getScheme())) {
+            h2cAuthorities.add(uri.getAuthority());
+        }
+    }
+
+    private static BodyPublisher toBodyPublisher(final HttpEntity entity) throws IOException {
+        final BodyPublisher publisher;
+        if (entity.isRepeatable()) {
+            publisher = BodyPublishers.ofInputStream(() -> {
+                try {
+                    return entity.getContent();
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } else {
+            // A streamed entity can only be read once, so hand out the same stream to the publisher
+            final InputStream content = entity.getContent();
+            publisher = BodyPublishers.ofInputStream(() -> content);
+        }
+
+        if (entity.getContentLength() >= 0) {
+            return BodyPublishers.fromPublisher(publisher, entity.getContentLength());
+        }
+        return publisher;
+    }
+
+    private static Map<String, List<String>> getHeaders(final HttpResponse<?> response) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        response.headers().map().forEach((name, values) -> {
+            // skip HTTP/2 pseudo headers such as :status
+            if (!name.startsWith(":")) {
+                headers.computeIfAbsent(name, k -> new ArrayList<>()).addAll(values);
+            }
+        });
+        return headers;
+    }
+
+    @Override
+    public void close() {
+        // The JDK http client releases its connections and selector thread once it is no longer referenced
+        LOGGER.debug("Closing HTTP/2 transport");
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * {@link FcrepoTransport} decorator of a {@link TransactionalFcrepoClient} recording the writes made within the
+ * transaction in its {@link TransactionJournal}. The journal is cleared once the transaction is committed or rolled
+ * back.
+ *
+ * @author agent
+ */
+public class JournalingTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final TransactionJournal journal;
+
+    private final String transactionUri;
+
+    /**
+     * Create a journaling transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param journal the journal of the transaction
+     * @param transactionUri the URI of the transaction
+     */
+    public JournalingTransport(final FcrepoTransport delegate, final TransactionJournal journal,
+            final URI transactionUri) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.transactionUri = transactionUri.toString();
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        if (!isInTransaction(request) || !ResponseCache.isWrite(request)) {
+            return delegate.execute(url, request);
+        }
+        if (targetsTransaction(request)) {
+            return ended(request, delegate.execute(url, request));
+        }
+        final TransactionJournal.Entry entry = journal.prepare(request);
+        final FcrepoResponse response;
+        try {
+            response = delegate.execute(url, request);
+        } catch (final IOException | FcrepoOperationFailedException | RuntimeException ex) {
+            journal.discard(entry);
+            throw ex;
+        }
+        journal.record(entry, response);
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        if (!isInTransaction(request) || !ResponseCache.isWrite(request)) {
+            return delegate.executeAsync(url, request);
+        }
+        if (targetsTransaction(request)) {
+            return delegate.executeAsync(url, request).thenApply(response -> ended(request, response));
+        }
+        final TransactionJournal.Entry entry;
+        try {
+            entry = journal.prepare(request);
+        } catch (final IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return delegate.executeAsync(url, request).handle((response, ex) -> {
+            if (ex != null) {
+                journal.discard(entry);
+                throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+            }
+            journal.record(entry, response);
+            return response;
+        });
+    }
+
+    /**
+     * @return true for a request to the transaction itself: its commit, rollback or keep-alive
+     */
+    private boolean targetsTransaction(final HttpRequestBase request) {
+        return request.getURI().toString().equals(transactionUri);
+    }
+
+    private FcrepoResponse ended(final HttpRequestBase request, final FcrepoResponse response) {
+        // nothing is left to replay once the transaction is committed or rolled back
+        if (!"POST".equals(request.getMethod()) && response.getStatusCode() < HttpStatus.SC_MULTIPLE_CHOICES) {
+            journal.clear();
+        }
+        return response;
+    }
+
+    private boolean isInTransaction(final HttpRequestBase request) {
+        final Header atomicId = request.getFirstHeader(ATOMIC_ID);
+        return atomicId != null && atomicId.getValue().equals(transactionUri);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
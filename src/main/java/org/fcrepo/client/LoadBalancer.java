@@ -0,0 +1,263 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads requests across several Fedora front-end nodes sharing the same storage. Each node is identified by its
+ * base URL, such as {@code http://fedora1:8080/rest}, and a request addressed to any of the base URLs may be sent to
+ * any healthy node.
+ * <p>
+ * Nodes are picked by least outstanding requests, or by the power of two random choices, which avoids herding on a
+ * single node when many clients share the same view. A node is ejected for the ejection time after a number of
+ * consecutive failed requests, or as soon as it fails an active health check. When every node is ejected requests
+ * are spread across all of them.
+ * </p>
+ *
+ * @author agent
+ */
+public class LoadBalancer {
+
+    /**
+     * Strategy used to pick the node a request is sent to
+     */
+    public enum Selection {
+        /** the node with the fewest requests in flight */
+        LEAST_OUTSTANDING,
+        /** the node with fewer requests in flight of two picked at random */
+        POWER_OF_TWO_CHOICES
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private Selection selection = Selection.POWER_OF_TWO_CHOICES;
+
+    private int maxFailures = 3;
+
+    private long ejectionTime = 30000;
+
+    private long healthCheckInterval = 0;
+
+    /**
+     * Create a load balancer
+     *
+     * @param endpoints the base URLs of the nodes
+     */
+    public LoadBalancer(final URI... endpoints) {
+        if (endpoints.length == 0) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+        for (final URI endpoint : endpoints) {
+            nodes.add(new Node(endpoint));
+        }
+    }
+
+    /**
+     * Set the strategy used to pick nodes
+     *
+     * @param selection the selection strategy
+     * @return this load balancer
+     */
+    public LoadBalancer selection(final Selection selection) {
+        this.selection = selection;
+        return this;
+    }
+
+    /**
+     * Set when nodes are ejected after failed requests
+     *
+     * @param maxFailures number of consecutive connection failures or 5xx responses ejecting a node
+     * @param ejectionTime time for which a node is ejected, in milliseconds
+     * @return this load balancer
+     */
+    public LoadBalancer ejection(final int maxFailures, final long ejectionTime) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("Max failures must be at least 1");
+        }
+        this.maxFailures = maxFailures;
+        this.ejectionTime = ejectionTime;
+        return this;
+    }
+
+    /**
+     * Actively check the health of every node with a HEAD request to its base URL
+     *
+     * @param healthCheckInterval interval between checks in milliseconds, zero to disable active checks
+     * @return this load balancer
+     */
+    public LoadBalancer healthCheck(final long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+        return this;
+    }
+
+    /**
+     * @return the interval between active health checks in milliseconds, zero if disabled
+     */
+    long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    /**
+     * @return the base URLs of the nodes which are not ejected
+     */
+    public List<URI> getHealthyEndpoints() {
+        final List<URI> healthy = new ArrayList<>();
+        final long now = System.nanoTime();
+        for (final Node node : nodes) {
+            if (node.isHealthy(now)) {
+                healthy.add(node.base);
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * @return the nodes
+     */
+    List<Node> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Find the node whose base URL prefixes the given URI
+     *
+     * @param uri the URI
+     * @return the node, or null if the URI does not belong to any node
+     */
+    Node nodeOf(final URI uri) {
+        final String target = uri.toString();
+        for (final Node node : nodes) {
+            if (target.startsWith(node.prefix) || target.equals(node.base.toString())) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pick the node to send a request to
+     *
+     * @return the node
+     */
+    Node select() {
+        final long now = System.nanoTime();
+        List<Node> candidates = new ArrayList<>(nodes.size());
+        for (final Node node : nodes) {
+            if (node.isHealthy(now)) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = nodes;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (selection == Selection.POWER_OF_TWO_CHOICES) {
+            final int first = random.nextInt(candidates.size());
+            final int second = (first + 1 + random.nextInt(candidates.size() - 1)) % candidates.size();
+            final Node a = candidates.get(first);
+            final Node b = candidates.get(second);
+            return b.outstanding.get() < a.outstanding.get() ? b : a;
+        }
+
+        // Start from a random node so that ties do not all land on the first one
+        final int offset = random.nextInt(candidates.size());
+        Node best = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            final Node node = candidates.get((offset + i) % candidates.size());
+            if (best == null || node.outstanding.get() < best.outstanding.get()) {
+                best = node;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Record the outcome of a request to a node
+     *
+     * @param node the node
+     * @param failed true if the connection failed or the node responded with a 5xx status
+     */
+    void record(final Node node, final boolean failed) {
+        if (!failed) {
+            node.failures.set(0);
+        } else if (node.failures.incrementAndGet() >= maxFailures) {
+            eject(node);
+        }
+    }
+
+    /**
+     * Eject a node for the ejection time
+     *
+     * @param node the node
+     */
+    void eject(final Node node) {
+        node.failures.set(0);
+        node.ejectedUntil = System.nanoTime() + MILLISECONDS.toNanos(ejectionTime);
+    }
+
+    /**
+     * Return an ejected node to service
+     *
+     * @param node the node
+     */
+    void reinstate(final Node node) {
+        node.failures.set(0);
+        node.ejectedUntil = 0;
+    }
+
+    /**
+     * A front-end node of the repository
+     */
+    static class Node {
+
+        final URI base;
+
+        final String prefix;
+
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        volatile long ejectedUntil;
+
+        Node(final URI base) {
+            final String url = base.toString();
+            this.base = base;
+            this.prefix = url.endsWith("/") ? url : url + "/";
+        }
+
+        boolean isHealthy(final long now) {
+            return ejectedUntil == 0 || now - ejectedUntil >= 0;
+        }
+
+        /**
+         * Move a URI belonging to any node onto this node
+         *
+         * @param uri the URI
+         * @param from the node the URI belongs to
+         * @return the URI on this node
+         */
+        URI rewrite(final URI uri, final Node from) {
+            if (from == this) {
+                return uri;
+            }
+            final String target = uri.toString();
+            final String path = target.length() > from.prefix.length() ? target.substring(from.prefix.length()) : "";
+            return URI.create(prefix + path);
+        }
+    }
+}
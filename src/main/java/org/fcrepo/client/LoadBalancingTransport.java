@@ -0,0 +1,180 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.fcrepo.client.FcrepoClient.TRANSACTION_ENDPOINT;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.LoadBalancer.Node;
+import org.slf4j.Logger;
+
+/**
+ * {@link FcrepoTransport} decorator sending each request to a node picked by a {@link LoadBalancer}. Requests
+ * belonging to a transaction, either carrying an Atomic-ID header or addressed to the transaction itself, always go
+ * to the node which issued the transaction, since its state lives on that node.
+ *
+ * @author agent
+ */
+public class LoadBalancingTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(LoadBalancingTransport.class);
+
+    private final FcrepoTransport delegate;
+
+    private final LoadBalancer balancer;
+
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * Create a load balancing transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param balancer the load balancer
+     */
+    public LoadBalancingTransport(final FcrepoTransport delegate, final LoadBalancer balancer) {
+        this.delegate = delegate;
+        this.balancer = balancer;
+        final long interval = balancer.getHealthCheckInterval();
+        if (interval > 0) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                final Thread thread = new Thread(r, "fcrepo-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, MILLISECONDS);
+        } else {
+            healthChecker = null;
+        }
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        final Node origin = balancer.nodeOf(url);
+        if (origin == null) {
+            return delegate.execute(url, request);
+        }
+        final Node node = route(url, request, origin);
+        final URI target = node.rewrite(url, origin);
+        final URI requested = request.getURI();
+        request.setURI(target);
+
+        node.outstanding.incrementAndGet();
+        boolean failed = false;
+        try {
+            final FcrepoResponse response = delegate.execute(target, request);
+            failed = isFailure(response);
+            return response;
+        } catch (final IOException | CircuitBreakerOpenException ex) {
+            failed = true;
+            throw ex;
+        } finally {
+            // the transports above see the request as their caller made it
+            request.setURI(requested);
+            node.outstanding.decrementAndGet();
+            balancer.record(node, failed);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final Node origin = balancer.nodeOf(url);
+        if (origin == null) {
+            return delegate.executeAsync(url, request);
+        }
+        final Node node = route(url, request, origin);
+        final URI target = node.rewrite(url, origin);
+        final URI requested = request.getURI();
+        request.setURI(target);
+
+        node.outstanding.incrementAndGet();
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(target, request);
+        exchange.whenComplete((response, ex) -> {
+            // the transports above see the request as their caller made it
+            request.setURI(requested);
+            node.outstanding.decrementAndGet();
+            final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            balancer.record(node, cause != null ? cause instanceof IOException ||
+                    cause instanceof CircuitBreakerOpenException : isFailure(response));
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(response);
+            }
+        });
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Pick the node for a request, keeping transactional requests on the node of their transaction
+     */
+    private Node route(final URI url, final HttpRequestBase request, final Node origin) {
+        final Header atomicId = request.getFirstHeader(ATOMIC_ID);
+        if (atomicId != null) {
+            final Node owner = balancer.nodeOf(URI.create(atomicId.getValue()));
+            if (owner != null) {
+                return owner;
+            }
+        }
+        if (url.getPath() != null && url.getPath().contains("/" + TRANSACTION_ENDPOINT + "/")) {
+            return origin;
+        }
+        return balancer.select();
+    }
+
+    /**
+     * Check every node with a HEAD request to its base URL, ejecting the ones which fail and returning the others
+     * to service
+     */
+    private void checkHealth() {
+        for (final Node node : balancer.getNodes()) {
+            boolean healthy;
+            try (final FcrepoResponse response = delegate.execute(node.base, new HttpHead(node.base))) {
+                healthy = !isFailure(response);
+            } catch (final Exception ex) {
+                LOGGER.debug("Health check of {} failed: {}", node.base, ex.getMessage());
+                healthy = false;
+            }
+            if (healthy) {
+                balancer.reinstate(node);
+            } else {
+                LOGGER.warn("Ejecting {} after a failed health check", node.base);
+                balancer.eject(node);
+            }
+        }
+    }
+
+    private static boolean isFailure(final FcrepoResponse response) {
+        return response.getStatusCode() >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        delegate.close();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * In-memory cache of the headers of resources, such as their types, ETag, state token and links, as reported by HEAD
+ * and GET responses. HEAD requests for a resource with fresh metadata are answered without contacting the repository,
+ * which lets a client check the interaction model or pick up the ETag for a conditional write without a round trip.
+ * Writes made through the same client invalidate the metadata of the resource they modify, of its description or
+ * described binary and of its parent.
+ * <p>
+ * Metadata is fresh for the configured time to live, and the least recently used metadata is evicted beyond the
+ * maximum number of resources. Requests made within a transaction or for a memento bypass the cache.
+ * </p>
+ *
+ * @author agent
+ */
+public class MetadataCache {
+
+    private long ttl = 30000;
+
+    private int maxEntries = 10000;
+
+    // metadata by resource URI, least recently used first
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Set how long the metadata of a resource is used after it was received
+     *
+     * @param ttl time to live in milliseconds
+     * @return this cache
+     */
+    public synchronized MetadataCache ttl(final long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+        this.ttl = ttl;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of resources whose metadata is kept
+     *
+     * @param maxEntries maximum number of resources
+     * @return this cache
+     */
+    public synchronized MetadataCache maxEntries(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        evict();
+        return this;
+    }
+
+    /**
+     * Get the fresh metadata of a resource
+     *
+     * @param uri the URI of the resource
+     * @return the metadata, or null if none is cached or it expired
+     */
+    public synchronized ResourceMetadata get(final URI uri) {
+        final Cached cached = fresh(uri.toString());
+        return cached == null ? null : cached.metadata;
+    }
+
+    /**
+     * @return the number of HEAD requests answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of HEAD requests sent to the repository
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the share of HEAD requests answered from the cache, between 0 and 1
+     */
+    public synchronized double getHitRatio() {
+        final long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the number of resources whose metadata is cached
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Drop all cached metadata
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Drop the metadata of a resource, along with that of its description or described binary and of its parent
+     * container, whose containment may have changed
+     *
+     * @param uri the URI of the resource
+     */
+    public synchronized void invalidate(final URI uri) {
+        ResponseCache.relatedUris(uri).forEach(entries::remove);
+    }
+
+    /**
+     * Look up the metadata of a resource to answer a HEAD request
+     *
+     * @param uri the URI of the resource
+     * @param accept the Accept header of the request, if any
+     * @return the metadata, or null if the request must go to the repository
+     */
+    synchronized ResourceMetadata lookup(final URI uri, final String accept) {
+        final Cached cached = fresh(uri.toString());
+        if (cached == null || !Objects.equals(accept, cached.accept)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.metadata;
+    }
+
+    /**
+     * Keep the headers of a successful HEAD or GET response
+     *
+     * @param uri the URI of the resource
+     * @param accept the Accept header of the request, if any
+     * @param headers the headers of the response
+     * @param age the age of the response, which counts against the time to live of the metadata
+     */
+    synchronized void put(final URI uri, final String accept, final Map<String, List<String>> headers,
+            final Duration age) {
+        final Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, values) -> copy.put(name, new ArrayList<>(values)));
+        final long retrieved = System.currentTimeMillis() - age.toMillis();
+        entries.put(uri.toString(), new Cached(new ResourceMetadata(uri, copy, retrieved), accept));
+        evict();
+    }
+
+    private Cached fresh(final String uri) {
+        final Cached cached = entries.get(uri);
+        if (cached == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cached.metadata.getRetrieved() >= ttl) {
+            entries.remove(uri);
+            return null;
+        }
+        return cached;
+    }
+
+    private void evict() {
+        final var lru = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && lru.hasNext()) {
+            lru.next();
+            lru.remove();
+        }
+    }
+
+    /**
+     * Metadata with the Accept header of the request which returned it
+     */
+    private static class Cached {
+
+        private final ResourceMetadata metadata;
+
+        private final String accept;
+
+        Cached(final ResourceMetadata metadata, final String accept) {
+            this.metadata = metadata;
+            this.accept = accept;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT;
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT_DATETIME;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_MODIFIED_SINCE;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_NONE_MATCH;
+import static org.fcrepo.client.FedoraHeaderConstants.RANGE;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * {@link FcrepoTransport} decorator answering HEAD requests from a {@link MetadataCache}, filling it from the HEAD and
+ * GET responses passing through, and invalidating the metadata of resources written through it.
+ *
+ * @author agent
+ */
+public class MetadataCachingTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final MetadataCache cache;
+
+    /**
+     * Create a metadata caching transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param cache the metadata cache
+     */
+    public MetadataCachingTransport(final FcrepoTransport delegate, final MetadataCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        final URI target = request.getURI();
+        if (ResponseCache.isWrite(request)) {
+            cache.invalidate(target);
+            try {
+                return delegate.execute(url, request);
+            } finally {
+                cache.invalidate(target);
+            }
+        }
+        if (!isCacheable(request)) {
+            return delegate.execute(url, request);
+        }
+        final FcrepoResponse local = serveLocally(url, request);
+        if (local != null) {
+            return local;
+        }
+        return record(target, request, delegate.execute(url, request));
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final URI target = request.getURI();
+        if (ResponseCache.isWrite(request)) {
+            cache.invalidate(target);
+            final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+            exchange.whenComplete((response, ex) -> cache.invalidate(target));
+            return exchange;
+        }
+        if (!isCacheable(request)) {
+            return delegate.executeAsync(url, request);
+        }
+        final FcrepoResponse local = serveLocally(url, request);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        exchange.thenAccept(response -> record(target, request, response));
+        return exchange;
+    }
+
+    /**
+     * Answer a HEAD request from fresh metadata
+     *
+     * @return the response, or null if the request must go to the repository
+     */
+    private FcrepoResponse serveLocally(final URI url, final HttpRequestBase request) {
+        if (!"HEAD".equals(request.getMethod()) || ResponseCache.requiresRevalidation(request)) {
+            return null;
+        }
+        final ResourceMetadata metadata = cache.lookup(request.getURI(), accept(request));
+        if (metadata == null) {
+            return null;
+        }
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        metadata.getHeaders().forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+        final FcrepoResponse response = new FcrepoResponse(url, HttpStatus.SC_OK, headers, null);
+        response.setFromCache(true);
+        response.setAge(metadata.getAge());
+        return response;
+    }
+
+    private FcrepoResponse record(final URI target, final HttpRequestBase request, final FcrepoResponse response) {
+        if (response.getStatusCode() == HttpStatus.SC_OK) {
+            // a response served by a cache below was received earlier, and its metadata is that much older
+            cache.put(target, accept(request), response.getHeaders(), response.getAge());
+        }
+        return response;
+    }
+
+    /**
+     * @return true for a HEAD or GET of the whole current state of a resource, outside of a transaction
+     */
+    private static boolean isCacheable(final HttpRequestBase request) {
+        final String method = request.getMethod();
+        return ("HEAD".equals(method) || "GET".equals(method)) && !request.containsHeader(RANGE) &&
+                !request.containsHeader(ATOMIC_ID) && !request.containsHeader(ACCEPT_DATETIME) &&
+                !request.containsHeader(IF_NONE_MATCH) && !request.containsHeader(IF_MODIFIED_SINCE);
+    }
+
+    private static String accept(final HttpRequestBase request) {
+        final Header accept = request.getFirstHeader(ACCEPT);
+        return accept == null ? null : accept.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Short-lived in-memory cache of the resources found missing (404 Not Found) or deleted (410 Gone). Repeated HEAD or
+ * GET requests for such a resource are answered with the same status without contacting the repository, so probing
+ * for resources which mostly do not exist yet does not cost a round trip every time.
+ * <p>
+ * Writes made through the same client drop the cached answers which the write may have made obsolete: those for the
+ * written resource, for the resources below it, such as the members a POST creates, and for the containers above it,
+ * which a PUT may create. Writes made within a transaction drop them again once the transaction is committed or
+ * rolled back, since requests outside of it only see the writes from then on. Resources created by other clients are
+ * only seen once the time to live expires, which is why it should be kept short. Requests made within a transaction
+ * or for a memento bypass the cache.
+ * </p>
+ *
+ * @author agent
+ */
+public class NegativeCache {
+
+    private long ttl = 2000;
+
+    private int maxEntries = 10000;
+
+    // sorted by URI, so that the answers for the resources below a written resource can be found by prefix
+    private final TreeMap<String, Entry> entries = new TreeMap<>();
+
+    // the same answers, oldest first
+    private final LinkedHashMap<String, Entry> byAge = new LinkedHashMap<>();
+
+    private final TransactionWrites transactions = new TransactionWrites();
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Set how long a resource is remembered as missing or deleted
+     *
+     * @param ttl time to live in milliseconds
+     * @return this cache
+     */
+    public synchronized NegativeCache ttl(final long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live must not be negative");
+        }
+        this.ttl = ttl;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of resources remembered, beyond which the oldest answers are dropped
+     *
+     * @param maxEntries maximum number of resources
+     * @return this cache
+     */
+    public synchronized NegativeCache maxEntries(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        evict();
+        return this;
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of 404 and 410 responses received from the repository
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of resources remembered as missing or deleted
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Forget all missing and deleted resources
+     */
+    public synchronized void clear() {
+        entries.clear();
+        byAge.clear();
+    }
+
+    /**
+     * Forget the answers which a write to a resource may have made obsolete: those for the resource, the resources
+     * below it and the containers above it
+     *
+     * @param uri the URI of the written resource
+     */
+    public synchronized void invalidate(final URI uri) {
+        final String path = keyOf(uri);
+        remove(path);
+        new ArrayList<>(entries.subMap(path + "/", true, path + "/\uffff", true).keySet()).forEach(this::remove);
+        int slash = path.lastIndexOf('/');
+        while (slash > path.indexOf("//") + 1) {
+            remove(path.substring(0, slash));
+            slash = path.lastIndexOf('/', slash - 1);
+        }
+    }
+
+    /**
+     * Forget the answers which a write about to be sent may make obsolete, and remember the written resource if the
+     * write is made within a transaction
+     *
+     * @param request the write
+     * @param uri the URI of the written resource
+     */
+    synchronized void startWrite(final HttpRequestBase request, final URI uri) {
+        invalidate(uri);
+        transactions.record(request, uri);
+    }
+
+    /**
+     * Forget the answers which a completed write may have made obsolete, including those remembered while it was in
+     * flight and, if it commits or rolls back a transaction, those affected by every write made within it
+     *
+     * @param request the write
+     * @param uri the URI of the written resource
+     */
+    synchronized void completeWrite(final HttpRequestBase request, final URI uri) {
+        invalidate(uri);
+        transactions.end(request, uri).forEach(this::invalidate);
+    }
+
+    /**
+     * Answer a request for a resource known to be missing or deleted
+     *
+     * @param url the requested URL
+     * @param uri the URI of the resource
+     * @return the response, or null if the request must go to the repository
+     */
+    synchronized FcrepoResponse lookup(final URI url, final URI uri) {
+        final String key = keyOf(uri);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        final long age = System.currentTimeMillis() - entry.received;
+        if (age >= ttl) {
+            remove(key);
+            return null;
+        }
+        hits++;
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        entry.headers.forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+        final FcrepoResponse response = new FcrepoResponse(url, entry.statusCode, headers, null);
+        response.setStatusText(entry.statusText);
+        response.setFromCache(true);
+        response.setAge(Duration.ofMillis(age));
+        return response;
+    }
+
+    /**
+     * Remember a 404 or 410 response
+     *
+     * @param uri the URI of the resource
+     * @param response the response
+     */
+    synchronized void put(final URI uri, final FcrepoResponse response) {
+        misses++;
+        if (ttl == 0) {
+            return;
+        }
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (response.getHeaders() != null) {
+            response.getHeaders().forEach((name, values) -> headers.put(name, new ArrayList<>(values)));
+        }
+        final String key = keyOf(uri);
+        final Entry entry = new Entry(response.getStatusCode(), response.getStatusText(), headers);
+        remove(key);
+        entries.put(key, entry);
+        byAge.put(key, entry);
+        evict();
+    }
+
+    private void evict() {
+        final Iterator<String> oldest = byAge.keySet().iterator();
+        while (byAge.size() > maxEntries && oldest.hasNext()) {
+            entries.remove(oldest.next());
+            oldest.remove();
+        }
+    }
+
+    private void remove(final String key) {
+        entries.remove(key);
+        byAge.remove(key);
+    }
+
+    private static String keyOf(final URI uri) {
+        return uri.toString().replaceAll("/+$", "");
+    }
+
+    /**
+     * A cached 404 or 410 answer
+     */
+    private static class Entry {
+
+        private final int statusCode;
+
+        private final String statusText;
+
+        private final Map<String, List<String>> headers;
+
+        private final long received = System.currentTimeMillis();
+
+        Entry(final int statusCode, final String statusText, final Map<String, List<String>> headers) {
+            this.statusCode = statusCode;
+            this.statusText = statusText;
+            this.headers = headers;
+        }
+    }
+}
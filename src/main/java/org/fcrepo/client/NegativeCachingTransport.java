@@ -0,0 +1,105 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT_DATETIME;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * {@link FcrepoTransport} decorator answering HEAD and GET requests for resources recently found missing or deleted
+ * from a {@link NegativeCache}, and invalidating the cached answers affected by writes made through it.
+ *
+ * @author agent
+ */
+public class NegativeCachingTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final NegativeCache cache;
+
+    /**
+     * Create a negative caching transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param cache the negative cache
+     */
+    public NegativeCachingTransport(final FcrepoTransport delegate, final NegativeCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        final URI target = request.getURI();
+        if (ResponseCache.isWrite(request)) {
+            cache.startWrite(request, target);
+            try {
+                return delegate.execute(url, request);
+            } finally {
+                cache.completeWrite(request, target);
+            }
+        }
+        if (!isCacheable(request)) {
+            return delegate.execute(url, request);
+        }
+        final FcrepoResponse cached = cache.lookup(url, target);
+        if (cached != null) {
+            return cached;
+        }
+        return record(target, delegate.execute(url, request));
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final URI target = request.getURI();
+        if (ResponseCache.isWrite(request)) {
+            cache.startWrite(request, target);
+            final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+            exchange.whenComplete((response, ex) -> cache.completeWrite(request, target));
+            return exchange;
+        }
+        if (!isCacheable(request)) {
+            return delegate.executeAsync(url, request);
+        }
+        final FcrepoResponse cached = cache.lookup(url, target);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        exchange.thenAccept(response -> record(target, response));
+        return exchange;
+    }
+
+    private FcrepoResponse record(final URI target, final FcrepoResponse response) {
+        final int status = response.getStatusCode();
+        if (status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE) {
+            cache.put(target, response);
+        }
+        return response;
+    }
+
+    /**
+     * @return true for a HEAD or GET of the current state of a resource, outside of a transaction
+     */
+    private static boolean isCacheable(final HttpRequestBase request) {
+        final String method = request.getMethod();
+        return ("HEAD".equals(method) || "GET".equals(method)) && !request.containsHeader(ATOMIC_ID) &&
+                !request.containsHeader(ACCEPT_DATETIME) && !ResponseCache.requiresRevalidation(request);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -8,6 +8,7 @@ package org.fcrepo.client;
 import java.net.URI;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 
 /**
  * Builds an OPTIONS request to output information about the supported HTTP methods, etc.
@@ -36,6 +37,16 @@ public class OptionsBuilder extends RequestBuilder {
         return (OptionsBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public OptionsBuilder priority(final Priority priority) {
+        return (OptionsBuilder) super.priority(priority);
+    }
+
+    @Override
+    public OptionsBuilder caller(final String caller) {
+        return (OptionsBuilder) super.caller(caller);
+    }
+
     @Override
     public OptionsBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (OptionsBuilder) super.addLinkHeader(linkHeader);
@@ -8,6 +8,7 @@ package org.fcrepo.client;
 import java.net.URI;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 
 /**
  * Builds a POST request for creating a memento (LDPRm) from the current state of an LDPRv.
@@ -36,6 +37,16 @@ public class OriginalMementoBuilder extends RequestBuilder {
         return (OriginalMementoBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public OriginalMementoBuilder priority(final Priority priority) {
+        return (OriginalMementoBuilder) super.priority(priority);
+    }
+
+    @Override
+    public OriginalMementoBuilder caller(final String caller) {
+        return (OriginalMementoBuilder) super.caller(caller);
+    }
+
     @Override
     public OriginalMementoBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (OriginalMementoBuilder) super.addLinkHeader(linkHeader);
@@ -9,6 +9,7 @@ import java.io.InputStream;
 import java.net.URI;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 
 /**
  * Builds a PUT request for interacting with the Fedora HTTP API in order to modify the triples associated with a
@@ -66,6 +67,16 @@ public class PatchBuilder extends BodyRequestBuilder {
         return (PatchBuilder) super.ifStateToken(token);
     }
 
+    @Override
+    public PatchBuilder ifMatchCurrent() {
+        return (PatchBuilder) super.ifMatchCurrent();
+    }
+
+    @Override
+    public PatchBuilder ifStateTokenCurrent() {
+        return (PatchBuilder) super.ifStateTokenCurrent();
+    }
+
     @Deprecated
     @Override
     public PatchBuilder digest(final String digest) {
@@ -102,6 +113,16 @@ public class PatchBuilder extends BodyRequestBuilder {
         return (PatchBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public PatchBuilder priority(final Priority priority) {
+        return (PatchBuilder) super.priority(priority);
+    }
+
+    @Override
+    public PatchBuilder caller(final String caller) {
+        return (PatchBuilder) super.caller(caller);
+    }
+
     @Override
     public PatchBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (PatchBuilder) super.addLinkHeader(linkHeader);
@@ -14,6 +14,7 @@ import java.io.InputStream;
 import java.net.URI;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.ContentDisposition.Builder;
 
@@ -106,6 +107,16 @@ public class PostBuilder extends BodyRequestBuilder {
         return (PostBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public PostBuilder priority(final Priority priority) {
+        return (PostBuilder) super.priority(priority);
+    }
+
+    @Override
+    public PostBuilder caller(final String caller) {
+        return (PostBuilder) super.caller(caller);
+    }
+
     @Override
     public PostBuilder addTransaction(final URI transaction) {
         return (PostBuilder) super.addTransaction(transaction);
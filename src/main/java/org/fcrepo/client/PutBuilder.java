@@ -14,6 +14,7 @@ import java.io.InputStream;
 import java.net.URI;
 
 import org.apache.http.client.methods.HttpRequestBase;
+import org.fcrepo.client.RequestScheduler.Priority;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.ContentDisposition.Builder;
 
@@ -75,6 +76,16 @@ public class PutBuilder extends BodyRequestBuilder {
         return (PutBuilder) super.ifStateToken(token);
     }
 
+    @Override
+    public PutBuilder ifMatchCurrent() {
+        return (PutBuilder) super.ifMatchCurrent();
+    }
+
+    @Override
+    public PutBuilder ifStateTokenCurrent() {
+        return (PutBuilder) super.ifStateTokenCurrent();
+    }
+
     @Deprecated
     @Override
     public PutBuilder digest(final String digest) {
@@ -121,6 +132,16 @@ public class PutBuilder extends BodyRequestBuilder {
         return (PutBuilder) super.addHeader(name, value);
     }
 
+    @Override
+    public PutBuilder priority(final Priority priority) {
+        return (PutBuilder) super.priority(priority);
+    }
+
+    @Override
+    public PutBuilder caller(final String caller) {
+        return (PutBuilder) super.caller(caller);
+    }
+
     @Override
     public PutBuilder addLinkHeader(final FcrepoLink linkHeader) {
         return (PutBuilder) super.addLinkHeader(linkHeader);
@@ -0,0 +1,169 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limits on the rate of requests and the rate of bytes exchanged with each repository host. The tokens
+ * of a request and of a request body of known length are taken before the request is sent, other request bodies
+ * are metered as they are sent, and response bodies as they are read from {@link FcrepoResponse#getBody()}.
+ * <p>
+ * Limits may be changed at any time, including while requests are in progress, so that a bulk job can be dialed up
+ * or down without being restarted. A rate of zero or less removes the limit.
+ * </p>
+ *
+ * @author agent
+ */
+public class RateLimiter {
+
+    private volatile double requestsPerSecond;
+
+    private volatile double requestBurst;
+
+    private volatile double bytesPerSecond;
+
+    private volatile double byteBurst;
+
+    private final ConcurrentMap<String, TokenBucket> requestBuckets = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, TokenBucket> byteBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * Limit the rate of requests to each host
+     *
+     * @param requestsPerSecond requests per second, zero or less for no limit
+     * @param burst number of requests which may be made at once after a quiet period
+     * @return this rate limiter
+     */
+    public RateLimiter requestsPerSecond(final double requestsPerSecond, final int burst) {
+        this.requestsPerSecond = requestsPerSecond;
+        this.requestBurst = Math.max(1, burst);
+        requestBuckets.values().forEach(bucket -> bucket.setRate(requestsPerSecond, requestBurst));
+        return this;
+    }
+
+    /**
+     * Limit the rate of bytes sent to and received from each host
+     *
+     * @param bytesPerSecond bytes per second, zero or less for no limit
+     * @param burst number of bytes which may be exchanged at once after a quiet period
+     * @return this rate limiter
+     */
+    public RateLimiter bytesPerSecond(final long bytesPerSecond, final long burst) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.byteBurst = Math.max(1, burst);
+        byteBuckets.values().forEach(bucket -> bucket.setRate(bytesPerSecond, byteBurst));
+        return this;
+    }
+
+    /**
+     * @return the limit of requests per second to each host, zero or less if unlimited
+     */
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    /**
+     * @return the limit of bytes per second exchanged with each host, zero or less if unlimited
+     */
+    public double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Take a request token for the host of a URI
+     *
+     * @param uri the requested URI
+     * @return how long to wait before sending the request, in nanoseconds
+     */
+    long reserveRequest(final URI uri) {
+        if (requestsPerSecond <= 0) {
+            return 0;
+        }
+        return requestBuckets.computeIfAbsent(hostOf(uri), host -> new TokenBucket(requestsPerSecond, requestBurst))
+                .reserve(1);
+    }
+
+    /**
+     * Take tokens for bytes exchanged with the host of a URI
+     *
+     * @param uri the requested URI
+     * @param bytes number of bytes, zero to only learn how long the bytes already exchanged keep the host busy
+     * @return how long to wait before exchanging more bytes, in nanoseconds
+     */
+    long reserveBytes(final URI uri, final long bytes) {
+        if (bytesPerSecond <= 0 || bytes < 0) {
+            return 0;
+        }
+        return byteBuckets.computeIfAbsent(hostOf(uri), host -> new TokenBucket(bytesPerSecond, byteBurst))
+                .reserve(bytes);
+    }
+
+    /**
+     * @return true if the bytes exchanged are limited
+     */
+    boolean isLimitingBytes() {
+        return bytesPerSecond > 0;
+    }
+
+    private static String hostOf(final URI uri) {
+        return uri.getScheme() + "://" + uri.getRawAuthority();
+    }
+
+    /**
+     * Token bucket which lets callers go into debt: a reservation larger than the available tokens is granted, and
+     * the caller waits until the debt has been refilled. This keeps large reads and writes from stalling while still
+     * holding the average rate.
+     */
+    static class TokenBucket {
+
+        private double rate;
+
+        private double capacity;
+
+        private double tokens;
+
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(final double rate, final double capacity) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        synchronized void setRate(final double rate, final double capacity) {
+            refill();
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = Math.min(tokens, capacity);
+        }
+
+        /**
+         * @param permits number of tokens to take
+         * @return the time to wait until the tokens are available, in nanoseconds
+         */
+        synchronized long reserve(final long permits) {
+            if (rate <= 0) {
+                return 0;
+            }
+            refill();
+            tokens -= permits;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+        }
+
+        private void refill() {
+            final long now = System.nanoTime();
+            if (rate > 0) {
+                tokens = Math.min(capacity, tokens + rate * (now - lastRefill) / 1e9);
+            }
+            lastRefill = now;
+        }
+    }
+}
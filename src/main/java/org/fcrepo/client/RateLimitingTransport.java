@@ -0,0 +1,295 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * {@link FcrepoTransport} decorator holding requests, request bodies and response bodies to the rates of a
+ * {@link RateLimiter}. A request waits for its tokens before it is dispatched, so that no transport thread is ever
+ * held by the pacing: the tokens of a request body of known length are taken along with those of the request, and a
+ * body of unknown length, or the buffered body of an asynchronous response, is charged as it goes through, which
+ * delays the requests that follow. Only the body of a synchronous response, read by the caller, is paced as it is
+ * read.
+ *
+ * @author agent
+ */
+public class RateLimitingTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final RateLimiter limiter;
+
+    /**
+     * Create a rate limiting transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param limiter the rate limiter
+     */
+    public RateLimitingTransport(final FcrepoTransport delegate, final RateLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        pause(reserve(url, request));
+        final HttpEntity entity = meterEntity(url, request);
+        try {
+            return throttleBody(url, delegate.execute(url, request));
+        } finally {
+            restoreEntity(request, entity);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        final long wait = reserve(url, request);
+        if (wait <= 0) {
+            return send(url, request);
+        }
+
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final AtomicReference<CompletableFuture<FcrepoResponse>> exchange = new AtomicReference<>();
+        CompletableFuture.delayedExecutor(wait, NANOSECONDS).execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            final CompletableFuture<FcrepoResponse> sent = send(url, request);
+            exchange.set(sent);
+            sent.whenComplete((response, ex) -> {
+                if (ex != null) {
+                    result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ?
+                            ex.getCause() : ex);
+                } else {
+                    result.complete(response);
+                }
+            });
+            if (result.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+
+        // Cancelling the returned future gives up the wait or aborts the exchange
+        result.whenComplete((response, ex) -> {
+            final CompletableFuture<FcrepoResponse> sent = exchange.get();
+            if (result.isCancelled() && sent != null) {
+                sent.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<FcrepoResponse> send(final URI url, final HttpRequestBase request) {
+        final HttpEntity entity = meterEntity(url, request);
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        exchange.whenComplete((response, ex) -> restoreEntity(request, entity));
+        final CompletableFuture<FcrepoResponse> result = exchange.thenApply(response -> chargeBody(url, response));
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Take the tokens of a request, and of its body if its length is known
+     *
+     * @return how long to wait before dispatching the request, in nanoseconds
+     */
+    private long reserve(final URI url, final HttpRequestBase request) {
+        final long wait = limiter.reserveRequest(url);
+        if (!limiter.isLimitingBytes()) {
+            return wait;
+        }
+        // with no bytes to take, this still waits for the bytes charged to earlier requests
+        final HttpEntity entity = entityOf(request);
+        final long length = entity == null ? 0 : Math.max(0, entity.getContentLength());
+        return Math.max(wait, limiter.reserveBytes(url, length));
+    }
+
+    /**
+     * Meter a request body of unknown length as it is sent
+     *
+     * @return the original body, to be restored once the request has been sent
+     */
+    private HttpEntity meterEntity(final URI url, final HttpRequestBase request) {
+        final HttpEntity entity = entityOf(request);
+        if (entity == null || entity.getContentLength() >= 0 || !limiter.isLimitingBytes()) {
+            return null;
+        }
+        ((HttpEntityEnclosingRequest) request).setEntity(new MeteredEntity(entity, url));
+        return entity;
+    }
+
+    private static HttpEntity entityOf(final HttpRequestBase request) {
+        return request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() :
+                null;
+    }
+
+    /**
+     * Put back the original body of a request, so that a retry does not meter it twice
+     */
+    private static void restoreEntity(final HttpRequestBase request, final HttpEntity entity) {
+        if (entity != null) {
+            ((HttpEntityEnclosingRequest) request).setEntity(entity);
+        }
+    }
+
+    private FcrepoResponse throttleBody(final URI url, final FcrepoResponse response) {
+        if (response.getBody() != null && limiter.isLimitingBytes()) {
+            response.setBody(new MeteredInputStream(response.getBody(), url, true));
+        }
+        return response;
+    }
+
+    /**
+     * Charge the buffered body of an asynchronous response, which has already been received
+     */
+    private FcrepoResponse chargeBody(final URI url, final FcrepoResponse response) {
+        if (response.getBody() != null && limiter.isLimitingBytes()) {
+            try {
+                limiter.reserveBytes(url, response.getBody().available());
+            } catch (final IOException ex) {
+                // not charged, the body will fail when read
+            }
+        }
+        return response;
+    }
+
+    private static void pause(final long nanos) throws InterruptedIOException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            NANOSECONDS.sleep(nanos);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Request body charging the bytes written to the connection, without waiting for them
+     */
+    private class MeteredEntity extends HttpEntityWrapper {
+
+        private final URI url;
+
+        MeteredEntity(final HttpEntity entity, final URI url) {
+            super(entity);
+            this.url = url;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new MeteredInputStream(super.getContent(), url, false);
+        }
+
+        @Override
+        public void writeTo(final OutputStream out) throws IOException {
+            super.writeTo(new MeteredOutputStream(out, url));
+        }
+    }
+
+    /**
+     * Stream charging the bytes read, and waiting for the byte rate after each read if paced
+     */
+    private class MeteredInputStream extends FilterInputStream {
+
+        private final URI url;
+
+        private final boolean paced;
+
+        MeteredInputStream(final InputStream in, final URI url, final boolean paced) {
+            super(in);
+            this.url = url;
+            this.paced = paced;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                meter(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                meter(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            if (skipped > 0) {
+                meter(skipped);
+            }
+            return skipped;
+        }
+
+        private void meter(final long bytes) throws InterruptedIOException {
+            final long wait = limiter.reserveBytes(url, bytes);
+            if (paced) {
+                pause(wait);
+            }
+        }
+    }
+
+    /**
+     * Stream charging the bytes written, without waiting for them
+     */
+    private class MeteredOutputStream extends FilterOutputStream {
+
+        private final URI url;
+
+        MeteredOutputStream(final OutputStream out, final URI url) {
+            super(out);
+            this.url = url;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            limiter.reserveBytes(url, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            limiter.reserveBytes(url, len);
+        }
+    }
+}
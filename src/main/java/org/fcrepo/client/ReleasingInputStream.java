@@ -0,0 +1,68 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Body of a response releasing a slot held for its request, such as a slot of a {@link RequestScheduler} or a
+ * permit of a {@link ConcurrencyLimiter}, once read to its end or closed. The slot is released once, whichever
+ * comes first.
+ *
+ * @author agent
+ */
+class ReleasingInputStream extends FilterInputStream {
+
+    private final Runnable release;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    /**
+     * Create a releasing body
+     *
+     * @param body the body of the response
+     * @param release the action releasing the slot
+     */
+    ReleasingInputStream(final InputStream body, final Runnable release) {
+        super(body);
+        this.release = release;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return released(super.read());
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        return released(super.read(b, off, len));
+    }
+
+    private int released(final int read) {
+        if (read == -1) {
+            release();
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            release.run();
+        }
+    }
+}
@@ -10,9 +10,11 @@ import static org.slf4j.LoggerFactory.getLogger;
 import static org.fcrepo.client.FedoraHeaderConstants.LINK;
 
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.util.Args;
+import org.fcrepo.client.RequestScheduler.Priority;
 import org.slf4j.Logger;
 
 /**
@@ -33,6 +35,12 @@ public abstract class RequestBuilder {
     // The request being built
     protected HttpRequestBase request;
 
+    // Priority of this request with the request scheduler of the client
+    protected Priority priority;
+
+    // Caller this request is scheduled for
+    protected String caller;
+
     /**
      * Instantiate builder. Throws an IllegalArgumentException if either the uri or client are null.
      *
@@ -65,7 +73,50 @@ public abstract class RequestBuilder {
         LOGGER.debug("Fcrepo {} request to {} with headers: {}", request.getMethod(), targetUri,
                 request.getAllHeaders());
 
-        return client.executeRequest(targetUri, request);
+        if (priority == null && caller == null) {
+            return client.executeRequest(targetUri, request);
+        }
+        return client.executeRequest(targetUri, request, priority, caller);
+    }
+
+    /**
+     * Performs the request constructed in this builder without blocking the calling thread.
+     *
+     * @return a future which completes with the repository response, or exceptionally with a
+     *         {@link FcrepoOperationFailedException} when the underlying HTTP request results in an error
+     */
+    public CompletableFuture<FcrepoResponse> performAsync() {
+        LOGGER.debug("Fcrepo async {} request to {} with headers: {}", request.getMethod(), targetUri,
+                request.getAllHeaders());
+
+        if (priority == null && caller == null) {
+            return client.executeRequestAsync(targetUri, request);
+        }
+        return client.executeRequestAsync(targetUri, request, priority, caller);
+    }
+
+    /**
+     * Set the priority of the request, which decides how soon it is sent when the client's request scheduler has
+     * requests queued. Without a scheduler, the priority has no effect.
+     *
+     * @param priority the priority
+     * @return this builder
+     */
+    protected RequestBuilder priority(final Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Set the caller, such as a tenant or a job, on whose behalf the request is made. Callers of the same priority
+     * share the slots of the client's request scheduler evenly.
+     *
+     * @param caller key of the caller
+     * @return this builder
+     */
+    protected RequestBuilder caller(final String caller) {
+        this.caller = caller;
+        return this;
     }
 
     /**
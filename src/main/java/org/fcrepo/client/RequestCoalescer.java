@@ -0,0 +1,99 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Settings and statistics of request coalescing. Concurrent identical GET and HEAD requests, with the same URI and
+ * headers, share a single exchange with the repository: the first request is sent, and requests arriving before its
+ * response share that response. When more than one request shares a response, its body is read once into a shared
+ * buffer, or into a temporary file beyond the memory threshold, and each caller reads its own copy.
+ *
+ * @author agent
+ */
+public class RequestCoalescer {
+
+    private long memoryThreshold = 1024 * 1024;
+
+    private Path spillDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Set the size up to which a shared response body is held in memory, beyond which it is spilled to a temporary
+     * file
+     *
+     * @param memoryThreshold threshold in bytes
+     * @return this coalescer
+     */
+    public RequestCoalescer memoryThreshold(final long memoryThreshold) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException("Memory threshold must not be negative");
+        }
+        this.memoryThreshold = memoryThreshold;
+        return this;
+    }
+
+    /**
+     * Set the directory of the temporary files holding large shared response bodies
+     *
+     * @param spillDirectory the directory
+     * @return this coalescer
+     */
+    public RequestCoalescer spillDirectory(final Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * @return the size up to which a shared response body is held in memory
+     */
+    public long getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * @return the directory of the temporary files holding large shared response bodies
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @return the number of GET and HEAD requests seen
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests which shared the exchange of an identical request in flight
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the share of GET and HEAD requests which shared the exchange of an identical request, between 0 and 1
+     */
+    public double getCoalescingRate() {
+        final long total = requests.get();
+        return total == 0 ? 0 : (double) coalesced.get() / total;
+    }
+
+    void recordRequest() {
+        requests.incrementAndGet();
+    }
+
+    void recordCoalesced() {
+        coalesced.incrementAndGet();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Schedules requests onto a limited number of concurrent slots with weighted fair queuing. Each request carries a
+ * {@link Priority} and the key of its caller, such as a tenant or a job; every pair of priority and caller is a flow,
+ * and when requests have to queue, each flow receives slots in proportion to the weight of its priority. Interactive
+ * requests therefore overtake queued batch work, and callers of the same priority share their slots evenly, so that
+ * a single runaway job cannot monopolize the connections.
+ *
+ * @author agent
+ */
+public class RequestScheduler {
+
+    /**
+     * Priority of a request
+     */
+    public enum Priority {
+        /** requests a user is waiting for */
+        INTERACTIVE,
+        /** default priority */
+        NORMAL,
+        /** background and bulk work */
+        BATCH
+    }
+
+    private static final String DEFAULT_CALLER = "";
+
+    private int maxConcurrent = 20;
+
+    private final Map<Priority, Double> weights = new EnumMap<>(Map.of(
+            Priority.INTERACTIVE, 16.0, Priority.NORMAL, 4.0, Priority.BATCH, 1.0));
+
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+            Comparator.comparingDouble((Waiter waiter) -> waiter.finish).thenComparingLong(waiter -> waiter.sequence));
+
+    private final Map<String, Flow> flows = new HashMap<>();
+
+    private final Map<Priority, long[]> queueWaits = new EnumMap<>(Priority.class);
+
+    private int inFlight;
+
+    private double virtualTime;
+
+    private long sequence;
+
+    /**
+     * Create a request scheduler
+     */
+    public RequestScheduler() {
+        for (final Priority priority : Priority.values()) {
+            queueWaits.put(priority, new long[3]);
+        }
+    }
+
+    /**
+     * Set the number of requests which may be in flight at once
+     *
+     * @param maxConcurrent maximum number of requests in flight
+     * @return this scheduler
+     */
+    public synchronized RequestScheduler maxConcurrent(final int maxConcurrent) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("Max concurrent requests must be at least 1");
+        }
+        this.maxConcurrent = maxConcurrent;
+        return this;
+    }
+
+    /**
+     * Set the share of slots given to a priority when requests queue, relative to the other priorities
+     *
+     * @param priority the priority
+     * @param weight the weight of the priority
+     * @return this scheduler
+     */
+    public synchronized RequestScheduler weight(final Priority priority, final double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight must be positive");
+        }
+        weights.put(priority, weight);
+        return this;
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @param priority the priority
+     * @return the number of requests of the priority waiting for a slot
+     */
+    public synchronized int getQueueDepth(final Priority priority) {
+        return (int) queue.stream().filter(waiter -> waiter.priority == priority && !waiter.permit.isDone())
+                .count();
+    }
+
+    /**
+     * @param priority the priority
+     * @return the average time requests of the priority waited for a slot, in milliseconds
+     */
+    public synchronized double getAverageQueueWait(final Priority priority) {
+        final long[] waits = queueWaits.get(priority);
+        return waits[0] == 0 ? 0 : NANOSECONDS.toMicros(waits[1] / waits[0]) / 1000.0;
+    }
+
+    /**
+     * @param priority the priority
+     * @return the longest time a request of the priority waited for a slot, in milliseconds
+     */
+    public synchronized long getMaxQueueWait(final Priority priority) {
+        return NANOSECONDS.toMillis(queueWaits.get(priority)[2]);
+    }
+
+    /**
+     * Ask for a slot. The returned future completes once the request may be sent; cancelling it gives up the place
+     * in the queue.
+     *
+     * @param priority the priority of the request, null for {@link Priority#NORMAL}
+     * @param caller the key of the caller, null for the default caller
+     * @return a future completing once a slot is granted
+     */
+    CompletableFuture<Void> acquire(final Priority priority, final String caller) {
+        final Priority effective = priority == null ? Priority.NORMAL : priority;
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight < maxConcurrent && queue.isEmpty()) {
+                inFlight++;
+                recordWait(effective, 0);
+                permit.complete(null);
+                return permit;
+            }
+            final String key = effective + "/" + (caller == null ? DEFAULT_CALLER : caller);
+            final Flow flow = flows.computeIfAbsent(key, k -> new Flow());
+            final double start = Math.max(virtualTime, flow.lastFinish);
+            flow.lastFinish = start + 1 / weights.get(effective);
+            flow.queued++;
+            queue.add(new Waiter(effective, key, flow.lastFinish, sequence++, permit));
+        }
+        // the queue may only hold abandoned requests ahead of this one
+        dispatch();
+        return permit;
+    }
+
+    /**
+     * Give back a slot, granting it to the next request in fair queuing order
+     */
+    void release() {
+        synchronized (this) {
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    /**
+     * Grant free slots to queued requests in fair queuing order, skipping requests which gave up their place
+     */
+    private void dispatch() {
+        while (true) {
+            final List<CompletableFuture<Void>> granted = new ArrayList<>();
+            synchronized (this) {
+                while (inFlight < maxConcurrent && !queue.isEmpty()) {
+                    final Waiter next = queue.poll();
+                    virtualTime = Math.max(virtualTime, next.finish);
+                    final Flow flow = flows.get(next.flow);
+                    if (--flow.queued == 0) {
+                        flows.remove(next.flow);
+                    }
+                    if (!next.permit.isDone()) {
+                        inFlight++;
+                        recordWait(next.priority, System.nanoTime() - next.enqueued);
+                        granted.add(next.permit);
+                    }
+                }
+            }
+            // Waiters are resumed outside of the lock, since they go on to send their request on this thread
+            int lost = 0;
+            for (final CompletableFuture<Void> permit : granted) {
+                if (!permit.complete(null)) {
+                    lost++;
+                }
+            }
+            if (lost == 0) {
+                return;
+            }
+            // slots granted to requests cancelled in the meantime are handed on
+            synchronized (this) {
+                inFlight -= lost;
+            }
+        }
+    }
+
+    private void recordWait(final Priority priority, final long wait) {
+        final long[] waits = queueWaits.get(priority);
+        waits[0]++;
+        waits[1] += wait;
+        waits[2] = Math.max(waits[2], wait);
+    }
+
+    /**
+     * Requests of one priority and caller
+     */
+    private static class Flow {
+
+        private double lastFinish;
+
+        private int queued;
+    }
+
+    /**
+     * A request waiting for a slot
+     */
+    private static class Waiter {
+
+        private final Priority priority;
+
+        private final String flow;
+
+        private final double finish;
+
+        private final long sequence;
+
+        private final long enqueued = System.nanoTime();
+
+        private final CompletableFuture<Void> permit;
+
+        Waiter(final Priority priority, final String flow, final double finish, final long sequence,
+               final CompletableFuture<Void> permit) {
+            this.priority = priority;
+            this.flow = flow;
+            this.finish = finish;
+            this.sequence = sequence;
+            this.permit = permit;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.stream.Collectors.toList;
+import static org.fcrepo.client.FedoraHeaderConstants.ETAG;
+import static org.fcrepo.client.FedoraHeaderConstants.LAST_MODIFIED;
+import static org.fcrepo.client.FedoraHeaderConstants.LINK;
+import static org.fcrepo.client.FedoraHeaderConstants.STATE_TOKEN;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Headers of a resource as last reported by the repository, held by a {@link MetadataCache}.
+ *
+ * @author agent
+ */
+public class ResourceMetadata {
+
+    private final URI uri;
+
+    private final Map<String, List<String>> headers;
+
+    private final long retrieved;
+
+    /**
+     * Create metadata
+     *
+     * @param uri the URI of the resource
+     * @param headers the response headers, in a case insensitive map
+     * @param retrieved the time the headers were received, in milliseconds
+     */
+    ResourceMetadata(final URI uri, final Map<String, List<String>> headers, final long retrieved) {
+        this.uri = uri;
+        this.headers = unmodifiableMap(headers);
+        this.retrieved = retrieved;
+    }
+
+    /**
+     * @return the URI of the resource
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * @return all headers of the resource
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param name name of a header
+     * @return all values of the header
+     */
+    public List<String> getHeaderValues(final String name) {
+        return headers.getOrDefault(name, emptyList());
+    }
+
+    /**
+     * @param name name of a header
+     * @return the first value of the header, or null if not present
+     */
+    public String getHeaderValue(final String name) {
+        final List<String> values = getHeaderValues(name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * @return the ETag of the resource, or null if not present
+     */
+    public String getEtag() {
+        return getHeaderValue(ETAG);
+    }
+
+    /**
+     * @return the state token of the resource, or null if not present
+     */
+    public String getStateToken() {
+        return getHeaderValue(STATE_TOKEN);
+    }
+
+    /**
+     * @return the last modification date of the resource, or null if not present
+     */
+    public String getLastModified() {
+        return getHeaderValue(LAST_MODIFIED);
+    }
+
+    /**
+     * @param relationship the relationship of links to return
+     * @return the URIs of the link headers with the given relationship
+     */
+    public List<URI> getLinkHeaders(final String relationship) {
+        return getHeaderValues(LINK).stream().map(FcrepoLink::new).filter(link -> link.getRel().equals(relationship))
+                .map(FcrepoLink::getUri).collect(toList());
+    }
+
+    /**
+     * @param typeString the URI of a type
+     * @return true if the resource has the given type, such as its interaction model
+     */
+    public boolean hasType(final String typeString) {
+        return getLinkHeaders("type").contains(URI.create(typeString));
+    }
+
+    /**
+     * @return how long ago the headers were received from the repository
+     */
+    public Duration getAge() {
+        return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - retrieved));
+    }
+
+    long getRetrieved() {
+        return retrieved;
+    }
+}
@@ -0,0 +1,763 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT;
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT_DATETIME;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.fcrepo.client.FedoraHeaderConstants.CACHE_CONTROL;
+import static org.fcrepo.client.FedoraHeaderConstants.ETAG;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_MODIFIED_SINCE;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_NONE_MATCH;
+import static org.fcrepo.client.FedoraHeaderConstants.LAST_MODIFIED;
+import static org.fcrepo.client.FedoraHeaderConstants.PREFER;
+import static org.fcrepo.client.FedoraHeaderConstants.RANGE;
+import static org.fcrepo.client.FedoraHeaderConstants.WANT_DIGEST;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * In-memory cache of GET responses, bounded by the total size of the cached bodies. Fresh entries are served without
+ * contacting the repository; stale entries carrying an ETag or Last-Modified date are revalidated with a conditional
+ * request, and a 304 response serves the cached body. Writes made through the same client invalidate the cached
+ * responses of the resource they modify, and writes made within a transaction invalidate them again once the
+ * transaction is committed or rolled back, since reads outside of it only see the writes from then on.
+ * <p>
+ * An entry is fresh for the {@code max-age} of its {@code Cache-Control} header or, failing that, for the configured
+ * freshness lifetime. Responses marked {@code no-store} are not cached, and responses marked {@code no-cache} are
+ * revalidated on every use. Requests made within a transaction, for a range or with their own conditional headers
+ * bypass the cache.
+ * </p>
+ * <p>
+ * Stale entries may also be served straight away while they are refreshed in the background
+ * ({@code stale-while-revalidate}), and in place of a server error or connection failure ({@code stale-if-error}),
+ * each for a bounded time after they became stale. Both can be set for all requests here, or per request with the
+ * directives of the same name in its {@code Cache-Control} header, as set by {@link GetBuilder}.
+ * </p>
+ * <p>
+ * Eviction follows W-TinyLFU: new entries land in a small LRU window, and an entry leaving the window only displaces
+ * the least recently used entry of the main area if it has been requested more often, as estimated by a count-min
+ * sketch of recent requests. A burst of one-off reads therefore cannot flush the descriptions read over and over.
+ * </p>
+ *
+ * @author agent
+ */
+public class ResponseCache {
+
+    private static final int WINDOW_PERCENT = 1;
+
+    private static final Set<String> WRITE_METHODS = Set.of("PUT", "PATCH", "DELETE", "POST");
+
+    private long maxBytes = 64L * 1024 * 1024;
+
+    private long maxEntryBytes = 1024 * 1024;
+
+    private long freshness = 5000;
+
+    private long staleWhileRevalidate;
+
+    private long staleIfError;
+
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, Set<String>> keysByUri = new HashMap<>();
+
+    private final TransactionWrites transactions = new TransactionWrites();
+
+    private FrequencySketch sketch = new FrequencySketch(maxBytes);
+
+    private long windowBytes;
+
+    private long mainBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long revalidations;
+
+    private long staleHits;
+
+    private long staleIfErrorHits;
+
+    private long evictions;
+
+    /**
+     * Set the maximum total size of the cached response bodies
+     *
+     * @param maxBytes maximum size in bytes
+     * @return this cache
+     */
+    public synchronized ResponseCache maxBytes(final long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.sketch = new FrequencySketch(maxBytes);
+        evict();
+        return this;
+    }
+
+    /**
+     * Set the size above which a response is not cached
+     *
+     * @param maxEntryBytes maximum size of a cached body in bytes
+     * @return this cache
+     */
+    public synchronized ResponseCache maxEntryBytes(final long maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+        return this;
+    }
+
+    /**
+     * Set how long responses without a {@code max-age} are served without revalidation
+     *
+     * @param freshness freshness lifetime in milliseconds, zero to revalidate on every use
+     * @return this cache
+     */
+    public synchronized ResponseCache freshness(final long freshness) {
+        this.freshness = freshness;
+        return this;
+    }
+
+    /**
+     * Serve stale entries while refreshing them in the background, for up to the given time after they became stale
+     *
+     * @param staleWhileRevalidate time in milliseconds, zero to always wait for revalidation
+     * @return this cache
+     */
+    public synchronized ResponseCache staleWhileRevalidate(final long staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+        return this;
+    }
+
+    /**
+     * Serve stale entries when the repository answers with a server error or cannot be reached, for up to the given
+     * time after they became stale
+     *
+     * @param staleIfError time in milliseconds, zero to pass errors on
+     * @return this cache
+     */
+    public synchronized ResponseCache staleIfError(final long staleIfError) {
+        this.staleIfError = staleIfError;
+        return this;
+    }
+
+    /**
+     * @return the number of requests served from a fresh entry
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of cacheable requests which had to fetch a full response
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of requests served from an entry revalidated with a 304 response
+     */
+    public synchronized long getRevalidations() {
+        return revalidations;
+    }
+
+    /**
+     * @return the number of requests served from a stale entry while it was refreshed in the background
+     */
+    public synchronized long getStaleHits() {
+        return staleHits;
+    }
+
+    /**
+     * @return the number of requests served from a stale entry because the repository failed
+     */
+    public synchronized long getStaleIfErrorHits() {
+        return staleIfErrorHits;
+    }
+
+    /**
+     * @return the share of cacheable requests served from the cache, whether fresh, revalidated or stale
+     */
+    public synchronized double getHitRatio() {
+        final long requests = getRequests();
+        return requests == 0 ? 0 : (double) (requests - misses) / requests;
+    }
+
+    /**
+     * @return the share of cacheable requests which were revalidated with a 304 response
+     */
+    public synchronized double getRevalidationRatio() {
+        final long requests = getRequests();
+        return requests == 0 ? 0 : (double) revalidations / requests;
+    }
+
+    private long getRequests() {
+        return hits + revalidations + staleHits + staleIfErrorHits + misses;
+    }
+
+    /**
+     * @return the number of entries evicted or refused to stay within the size budget
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the total size of the cached bodies in bytes
+     */
+    public synchronized long getSize() {
+        return windowBytes + mainBytes;
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public synchronized int getEntryCount() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * Drop every cached response
+     */
+    public synchronized void clear() {
+        window.clear();
+        main.clear();
+        keysByUri.clear();
+        windowBytes = 0;
+        mainBytes = 0;
+    }
+
+    /**
+     * Drop the cached responses of a resource, along with those of its description or described binary and of its
+     * parent container, whose containment may have changed
+     *
+     * @param uri the URI of the resource
+     */
+    public synchronized void invalidate(final URI uri) {
+        for (final String related : relatedUris(uri)) {
+            final Set<String> keys = keysByUri.remove(related);
+            if (keys != null) {
+                keys.forEach(this::remove);
+            }
+        }
+    }
+
+    /**
+     * Drop the cached responses which a write about to be sent may make obsolete, and remember the written resource
+     * if the write is made within a transaction
+     *
+     * @param request the write
+     * @param uri the URI of the written resource
+     */
+    synchronized void startWrite(final HttpRequestBase request, final URI uri) {
+        invalidate(uri);
+        transactions.record(request, uri);
+    }
+
+    /**
+     * Drop the cached responses which a completed write may have made obsolete, including those cached while it was
+     * in flight and, if it commits or rolls back a transaction, those of every resource written within it
+     *
+     * @param request the write
+     * @param uri the URI of the written resource
+     */
+    synchronized void completeWrite(final HttpRequestBase request, final URI uri) {
+        invalidate(uri);
+        transactions.end(request, uri).forEach(this::invalidate);
+    }
+
+    /**
+     * Get the cache key of a request
+     *
+     * @param request the request
+     * @return the key, or null if the response to the request may not be cached
+     */
+    static String keyOf(final HttpRequestBase request) {
+        if (!"GET".equals(request.getMethod()) || request.containsHeader(RANGE) ||
+                request.containsHeader(ATOMIC_ID) || request.containsHeader(IF_NONE_MATCH) ||
+                request.containsHeader(IF_MODIFIED_SINCE)) {
+            return null;
+        }
+        final StringBuilder key = new StringBuilder(request.getURI().toString());
+        for (final String name : List.of(ACCEPT, PREFER, ACCEPT_DATETIME, WANT_DIGEST)) {
+            key.append('\n');
+            for (final Header header : request.getHeaders(name)) {
+                key.append(header.getValue()).append(';');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param request a request
+     * @return true if the request modifies the resource it is made to
+     */
+    static boolean isWrite(final HttpRequestBase request) {
+        return WRITE_METHODS.contains(request.getMethod());
+    }
+
+    /**
+     * @param request a request
+     * @return true if the caller asked for the response to be revalidated
+     */
+    static boolean requiresRevalidation(final HttpRequestBase request) {
+        final Header cacheControl = request.getFirstHeader(CACHE_CONTROL);
+        return cacheControl != null && cacheControl.getValue().contains("no-cache");
+    }
+
+    /**
+     * Get how long after becoming stale an entry may be served while it is refreshed
+     *
+     * @param request the request, whose {@code stale-while-revalidate} directive takes precedence
+     * @return time in milliseconds
+     */
+    synchronized long staleWhileRevalidateFor(final HttpRequestBase request) {
+        final long requested = requestDirective(request, "stale-while-revalidate");
+        return requested >= 0 ? requested : staleWhileRevalidate;
+    }
+
+    /**
+     * Get how long after becoming stale an entry may be served in place of an error
+     *
+     * @param request the request, whose {@code stale-if-error} directive takes precedence
+     * @return time in milliseconds
+     */
+    synchronized long staleIfErrorFor(final HttpRequestBase request) {
+        final long requested = requestDirective(request, "stale-if-error");
+        return requested >= 0 ? requested : staleIfError;
+    }
+
+    /**
+     * @return the value of a directive of the Cache-Control header of a request in milliseconds, or -1 if absent
+     */
+    private static long requestDirective(final HttpRequestBase request, final String name) {
+        for (final Header header : request.getHeaders(CACHE_CONTROL)) {
+            for (final String directive : header.getValue().toLowerCase().split(",")) {
+                final String[] parts = directive.split("=", 2);
+                if (parts[0].trim().equals(name) && parts.length == 2) {
+                    try {
+                        return SECONDS.toMillis(Long.parseLong(parts[1].trim()));
+                    } catch (final NumberFormatException ex) {
+                        return -1;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the size above which a response is not cached
+     */
+    synchronized long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Look up a cached response, counting the request towards the popularity of the key
+     *
+     * @param key the cache key
+     * @return the entry, or null if none is cached
+     */
+    synchronized Entry get(final String key) {
+        sketch.increment(key);
+        final Entry entry = window.get(key);
+        return entry != null ? entry : main.get(key);
+    }
+
+    /**
+     * Cache a full response, replacing any previous entry for the key
+     *
+     * @param key the cache key
+     * @param response the response, whose body has been read into memory
+     * @param body the body of the response
+     * @return the new entry, or null if the response may not be cached
+     */
+    synchronized Entry put(final String key, final FcrepoResponse response, final byte[] body) {
+        remove(key);
+        final long lifetime = freshnessOf(response.getHeaderValue(CACHE_CONTROL));
+        if (lifetime < 0 || body.length > maxEntryBytes) {
+            return null;
+        }
+        final Entry entry = new Entry(key, response.getUrl(), response.getStatusCode(), response.getStatusText(),
+                copyOf(response.getHeaders()), body, lifetime);
+        window.put(key, entry);
+        windowBytes += entry.weight;
+        keysByUri.computeIfAbsent(uriOf(key), uri -> new HashSet<>()).add(key);
+        evict();
+        return entry;
+    }
+
+    /**
+     * Refresh an entry after a 304 response to its revalidation
+     *
+     * @param entry the cached entry
+     * @param notModified the 304 response
+     */
+    void refresh(final Entry entry, final FcrepoResponse notModified) {
+        entry.refresh(copyOf(notModified.getHeaders()));
+    }
+
+    /**
+     * Drop a single cached response
+     *
+     * @param key the cache key
+     */
+    synchronized void remove(final String key) {
+        Entry entry = window.remove(key);
+        if (entry != null) {
+            windowBytes -= entry.weight;
+        } else {
+            entry = main.remove(key);
+            if (entry == null) {
+                return;
+            }
+            mainBytes -= entry.weight;
+        }
+        final Set<String> keys = keysByUri.get(uriOf(key));
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByUri.remove(uriOf(key));
+        }
+    }
+
+    synchronized void recordHit() {
+        hits++;
+    }
+
+    synchronized void recordMiss() {
+        misses++;
+    }
+
+    synchronized void recordRevalidation() {
+        revalidations++;
+    }
+
+    synchronized void recordStaleHit() {
+        staleHits++;
+    }
+
+    synchronized void recordStaleIfErrorHit() {
+        staleIfErrorHits++;
+    }
+
+    /**
+     * Move entries out of the window while it is over its share of the budget, admitting each into the main area
+     * only if it is requested more often than the entries it would displace
+     */
+    private void evict() {
+        final long windowMax = Math.max(1, maxBytes * WINDOW_PERCENT / 100);
+        final long mainMax = maxBytes - windowMax;
+        while (windowBytes > windowMax && !window.isEmpty()) {
+            final Iterator<Entry> eldest = window.values().iterator();
+            final Entry candidate = eldest.next();
+            eldest.remove();
+            windowBytes -= candidate.weight;
+            if (!admit(candidate, mainMax)) {
+                evictions++;
+                final Set<String> keys = keysByUri.get(uriOf(candidate.key));
+                if (keys != null && keys.remove(candidate.key) && keys.isEmpty()) {
+                    keysByUri.remove(uriOf(candidate.key));
+                }
+            }
+        }
+        while (mainBytes > mainMax && !main.isEmpty()) {
+            final Entry victim = main.values().iterator().next();
+            remove(victim.key);
+            evictions++;
+        }
+    }
+
+    private boolean admit(final Entry candidate, final long mainMax) {
+        if (candidate.weight > mainMax) {
+            return false;
+        }
+        final int frequency = sketch.frequency(candidate.key);
+        final List<Entry> victims = new ArrayList<>();
+        long freed = 0;
+        final Iterator<Entry> lru = main.values().iterator();
+        while (mainBytes - freed + candidate.weight > mainMax) {
+            final Entry victim = lru.next();
+            if (sketch.frequency(victim.key) >= frequency) {
+                return false;
+            }
+            victims.add(victim);
+            freed += victim.weight;
+        }
+        for (final Entry victim : victims) {
+            remove(victim.key);
+            evictions++;
+        }
+        main.put(candidate.key, candidate);
+        mainBytes += candidate.weight;
+        return true;
+    }
+
+    /**
+     * @param cacheControl the Cache-Control header of a response, if any
+     * @return the freshness lifetime of the response in milliseconds, or -1 if it may not be stored
+     */
+    private synchronized long freshnessOf(final String cacheControl) {
+        if (cacheControl == null) {
+            return freshness;
+        }
+        long lifetime = freshness;
+        boolean noCache = false;
+        for (final String directive : cacheControl.toLowerCase().split(",")) {
+            final String[] parts = directive.split("=", 2);
+            final String name = parts[0].trim();
+            if (name.equals("no-store")) {
+                return -1;
+            } else if (name.equals("no-cache")) {
+                noCache = true;
+            } else if (name.equals("max-age") && parts.length == 2) {
+                try {
+                    lifetime = SECONDS.toMillis(Long.parseLong(parts[1].trim().replace("\"", "")));
+                } catch (final NumberFormatException ex) {
+                    lifetime = 0;
+                }
+            }
+        }
+        return noCache ? 0 : lifetime;
+    }
+
+    private static Map<String, List<String>> copyOf(final Map<String, List<String>> headers) {
+        final Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            headers.forEach((name, values) -> copy.put(name, new ArrayList<>(values)));
+        }
+        return copy;
+    }
+
+    private static String uriOf(final String key) {
+        return key.substring(0, key.indexOf('\n'));
+    }
+
+    /**
+     * @param uri the URI of a resource being written
+     * @return the URIs whose representations a write to the resource may change: the resource, its description or
+     *         described binary, and its parent container
+     */
+    static List<String> relatedUris(final URI uri) {
+        final String path = uri.toString().replaceAll("/+$", "");
+        final List<String> related = new ArrayList<>();
+        related.add(path);
+        final String base = path.endsWith("/fcr:metadata") ? path.substring(0, path.length() - 13) : path;
+        related.add(base);
+        related.add(base + "/fcr:metadata");
+        final int slash = base.lastIndexOf('/');
+        if (slash > base.indexOf("//") + 1) {
+            related.add(base.substring(0, slash));
+            related.add(base.substring(0, slash) + "/");
+        }
+        related.add(path + "/");
+        return related;
+    }
+
+    /**
+     * A cached response
+     */
+    class Entry {
+
+        private final String key;
+
+        private final URI url;
+
+        private final int statusCode;
+
+        private final String statusText;
+
+        private final Map<String, List<String>> headers;
+
+        private final byte[] body;
+
+        private final long weight;
+
+        private volatile long expires;
+
+        private volatile long validated = System.nanoTime();
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(final String key, final URI url, final int statusCode, final String statusText,
+              final Map<String, List<String>> headers, final byte[] body, final long lifetime) {
+            this.key = key;
+            this.url = url;
+            this.statusCode = statusCode;
+            this.statusText = statusText;
+            this.headers = headers;
+            this.body = body;
+            this.weight = body.length + key.length();
+            this.expires = validated + MILLISECONDS.toNanos(lifetime);
+        }
+
+        /**
+         * @return true if the entry may be served without revalidation
+         */
+        boolean isFresh() {
+            return System.nanoTime() - expires < 0;
+        }
+
+        /**
+         * @param window time in milliseconds
+         * @return true if the entry became stale no longer than the given time ago
+         */
+        boolean isStaleWithin(final long window) {
+            return window > 0 && System.nanoTime() - expires <= MILLISECONDS.toNanos(window);
+        }
+
+        /**
+         * Claim the background refresh of this entry
+         *
+         * @return true if no refresh was already in progress
+         */
+        boolean startRefresh() {
+            return refreshing.compareAndSet(false, true);
+        }
+
+        void endRefresh() {
+            refreshing.set(false);
+        }
+
+        /**
+         * Add the validators of this entry to a request, so that the repository answers 304 if it is still current
+         *
+         * @param request the request
+         * @return true if the entry has a validator
+         */
+        boolean addValidators(final HttpRequestBase request) {
+            final String etag = first(ETAG);
+            final String lastModified = first(LAST_MODIFIED);
+            if (etag != null) {
+                request.setHeader(IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                request.setHeader(IF_MODIFIED_SINCE, lastModified);
+            }
+            return etag != null || lastModified != null;
+        }
+
+        /**
+         * Merge the headers of a 304 response into the entry and restart its freshness lifetime
+         *
+         * @param updated the headers of the 304 response
+         */
+        void refresh(final Map<String, List<String>> updated) {
+            final long lifetime;
+            synchronized (this) {
+                headers.putAll(updated);
+                lifetime = freshnessOf(first(CACHE_CONTROL));
+            }
+            validated = System.nanoTime();
+            expires = validated + MILLISECONDS.toNanos(Math.max(0, lifetime));
+        }
+
+        /**
+         * @return a new response with a copy of the cached headers and body
+         */
+        synchronized FcrepoResponse toResponse() {
+            final FcrepoResponse response = new FcrepoResponse(url, statusCode, copyOf(headers),
+                    new ByteArrayInputStream(body));
+            response.setStatusText(statusText);
+            response.setFromCache(true);
+            response.setAge(Duration.ofNanos(System.nanoTime() - validated));
+            return response;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        private synchronized String first(final String name) {
+            final List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each key was requested recently. Counters are halved
+     * once the number of recorded requests reaches ten times the width of the sketch, so that popularity fades.
+     */
+    private static class FrequencySketch {
+
+        private static final int DEPTH = 4;
+
+        private static final int MAX_COUNT = 15;
+
+        private static final int[] SEEDS = {0x97cb3127, 0x5c6f3a15, 0x3f1e29b7, 0x6a8d4e53};
+
+        private final byte[][] table;
+
+        private final int mask;
+
+        private final int sampleSize;
+
+        private int additions;
+
+        FrequencySketch(final long maxBytes) {
+            // sized for entries of about 4KB, the typical size of an RDF description
+            final long entries = Math.max(256, Math.min(1 << 20, maxBytes / 4096));
+            final int width = Integer.highestOneBit((int) entries - 1) << 1;
+            this.table = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(final String key) {
+            final int hash = key.hashCode();
+            for (int i = 0; i < DEPTH; i++) {
+                final int index = indexOf(hash, i);
+                if (table[i][index] < MAX_COUNT) {
+                    table[i][index]++;
+                }
+            }
+            if (++additions == sampleSize) {
+                for (final byte[] row : table) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(final String key) {
+            final int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(final int hash, final int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            h ^= h >>> 16;
+            return h & mask;
+        }
+    }
+}
@@ -12,6 +12,8 @@ import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT_DATETIME;
 
 import java.net.URI;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.http.client.config.RequestConfig;
 
@@ -22,10 +24,53 @@ import org.apache.http.client.config.RequestConfig;
  */
 public abstract class RetrieveRequestBuilder extends RequestBuilder {
 
+    // Policy for hedging this request, if any
+    private HedgingPolicy hedgingPolicy;
+
     protected RetrieveRequestBuilder(final URI uri, final FcrepoClient client) {
         super(uri, client);
     }
 
+    /**
+     * Hedge this request: if it is slow to respond, send a duplicate and use whichever response arrives first.
+     * The response is buffered in memory, so hedging is best suited to small responses.
+     *
+     * @param hedgingPolicy the hedging policy, shared between requests
+     * @return this builder
+     */
+    public RetrieveRequestBuilder hedge(final HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+        return this;
+    }
+
+    @Override
+    public FcrepoResponse perform() throws FcrepoOperationFailedException {
+        if (hedgingPolicy == null) {
+            return super.perform();
+        }
+        final CompletableFuture<FcrepoResponse> response = performAsync();
+        try {
+            return response.get();
+        } catch (final InterruptedException ex) {
+            response.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new FcrepoOperationFailedException(targetUri, -1, "Interrupted while waiting for the response");
+        } catch (final ExecutionException ex) {
+            if (ex.getCause() instanceof FcrepoOperationFailedException) {
+                throw (FcrepoOperationFailedException) ex.getCause();
+            }
+            throw new FcrepoOperationFailedException(targetUri, -1, ex.getCause().getMessage());
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> performAsync() {
+        if (hedgingPolicy == null) {
+            return super.performAsync();
+        }
+        return hedgingPolicy.execute(client, targetUri, request, priority, caller);
+    }
+
     /**
      * Disable following redirects.
      *
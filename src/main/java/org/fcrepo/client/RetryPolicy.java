@@ -0,0 +1,292 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.HeaderHelpers.UTC_RFC_1123_FORMATTER;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Policy deciding whether and when a failed request is retried. Retries use exponential backoff with full jitter,
+ * honor the Retry-After header of 429 and 503 responses, and draw from a retry budget so that retries cannot
+ * amplify an overload of the repository.
+ * <p>
+ * By default GET, HEAD, OPTIONS, PUT and DELETE requests are attempted up to 3 times when the connection fails or
+ * the repository responds with 429, 502, 503 or 504. Requests with a body are only retried when the body can be
+ * replayed, such as a body provided as a {@link java.io.File}.
+ * </p>
+ *
+ * @author agent
+ */
+public class RetryPolicy {
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
+    private int maxAttempts = 3;
+
+    private long baseDelay = 100;
+
+    private long maxDelay = 10000;
+
+    private final Set<Integer> retryableStatuses = new TreeSet<>(Set.of(SC_TOO_MANY_REQUESTS,
+            HttpStatus.SC_BAD_GATEWAY, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_GATEWAY_TIMEOUT));
+
+    private final Set<HttpMethods> retryableMethods = EnumSet.of(HttpMethods.GET, HttpMethods.HEAD,
+            HttpMethods.OPTIONS, HttpMethods.PUT, HttpMethods.DELETE);
+
+    private boolean retryOnConnectionFailure = true;
+
+    private RetryBudget budget = new RetryBudget(0.2, 10);
+
+    /**
+     * Set the maximum number of attempts of a request, including the first one
+     *
+     * @param maxAttempts maximum number of attempts
+     * @return this policy
+     */
+    public RetryPolicy maxAttempts(final int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Set the backoff delays. The delay before retry n is drawn uniformly between zero and
+     * {@code min(maxDelay, baseDelay * 2^(n-1))}.
+     *
+     * @param baseDelay base delay in milliseconds
+     * @param maxDelay maximum delay in milliseconds, also the longest Retry-After which will be honored
+     * @return this policy
+     */
+    public RetryPolicy backoff(final long baseDelay, final long maxDelay) {
+        if (baseDelay < 0 || maxDelay < baseDelay) {
+            throw new IllegalArgumentException("Delays must be positive with the max delay at least the base delay");
+        }
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        return this;
+    }
+
+    /**
+     * Replace the HTTP statuses for which requests are retried
+     *
+     * @param statuses the retryable statuses
+     * @return this policy
+     */
+    public RetryPolicy retryOnStatus(final Integer... statuses) {
+        this.retryableStatuses.clear();
+        this.retryableStatuses.addAll(Set.of(statuses));
+        return this;
+    }
+
+    /**
+     * Replace the HTTP methods which are retried. Only idempotent methods should be retried.
+     *
+     * @param methods the retryable methods
+     * @return this policy
+     */
+    public RetryPolicy retryMethods(final HttpMethods... methods) {
+        this.retryableMethods.clear();
+        this.retryableMethods.addAll(Set.of(methods));
+        return this;
+    }
+
+    /**
+     * Set whether requests are retried when the connection to the repository fails, for example when it is reset
+     *
+     * @param retryOnConnectionFailure true to retry on connection failures
+     * @return this policy
+     */
+    public RetryPolicy retryOnConnectionFailure(final boolean retryOnConnectionFailure) {
+        this.retryOnConnectionFailure = retryOnConnectionFailure;
+        return this;
+    }
+
+    /**
+     * Set the retry budget. Every request deposits {@code ratio} retry tokens and the budget is refilled with
+     * {@code minRetriesPerSecond} tokens per second, so retries are limited to roughly {@code ratio} of the request
+     * rate plus a small floor for low traffic.
+     *
+     * @param ratio tokens deposited per request
+     * @param minRetriesPerSecond tokens added per second regardless of traffic
+     * @return this policy
+     */
+    public RetryPolicy budget(final double ratio, final int minRetriesPerSecond) {
+        this.budget = new RetryBudget(ratio, minRetriesPerSecond);
+        return this;
+    }
+
+    /**
+     * @return the maximum number of attempts, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the retry budget of this policy
+     */
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Whether the given request may be retried at all, based on its method and whether its body can be replayed
+     *
+     * @param request the request
+     * @return true if the request is retryable
+     */
+    public boolean isRetryable(final HttpRequestBase request) {
+        final HttpMethods method;
+        try {
+            method = HttpMethods.valueOf(request.getMethod());
+        } catch (final IllegalArgumentException ex) {
+            return false;
+        }
+        if (!retryableMethods.contains(method)) {
+            return false;
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+
+    /**
+     * @param status the HTTP status of a response
+     * @return true if responses with this status are retried
+     */
+    public boolean isRetryableStatus(final int status) {
+        return retryableStatuses.contains(status);
+    }
+
+    /**
+     * @return true if connection failures are retried
+     */
+    public boolean isRetryOnConnectionFailure() {
+        return retryOnConnectionFailure;
+    }
+
+    /**
+     * Compute the delay before the given retry
+     *
+     * @param retry the number of the retry, starting at 1
+     * @param response the response which failed, or null if the connection failed
+     * @return the delay in milliseconds, or -1 if the repository asked for a longer delay than the max delay
+     */
+    public long delayBeforeRetry(final int retry, final FcrepoResponse response) {
+        final Long retryAfter = response == null ? null : retryAfter(response);
+        if (retryAfter != null) {
+            return retryAfter <= maxDelay ? retryAfter : -1;
+        }
+        final long ceiling = Math.min(maxDelay, baseDelay << Math.min(retry - 1, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Parse the Retry-After header of a response, given either as delay seconds or as an HTTP date
+     *
+     * @return the delay in milliseconds, or null if absent or invalid
+     */
+    static Long retryAfter(final FcrepoResponse response) {
+        final String value = response.getHeaderValue("Retry-After");
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (final NumberFormatException ex) {
+            try {
+                final Instant date = Instant.from(UTC_RFC_1123_FORMATTER.parse(value.trim()));
+                return Math.max(0, Duration.between(Instant.now(), date).toMillis());
+            } catch (final DateTimeParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Token bucket limiting retries to a fraction of the request rate
+     *
+     * @author agent
+     */
+    public static class RetryBudget {
+
+        private final double ratio;
+
+        private final int minRetriesPerSecond;
+
+        private final double maxTokens;
+
+        private double tokens;
+
+        private long lastRefill = System.nanoTime();
+
+        /**
+         * @param ratio tokens deposited per request
+         * @param minRetriesPerSecond tokens added per second regardless of traffic
+         */
+        public RetryBudget(final double ratio, final int minRetriesPerSecond) {
+            if (ratio < 0 || minRetriesPerSecond < 0) {
+                throw new IllegalArgumentException("Retry budget values cannot be negative");
+            }
+            this.ratio = ratio;
+            this.minRetriesPerSecond = minRetriesPerSecond;
+            this.maxTokens = Math.max(1, minRetriesPerSecond) * 10.0;
+            this.tokens = minRetriesPerSecond;
+        }
+
+        /**
+         * Record a request, depositing its share of retry tokens
+         */
+        public synchronized void deposit() {
+            refill();
+            tokens = Math.min(maxTokens, tokens + ratio);
+        }
+
+        /**
+         * Withdraw a token for a retry
+         *
+         * @return true if the retry fits in the budget
+         */
+        public synchronized boolean tryWithdraw() {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the number of retries currently available
+         */
+        public synchronized double getAvailable() {
+            refill();
+            return tokens;
+        }
+
+        private void refill() {
+            final long now = System.nanoTime();
+            tokens = Math.min(maxTokens, tokens + minRetriesPerSecond * (now - lastRefill) / 1e9);
+            lastRefill = now;
+        }
+    }
+}
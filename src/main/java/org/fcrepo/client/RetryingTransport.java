@@ -0,0 +1,161 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.slf4j.Logger;
+
+/**
+ * {@link FcrepoTransport} decorator retrying failed requests according to a {@link RetryPolicy}.
+ *
+ * @author agent
+ */
+public class RetryingTransport implements FcrepoTransport {
+
+    private static final Logger LOGGER = getLogger(RetryingTransport.class);
+
+    private final FcrepoTransport delegate;
+
+    private final RetryPolicy policy;
+
+    /**
+     * Create a retrying transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param policy the retry policy
+     */
+    public RetryingTransport(final FcrepoTransport delegate, final RetryPolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        policy.getBudget().deposit();
+        final boolean retryable = policy.isRetryable(request);
+        for (int attempt = 1; ; attempt++) {
+            final FcrepoResponse response;
+            try {
+                response = delegate.execute(url, request);
+            } catch (final IOException ex) {
+                // an interrupted request is given up without spending the retry budget
+                final long delay = ex instanceof InterruptedIOException ? -1 : retryDelay(retryable, attempt, null);
+                if (delay < 0) {
+                    throw ex;
+                }
+                LOGGER.debug("Retrying {} {} in {}ms after: {}", request.getMethod(), url, delay, ex.getMessage());
+                pause(request, delay);
+                continue;
+            }
+
+            final long delay = retryable && policy.isRetryableStatus(response.getStatusCode()) ?
+                    retryDelay(true, attempt, response) : -1;
+            if (delay < 0) {
+                return response;
+            }
+            LOGGER.debug("Retrying {} {} in {}ms after status {}", request.getMethod(), url, delay,
+                    response.getStatusCode());
+            response.close();
+            pause(request, delay);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        policy.getBudget().deposit();
+        final CompletableFuture<FcrepoResponse> result = new CompletableFuture<>();
+        final AtomicReference<Future<?>> current = new AtomicReference<>();
+        attemptAsync(url, request, policy.isRetryable(request), 1, result, current);
+
+        // Cancelling the returned future cancels whichever attempt or pause is in progress
+        result.whenComplete((response, ex) -> {
+            final Future<?> attempt = current.get();
+            if (result.isCancelled() && attempt != null) {
+                attempt.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private void attemptAsync(final URI url, final HttpRequestBase request, final boolean retryable,
+                              final int attempt, final CompletableFuture<FcrepoResponse> result,
+                              final AtomicReference<Future<?>> current) {
+        if (result.isDone()) {
+            return;
+        }
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        current.set(exchange);
+        exchange.whenComplete((response, ex) -> {
+            final long delay;
+            if (ex != null) {
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ?
+                        ex.getCause() : ex;
+                delay = cause instanceof IOException ? retryDelay(retryable, attempt, null) : -1;
+                if (delay < 0) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+            } else {
+                delay = retryable && policy.isRetryableStatus(response.getStatusCode()) ?
+                        retryDelay(true, attempt, response) : -1;
+                if (delay < 0) {
+                    result.complete(response);
+                    return;
+                }
+            }
+            LOGGER.debug("Retrying {} {} in {}ms", request.getMethod(), url, delay);
+            request.reset();
+            final CompletableFuture<Void> pause = CompletableFuture.runAsync(
+                    () -> attemptAsync(url, request, retryable, attempt + 1, result, current),
+                    CompletableFuture.delayedExecutor(delay, MILLISECONDS));
+            current.set(pause);
+        });
+    }
+
+    /**
+     * Compute the delay before retrying a failed attempt
+     *
+     * @return the delay in milliseconds, or -1 if the request must not be retried
+     */
+    private long retryDelay(final boolean retryable, final int attempt, final FcrepoResponse response) {
+        if (!retryable || attempt >= policy.getMaxAttempts() ||
+                (response == null && !policy.isRetryOnConnectionFailure())) {
+            return -1;
+        }
+        final long delay = policy.delayBeforeRetry(attempt, response);
+        if (delay < 0 || !policy.getBudget().tryWithdraw()) {
+            return -1;
+        }
+        return delay;
+    }
+
+    private static void pause(final HttpRequestBase request, final long delay) throws InterruptedIOException {
+        request.reset();
+        try {
+            Thread.sleep(delay);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + request.getURI());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT;
+import static org.fcrepo.client.FedoraHeaderConstants.PREFER;
+import static org.fcrepo.client.FedoraHeaderConstants.WANT_DIGEST;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * Cache of the state of resources as seen within one transaction, so that reads following a write in the same
+ * transaction need not go back to the repository. It holds the headers of the write responses, such as the new ETag
+ * and links, and the GET and HEAD responses received within the transaction. A write to a resource drops what was
+ * cached for the resource, its description or described binary, its parent and the resources below it, which a
+ * DELETE removes along with it, before the response of the write is recorded.
+ * <p>
+ * The cache belongs to a single {@link TransactionalFcrepoClient}, so uncommitted state is never served to requests
+ * made outside the transaction, and it is discarded when the transaction is committed or rolled back.
+ * </p>
+ *
+ * @author agent
+ */
+public class TransactionCache {
+
+    private long maxBytes = 16L * 1024 * 1024;
+
+    private long maxEntryBytes = 1024 * 1024;
+
+    // headers of resources, by URI, sorted so that the resources below a written one can be found by prefix
+    private final TreeMap<String, Metadata> metadata = new TreeMap<>();
+
+    // bodies of GET responses, by URI and content negotiation headers, least recently used first
+    private final LinkedHashMap<String, Representation> representations = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final TreeMap<String, Set<String>> keysByUri = new TreeMap<>();
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Set the maximum total size of the cached response bodies
+     *
+     * @param maxBytes maximum size in bytes
+     * @return this cache
+     */
+    public synchronized TransactionCache maxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+        return this;
+    }
+
+    /**
+     * Set the maximum size of a single cached response body
+     *
+     * @param maxEntryBytes maximum size in bytes
+     * @return this cache
+     */
+    public synchronized TransactionCache maxEntryBytes(final long maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+        return this;
+    }
+
+    /**
+     * @return the number of reads served from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of reads sent to the repository
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of resources whose state is cached
+     */
+    public synchronized int getEntryCount() {
+        return metadata.size();
+    }
+
+    /**
+     * Drop all cached state
+     */
+    public synchronized void clear() {
+        metadata.clear();
+        representations.clear();
+        keysByUri.clear();
+        size = 0;
+    }
+
+    /**
+     * Drop the cached state of a resource, of its description or described binary, of its parent and of the
+     * resources below it
+     *
+     * @param uri the URI of the resource
+     */
+    public synchronized void invalidate(final URI uri) {
+        ResponseCache.relatedUris(uri).forEach(this::remove);
+        final String path = stripSlash(uri.toString());
+        new ArrayList<>(metadata.subMap(path + "/", true, path + "/\uffff", true).keySet()).forEach(this::remove);
+        new ArrayList<>(keysByUri.subMap(path + "/", true, path + "/\uffff", true).keySet()).forEach(this::remove);
+    }
+
+    private void remove(final String uri) {
+        metadata.remove(uri);
+        final Set<String> keys = keysByUri.remove(uri);
+        if (keys != null) {
+            keys.forEach(this::removeRepresentation);
+        }
+    }
+
+    long getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * Answer a HEAD request from the cached headers of the resource
+     *
+     * @return the response, or null if the request must go to the repository
+     */
+    synchronized FcrepoResponse head(final URI url, final HttpRequestBase request) {
+        final Metadata cached = metadata.get(uriOf(request));
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return response(url, cached.statusCode, cached.headers, null);
+    }
+
+    /**
+     * Answer a GET request from a cached response
+     *
+     * @return the response, or null if the request must go to the repository
+     */
+    synchronized FcrepoResponse get(final URI url, final HttpRequestBase request) {
+        final Representation cached = representations.get(keyOf(request));
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return response(url, cached.statusCode, cached.headers, cached.body);
+    }
+
+    /**
+     * Record the headers of a resource, as returned by a read or a write
+     *
+     * @param uri the URI of the resource
+     * @param statusCode the status to answer HEAD requests with
+     * @param headers the headers of the response
+     */
+    synchronized void putMetadata(final URI uri, final int statusCode, final Map<String, List<String>> headers) {
+        metadata.put(stripSlash(uri.toString()), new Metadata(statusCode, copyOf(headers)));
+    }
+
+    /**
+     * Record a GET response with its body
+     *
+     * @param request the GET request
+     * @param response the response
+     * @param body the body of the response
+     */
+    synchronized void putRepresentation(final HttpRequestBase request, final FcrepoResponse response,
+            final byte[] body) {
+        final String key = keyOf(request);
+        removeRepresentation(key);
+        representations.put(key, new Representation(response.getStatusCode(), copyOf(response.getHeaders()), body));
+        keysByUri.computeIfAbsent(uriOf(request), k -> new HashSet<>()).add(key);
+        size += body.length;
+        evict();
+    }
+
+    private void removeRepresentation(final String key) {
+        final Representation removed = representations.remove(key);
+        if (removed != null) {
+            forget(key, removed);
+        }
+    }
+
+    private void evict() {
+        final Iterator<Map.Entry<String, Representation>> lru = representations.entrySet().iterator();
+        while (size > maxBytes && lru.hasNext()) {
+            final Map.Entry<String, Representation> eldest = lru.next();
+            lru.remove();
+            forget(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void forget(final String key, final Representation removed) {
+        size -= removed.body.length;
+        final Set<String> keys = keysByUri.get(key.substring(0, key.indexOf('\n')));
+        if (keys != null) {
+            keys.remove(key);
+        }
+    }
+
+    private static FcrepoResponse response(final URI url, final int statusCode,
+            final Map<String, List<String>> headers, final byte[] body) {
+        final FcrepoResponse response = new FcrepoResponse(url, statusCode, copyOf(headers),
+                body == null ? null : new ByteArrayInputStream(body));
+        response.setFromCache(true);
+        return response;
+    }
+
+    private static String uriOf(final HttpRequestBase request) {
+        return stripSlash(request.getURI().toString());
+    }
+
+    private static String stripSlash(final String uri) {
+        return uri.replaceAll("/+$", "");
+    }
+
+    private static String keyOf(final HttpRequestBase request) {
+        final StringBuilder key = new StringBuilder(uriOf(request));
+        for (final String name : List.of(ACCEPT, PREFER, WANT_DIGEST)) {
+            key.append('\n');
+            for (final Header header : request.getHeaders(name)) {
+                key.append(header.getValue()).append(';');
+            }
+        }
+        return key.toString();
+    }
+
+    private static Map<String, List<String>> copyOf(final Map<String, List<String>> headers) {
+        final Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (headers != null) {
+            headers.forEach((name, values) -> copy.put(name, new ArrayList<>(values)));
+        }
+        return copy;
+    }
+
+    /**
+     * Headers of a resource
+     */
+    private static class Metadata {
+
+        private final int statusCode;
+
+        private final Map<String, List<String>> headers;
+
+        Metadata(final int statusCode, final Map<String, List<String>> headers) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * A GET response with its body
+     */
+    private static class Representation {
+
+        private final int statusCode;
+
+        private final Map<String, List<String>> headers;
+
+        private final byte[] body;
+
+        Representation(final int statusCode, final Map<String, List<String>> headers, final byte[] body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ACCEPT_DATETIME;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.fcrepo.client.FedoraHeaderConstants.ETAG;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_MODIFIED_SINCE;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_NONE_MATCH;
+import static org.fcrepo.client.FedoraHeaderConstants.RANGE;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * {@link FcrepoTransport} decorator of a {@link TransactionalFcrepoClient} serving reads made within the transaction
+ * from its {@link TransactionCache}, and recording the writes made within it. Committing or rolling back the
+ * transaction discards the cache.
+ *
+ * @author agent
+ */
+public class TransactionCachingTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final TransactionCache cache;
+
+    private final String transactionUri;
+
+    /**
+     * Create a transaction caching transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param cache the cache of the transaction
+     * @param transactionUri the URI of the transaction
+     */
+    public TransactionCachingTransport(final FcrepoTransport delegate, final TransactionCache cache,
+            final URI transactionUri) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.transactionUri = transactionUri.toString();
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        if (!isInTransaction(request)) {
+            return delegate.execute(url, request);
+        }
+        if (ResponseCache.isWrite(request)) {
+            cache.invalidate(request.getURI());
+            final FcrepoResponse response;
+            try {
+                response = delegate.execute(url, request);
+            } catch (final IOException | FcrepoOperationFailedException | RuntimeException ex) {
+                written(request, null);
+                throw ex;
+            }
+            return written(request, response);
+        }
+        if (!isCacheable(request)) {
+            return delegate.execute(url, request);
+        }
+        final FcrepoResponse cached = lookup(url, request);
+        if (cached != null) {
+            return cached;
+        }
+        return read(request, delegate.execute(url, request));
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        if (!isInTransaction(request)) {
+            return delegate.executeAsync(url, request);
+        }
+        if (ResponseCache.isWrite(request)) {
+            cache.invalidate(request.getURI());
+            return delegate.executeAsync(url, request).handle((response, ex) -> {
+                if (ex != null) {
+                    written(request, null);
+                    throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                }
+                return written(request, response);
+            });
+        }
+        if (!isCacheable(request)) {
+            return delegate.executeAsync(url, request);
+        }
+        final FcrepoResponse cached = lookup(url, request);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return delegate.executeAsync(url, request).thenApply(response -> {
+            try {
+                return read(request, response);
+            } catch (final IOException ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    private FcrepoResponse lookup(final URI url, final HttpRequestBase request) {
+        return "HEAD".equals(request.getMethod()) ? cache.head(url, request) : cache.get(url, request);
+    }
+
+    /**
+     * Record the outcome of a write: the end of the transaction discards the cache, and a successful write to a
+     * resource leaves its new headers
+     *
+     * @param request the write request
+     * @param response the response, or null if the write failed
+     * @return the response
+     */
+    private FcrepoResponse written(final HttpRequestBase request, final FcrepoResponse response) {
+        final String uri = request.getURI().toString();
+        if (uri.equals(transactionUri)) {
+            // commit or rollback; a keep-alive POST changes nothing
+            if (!"POST".equals(request.getMethod())) {
+                cache.clear();
+            }
+            return response;
+        }
+        cache.invalidate(request.getURI());
+        if (response == null || response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES ||
+                response.getHeaderValue(ETAG) == null || "DELETE".equals(request.getMethod())) {
+            return response;
+        }
+        // a POST answers with the headers of the resource it created
+        final URI target = "POST".equals(request.getMethod()) ? response.getLocation() : request.getURI();
+        if (target != null) {
+            cache.putMetadata(target, HttpStatus.SC_OK, response.getHeaders());
+        }
+        return response;
+    }
+
+    /**
+     * Record a successful read, keeping the body of a GET response unless it exceeds the maximum size of an entry
+     */
+    private FcrepoResponse read(final HttpRequestBase request, final FcrepoResponse response) throws IOException {
+        if (response.getStatusCode() != HttpStatus.SC_OK) {
+            return response;
+        }
+        cache.putMetadata(request.getURI(), HttpStatus.SC_OK, response.getHeaders());
+        if (!"GET".equals(request.getMethod()) || response.getBody() == null) {
+            return response;
+        }
+
+        final long limit = cache.getMaxEntryBytes();
+        final InputStream body = response.getBody();
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[8192];
+        int n;
+        while ((n = body.read(chunk, 0, (int) Math.min(chunk.length, limit + 1 - buffer.size()))) > 0) {
+            buffer.write(chunk, 0, n);
+            if (buffer.size() > limit) {
+                // too large to cache: hand back what was read followed by the rest of the stream
+                response.setBody(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), body));
+                return response;
+            }
+        }
+        body.close();
+        final byte[] bytes = buffer.toByteArray();
+        response.setBody(new ByteArrayInputStream(bytes));
+        cache.putRepresentation(request, response, bytes);
+        return response;
+    }
+
+    private boolean isInTransaction(final HttpRequestBase request) {
+        final Header atomicId = request.getFirstHeader(ATOMIC_ID);
+        return atomicId != null && atomicId.getValue().equals(transactionUri);
+    }
+
+    /**
+     * @return true for a HEAD or GET of the whole current state of a resource, without conditions of the caller
+     */
+    private static boolean isCacheable(final HttpRequestBase request) {
+        final String method = request.getMethod();
+        return ("HEAD".equals(method) || "GET".equals(method)) && !request.containsHeader(RANGE) &&
+                !request.containsHeader(ACCEPT_DATETIME) && !request.containsHeader(IF_NONE_MATCH) &&
+                !request.containsHeader(IF_MODIFIED_SINCE) && !ResponseCache.requiresRevalidation(request);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * {@link FcrepoTransport} decorator of a {@link TransactionalFcrepoClient} kept alive by a
+ * {@link TransactionKeepAlive}. It follows the expiry announced by every response within the transaction, ends the
+ * renewals once the transaction is committed or rolled back, and once the transaction is known to be dead aborts the
+ * requests in flight and fails later ones with a 410 without sending them.
+ *
+ * @author agent
+ */
+public class TransactionGuardTransport implements FcrepoTransport {
+
+    private final FcrepoTransport delegate;
+
+    private final TransactionalFcrepoClient client;
+
+    private final TransactionKeepAlive keepAlive;
+
+    private final String transactionUri;
+
+    // how to abort each request in flight
+    private final Map<HttpRequestBase, Runnable> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Create a transaction guard transport
+     *
+     * @param delegate the transport making the actual requests
+     * @param client the client of the transaction
+     * @param keepAlive the renewer keeping the transaction alive
+     */
+    public TransactionGuardTransport(final FcrepoTransport delegate, final TransactionalFcrepoClient client,
+            final TransactionKeepAlive keepAlive) {
+        this.delegate = delegate;
+        this.client = client;
+        this.keepAlive = keepAlive;
+        this.transactionUri = client.getTransactionURI().toString();
+    }
+
+    @Override
+    public FcrepoResponse execute(final URI url, final HttpRequestBase request)
+            throws IOException, FcrepoOperationFailedException {
+        checkAlive(url);
+        // every transport cancels its exchange when the request is aborted
+        inFlight.put(request, request::abort);
+        if (client.isExpired()) {
+            request.abort();
+        }
+        try {
+            return completed(request, delegate.execute(url, request));
+        } catch (final IOException ex) {
+            if (client.isExpired()) {
+                throw expired(url);
+            }
+            throw ex;
+        } finally {
+            inFlight.remove(request);
+        }
+    }
+
+    @Override
+    public CompletableFuture<FcrepoResponse> executeAsync(final URI url, final HttpRequestBase request) {
+        if (client.isExpired()) {
+            return CompletableFuture.failedFuture(expired(url));
+        }
+        final CompletableFuture<FcrepoResponse> exchange = delegate.executeAsync(url, request);
+        inFlight.put(request, () -> exchange.cancel(true));
+        // the transaction may have died while the request was being sent
+        if (client.isExpired()) {
+            exchange.cancel(true);
+        }
+        final CompletableFuture<FcrepoResponse> result = exchange.handle((response, ex) -> {
+            inFlight.remove(request);
+            if (ex == null) {
+                return completed(request, response);
+            }
+            if (client.isExpired()) {
+                throw new CompletionException(expired(url));
+            }
+            throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+        });
+
+        // Cancelling the returned future aborts the exchange
+        result.whenComplete((response, ex) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Mark the transaction dead, aborting the requests in flight within it
+     *
+     * @param reason why the transaction is dead
+     */
+    void expire(final String reason) {
+        client.setExpired(reason);
+        inFlight.values().forEach(Runnable::run);
+    }
+
+    private void checkAlive(final URI url) throws FcrepoOperationFailedException {
+        if (client.isExpired()) {
+            throw expired(url);
+        }
+    }
+
+    private FcrepoOperationFailedException expired(final URI url) {
+        return new FcrepoOperationFailedException(url, HttpStatus.SC_GONE, client.getExpiredReason());
+    }
+
+    private FcrepoResponse completed(final HttpRequestBase request, final FcrepoResponse response) {
+        final Instant expires = TransactionKeepAlive.expiresOf(response);
+        if (expires != null) {
+            client.setExpires(expires);
+        }
+        final String method = request.getMethod();
+        final int status = response.getStatusCode();
+        if (request.getURI().toString().equals(transactionUri) && ("PUT".equals(method) || "DELETE".equals(method)) &&
+                (status < HttpStatus.SC_MULTIPLE_CHOICES || status == HttpStatus.SC_NOT_FOUND ||
+                status == HttpStatus.SC_GONE)) {
+            // committed, rolled back, or already gone: nothing left to keep alive
+            keepAlive.deregister(client);
+        }
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        keepAlive.deregister(client);
+        delegate.close();
+    }
+}
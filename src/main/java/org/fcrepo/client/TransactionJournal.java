@@ -0,0 +1,477 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.fcrepo.client.FedoraHeaderConstants.ETAG;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_MATCH;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_STATE_TOKEN;
+import static org.fcrepo.client.FedoraHeaderConstants.IF_UNMODIFIED_SINCE;
+import static org.fcrepo.client.FedoraHeaderConstants.STATE_TOKEN;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+
+/**
+ * Journal of the writes made within a transaction, from which they can be replayed into a fresh transaction when the
+ * original one expires or cannot be committed because of a concurrent modification.
+ * <p>
+ * The journal records the method, URI and headers of each successful write, and a reference to its body: the file a
+ * body was read from, or a copy of any other body spooled to disk. The spool is bounded; once a body would exceed it,
+ * the journal stops recording and can no longer be replayed. When replayed, conditional writes are sent with the
+ * current ETag or state token of their resource within the fresh transaction, so they apply over the concurrent
+ * modifications which made the original transaction fail. Resources created by a POST may be given new URIs, in
+ * which case later writes to them or their children are redirected to the new URIs.
+ * </p>
+ *
+ * @author agent
+ */
+public class TransactionJournal implements Closeable {
+
+    private static final Logger LOGGER = getLogger(TransactionJournal.class);
+
+    // headers which belong to the transaction or to the transfer of the body, and are not replayed
+    private static final Set<String> TRANSIENT_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    // preconditions which are refreshed when replayed
+    private static final Set<String> CONDITIONS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        TRANSIENT_HEADERS.addAll(List.of(ATOMIC_ID, "Content-Length", "Transfer-Encoding", "Host"));
+        CONDITIONS.addAll(List.of(IF_MATCH, IF_STATE_TOKEN, IF_UNMODIFIED_SINCE));
+    }
+
+    private final Path spoolDirectory;
+
+    private final boolean ownDirectory;
+
+    private long maxSpoolBytes = 256L * 1024 * 1024;
+
+    private long spooled;
+
+    private boolean overflowed;
+
+    private List<Entry> entries = new ArrayList<>();
+
+    private URI transactionUri;
+
+    private int replays;
+
+    /**
+     * Create a journal spooling bodies to a temporary directory, deleted when the journal is closed
+     *
+     * @throws IOException if the directory cannot be created
+     */
+    public TransactionJournal() throws IOException {
+        this(Files.createTempDirectory("fcrepo-journal"), true);
+    }
+
+    /**
+     * Create a journal spooling bodies to the given directory
+     *
+     * @param spoolDirectory the directory
+     * @throws IOException if the directory cannot be created
+     */
+    public TransactionJournal(final Path spoolDirectory) throws IOException {
+        this(Files.createDirectories(spoolDirectory), false);
+    }
+
+    private TransactionJournal(final Path spoolDirectory, final boolean ownDirectory) {
+        this.spoolDirectory = spoolDirectory;
+        this.ownDirectory = ownDirectory;
+    }
+
+    /**
+     * Set the maximum total size of the bodies spooled to disk
+     *
+     * @param maxSpoolBytes maximum size in bytes
+     * @return this journal
+     */
+    public synchronized TransactionJournal maxSpoolBytes(final long maxSpoolBytes) {
+        this.maxSpoolBytes = maxSpoolBytes;
+        return this;
+    }
+
+    /**
+     * @return the number of writes recorded
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size of the bodies spooled to disk
+     */
+    public synchronized long getSpooledBytes() {
+        return spooled;
+    }
+
+    /**
+     * @return true if a body exceeded the spool, so that the journal can no longer be replayed
+     */
+    public synchronized boolean isOverflowed() {
+        return overflowed;
+    }
+
+    /**
+     * @return the number of times the journal was replayed
+     */
+    public synchronized int getReplays() {
+        return replays;
+    }
+
+    /**
+     * @return the transaction whose writes are recorded
+     */
+    public synchronized URI getTransactionUri() {
+        return transactionUri;
+    }
+
+    synchronized void attach(final URI transactionUri) {
+        this.transactionUri = transactionUri;
+    }
+
+    /**
+     * Prepare the entry of a write about to be sent, spooling its body. A body which cannot be read twice is replaced
+     * in the request by its spooled copy.
+     *
+     * @param request the write request
+     * @return the entry, or null if the journal no longer records
+     * @throws IOException if the body cannot be spooled
+     */
+    Entry prepare(final HttpRequestBase request) throws IOException {
+        if (isOverflowed()) {
+            return null;
+        }
+        final List<Header> headers = new ArrayList<>();
+        for (final Header header : request.getAllHeaders()) {
+            if (!TRANSIENT_HEADERS.contains(header.getName())) {
+                headers.add(new BasicHeader(header.getName(), header.getValue()));
+            }
+        }
+        final HttpEntity entity = request instanceof HttpEntityEnclosingRequestBase ?
+                ((HttpEntityEnclosingRequestBase) request).getEntity() : null;
+        if (entity == null) {
+            return new Entry(request.getMethod(), request.getURI(), headers, null, false);
+        }
+        if (entity instanceof FileBodyEntity) {
+            return new Entry(request.getMethod(), request.getURI(), headers,
+                    ((FileBodyEntity) entity).getFile().toPath(), false);
+        }
+
+        final long remaining = remaining();
+        if (entity.getContentLength() > remaining) {
+            overflow(request);
+            return null;
+        }
+        final Path spool = Files.createTempFile(spoolDirectory, "body", ".tmp");
+        final long size;
+        if (entity.isRepeatable()) {
+            try (final OutputStream out = Files.newOutputStream(spool)) {
+                entity.writeTo(out);
+            }
+            size = Files.size(spool);
+        } else {
+            final InputStream content = entity.getContent();
+            size = copy(content, spool, remaining + 1);
+            if (size > remaining) {
+                // send what was read followed by the rest, and stop recording
+                final InputStream read = Files.newInputStream(spool, DELETE_ON_CLOSE);
+                final InputStreamEntity replacement = new InputStreamEntity(new SequenceInputStream(read, content),
+                        entity.getContentLength());
+                replacement.setContentType(entity.getContentType());
+                replacement.setContentEncoding(entity.getContentEncoding());
+                ((HttpEntityEnclosingRequestBase) request).setEntity(replacement);
+                overflow(request);
+                return null;
+            }
+            content.close();
+            final FileBodyEntity replacement = new FileBodyEntity(spool.toFile());
+            replacement.setContentType(entity.getContentType());
+            replacement.setContentEncoding(entity.getContentEncoding());
+            ((HttpEntityEnclosingRequestBase) request).setEntity(replacement);
+        }
+        final Entry entry = new Entry(request.getMethod(), request.getURI(), headers, spool, true);
+        if (reserve(size)) {
+            entry.size = size;
+        } else {
+            // the request may be sending the spooled copy, which is deleted once it is answered
+            overflow(request);
+            entry.recordable = false;
+        }
+        return entry;
+    }
+
+    /**
+     * Record a write once its response is received. Writes which failed changed nothing, and are not recorded.
+     *
+     * @param entry the entry prepared for the write, or null
+     * @param response the response to the write
+     */
+    synchronized void record(final Entry entry, final FcrepoResponse response) {
+        if (entry == null) {
+            return;
+        }
+        if (!entry.recordable || response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+            discard(entry);
+            return;
+        }
+        if ("POST".equals(entry.method)) {
+            entry.created = response.getLocation();
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Drop the entry of a write which could not be sent
+     *
+     * @param entry the entry, or null
+     */
+    synchronized void discard(final Entry entry) {
+        if (entry != null && entry.spooled) {
+            spooled -= entry.size;
+            delete(entry.body);
+        }
+    }
+
+    /**
+     * Drop all the recorded writes, such as once the transaction is committed
+     */
+    public synchronized void clear() {
+        entries.forEach(entry -> {
+            if (entry.spooled) {
+                delete(entry.body);
+            }
+        });
+        entries = new ArrayList<>();
+        spooled = 0;
+        overflowed = false;
+    }
+
+    /**
+     * Replay the recorded writes into a fresh transaction, which the journal then records. If a write fails, the
+     * fresh transaction is rolled back. Files referenced as bodies must still hold the content they were sent with.
+     *
+     * @param client the client starting the fresh transaction, such as the one the original was started from
+     * @return the client of the fresh transaction, which is not committed
+     * @throws IOException if a body cannot be read
+     * @throws FcrepoOperationFailedException if the transaction cannot be started or a write fails
+     * @throws IllegalStateException if the journal overflowed its spool, or was never attached to a transaction
+     */
+    public TransactionalFcrepoClient replay(final FcrepoClient client)
+            throws IOException, FcrepoOperationFailedException {
+        final List<Entry> recorded;
+        final URI previous;
+        synchronized (this) {
+            if (overflowed) {
+                throw new IllegalStateException("The journal of transaction " + transactionUri +
+                        " exceeded its spool of " + maxSpoolBytes + " bytes and cannot be replayed");
+            }
+            if (transactionUri == null) {
+                throw new IllegalStateException("The journal is not attached to a transaction");
+            }
+            recorded = new ArrayList<>(entries);
+            previous = transactionUri;
+        }
+
+        final TransactionalFcrepoClient tx = client.startTransactionClient(previous.resolve("."));
+        LOGGER.info("Replaying {} writes of transaction {} into {}", recorded.size(), previous,
+                tx.getTransactionURI());
+        final Map<String, String> moved = new LinkedHashMap<>();
+        final List<Entry> replayed = new ArrayList<>();
+        try {
+            for (final Entry entry : recorded) {
+                replayed.add(replay(tx, entry, moved));
+            }
+        } catch (final IOException | FcrepoOperationFailedException | RuntimeException ex) {
+            try (final FcrepoResponse response = tx.rollback().perform()) {
+                LOGGER.debug("Rolled back replay transaction {}: {}", tx.getTransactionURI(),
+                        response.getStatusCode());
+            } catch (final IOException | FcrepoOperationFailedException e) {
+                ex.addSuppressed(e);
+            }
+            throw ex;
+        }
+
+        synchronized (this) {
+            entries = replayed;
+            replays++;
+        }
+        tx.enableJournal(this);
+        return tx;
+    }
+
+    private Entry replay(final TransactionalFcrepoClient tx, final Entry entry, final Map<String, String> moved)
+            throws IOException, FcrepoOperationFailedException {
+        final URI uri = relocate(entry.uri, moved);
+        final HttpRequestBase request = HttpMethods.valueOf(entry.method).createRequest(uri);
+        boolean conditional = false;
+        for (final Header header : entry.headers) {
+            if (CONDITIONS.contains(header.getName())) {
+                conditional = true;
+            } else {
+                request.addHeader(header);
+            }
+        }
+        request.addHeader(ATOMIC_ID, tx.getTransactionURI().toString());
+        if (conditional) {
+            refresh(tx, uri, entry, request);
+        }
+        if (entry.body != null) {
+            ((HttpEntityEnclosingRequestBase) request).setEntity(new FileBodyEntity(entry.body.toFile()));
+        }
+
+        try (final FcrepoResponse response = tx.executeRequest(uri, request)) {
+            if (response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                throw new FcrepoOperationFailedException(uri, response.getStatusCode(),
+                        "Replay of " + entry.method + " failed: " + response.getStatusText());
+            }
+            final Entry replayed = new Entry(entry.method, uri, entry.headers, entry.body, entry.spooled);
+            replayed.size = entry.size;
+            if ("POST".equals(entry.method)) {
+                replayed.created = response.getLocation();
+                if (entry.created != null && replayed.created != null && !entry.created.equals(replayed.created)) {
+                    moved.put(entry.created.toString(), replayed.created.toString());
+                }
+            }
+            return replayed;
+        }
+    }
+
+    /**
+     * Set the preconditions of a replayed write to the current state of its resource in the fresh transaction
+     */
+    private static void refresh(final TransactionalFcrepoClient tx, final URI uri, final Entry entry,
+            final HttpRequestBase request) throws IOException, FcrepoOperationFailedException {
+        try (final FcrepoResponse head = tx.head(uri).perform()) {
+            for (final Header header : entry.headers) {
+                if (IF_MATCH.equalsIgnoreCase(header.getName()) && head.getHeaderValue(ETAG) != null) {
+                    request.setHeader(IF_MATCH, head.getHeaderValue(ETAG));
+                } else if (IF_STATE_TOKEN.equalsIgnoreCase(header.getName()) &&
+                        head.getHeaderValue(STATE_TOKEN) != null) {
+                    request.setHeader(IF_STATE_TOKEN, head.getHeaderValue(STATE_TOKEN));
+                }
+            }
+        }
+    }
+
+    private static URI relocate(final URI uri, final Map<String, String> moved) {
+        final String value = uri.toString();
+        for (final Map.Entry<String, String> move : moved.entrySet()) {
+            if (value.equals(move.getKey()) || value.startsWith(move.getKey() + "/")) {
+                return URI.create(move.getValue() + value.substring(move.getKey().length()));
+            }
+        }
+        return uri;
+    }
+
+    private synchronized long remaining() {
+        return maxSpoolBytes - spooled;
+    }
+
+    private synchronized boolean reserve(final long size) {
+        if (spooled + size > maxSpoolBytes) {
+            return false;
+        }
+        spooled += size;
+        return true;
+    }
+
+    private synchronized void overflow(final HttpRequestBase request) {
+        if (!overflowed) {
+            LOGGER.warn("Body of {} {} exceeds the journal spool of {} bytes, transaction {} can no longer be " +
+                    "replayed", request.getMethod(), request.getURI(), maxSpoolBytes, transactionUri);
+        }
+        overflowed = true;
+    }
+
+    private static long copy(final InputStream in, final Path target, final long limit) throws IOException {
+        long total = 0;
+        try (final OutputStream out = Files.newOutputStream(target)) {
+            final byte[] buffer = new byte[8192];
+            int n;
+            while (total < limit && (n = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total))) > 0) {
+                out.write(buffer, 0, n);
+                total += n;
+            }
+        }
+        return total;
+    }
+
+    private static void delete(final Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to delete spooled body {}", path, ex);
+        }
+    }
+
+    /**
+     * Drop the recorded writes and their spooled bodies
+     */
+    @Override
+    public void close() throws IOException {
+        clear();
+        if (ownDirectory) {
+            Files.deleteIfExists(spoolDirectory);
+        }
+    }
+
+    /**
+     * A recorded write
+     */
+    static class Entry {
+
+        private final String method;
+
+        private final URI uri;
+
+        private final List<Header> headers;
+
+        private final Path body;
+
+        // whether the body is a copy owned by the journal
+        private final boolean spooled;
+
+        private long size;
+
+        private URI created;
+
+        private boolean recordable = true;
+
+        Entry(final String method, final URI uri, final List<Header> headers, final Path body,
+                final boolean spooled) {
+            this.method = method;
+            this.uri = uri;
+            this.headers = headers;
+            this.body = body;
+            this.spooled = spooled;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_EXPIRES;
+import static org.fcrepo.client.HeaderHelpers.UTC_RFC_1123_FORMATTER;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+import org.fcrepo.client.RequestScheduler.Priority;
+import org.slf4j.Logger;
+
+/**
+ * Background renewer of transactions. Each registered {@link TransactionalFcrepoClient} is kept alive with a POST to
+ * its transaction shortly before the time announced by the {@code Atomic-Expires} header of the repository, on a
+ * scheduler shared by all the transactions. Renewals are sent asynchronously ahead of the other queued requests of
+ * the client, and given up after a timeout, so that a slow renewal of one transaction does not hold up the others.
+ * <p>
+ * When the repository reports the transaction gone, or it expires because renewals kept failing, the transaction is
+ * marked expired: requests in flight through the client are aborted and later requests fail straight away with a
+ * 410, rather than sending more work into a transaction which can no longer be committed. Committing or rolling back
+ * the transaction through its client ends the renewals.
+ * </p>
+ *
+ * @author agent
+ */
+public class TransactionKeepAlive implements Closeable {
+
+    private static final Logger LOGGER = getLogger(TransactionKeepAlive.class);
+
+    private final ScheduledExecutorService executor;
+
+    private final boolean ownExecutor;
+
+    private long margin = 30000;
+
+    private long retryInterval = 5000;
+
+    private long defaultInterval = 60000;
+
+    private long timeout = 10000;
+
+    private final Map<TransactionalFcrepoClient, Registration> registrations = new ConcurrentHashMap<>();
+
+    private final AtomicLong renewals = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Create a renewer with its own scheduler thread
+     */
+    public TransactionKeepAlive() {
+        this(Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "fcrepo-tx-keep-alive");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Create a renewer running on the given scheduler, which is left running when the renewer is closed
+     *
+     * @param executor the scheduler
+     */
+    public TransactionKeepAlive(final ScheduledExecutorService executor) {
+        this(executor, false);
+    }
+
+    private TransactionKeepAlive(final ScheduledExecutorService executor, final boolean ownExecutor) {
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * Set how long before the expiry of a transaction it is renewed
+     *
+     * @param margin the margin in milliseconds
+     * @return this renewer
+     */
+    public TransactionKeepAlive margin(final long margin) {
+        this.margin = margin;
+        return this;
+    }
+
+    /**
+     * Set how soon a failed renewal is attempted again, as long as the transaction has not expired
+     *
+     * @param retryInterval the interval in milliseconds
+     * @return this renewer
+     */
+    public TransactionKeepAlive retryInterval(final long retryInterval) {
+        this.retryInterval = retryInterval;
+        return this;
+    }
+
+    /**
+     * Set the interval between renewals of a transaction whose expiry the repository did not announce
+     *
+     * @param defaultInterval the interval in milliseconds
+     * @return this renewer
+     */
+    public TransactionKeepAlive defaultInterval(final long defaultInterval) {
+        this.defaultInterval = defaultInterval;
+        return this;
+    }
+
+    /**
+     * Set how long a renewal may take before it is given up and counted as failed
+     *
+     * @param timeout the timeout in milliseconds
+     * @return this renewer
+     */
+    public TransactionKeepAlive timeout(final long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * @return the number of successful renewals
+     */
+    public long getRenewals() {
+        return renewals.get();
+    }
+
+    /**
+     * @return the number of failed renewals
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return the number of transactions found expired
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return the number of transactions being kept alive
+     */
+    public int getActiveTransactions() {
+        return registrations.size();
+    }
+
+    /**
+     * Start keeping a transaction alive
+     *
+     * @param client the client of the transaction
+     * @param guard the transport guarding the requests of the transaction
+     */
+    void register(final TransactionalFcrepoClient client, final TransactionGuardTransport guard) {
+        final Registration registration = new Registration(client, guard);
+        registrations.put(client, registration);
+        schedule(registration, delayUntilRenewal(client.getExpires()));
+    }
+
+    /**
+     * Stop keeping a transaction alive
+     *
+     * @param client the client of the transaction
+     */
+    void deregister(final TransactionalFcrepoClient client) {
+        final Registration registration = registrations.remove(client);
+        if (registration != null) {
+            registration.cancel();
+        }
+    }
+
+    private void schedule(final Registration registration, final long delay) {
+        if (registrations.get(registration.client) != registration) {
+            return;
+        }
+        registration.next = executor.schedule(() -> renew(registration), delay, MILLISECONDS);
+    }
+
+    private void renew(final Registration registration) {
+        final TransactionalFcrepoClient client = registration.client;
+        if (registrations.get(client) != registration || client.isExpired()) {
+            return;
+        }
+        final Instant expires = client.getExpires();
+        if (expires != null && Duration.between(Instant.now(), expires).toMillis() > margin + retryInterval) {
+            // requests made in the meantime extended the transaction
+            schedule(registration, delayUntilRenewal(expires));
+            return;
+        }
+
+        final CompletableFuture<FcrepoResponse> renewal;
+        try {
+            renewal = client.keepAlive().priority(Priority.INTERACTIVE).performAsync();
+        } catch (final RuntimeException ex) {
+            LOGGER.warn("Unable to keep transaction {} alive", client.getTransactionURI(), ex);
+            renewed(registration, -1);
+            return;
+        }
+        final ScheduledFuture<?> giveUp = executor.schedule(() -> renewal.cancel(true), timeout, MILLISECONDS);
+        renewal.whenComplete((response, ex) -> {
+            giveUp.cancel(false);
+            renewed(registration, statusOf(response, ex));
+        });
+    }
+
+    private static int statusOf(final FcrepoResponse response, final Throwable ex) {
+        if (ex == null) {
+            try {
+                response.close();
+            } catch (final IOException e) {
+                LOGGER.debug("Unable to close renewal response", e);
+            }
+            return response.getStatusCode();
+        }
+        final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof FcrepoOperationFailedException ?
+                ((FcrepoOperationFailedException) cause).getStatusCode() : -1;
+    }
+
+    private void renewed(final Registration registration, final int status) {
+        final TransactionalFcrepoClient client = registration.client;
+        if (registrations.get(client) != registration) {
+            // committed or rolled back meanwhile
+            return;
+        }
+        if (status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE) {
+            expire(registration, "the repository reports it gone");
+        } else if (status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES) {
+            renewals.incrementAndGet();
+            LOGGER.debug("Kept transaction {} alive until {}", client.getTransactionURI(), client.getExpires());
+            schedule(registration, delayUntilRenewal(client.getExpires()));
+        } else {
+            failures.incrementAndGet();
+            final Instant deadline = client.getExpires();
+            final long remaining = deadline == null ? Long.MAX_VALUE :
+                    Duration.between(Instant.now(), deadline).toMillis();
+            if (remaining <= 0) {
+                expire(registration, "renewals failed until it expired at " + deadline);
+            } else {
+                LOGGER.debug("Renewal of transaction {} failed with status {}, retrying",
+                        client.getTransactionURI(), status);
+                schedule(registration, Math.max(1, Math.min(retryInterval, remaining / 2)));
+            }
+        }
+    }
+
+    private void expire(final Registration registration, final String reason) {
+        LOGGER.warn("Transaction {} is no longer alive: {}", registration.client.getTransactionURI(), reason);
+        expirations.incrementAndGet();
+        registrations.remove(registration.client, registration);
+        registration.guard.expire("Transaction " + registration.client.getTransactionURI() +
+                " is no longer alive: " + reason);
+    }
+
+    private long delayUntilRenewal(final Instant expires) {
+        if (expires == null) {
+            return defaultInterval;
+        }
+        return Math.max(1, Duration.between(Instant.now(), expires).toMillis() - margin);
+    }
+
+    /**
+     * Get the expiry of a transaction announced by a response
+     *
+     * @param response a response to a request within the transaction
+     * @return the expiry, or null if the response does not announce it
+     */
+    static Instant expiresOf(final FcrepoResponse response) {
+        final String value = response.getHeaderValue(ATOMIC_EXPIRES);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Instant.from(UTC_RFC_1123_FORMATTER.parse(value.trim()));
+        } catch (final DateTimeParseException ex) {
+            try {
+                return Instant.parse(value.trim());
+            } catch (final DateTimeParseException e) {
+                LOGGER.debug("Invalid {} header: {}", ATOMIC_EXPIRES, value);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Stop all renewals, and the scheduler thread of this renewer if it has its own
+     */
+    @Override
+    public void close() {
+        registrations.values().forEach(Registration::cancel);
+        registrations.clear();
+        if (ownExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A transaction kept alive
+     */
+    private static class Registration {
+
+        private final TransactionalFcrepoClient client;
+
+        private final TransactionGuardTransport guard;
+
+        private volatile ScheduledFuture<?> next;
+
+        Registration(final TransactionalFcrepoClient client, final TransactionGuardTransport guard) {
+            this.client = client;
+            this.guard = guard;
+        }
+
+        void cancel() {
+            final ScheduledFuture<?> scheduled = next;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+
+/**
+ * Pool of transactions opened ahead of their use, so that {@link #acquire()} hands one out without the round trip to
+ * the transaction endpoint. The pool is refilled in the background as transactions are taken from it; when it is
+ * empty, {@link #acquire()} starts a transaction itself.
+ * <p>
+ * A transaction handed out belongs to its borrower, who commits or rolls it back as usual. Transactions left idle in
+ * the pool are rolled back and replaced once they have been idle for {@code maxIdle}, or come within
+ * {@code expiryMargin} of the expiry announced by their {@code Atomic-Expires} header, and when the pool is closed, so
+ * that none lingers on the repository. With a {@link TransactionKeepAlive}, the pooled transactions are renewed while
+ * they wait, and keep being renewed once handed out.
+ * </p>
+ *
+ * @author agent
+ */
+public class TransactionPool implements Closeable {
+
+    private static final Logger LOGGER = getLogger(TransactionPool.class);
+
+    // delay before starting transactions again after a failed start
+    private static final long RETRY_DELAY = 5000;
+
+    private final FcrepoClient client;
+
+    private final URI txEndpoint;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "fcrepo-tx-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int size = 4;
+
+    private long maxIdle = 300000;
+
+    private long expiryMargin = 30000;
+
+    private TransactionKeepAlive keepAlive;
+
+    private final Deque<Idle> idle = new ConcurrentLinkedDeque<>();
+
+    // transactions being started, guarded by this
+    private int starting;
+
+    private boolean retryScheduled;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Create a transaction pool
+     *
+     * @param client the client starting the transactions
+     * @param uri the base rest endpoint or the transaction endpoint of the repository
+     * @throws IllegalArgumentException if the uri is not the base rest endpoint or the transaction endpoint
+     */
+    public TransactionPool(final FcrepoClient client, final URI uri) {
+        this.client = client;
+        this.txEndpoint = client.getTxEndpoint(uri);
+    }
+
+    /**
+     * Set the number of transactions kept open in the pool
+     *
+     * @param size the number of transactions
+     * @return this pool
+     */
+    public synchronized TransactionPool size(final int size) {
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * Set how long a transaction waits in the pool before it is rolled back and replaced
+     *
+     * @param maxIdle the time in milliseconds
+     * @return this pool
+     */
+    public synchronized TransactionPool maxIdle(final long maxIdle) {
+        this.maxIdle = maxIdle;
+        return this;
+    }
+
+    /**
+     * Set how long before its announced expiry a transaction waiting in the pool is rolled back and replaced. Such
+     * a transaction is never handed out.
+     *
+     * @param expiryMargin the margin in milliseconds
+     * @return this pool
+     */
+    public synchronized TransactionPool expiryMargin(final long expiryMargin) {
+        this.expiryMargin = expiryMargin;
+        return this;
+    }
+
+    /**
+     * Keep the pooled transactions alive with the given renewer, while they wait and once handed out
+     *
+     * @param keepAlive the renewer
+     * @return this pool
+     */
+    public synchronized TransactionPool keepAlive(final TransactionKeepAlive keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * @return the number of transactions waiting in the pool
+     */
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of transactions handed out from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of transactions started on acquire, for the pool was empty
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of idle transactions rolled back before their expiry
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Start opening the transactions of the pool, ahead of the first {@link #acquire()}
+     *
+     * @return this pool
+     */
+    public TransactionPool prestart() {
+        refill();
+        return this;
+    }
+
+    /**
+     * Take a transaction from the pool, or start one if the pool is empty
+     *
+     * @return the client of the transaction, which the caller commits or rolls back
+     * @throws IOException if a transaction cannot be started
+     * @throws FcrepoOperationFailedException if a transaction cannot be started
+     * @throws IllegalStateException if the pool is closed
+     */
+    public TransactionalFcrepoClient acquire() throws IOException, FcrepoOperationFailedException {
+        if (closed) {
+            throw new IllegalStateException("The transaction pool of " + txEndpoint + " is closed");
+        }
+        try {
+            for (Idle next = idle.pollFirst(); next != null; next = idle.pollFirst()) {
+                if (!next.claim()) {
+                    continue;
+                }
+                if (isStale(next)) {
+                    evict(next);
+                    continue;
+                }
+                next.cancelCheck();
+                hits.incrementAndGet();
+                return next.tx;
+            }
+        } finally {
+            refill();
+        }
+        misses.incrementAndGet();
+        return track(client.startTransactionClient(txEndpoint));
+    }
+
+    /**
+     * Start transactions until the pool, counting those being started, holds its size
+     */
+    private void refill() {
+        final int missing;
+        synchronized (this) {
+            if (closed || retryScheduled) {
+                return;
+            }
+            missing = size - idle.size() - starting;
+            if (missing <= 0) {
+                return;
+            }
+            starting += missing;
+        }
+        for (int i = 0; i < missing; i++) {
+            client.startTransactionClientAsync(txEndpoint).whenComplete((tx, ex) -> {
+                synchronized (this) {
+                    starting--;
+                }
+                if (ex != null) {
+                    retryLater(ex);
+                } else {
+                    pool(tx);
+                }
+            });
+        }
+    }
+
+    private void retryLater(final Throwable ex) {
+        synchronized (this) {
+            if (closed || retryScheduled) {
+                return;
+            }
+            retryScheduled = true;
+        }
+        LOGGER.warn("Unable to start a transaction at {}, retrying in {}ms", txEndpoint, RETRY_DELAY, ex);
+        schedule(() -> {
+            synchronized (this) {
+                retryScheduled = false;
+            }
+            refill();
+        }, RETRY_DELAY);
+    }
+
+    private void pool(final TransactionalFcrepoClient tx) {
+        final Idle entry = new Idle(track(tx));
+        if (closed) {
+            rollback(entry);
+            return;
+        }
+        idle.addLast(entry);
+        // close may have drained the pool before the entry was added
+        if (closed) {
+            if (idle.remove(entry) && entry.claim()) {
+                rollback(entry);
+            }
+            return;
+        }
+        scheduleCheck(entry);
+    }
+
+    private TransactionalFcrepoClient track(final TransactionalFcrepoClient tx) {
+        final TransactionKeepAlive renewer;
+        synchronized (this) {
+            renewer = keepAlive;
+        }
+        return renewer == null ? tx : tx.autoKeepAlive(renewer);
+    }
+
+    /**
+     * Schedule the eviction of an idle transaction at the earlier of its expiry margin and its idle limit
+     */
+    private void scheduleCheck(final Idle entry) {
+        final long delay;
+        synchronized (this) {
+            final long untilIdle = maxIdle - Duration.between(entry.pooled, Instant.now()).toMillis();
+            final Instant expires = entry.tx.getExpires();
+            final long untilExpiry = expires == null ? Long.MAX_VALUE :
+                    Duration.between(Instant.now(), expires).toMillis() - expiryMargin;
+            delay = Math.max(1, Math.min(untilIdle, untilExpiry));
+        }
+        entry.check = schedule(() -> check(entry), delay);
+    }
+
+    private void check(final Idle entry) {
+        if (entry.isClaimed()) {
+            return;
+        }
+        if (!isStale(entry)) {
+            // renewals pushed the expiry back
+            scheduleCheck(entry);
+            return;
+        }
+        if (idle.remove(entry) && entry.claim()) {
+            evict(entry);
+            refill();
+        }
+    }
+
+    private synchronized boolean isStale(final Idle entry) {
+        if (entry.tx.isExpired()) {
+            return true;
+        }
+        if (Duration.between(entry.pooled, Instant.now()).toMillis() >= maxIdle) {
+            return true;
+        }
+        final Instant expires = entry.tx.getExpires();
+        return expires != null && Duration.between(Instant.now(), expires).toMillis() <= expiryMargin;
+    }
+
+    private void evict(final Idle entry) {
+        LOGGER.debug("Rolling back idle transaction {}", entry.tx.getTransactionURI());
+        evictions.incrementAndGet();
+        rollback(entry);
+    }
+
+    private void rollback(final Idle entry) {
+        entry.cancelCheck();
+        if (entry.tx.isExpired()) {
+            return;
+        }
+        entry.tx.rollback().performAsync().whenComplete((response, ex) -> {
+            if (ex != null) {
+                LOGGER.warn("Unable to roll back idle transaction {}", entry.tx.getTransactionURI(), ex);
+            } else {
+                if (response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                    LOGGER.warn("Unable to roll back idle transaction {}: {}", entry.tx.getTransactionURI(),
+                            response.getStatusCode());
+                }
+                closeQuietly(response);
+            }
+        });
+    }
+
+    private ScheduledFuture<?> schedule(final Runnable task, final long delay) {
+        try {
+            return executor.schedule(task, delay, MILLISECONDS);
+        } catch (final RejectedExecutionException ex) {
+            // the pool is closing
+            return null;
+        }
+    }
+
+    private static void closeQuietly(final FcrepoResponse response) {
+        try {
+            response.close();
+        } catch (final IOException ex) {
+            LOGGER.debug("Unable to close response of {}", response.getUrl(), ex);
+        }
+    }
+
+    /**
+     * Roll back the transactions waiting in the pool and stop refilling it. Transactions still being started are
+     * rolled back once they are.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (Idle next = idle.pollFirst(); next != null; next = idle.pollFirst()) {
+            if (!next.claim()) {
+                continue;
+            }
+            next.cancelCheck();
+            if (next.tx.isExpired()) {
+                continue;
+            }
+            try (final FcrepoResponse response = next.tx.rollback().perform()) {
+                LOGGER.debug("Rolled back idle transaction {}: {}", next.tx.getTransactionURI(),
+                        response.getStatusCode());
+            } catch (final IOException | FcrepoOperationFailedException ex) {
+                LOGGER.warn("Unable to roll back idle transaction {}", next.tx.getTransactionURI(), ex);
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * A transaction waiting in the pool
+     */
+    private static class Idle {
+
+        private final TransactionalFcrepoClient tx;
+
+        private final Instant pooled = Instant.now();
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private volatile ScheduledFuture<?> check;
+
+        Idle(final TransactionalFcrepoClient tx) {
+            this.tx = tx;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        boolean isClaimed() {
+            return claimed.get();
+        }
+
+        void cancelCheck() {
+            final ScheduledFuture<?> scheduled = check;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+
+/**
+ * Scope of a transaction within which a body forks requests running concurrently on an executor. The scope is
+ * opened by {@link FcrepoClient#inTransaction(java.net.URI, Body)}: once the body returns, every forked task is
+ * joined and the transaction is committed. If the body or any task fails, by an exception or a 4xx or 5xx response,
+ * the tasks not yet started are cancelled, those running are interrupted, and the transaction is rolled back once
+ * all of them have settled, so that no request of the scope reaches the repository after its rollback.
+ *
+ * @author agent
+ */
+public class TransactionScope {
+
+    private static final Logger LOGGER = getLogger(TransactionScope.class);
+
+    static final int DEFAULT_PARALLELISM = 8;
+
+    private final TransactionalFcrepoClient client;
+
+    private final Executor executor;
+
+    private final List<Fork<?>> forks = new ArrayList<>();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    private boolean closed;
+
+    /**
+     * The body of a transaction scope
+     *
+     * @param <T> the type of the value of the scope
+     */
+    @FunctionalInterface
+    public interface Body<T> {
+
+        /**
+         * Run the body, forking the requests of the transaction on the scope
+         *
+         * @param scope the scope of the transaction
+         * @return the value of the scope, returned once the transaction is committed
+         * @throws IOException if a request cannot be sent
+         * @throws FcrepoOperationFailedException if a request fails
+         */
+        T run(TransactionScope scope) throws IOException, FcrepoOperationFailedException;
+    }
+
+    /**
+     * A task forked within a transaction scope
+     *
+     * @param <T> the type of the result of the task
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+
+        /**
+         * Run the task
+         *
+         * @param tx the client of the transaction
+         * @return the result of the task
+         * @throws IOException if a request cannot be sent
+         * @throws FcrepoOperationFailedException if a request fails
+         */
+        T call(TransactionalFcrepoClient tx) throws IOException, FcrepoOperationFailedException;
+    }
+
+    /**
+     * Create a transaction scope
+     *
+     * @param client the client of the transaction
+     * @param executor the executor running the forked tasks
+     */
+    TransactionScope(final TransactionalFcrepoClient client, final Executor executor) {
+        this.client = client;
+        this.executor = executor;
+    }
+
+    /**
+     * @return an executor of daemon threads for the scopes opened without one
+     */
+    static ExecutorService defaultExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(DEFAULT_PARALLELISM, r -> {
+            final Thread thread = new Thread(r, "fcrepo-tx-scope-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the client of the transaction
+     */
+    public TransactionalFcrepoClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return true once the body or a task of the scope has failed
+     */
+    public boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Fork a task on the executor of the scope. A task returning a {@link FcrepoResponse} with a 4xx or 5xx status
+     * fails the scope, as if it had thrown.
+     *
+     * @param task the task
+     * @param <T> the type of the result of the task
+     * @return a future which completes with the result of the task, or is cancelled if the scope fails first
+     * @throws IllegalStateException if the scope is already committed or rolled back
+     */
+    public <T> CompletableFuture<T> fork(final Task<T> task) {
+        final Fork<T> fork = new Fork<>(task);
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The scope of transaction " + client.getTransactionURI() +
+                        " is closed");
+            }
+            if (isFailed()) {
+                return CompletableFuture.failedFuture(new CancellationException("The scope of transaction " +
+                        client.getTransactionURI() + " has failed"));
+            }
+            forks.add(fork);
+        }
+        try {
+            executor.execute(fork);
+        } catch (final RejectedExecutionException ex) {
+            fork.reject(ex);
+        }
+        // callers cannot cancel the task through the view, only the scope can
+        final CompletableFuture<T> view = new CompletableFuture<>();
+        fork.result.whenComplete((value, ex) -> {
+            if (ex == null) {
+                view.complete(value);
+            } else {
+                view.completeExceptionally(ex);
+            }
+        });
+        return view;
+    }
+
+    /**
+     * Fork a request built on the client of the transaction
+     *
+     * @param operation the function building the request
+     * @return a future which completes with the response, or is cancelled if the scope fails first
+     * @throws IllegalStateException if the scope is already committed or rolled back
+     */
+    public CompletableFuture<FcrepoResponse> forkRequest(
+            final Function<TransactionalFcrepoClient, ? extends RequestBuilder> operation) {
+        return fork(tx -> operation.apply(tx).perform());
+    }
+
+    /**
+     * Wait until every task forked so far, and those they fork, has settled. Meant to be called by the body, not by
+     * the tasks, which would otherwise wait for themselves.
+     *
+     * @throws IOException if a task failed with one, or the wait was interrupted
+     * @throws FcrepoOperationFailedException if a task failed with one
+     */
+    public void join() throws IOException, FcrepoOperationFailedException {
+        settle();
+        final Throwable ex = failure.get();
+        if (ex != null) {
+            rethrow(ex);
+        }
+    }
+
+    /**
+     * Run the body within the scope, then commit the transaction or roll it back
+     *
+     * @param body the body
+     * @param <T> the type of the value of the scope
+     * @return the value returned by the body
+     * @throws IOException if the body, a task, or the commit failed with one
+     * @throws FcrepoOperationFailedException if the body, a task, or the commit failed with one
+     */
+    <T> T run(final Body<T> body) throws IOException, FcrepoOperationFailedException {
+        final T value;
+        try {
+            value = body.run(this);
+            join();
+        } catch (final IOException | FcrepoOperationFailedException | RuntimeException | Error ex) {
+            fail(ex);
+            settle();
+            close();
+            rollback(ex);
+            throw ex;
+        }
+        close();
+        commit();
+        return value;
+    }
+
+    private void commit() throws IOException, FcrepoOperationFailedException {
+        final FcrepoOperationFailedException failed;
+        try (final FcrepoResponse response = client.commit().perform()) {
+            if (response.getStatusCode() < HttpStatus.SC_MULTIPLE_CHOICES) {
+                return;
+            }
+            failed = new FcrepoOperationFailedException(response.getUrl(), response.getStatusCode(),
+                    "Unable to commit the transaction: " + response.getStatusText());
+        } catch (final IOException | FcrepoOperationFailedException ex) {
+            // a repository failing a commit normally rolls it back itself, make sure of it
+            rollback(ex);
+            throw ex;
+        }
+        rollback(failed);
+        throw failed;
+    }
+
+    private void rollback(final Throwable cause) {
+        LOGGER.debug("Rolling back transaction {}: {}", client.getTransactionURI(), cause.getMessage());
+        try (final FcrepoResponse response = client.rollback().perform()) {
+            if (response.getStatusCode() >= HttpStatus.SC_MULTIPLE_CHOICES &&
+                    response.getStatusCode() != HttpStatus.SC_NOT_FOUND &&
+                    response.getStatusCode() != HttpStatus.SC_GONE) {
+                LOGGER.warn("Unable to roll back transaction {}: {}", client.getTransactionURI(),
+                        response.getStatusCode());
+            }
+        } catch (final IOException | FcrepoOperationFailedException ex) {
+            if (!(ex instanceof FcrepoOperationFailedException) ||
+                    !isEnded(((FcrepoOperationFailedException) ex).getStatusCode())) {
+                LOGGER.warn("Unable to roll back transaction {}", client.getTransactionURI(), ex);
+                cause.addSuppressed(ex);
+            }
+        }
+    }
+
+    private static boolean isEnded(final int status) {
+        return status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE;
+    }
+
+    private synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Fail the scope, cancelling the tasks which have not completed
+     */
+    private void fail(final Throwable ex) {
+        failure.compareAndSet(null, ex);
+        if (!cancelled.compareAndSet(false, true)) {
+            return;
+        }
+        final List<Fork<?>> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(forks);
+        }
+        snapshot.forEach(Fork::cancel);
+    }
+
+    /**
+     * Wait, uninterruptibly, until every forked task has settled. An interrupt fails the scope, so that the wait
+     * ends as soon as the running tasks give up.
+     */
+    private void settle() {
+        boolean interrupted = false;
+        for (int i = 0; ; i++) {
+            final Fork<?> fork;
+            synchronized (this) {
+                if (i >= forks.size()) {
+                    break;
+                }
+                fork = forks.get(i);
+            }
+            while (true) {
+                try {
+                    fork.settled.await();
+                    break;
+                } catch (final InterruptedException ex) {
+                    interrupted = true;
+                    fail(new InterruptedIOException("Interrupted while joining the requests of transaction " +
+                            client.getTransactionURI()));
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void rethrow(final Throwable ex) throws IOException, FcrepoOperationFailedException {
+        if (ex instanceof IOException) {
+            throw (IOException) ex;
+        } else if (ex instanceof FcrepoOperationFailedException) {
+            throw (FcrepoOperationFailedException) ex;
+        } else if (ex instanceof RuntimeException) {
+            throw (RuntimeException) ex;
+        } else if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        throw new IOException(ex);
+    }
+
+    /**
+     * A task forked within the scope
+     */
+    private final class Fork<T> implements Runnable {
+
+        private final Task<T> task;
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private final CountDownLatch settled = new CountDownLatch(1);
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private Thread runner;
+
+        Fork(final Task<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            try {
+                final T value = task.call(client);
+                failOnError(value);
+                if (!result.complete(value)) {
+                    closeQuietly(value);
+                }
+            } catch (final Exception | Error ex) {
+                // the scope is failed before the result, so that callers of the result see it failed
+                failure.compareAndSet(null, ex);
+                result.completeExceptionally(ex);
+                fail(ex);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    // clear an interrupt meant for the task, not for the thread of the executor
+                    Thread.interrupted();
+                }
+                settled.countDown();
+            }
+        }
+
+        private void failOnError(final T value) throws FcrepoOperationFailedException {
+            if (value instanceof FcrepoResponse) {
+                final FcrepoResponse response = (FcrepoResponse) value;
+                if (response.getStatusCode() >= HttpStatus.SC_BAD_REQUEST) {
+                    closeQuietly(response);
+                    throw new FcrepoOperationFailedException(response.getUrl(), response.getStatusCode(),
+                            response.getStatusText());
+                }
+            }
+        }
+
+        void reject(final RejectedExecutionException ex) {
+            if (started.compareAndSet(false, true)) {
+                failure.compareAndSet(null, ex);
+                result.completeExceptionally(ex);
+                settled.countDown();
+                fail(ex);
+            }
+        }
+
+        void cancel() {
+            if (!result.cancel(false)) {
+                // completed by the task itself, which is about to end
+                return;
+            }
+            if (started.compareAndSet(false, true)) {
+                settled.countDown();
+                return;
+            }
+            synchronized (this) {
+                if (runner != null) {
+                    runner.interrupt();
+                }
+            }
+        }
+
+        private void closeQuietly(final Object value) {
+            if (value instanceof FcrepoResponse) {
+                try {
+                    ((FcrepoResponse) value).close();
+                } catch (final IOException ex) {
+                    LOGGER.debug("Unable to close a response of transaction {}", client.getTransactionURI(), ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+
+import java.net.URI;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.client.methods.HttpRequestBase;
+
+/**
+ * The resources written within each open transaction, tracked by a cache of the state seen outside of transactions.
+ * Such writes only become visible once their transaction is committed, so reads made meanwhile still cache the state
+ * from before them, and the cache must drop those entries again when the transaction is committed or rolled back.
+ * <p>
+ * The number of tracked transactions is bounded: the oldest, such as those left to expire, are forgotten first.
+ * </p>
+ *
+ * @author agent
+ */
+class TransactionWrites {
+
+    private static final int MAX_TRANSACTIONS = 1024;
+
+    private final Map<String, Set<URI>> writes = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Set<URI>> eldest) {
+            return size() > MAX_TRANSACTIONS;
+        }
+    };
+
+    /**
+     * Remember the resource written by a request, if it is made within a transaction
+     *
+     * @param request the write
+     * @param uri the URI of the written resource
+     */
+    synchronized void record(final HttpRequestBase request, final URI uri) {
+        final Header atomicId = request.getFirstHeader(ATOMIC_ID);
+        if (atomicId == null) {
+            return;
+        }
+        final String transaction = keyOf(atomicId.getValue());
+        // the commit, rollback and keep-alive of a transaction are made to the transaction itself
+        if (!transaction.equals(keyOf(uri.toString()))) {
+            writes.computeIfAbsent(transaction, k -> new HashSet<>()).add(uri);
+        }
+    }
+
+    /**
+     * Forget the resources written within the transaction a request commits or rolls back
+     *
+     * @param request the write
+     * @param uri the URI the write is made to
+     * @return the resources written within the transaction, empty if the request does not end a tracked one
+     */
+    synchronized Set<URI> end(final HttpRequestBase request, final URI uri) {
+        final String method = request.getMethod();
+        if (!"PUT".equals(method) && !"DELETE".equals(method)) {
+            return Set.of();
+        }
+        final Set<URI> written = writes.remove(keyOf(uri.toString()));
+        return written == null ? Set.of() : written;
+    }
+
+    private static String keyOf(final String transaction) {
+        return transaction.endsWith("/") ? transaction.substring(0, transaction.length() - 1) : transaction;
+    }
+}
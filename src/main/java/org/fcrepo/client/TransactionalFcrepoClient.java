@@ -5,7 +5,14 @@
  */
 package org.fcrepo.client;
 
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
 import java.net.URI;
+import java.time.Instant;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
 
 /**
  * A Transaction aware client which adds the Atomic_ID header to requests and provides functionality for interacting
@@ -15,9 +22,27 @@ import java.net.URI;
  */
 public class TransactionalFcrepoClient extends FcrepoClient {
 
+    private static final Logger LOGGER = getLogger(TransactionalFcrepoClient.class);
+
     private final URI transactionURI;
 
+    // the client this one borrows its http client from, if any
+    private final FcrepoClient parent;
+
+    private TransactionCache cache;
+
+    private TransactionKeepAlive keepAlive;
+
+    private volatile Instant expires;
+
+    private volatile String expiredReason;
+
+    private TransactionJournal journal;
+
     /**
+     * Create a transactional client with its own http client. Prefer
+     * {@link #TransactionalFcrepoClient(URI, FcrepoClient)}, which reuses the connection pool of an existing client.
+     *
      * @param transactionURI the transaction to append to all requests
      * @param httpClientBuilder the httpclient
      * @param throwExceptionOnFailure whether to throw an exception on any non-2xx or 3xx HTTP responses
@@ -26,17 +51,203 @@ public class TransactionalFcrepoClient extends FcrepoClient {
                                      final FcrepoHttpClientBuilder httpClientBuilder,
                                      final Boolean throwExceptionOnFailure) {
         super(httpClientBuilder, throwExceptionOnFailure);
+        this.transactionURI = requireTransactionUri(transactionURI);
+        this.parent = null;
+    }
 
+    /**
+     * Create a transactional client which borrows the http client of the given parent. Closing the transactional
+     * client ends its use of the connection pool, but leaves the pool open for the parent.
+     *
+     * @param transactionURI the transaction to append to all requests
+     * @param parent the client whose http client is shared
+     */
+    public TransactionalFcrepoClient(final URI transactionURI, final FcrepoClient parent) {
+        super(parent);
+        this.transactionURI = requireTransactionUri(transactionURI);
+        this.parent = parent;
+    }
+
+    private static URI requireTransactionUri(final URI transactionURI) {
         if (transactionURI == null) {
             throw new IllegalArgumentException("TransactionURI cannot be null");
         }
-        this.transactionURI = transactionURI;
+        return transactionURI;
     }
 
     public URI getTransactionURI() {
         return transactionURI;
     }
 
+    /**
+     * Serve reads made through this client from a cache of the state of resources within the transaction, filled by
+     * the responses of its writes and reads, with the default size limits
+     *
+     * @return this client
+     */
+    public TransactionalFcrepoClient enableCache() {
+        return enableCache(new TransactionCache());
+    }
+
+    /**
+     * Serve reads made through this client from the given cache of the state of resources within the transaction,
+     * filled by the responses of its writes and reads. The cache is discarded when the transaction is committed or
+     * rolled back through this client, and is never consulted for requests made outside the transaction.
+     *
+     * @param cache the cache, which must not be shared with other transactions
+     * @return this client
+     */
+    public synchronized TransactionalFcrepoClient enableCache(final TransactionCache cache) {
+        if (this.cache != null) {
+            throw new IllegalStateException("The cache of transaction " + transactionURI + " is already enabled");
+        }
+        this.cache = cache;
+        setTransport(new TransactionCachingTransport(getTransport(), cache, transactionURI));
+        return this;
+    }
+
+    /**
+     * @return the cache of the transaction, or null if it is not enabled
+     */
+    public TransactionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Record the writes made through this client in the given journal, so that they can be replayed into a fresh
+     * transaction if this one expires or cannot be committed. The journal is cleared when the transaction is committed
+     * or rolled back through this client.
+     *
+     * @param journal the journal, which must not be shared with other transactions
+     * @return this client
+     */
+    public synchronized TransactionalFcrepoClient enableJournal(final TransactionJournal journal) {
+        if (this.journal != null) {
+            throw new IllegalStateException("The journal of transaction " + transactionURI + " is already enabled");
+        }
+        this.journal = journal;
+        journal.attach(transactionURI);
+        setTransport(new JournalingTransport(getTransport(), journal, transactionURI));
+        return this;
+    }
+
+    /**
+     * @return the journal of the transaction, or null if it is not enabled
+     */
+    public TransactionJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Commit the transaction, and if it has expired or conflicts with a concurrent modification, replay its journal
+     * into a fresh transaction and commit that one instead. The fresh transaction is started with the client this
+     * one was created from, and does not inherit the cache or the keep-alive of this one.
+     *
+     * @param maxReplays how many times the writes are replayed at most
+     * @return the response to the last commit
+     * @throws IOException if a body cannot be read while replaying
+     * @throws FcrepoOperationFailedException if the last commit, or a replay, fails
+     * @throws IllegalStateException if the journal is not enabled, or this client was not created from another one
+     */
+    public FcrepoResponse commitWithReplay(final int maxReplays) throws IOException, FcrepoOperationFailedException {
+        if (journal == null || parent == null) {
+            throw new IllegalStateException("Replaying transaction " + transactionURI +
+                    " needs its journal and the client it was started from");
+        }
+        TransactionalFcrepoClient tx = this;
+        for (int replay = 0; ; replay++) {
+            final FcrepoResponse response;
+            try {
+                response = tx.commit().perform();
+            } catch (final FcrepoOperationFailedException ex) {
+                if (replay >= maxReplays || !isReplayable(ex.getStatusCode())) {
+                    throw ex;
+                }
+                LOGGER.info("Commit of transaction {} failed with status {}, replaying it", tx.transactionURI,
+                        ex.getStatusCode());
+                tx = journal.replay(parent);
+                continue;
+            }
+            if (replay >= maxReplays || !isReplayable(response.getStatusCode())) {
+                return response;
+            }
+            LOGGER.info("Commit of transaction {} failed with status {}, replaying it", tx.transactionURI,
+                    response.getStatusCode());
+            response.close();
+            tx = journal.replay(parent);
+        }
+    }
+
+    /**
+     * @return true for the statuses of a commit of a transaction which expired or met a concurrent modification
+     */
+    private static boolean isReplayable(final int status) {
+        return status == HttpStatus.SC_CONFLICT || status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE;
+    }
+
+    /**
+     * Keep the transaction alive in the background, renewing it before the expiry announced by the repository. Once
+     * the transaction is known to be dead, requests in flight through this client are aborted and later ones fail
+     * with a 410 without being sent. Committing or rolling back the transaction through this client ends the
+     * renewals.
+     *
+     * @param keepAlive the renewer, which may be shared by many transactions
+     * @return this client
+     */
+    public synchronized TransactionalFcrepoClient autoKeepAlive(final TransactionKeepAlive keepAlive) {
+        if (this.keepAlive != null) {
+            throw new IllegalStateException("Transaction " + transactionURI + " is already kept alive");
+        }
+        this.keepAlive = keepAlive;
+        final TransactionGuardTransport guard = new TransactionGuardTransport(getTransport(), this, keepAlive);
+        setTransport(guard);
+        keepAlive.register(this, guard);
+        return this;
+    }
+
+    /**
+     * Stop keeping the transaction alive, if it was, and close the client. The transaction itself is left as it is.
+     *
+     * @throws IOException if the transport cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        final TransactionKeepAlive renewer;
+        synchronized (this) {
+            renewer = keepAlive;
+        }
+        if (renewer != null) {
+            renewer.deregister(this);
+        }
+        super.close();
+    }
+
+    /**
+     * @return the expiry of the transaction last announced by the repository, or null if unknown
+     */
+    public Instant getExpires() {
+        return expires;
+    }
+
+    void setExpires(final Instant expires) {
+        this.expires = expires;
+    }
+
+    /**
+     * @return true if the transaction is known to be dead, for it expired or the repository no longer has it
+     */
+    public boolean isExpired() {
+        return expiredReason != null;
+    }
+
+    String getExpiredReason() {
+        return expiredReason;
+    }
+
+    void setExpired(final String reason) {
+        this.expiredReason = reason;
+    }
+
     /**
      * Commit a transaction by performing a PUT
      *
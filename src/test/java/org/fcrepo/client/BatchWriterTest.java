@@ -0,0 +1,187 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.client.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link BatchWriter}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BatchWriterTest {
+
+    private final URI base = URI.create("http://localhost/rest");
+
+    private final URI txEndpoint = URI.create("http://localhost/rest/fcr:tx");
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<BatchResult> results = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private FcrepoClient client;
+
+    @Before
+    public void setUp() {
+        client = FcrepoClient.client().transport(transport).build();
+    }
+
+    /**
+     * Answer transaction starts with a new transaction, writes to a resource ending with /bad with a 500, and all
+     * other requests with a 204
+     */
+    private void stubRepository() {
+        when(transport.executeAsync(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            requests.add(request.getMethod() + " " + request.getURI());
+            final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            int status = 204;
+            if (request.getURI().equals(txEndpoint)) {
+                status = 201;
+                headers.put("Location", List.of(txEndpoint + "/" + transactions.incrementAndGet()));
+            } else if (request.getURI().getPath().endsWith("/bad")) {
+                status = 500;
+            }
+            return CompletableFuture.completedFuture(new FcrepoResponse(request.getURI(), status, headers, null));
+        });
+    }
+
+    @Test
+    public void testCommitsEveryNOperations() throws Exception {
+        stubRepository();
+        try (final BatchWriter writer = new BatchWriter(client, base).maxOperations(2).listener(results::add)) {
+            for (int i = 0; i < 5; i++) {
+                final URI uri = URI.create(base + "/object" + i);
+                writer.submit(tx -> tx.put(uri));
+            }
+        }
+
+        assertEquals(3, results.size());
+        assertEquals(List.of(2, 2, 1), List.of(results.get(0).getOperations(), results.get(1).getOperations(),
+                results.get(2).getOperations()));
+        assertTrue(results.stream().allMatch(BatchResult::isCommitted));
+        assertEquals(5, requests.stream().filter(r -> r.startsWith("PUT " + base + "/object")).count());
+        assertEquals(3, requests.stream().filter(r -> r.startsWith("PUT " + txEndpoint + "/")).count());
+    }
+
+    @Test
+    public void testOperationsCarryTransaction() throws Exception {
+        stubRepository();
+        final List<URI> seen = Collections.synchronizedList(new ArrayList<>());
+        try (final BatchWriter writer = new BatchWriter(client, base).maxOperations(1)) {
+            writer.submit(tx -> {
+                seen.add(tx.getTransactionURI());
+                return tx.put(URI.create(base + "/a"));
+            });
+            writer.submit(tx -> {
+                seen.add(tx.getTransactionURI());
+                return tx.put(URI.create(base + "/b"));
+            });
+        }
+        assertEquals(List.of(URI.create(txEndpoint + "/1"), URI.create(txEndpoint + "/2")), seen);
+    }
+
+    @Test
+    public void testFailedOperationRollsBackBatch() throws Exception {
+        stubRepository();
+        try (final BatchWriter writer = new BatchWriter(client, base).listener(results::add)) {
+            writer.submit(tx -> tx.put(URI.create(base + "/good")));
+            writer.submit(tx -> tx.put(URI.create(base + "/bad")));
+            final BatchResult result = writer.flush().get();
+            assertFalse(result.isCommitted());
+            assertEquals(500, ((FcrepoOperationFailedException) result.getFailure()).getStatusCode());
+            assertEquals(1, writer.getFailedBatches());
+            assertEquals(0, writer.getCommittedBatches());
+        }
+        assertTrue(requests.contains("DELETE " + txEndpoint + "/1"));
+        assertFalse(requests.contains("PUT " + txEndpoint + "/1"));
+    }
+
+    @Test
+    public void testCommitsWhenBytesReached() throws Exception {
+        stubRepository();
+        try (final BatchWriter writer = new BatchWriter(client, base).maxBytes(10)) {
+            final File binary = folder.newFile();
+            Files.write(binary.toPath(), "twenty bytes of data".getBytes(UTF_8));
+            writer.submit(tx -> {
+                try {
+                    return tx.put(URI.create(base + "/binary")).body(binary, "text/plain");
+                } catch (final IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            // the batch was committed as soon as it was full, and the next transaction started
+            assertTrue(requests.contains("PUT " + txEndpoint + "/1"));
+            assertTrue(requests.contains("POST " + txEndpoint));
+        }
+        assertEquals(2, transactions.get());
+        // the transaction started ahead was not needed
+        assertTrue(requests.contains("DELETE " + txEndpoint + "/2"));
+    }
+
+    @Test
+    public void testCommitsAfterMaxDuration() throws Exception {
+        stubRepository();
+        try (final BatchWriter writer = new BatchWriter(client, base).maxDuration(50)) {
+            writer.submit(tx -> tx.put(URI.create(base + "/slow")));
+            await(() -> writer.getCommittedBatches() > 0);
+            assertEquals(1, writer.getCommittedBatches());
+        }
+    }
+
+    @Test
+    public void testFlushWithoutBatch() throws Exception {
+        try (final BatchWriter writer = new BatchWriter(client, base)) {
+            assertNull(writer.flush().get());
+        }
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterClose() throws Exception {
+        final BatchWriter writer = new BatchWriter(client, base);
+        writer.close();
+        writer.submit(tx -> tx.put(URI.create(base + "/late")));
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link BinaryCachingTransport} and {@link BinaryCache}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BinaryCachingTransportTest {
+
+    private static final String CONTENT = "binary content";
+
+    private final URI uri = URI.create("http://localhost/rest/binary");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testServeRevalidatedContentFromDisk() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath());
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        final List<String> ifNoneMatch = new ArrayList<>();
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            if (request.containsHeader("If-None-Match")) {
+                ifNoneMatch.add(request.getFirstHeader("If-None-Match").getValue());
+                return response(304, null, true);
+            }
+            return response(200, CONTENT, true);
+        });
+
+        assertEquals(CONTENT, read(transport.execute(uri, new HttpGet(uri))));
+        assertEquals(1, cache.getMisses());
+
+        final HttpGet request = new HttpGet(uri);
+        final FcrepoResponse response = transport.execute(uri, request);
+        assertEquals(200, response.getStatusCode());
+        assertTrue(response.isFromCache());
+        assertTrue(response.getBody() instanceof CachedBinaryInputStream);
+        assertEquals("text/plain", response.getContentType());
+        assertEquals(CONTENT, read(response));
+        assertEquals(List.of("\"abc\""), ifNoneMatch);
+        assertFalse(request.containsHeader("If-None-Match"));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testContentSurvivesRestart() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            return request.containsHeader("If-None-Match") ? response(304, null, true) :
+                    response(200, CONTENT, true);
+        });
+        read(new BinaryCachingTransport(delegate, new BinaryCache(directory)).execute(uri, new HttpGet(uri)));
+
+        final BinaryCache reopened = new BinaryCache(directory);
+        assertEquals(CONTENT.length(), reopened.getSize());
+        final FcrepoResponse response = new BinaryCachingTransport(delegate, reopened).execute(uri, new HttpGet(uri));
+        assertTrue(response.isFromCache());
+        assertEquals(CONTENT, read(response));
+    }
+
+    @Test
+    public void testCorruptedContentIsFetchedAgain() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            return request.containsHeader("If-None-Match") ? response(304, null, true) :
+                    response(200, CONTENT, true);
+        });
+        read(new BinaryCachingTransport(delegate, new BinaryCache(directory)).execute(uri, new HttpGet(uri)));
+        try (final var blobs = Files.list(directory.resolve("blobs"))) {
+            Files.write(blobs.findFirst().get(), "damaged".getBytes(UTF_8));
+        }
+
+        final BinaryCache reopened = new BinaryCache(directory);
+        final FcrepoResponse response = new BinaryCachingTransport(delegate, reopened).execute(uri, new HttpGet(uri));
+        assertFalse(response.isFromCache());
+        assertEquals(CONTENT, read(response));
+        assertEquals(1, reopened.getCorrupted());
+        verify(delegate, times(3)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testMismatchedDigestIsNotCached() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath());
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final FcrepoResponse response = response(200, CONTENT, true);
+            response.getHeaders().put("Digest", List.of("sha-256=" + sha256("other content")));
+            return response;
+        });
+
+        assertEquals(CONTENT, read(transport.execute(uri, new HttpGet(uri))));
+        assertEquals(0, cache.getSize());
+        assertNull(cache.lookup(uri));
+    }
+
+    @Test
+    public void testPartialReadIsNotCached() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath());
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, CONTENT, true));
+
+        try (final FcrepoResponse response = transport.execute(uri, new HttpGet(uri))) {
+            response.getBody().read(new byte[4]);
+        }
+        assertNull(cache.lookup(uri));
+        try (final var leftovers = Files.list(folder.getRoot().toPath().resolve("tmp"))) {
+            assertEquals(0, leftovers.count());
+        }
+    }
+
+    @Test
+    public void testRdfSourceIsNotCached() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath());
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, CONTENT, false));
+
+        read(transport.execute(uri, new HttpGet(uri)));
+        assertNull(cache.lookup(uri));
+    }
+
+    @Test
+    public void testWriteInvalidates() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath());
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpGet.class))).thenAnswer(invocation -> response(200, CONTENT, true));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, null, false));
+
+        read(transport.execute(uri, new HttpGet(uri)));
+        assertEquals("\"abc\"", cache.lookup(uri).getEtag());
+        transport.execute(uri, new HttpPut(uri));
+        assertNull(cache.lookup(uri));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath()).maxBytes(CONTENT.length() + 1);
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        final URI other = URI.create("http://localhost/rest/other");
+        when(delegate.execute(any(URI.class), any(HttpGet.class))).thenAnswer(invocation ->
+                response(200, invocation.getArgument(0).equals(uri) ? CONTENT : "other content", true));
+
+        read(transport.execute(uri, new HttpGet(uri)));
+        read(transport.execute(other, new HttpGet(other)));
+        assertEquals(1, cache.getEvictions());
+        assertEquals("other content".length(), cache.getSize());
+        // the entry pointing to the evicted content goes with it
+        try (final var entries = Files.list(folder.getRoot().toPath().resolve("entries"))) {
+            assertEquals(1, entries.count());
+        }
+        assertNull(cache.lookup(uri));
+    }
+
+    @Test
+    public void testAsksForDigest() throws Exception {
+        final BinaryCachingTransport transport =
+                new BinaryCachingTransport(delegate, new BinaryCache(folder.getRoot().toPath()));
+        final List<String> wantDigest = new ArrayList<>();
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            wantDigest.add(request.getFirstHeader("Want-Digest").getValue());
+            return response(200, CONTENT, true);
+        });
+
+        read(transport.execute(uri, new HttpGet(uri)));
+        final HttpGet request = new HttpGet(uri);
+        request.setHeader("Want-Digest", "sha-512");
+        read(transport.execute(uri, request));
+        assertEquals(List.of("sha-256", "sha-512"), wantDigest);
+    }
+
+    @Test
+    public void testRangeRequestBypassesCache() throws Exception {
+        final BinaryCache cache = new BinaryCache(folder.getRoot().toPath());
+        final BinaryCachingTransport transport = new BinaryCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(206, "bin", true));
+
+        final HttpGet request = new HttpGet(uri);
+        request.setHeader("Range", "bytes=0-2");
+        assertEquals("bin", read(transport.execute(uri, request)));
+        assertEquals(0, cache.getMisses());
+    }
+
+    private FcrepoResponse response(final int status, final String body, final boolean binary) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("ETag", new ArrayList<>(List.of("\"abc\"")));
+        headers.put("Content-Type", new ArrayList<>(List.of("text/plain")));
+        if (binary) {
+            headers.put("Link", new ArrayList<>(List.of("<http://www.w3.org/ns/ldp#NonRDFSource>;rel=\"type\"")));
+        }
+        final InputStream content = body == null ? null : new ByteArrayInputStream(body.getBytes(UTF_8));
+        return new FcrepoResponse(uri, status, headers, content);
+    }
+
+    private static String sha256(final String value) throws Exception {
+        return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(value.getBytes(UTF_8)));
+    }
+
+    private static String read(final FcrepoResponse response) throws Exception {
+        try (response) {
+            return IOUtils.toString(response.getBody(), "UTF-8");
+        }
+    }
+}
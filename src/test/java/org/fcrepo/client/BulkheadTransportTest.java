@@ -0,0 +1,144 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.emptyMap;
+import static org.fcrepo.client.Bulkhead.TrafficClass.BINARY;
+import static org.fcrepo.client.Bulkhead.TrafficClass.METADATA;
+import static org.fcrepo.client.Bulkhead.TrafficClass.TRANSACTION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.fcrepo.client.Bulkhead.TrafficClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link BulkheadTransport} and the classification of requests by {@link Bulkhead}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class BulkheadTransportTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport binaryTransport;
+
+    @Mock
+    private FcrepoTransport metadataTransport;
+
+    @Mock
+    private FcrepoTransport transactionTransport;
+
+    @Test
+    public void testClassify() {
+        assertEquals(BINARY, Bulkhead.classify(new HttpGet(uri)));
+        assertEquals(METADATA, Bulkhead.classify(new HttpHead(uri)));
+        assertEquals(METADATA, Bulkhead.classify(new HttpGet(URI.create(uri + "/fcr:metadata"))));
+        assertEquals(TRANSACTION, Bulkhead.classify(new HttpPost(URI.create("http://localhost/rest/fcr:tx"))));
+        assertEquals(TRANSACTION, Bulkhead.classify(new HttpPut(URI.create("http://localhost/rest/fcr:tx/abc"))));
+
+        final HttpGet rdf = new HttpGet(uri);
+        rdf.addHeader("Accept", "application/ld+json; profile=\"http://www.w3.org/ns/json-ld#compacted\"");
+        assertEquals(METADATA, Bulkhead.classify(rdf));
+
+        final HttpPut binary = new HttpPut(uri);
+        binary.setEntity(new ByteArrayEntity(new byte[1]));
+        binary.addHeader("Content-Type", "image/tiff");
+        assertEquals(BINARY, Bulkhead.classify(binary));
+
+        final HttpPut turtle = new HttpPut(uri);
+        turtle.setEntity(new ByteArrayEntity(new byte[1]));
+        turtle.addHeader("Content-Type", "text/turtle");
+        assertEquals(METADATA, Bulkhead.classify(turtle));
+    }
+
+    @Test
+    public void testRouteByTrafficClass() throws Exception {
+        final BulkheadTransport transport = new BulkheadTransport(transports(), new Bulkhead());
+        when(metadataTransport.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response());
+        when(binaryTransport.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response());
+
+        transport.execute(uri, new HttpHead(uri));
+        transport.execute(uri, new HttpGet(uri));
+        verify(metadataTransport).execute(eq(uri), any(HttpHead.class));
+        verify(binaryTransport).execute(eq(uri), any(HttpGet.class));
+    }
+
+    @Test
+    public void testBinaryLimitDoesNotBlockMetadata() throws Exception {
+        final Bulkhead bulkhead = new Bulkhead().limit(BINARY, 1).queue(BINARY, 0, 0);
+        final BulkheadTransport transport = new BulkheadTransport(transports(), bulkhead);
+        when(binaryTransport.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(new CompletableFuture<>());
+        when(metadataTransport.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response());
+
+        transport.executeAsync(uri, new HttpGet(uri));
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the binary transfer to be rejected");
+        } catch (final ConcurrencyLimitExceededException ex) {
+            assertEquals(1, bulkhead.getLimiter(BINARY).getRejected());
+        }
+        assertEquals(200, transport.execute(uri, new HttpHead(uri)).getStatusCode());
+        assertEquals(1, bulkhead.getLimiter(BINARY).getInFlight());
+        assertEquals(0, bulkhead.getLimiter(METADATA).getInFlight());
+    }
+
+    @Test
+    public void testDownloadHoldsBinarySlotUntilBodyClosed() throws Exception {
+        final Bulkhead bulkhead = new Bulkhead().limit(BINARY, 1).queue(BINARY, 0, 0);
+        final BulkheadTransport transport = new BulkheadTransport(transports(), bulkhead);
+        when(binaryTransport.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation ->
+                new FcrepoResponse(uri, 200, emptyMap(), new ByteArrayInputStream(new byte[1024])));
+
+        final FcrepoResponse download = transport.execute(uri, new HttpGet(uri));
+        assertEquals(1, bulkhead.getLimiter(BINARY).getInFlight());
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the second download to be rejected while the first one streams");
+        } catch (final ConcurrencyLimitExceededException ex) {
+            assertEquals(1, bulkhead.getLimiter(BINARY).getRejected());
+        }
+
+        download.close();
+        assertEquals(0, bulkhead.getLimiter(BINARY).getInFlight());
+        transport.execute(uri, new HttpGet(uri)).close();
+        assertEquals(0, bulkhead.getLimiter(BINARY).getInFlight());
+    }
+
+    private Map<TrafficClass, FcrepoTransport> transports() {
+        final Map<TrafficClass, FcrepoTransport> transports = new EnumMap<>(TrafficClass.class);
+        transports.put(BINARY, binaryTransport);
+        transports.put(METADATA, metadataTransport);
+        transports.put(TRANSACTION, transactionTransport);
+        return transports;
+    }
+
+    private FcrepoResponse response() {
+        return new FcrepoResponse(uri, 200, emptyMap(), null);
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link CachingTransport} and {@link ResponseCache}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CachingTransportTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testServeFreshEntry() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", "\"abc\"", null));
+
+        assertEquals("body", read(transport.execute(uri, new HttpGet(uri))));
+        assertEquals("body", read(transport.execute(uri, new HttpGet(uri))));
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testRevalidateStaleEntry() throws Exception {
+        final ResponseCache cache = new ResponseCache().freshness(0);
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        final AtomicReference<String> ifNoneMatch = new AtomicReference<>();
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            if (request.containsHeader("If-None-Match")) {
+                ifNoneMatch.set(request.getFirstHeader("If-None-Match").getValue());
+                return response(304, null, "\"abc\"", null);
+            }
+            return response(200, "body", "\"abc\"", null);
+        });
+
+        transport.execute(uri, new HttpGet(uri)).close();
+        final HttpGet request = new HttpGet(uri);
+        final FcrepoResponse response = transport.execute(uri, request);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("body", read(response));
+        assertEquals("\"abc\"", ifNoneMatch.get());
+        assertFalse(request.containsHeader("If-None-Match"));
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(0.5, cache.getRevalidationRatio(), 0.001);
+    }
+
+    @Test
+    public void testNoCacheRequestRevalidates() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", "\"abc\"", null));
+
+        transport.execute(uri, new HttpGet(uri)).close();
+        final HttpGet request = new HttpGet(uri);
+        request.setHeader("Cache-Control", "no-cache");
+        transport.execute(uri, request).close();
+        verify(delegate, times(2)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testWriteInvalidates() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        final URI description = URI.create(uri + "/fcr:metadata");
+        when(delegate.execute(eq(description), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", "\"abc\"", null));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, null, null, null));
+
+        transport.execute(description, new HttpGet(description)).close();
+        assertEquals(1, cache.getEntryCount());
+        transport.execute(uri, new HttpPut(uri));
+        assertEquals(0, cache.getEntryCount());
+        transport.execute(description, new HttpGet(description)).close();
+        verify(delegate, times(2)).execute(eq(description), any(HttpGet.class));
+    }
+
+    @Test
+    public void testWriteInvalidatesRequestedUriWhenRewrittenBelow() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        final URI description = URI.create(uri + "/fcr:metadata");
+        when(delegate.execute(eq(description), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", "\"abc\"", null));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> {
+            // a read racing with the write caches the state from before it
+            transport.execute(description, new HttpGet(description)).close();
+            // a transport below sends the write elsewhere
+            final HttpRequestBase request = invocation.getArgument(1);
+            request.setURI(URI.create("http://node2/rest/foo"));
+            return response(204, null, null, null);
+        });
+
+        transport.execute(uri, new HttpPut(uri));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testCommitInvalidatesWritesMadeInTransaction() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        final URI txUri = URI.create("http://localhost/rest/fcr:tx/1234");
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", "\"abc\"", null));
+        when(delegate.execute(eq(txUri), any(HttpPut.class))).thenAnswer(invocation -> response(204, null, null, null));
+
+        final HttpPut write = new HttpPut(uri);
+        write.setHeader("Atomic-ID", txUri.toString());
+        transport.execute(uri, write).close();
+        // the write is not visible outside the transaction yet, so a read caches the state from before it
+        transport.execute(uri, new HttpGet(uri)).close();
+        assertEquals(1, cache.getEntryCount());
+
+        final HttpPut commit = new HttpPut(txUri);
+        commit.setHeader("Atomic-ID", txUri.toString());
+        transport.execute(txUri, commit).close();
+        assertEquals(0, cache.getEntryCount());
+        transport.execute(uri, new HttpGet(uri)).close();
+        verify(delegate, times(2)).execute(eq(uri), any(HttpGet.class));
+    }
+
+    @Test
+    public void testNoStoreNotCached() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", null, "no-store"));
+
+        assertEquals("body", read(transport.execute(uri, new HttpGet(uri))));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testVariantsCachedSeparately() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", null, null));
+
+        final HttpGet turtle = new HttpGet(uri);
+        turtle.setHeader("Accept", "text/turtle");
+        final HttpGet jsonld = new HttpGet(uri);
+        jsonld.setHeader("Accept", "application/ld+json");
+        transport.execute(uri, turtle).close();
+        transport.execute(uri, jsonld).close();
+        assertEquals(2, cache.getEntryCount());
+        assertNull(ResponseCache.keyOf(new HttpPut(uri)));
+    }
+
+    @Test
+    public void testFrequentEntrySurvivesScan() throws Exception {
+        final ResponseCache cache = new ResponseCache().maxBytes(1000);
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(any(URI.class), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "x".repeat(200), null, null));
+
+        for (int i = 0; i < 5; i++) {
+            transport.execute(uri, new HttpGet(uri)).close();
+        }
+        for (int i = 0; i < 20; i++) {
+            final URI other = URI.create("http://localhost/rest/scan" + i);
+            transport.execute(other, new HttpGet(other)).close();
+        }
+        assertTrue(cache.getSize() <= 1000);
+        assertTrue(cache.getEvictions() > 0);
+
+        transport.execute(uri, new HttpGet(uri)).close();
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testAsyncServeAndStore() throws Exception {
+        final ResponseCache cache = new ResponseCache();
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(response(200, "body", null, null)));
+
+        assertEquals("body", read(transport.executeAsync(uri, new HttpGet(uri)).get()));
+        assertEquals("body", read(transport.executeAsync(uri, new HttpGet(uri)).get()));
+        verify(delegate, times(1)).executeAsync(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        final ResponseCache cache = new ResponseCache().freshness(0).staleWhileRevalidate(60000);
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", "\"abc\"", null));
+        final CompletableFuture<FcrepoResponse> refresh = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(refresh);
+
+        final FcrepoResponse first = transport.execute(uri, new HttpGet(uri));
+        assertFalse(first.isFromCache());
+        first.close();
+
+        final FcrepoResponse stale = transport.execute(uri, new HttpGet(uri));
+        assertTrue(stale.isFromCache());
+        assertEquals("body", read(stale));
+        // a second stale read does not start another refresh
+        transport.execute(uri, new HttpGet(uri)).close();
+        verify(delegate, times(1)).executeAsync(eq(uri), any(HttpRequestBase.class));
+        assertEquals(2, cache.getStaleHits());
+
+        refresh.complete(response(304, null, "\"abc\"", "max-age=60"));
+        final FcrepoResponse fresh = transport.execute(uri, new HttpGet(uri));
+        assertTrue(fresh.isFromCache());
+        assertTrue(fresh.getAge().toMillis() < 60000);
+        assertEquals(1, cache.getHits());
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testStaleIfErrorOnFailure() throws Exception {
+        final ResponseCache cache = new ResponseCache().freshness(0).staleIfError(60000);
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", null, null))
+                .thenThrow(new SocketTimeoutException())
+                .thenAnswer(invocation -> response(503, null, null, null));
+
+        transport.execute(uri, new HttpGet(uri)).close();
+        final FcrepoResponse timedOut = transport.execute(uri, new HttpGet(uri));
+        assertTrue(timedOut.isFromCache());
+        assertEquals("body", read(timedOut));
+        final FcrepoResponse unavailable = transport.execute(uri, new HttpGet(uri));
+        assertEquals(200, unavailable.getStatusCode());
+        assertEquals("body", read(unavailable));
+        assertEquals(2, cache.getStaleIfErrorHits());
+    }
+
+    @Test
+    public void testStaleIfErrorPerRequest() throws Exception {
+        final ResponseCache cache = new ResponseCache().freshness(0);
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", null, null))
+                .thenAnswer(invocation -> response(503, null, null, null));
+
+        transport.execute(uri, new HttpGet(uri)).close();
+        final HttpGet request = new HttpGet(uri);
+        request.setHeader("Cache-Control", "stale-if-error=60");
+        assertEquals("body", read(transport.execute(uri, request)));
+        assertEquals(503, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+    }
+
+    @Test
+    public void testStaleIfErrorBound() throws Exception {
+        final ResponseCache cache = new ResponseCache().freshness(0).staleIfError(1);
+        final CachingTransport transport = new CachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "body", null, null))
+                .thenThrow(new SocketTimeoutException());
+
+        transport.execute(uri, new HttpGet(uri)).close();
+        Thread.sleep(10);
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the timeout once the entry is too stale");
+        } catch (final SocketTimeoutException ex) {
+            assertEquals(0, cache.getStaleIfErrorHits());
+        }
+    }
+
+    private FcrepoResponse response(final int status, final String body, final String etag,
+            final String cacheControl) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (etag != null) {
+            headers.put("ETag", List.of(etag));
+        }
+        if (cacheControl != null) {
+            headers.put("Cache-Control", List.of(cacheControl));
+        }
+        return new FcrepoResponse(uri, status, headers,
+                body == null ? null : new ByteArrayInputStream(body.getBytes()));
+    }
+
+    private static String read(final FcrepoResponse response) throws Exception {
+        try (response) {
+            return IOUtils.toString(response.getBody(), "UTF-8");
+        }
+    }
+}
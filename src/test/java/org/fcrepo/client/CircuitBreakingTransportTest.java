@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link CircuitBreakingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CircuitBreakingTransportTest {
+
+    private final URI uri = URI.create("http://localhost:8080/rest/foo");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testOpenOnFailureRate() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker().window(4, 4).failureRateThreshold(0.5);
+        final CircuitBreakingTransport transport = new CircuitBreakingTransport(delegate, breaker);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(response(200), response(200), response(503), response(500));
+
+        for (int i = 0; i < 4; i++) {
+            transport.execute(uri, new HttpGet(uri));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(uri));
+
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the breaker to reject the request");
+        } catch (final CircuitBreakerOpenException ex) {
+            assertEquals(uri, ex.getUrl());
+        }
+        verify(delegate, times(4)).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(1, breaker.getRejected(uri));
+    }
+
+    @Test
+    public void testOpenOnConnectionFailures() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker().window(2, 2);
+        final CircuitBreakingTransport transport = new CircuitBreakingTransport(delegate, breaker);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenThrow(new ConnectException());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                transport.execute(uri, new HttpGet(uri));
+                fail("Expected the connection to fail");
+            } catch (final ConnectException ex) {
+                // expected
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(uri));
+
+        try {
+            transport.executeAsync(uri, new HttpGet(uri)).get();
+            fail("Expected the breaker to reject the request");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof CircuitBreakerOpenException);
+        }
+    }
+
+    @Test
+    public void testCloseAfterHalfOpenTrials() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker().window(2, 2).halfOpen(0, 2);
+        final CircuitBreakingTransport transport = new CircuitBreakingTransport(delegate, breaker);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(response(503), response(503), response(200), response(200));
+
+        transport.execute(uri, new HttpGet(uri));
+        transport.execute(uri, new HttpGet(uri));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(uri));
+
+        transport.execute(uri, new HttpGet(uri));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(uri));
+        transport.execute(uri, new HttpGet(uri));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(uri));
+    }
+
+    @Test
+    public void testLocalRejectionDoesNotEndHalfOpenTrial() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker().window(2, 2).halfOpen(0, 1);
+        final CircuitBreakingTransport transport = new CircuitBreakingTransport(delegate, breaker);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(response(503), response(503))
+                .thenThrow(new FcrepoOperationFailedException(uri, -1, "Rate limit exceeded"))
+                .thenReturn(response(200));
+
+        transport.execute(uri, new HttpGet(uri));
+        transport.execute(uri, new HttpGet(uri));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(uri));
+
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the request to be rejected below the breaker");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(-1, ex.getStatusCode());
+        }
+        // the trial slot was given back without an outcome
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(uri));
+        transport.execute(uri, new HttpGet(uri));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(uri));
+    }
+
+    @Test
+    public void testOpenOnSlowCalls() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker().window(2, 2).slowCallRateThreshold(1, 0);
+        final CircuitBreakingTransport transport = new CircuitBreakingTransport(delegate, breaker);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            Thread.sleep(5);
+            return response(200);
+        });
+
+        transport.execute(uri, new HttpGet(uri));
+        transport.execute(uri, new HttpGet(uri));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(uri));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(URI.create("http://otherhost/rest")));
+    }
+
+    private FcrepoResponse response(final int status) {
+        return new FcrepoResponse(uri, status, emptyMap(), null);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.fcrepo.client.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link CoalescingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class CoalescingTransportTest {
+
+    private static final String CONTENT = "shared content";
+
+    private final URI uri = URI.create("http://localhost/rest/popular");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentRequestsShareExchange() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CoalescingTransport transport = new CoalescingTransport(delegate, coalescer);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return response(CONTENT);
+        });
+
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> read(transport.execute(uri, new HttpGet(uri)))));
+        }
+        await(() -> coalescer.getCoalesced() >= 3);
+        release.countDown();
+
+        for (final Future<String> result : results) {
+            assertEquals(CONTENT, result.get(5, TimeUnit.SECONDS));
+        }
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(4, coalescer.getRequests());
+        assertEquals(0.75, coalescer.getCoalescingRate(), 0.001);
+    }
+
+    @Test
+    public void testSequentialRequestsAreNotCoalesced() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CoalescingTransport transport = new CoalescingTransport(delegate, coalescer);
+        final FcrepoResponse first = response(CONTENT);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(first, response(CONTENT));
+
+        assertSame(first, transport.execute(uri, new HttpGet(uri)));
+        transport.execute(uri, new HttpGet(uri));
+        verify(delegate, times(2)).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testDifferentHeadersAreNotCoalesced() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CoalescingTransport transport = new CoalescingTransport(delegate, coalescer);
+        final CompletableFuture<FcrepoResponse> exchange = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(exchange);
+
+        final HttpGet turtle = new HttpGet(uri);
+        turtle.setHeader("Accept", "text/turtle");
+        final HttpGet jsonld = new HttpGet(uri);
+        jsonld.setHeader("Accept", "application/ld+json");
+        transport.executeAsync(uri, turtle);
+        transport.executeAsync(uri, jsonld);
+        verify(delegate, times(2)).executeAsync(eq(uri), any(HttpRequestBase.class));
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testAsyncRequestsShareExchange() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer();
+        final CoalescingTransport transport = new CoalescingTransport(delegate, coalescer);
+        final CompletableFuture<FcrepoResponse> exchange = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(exchange);
+
+        final CompletableFuture<FcrepoResponse> first = transport.executeAsync(uri, new HttpGet(uri));
+        final CompletableFuture<FcrepoResponse> second = transport.executeAsync(uri, new HttpGet(uri));
+        exchange.complete(response(CONTENT));
+
+        assertEquals(CONTENT, read(first.get()));
+        assertEquals(CONTENT, read(second.get()));
+        verify(delegate, times(1)).executeAsync(eq(uri), any(HttpRequestBase.class));
+        assertEquals(1, coalescer.getCoalesced());
+    }
+
+    @Test
+    public void testFailureReachesAllRequests() throws Exception {
+        final CoalescingTransport transport = new CoalescingTransport(delegate, new RequestCoalescer());
+        final CompletableFuture<FcrepoResponse> exchange = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(exchange);
+
+        final CompletableFuture<FcrepoResponse> first = transport.executeAsync(uri, new HttpGet(uri));
+        final CompletableFuture<FcrepoResponse> second = transport.executeAsync(uri, new HttpGet(uri));
+        exchange.completeExceptionally(new IOException("connection reset"));
+
+        for (final CompletableFuture<FcrepoResponse> future : List.of(first, second)) {
+            try {
+                future.get();
+                fail("Expected the failure of the shared exchange");
+            } catch (final ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof IOException);
+            }
+        }
+    }
+
+    @Test
+    public void testCancellingOneRequestKeepsExchange() throws Exception {
+        final CoalescingTransport transport = new CoalescingTransport(delegate, new RequestCoalescer());
+        final CompletableFuture<FcrepoResponse> exchange = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(exchange);
+
+        final CompletableFuture<FcrepoResponse> first = transport.executeAsync(uri, new HttpGet(uri));
+        final CompletableFuture<FcrepoResponse> second = transport.executeAsync(uri, new HttpGet(uri));
+        first.cancel(true);
+        assertFalse(exchange.isCancelled());
+        exchange.complete(response(CONTENT));
+        assertEquals(CONTENT, read(second.get()));
+    }
+
+    @Test
+    public void testCancellingAllRequestsAbortsExchange() throws Exception {
+        final CoalescingTransport transport = new CoalescingTransport(delegate, new RequestCoalescer());
+        final CompletableFuture<FcrepoResponse> exchange = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(exchange);
+
+        final CompletableFuture<FcrepoResponse> first = transport.executeAsync(uri, new HttpGet(uri));
+        final CompletableFuture<FcrepoResponse> second = transport.executeAsync(uri, new HttpGet(uri));
+        first.cancel(true);
+        second.cancel(true);
+        assertTrue(exchange.isCancelled());
+    }
+
+    @Test
+    public void testLargeBodySpillsToFile() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer().memoryThreshold(4)
+                .spillDirectory(folder.getRoot().toPath());
+        final CoalescingTransport transport = new CoalescingTransport(delegate, coalescer);
+        final CompletableFuture<FcrepoResponse> exchange = new CompletableFuture<>();
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(exchange);
+
+        final CompletableFuture<FcrepoResponse> first = transport.executeAsync(uri, new HttpGet(uri));
+        final CompletableFuture<FcrepoResponse> second = transport.executeAsync(uri, new HttpGet(uri));
+        exchange.complete(response(CONTENT));
+
+        assertEquals(CONTENT, read(first.get()));
+        try (final var files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+        assertEquals(CONTENT, read(second.get()));
+        try (final var files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private FcrepoResponse response(final String body) {
+        return new FcrepoResponse(uri, 200, new TreeMap<>(String.CASE_INSENSITIVE_ORDER),
+                new ByteArrayInputStream(body.getBytes(UTF_8)));
+    }
+
+    private static String read(final FcrepoResponse response) throws Exception {
+        try (response) {
+            return IOUtils.toString(response.getBody(), "UTF-8");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link ConcurrencyLimiter}.
+ *
+ * @author agent
+ */
+public class ConcurrencyLimiterTest {
+
+    @Test
+    public void testQueueOverLimit() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1).queue(1, 10000);
+
+        final CompletableFuture<Void> first = limiter.acquire();
+        final CompletableFuture<Void> second = limiter.acquire();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(1, limiter.getQueueDepth());
+        assertNull(limiter.acquire());
+        assertEquals(1, limiter.getRejected());
+
+        limiter.release(0, false);
+        assertTrue(second.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testFailFast() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1).queue(0, 0);
+
+        limiter.acquire();
+        assertNull(limiter.acquire());
+    }
+
+    @Test
+    public void testBackoffOnOverload() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(10).backoffRatio(0.5);
+
+        limiter.acquire();
+        limiter.release(0, true);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testBackoffOnLatency() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(10).backoffRatio(0.5)
+                .latencyThreshold(100);
+
+        limiter.acquire();
+        limiter.release(MILLISECONDS.toNanos(200), false);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void testIncreaseWhenSaturated() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(2);
+
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+            limiter.acquire();
+            limiter.release(0, false);
+            limiter.release(0, false);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitBounds() {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().limitBounds(2, 4).initialLimit(10);
+        assertEquals(4, limiter.getLimit());
+
+        limiter.acquire();
+        limiter.release(0, true);
+        limiter.acquire();
+        limiter.release(0, true);
+        limiter.acquire();
+        limiter.release(0, true);
+        limiter.acquire();
+        limiter.release(0, true);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBackoffRatio() {
+        new ConcurrencyLimiter().backoffRatio(1.5);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link ConcurrencyLimitingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ConcurrencyLimitingTransportTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testBackoffOnServerError() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(10).backoffRatio(0.5);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(503));
+
+        assertEquals(503, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testBackoffOnTimeout() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(10).backoffRatio(0.5);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenThrow(new SocketTimeoutException());
+
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the request to time out");
+        } catch (final SocketTimeoutException ex) {
+            assertEquals(5, limiter.getLimit());
+            assertEquals(0, limiter.getInFlight());
+        }
+    }
+
+    @Test
+    public void testRejectWhenQueueFull() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1).queue(0, 0);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        limiter.acquire();
+
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the request to be rejected");
+        } catch (final ConcurrencyLimitExceededException ex) {
+            assertEquals(uri, ex.getUrl());
+        }
+        verify(delegate, never()).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testRejectAfterQueueTimeout() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1).queue(1, 10);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        limiter.acquire();
+
+        try {
+            transport.executeAsync(uri, new HttpGet(uri)).get();
+            fail("Expected the request to be rejected");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof ConcurrencyLimitExceededException);
+        }
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    public void testPermitHeldUntilBodyRead() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(
+                new FcrepoResponse(uri, 200, emptyMap(), new ByteArrayInputStream("body".getBytes(UTF_8))));
+
+        try (final FcrepoResponse response = transport.execute(uri, new HttpGet(uri))) {
+            assertEquals(1, limiter.getInFlight());
+            assertEquals("body", IOUtils.toString(response.getBody(), UTF_8));
+            assertEquals(0, limiter.getInFlight());
+        }
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testPermitReleasedOnClose() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(
+                new FcrepoResponse(uri, 200, emptyMap(), new ByteArrayInputStream("body".getBytes(UTF_8))));
+
+        final FcrepoResponse response = transport.execute(uri, new HttpGet(uri));
+        assertEquals(1, limiter.getInFlight());
+        // released once, however many times the body is closed
+        response.getBody().close();
+        response.close();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAsyncReleasesPermit() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().initialLimit(1);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(200)));
+
+        assertEquals(200, transport.executeAsync(uri, new HttpGet(uri)).get().getStatusCode());
+        assertEquals(200, transport.executeAsync(uri, new HttpGet(uri)).get().getStatusCode());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testInterruptAfterGrantReleasesPermit() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter() {
+            @Override
+            CompletableFuture<Void> acquire() {
+                final CompletableFuture<Void> granted = super.acquire();
+                // the permit is granted just as the waiting thread is interrupted
+                return new CompletableFuture<>() {
+                    @Override
+                    public Void get() throws InterruptedException {
+                        complete(granted.join());
+                        throw new InterruptedException();
+                    }
+                };
+            }
+        }.initialLimit(1);
+        final ConcurrencyLimitingTransport transport = new ConcurrencyLimitingTransport(delegate, limiter);
+
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the wait to be interrupted");
+        } catch (final InterruptedIOException ex) {
+            assertTrue(Thread.interrupted());
+        }
+        assertEquals(0, limiter.getInFlight());
+        verify(delegate, never()).execute(any(URI.class), any(HttpRequestBase.class));
+    }
+
+    private FcrepoResponse response(final int status) {
+        return new FcrepoResponse(uri, status, emptyMap(), null);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.client.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockserver.client.MockServerClient;
+import org.mockserver.junit.MockServerRule;
+
+/**
+ * Tests that requests lease their connections from a pool of the configured size.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ConnectionPoolTest {
+
+    private static final long RESPONSE_DELAY = 200;
+
+    private static final int CONCURRENCY = 8;
+
+    @Rule
+    public MockServerRule mockServerRule = new MockServerRule(this);
+
+    private MockServerClient mockServerClient;
+
+    private ExecutorService executor;
+
+    private URI uri;
+
+    @Before
+    public void setUp() {
+        mockServerClient.when(request().withPath("/slow"))
+                .respond(response().withStatusCode(HttpStatus.SC_OK).withDelay(MILLISECONDS, RESPONSE_DELAY));
+        uri = URI.create("http://localhost:" + mockServerRule.getPort() + "/slow");
+        executor = Executors.newFixedThreadPool(CONCURRENCY);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testPoolSizedToConcurrency() throws Exception {
+        final FcrepoHttpClientBuilder builder = new FcrepoHttpClientBuilder(null, null, null)
+                .maxTotalConnections(CONCURRENCY)
+                .maxConnectionsPerRoute(CONCURRENCY)
+                .tcpNoDelay(true)
+                .validateAfterInactivity(1000)
+                .connectionTimeToLive(1, SECONDS);
+        final PoolingHttpClientConnectionManager pool = builder.buildConnectionManager();
+        try (final FcrepoClient client = new FcrepoClient(builder.build(pool), false)) {
+            final List<Future<Integer>> results = sendConcurrentRequests(client);
+            // every request holds a connection of its own at once
+            await(() -> pool.getTotalStats().getLeased() == CONCURRENCY);
+            assertEquals(0, pool.getTotalStats().getPending());
+            assertSucceeded(results);
+
+            assertEquals(0, pool.getTotalStats().getLeased());
+            assertEquals(CONCURRENCY, pool.getTotalStats().getAvailable());
+        }
+    }
+
+    @Test
+    public void testSingleConnectionIsReused() throws Exception {
+        final FcrepoHttpClientBuilder builder = new FcrepoHttpClientBuilder(null, null, null)
+                .maxTotalConnections(1)
+                .maxConnectionsPerRoute(1);
+        final PoolingHttpClientConnectionManager pool = builder.buildConnectionManager();
+        try (final FcrepoClient client = new FcrepoClient(builder.build(pool), false)) {
+            final List<Future<Integer>> results = sendConcurrentRequests(client);
+            // the other requests wait for the one connection
+            await(() -> pool.getTotalStats().getPending() > 0);
+            assertEquals(1, pool.getTotalStats().getLeased());
+            assertSucceeded(results);
+
+            assertEquals(0, pool.getTotalStats().getLeased());
+            assertEquals(1, pool.getTotalStats().getAvailable());
+        }
+    }
+
+    @Test(expected = FcrepoOperationFailedException.class)
+    public void testSocketTimeout() throws Exception {
+        try (final FcrepoClient client = FcrepoClient.client()
+                .throwExceptionOnFailure()
+                .socketTimeout((int) RESPONSE_DELAY / 4)
+                .build()) {
+            client.get(uri).perform();
+        }
+    }
+
+    private List<Future<Integer>> sendConcurrentRequests(final FcrepoClient client) {
+        final List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < CONCURRENCY; i++) {
+            results.add(executor.submit(() -> {
+                try (final FcrepoResponse response = client.get(uri).perform()) {
+                    return response.getStatusCode();
+                }
+            }));
+        }
+        return results;
+    }
+
+    private static void assertSucceeded(final List<Future<Integer>> results) throws Exception {
+        for (final Future<Integer> result : results) {
+            assertEquals(HttpStatus.SC_OK, (int) result.get(10, SECONDS));
+        }
+    }
+}
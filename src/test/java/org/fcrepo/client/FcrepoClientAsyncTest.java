@@ -0,0 +1,173 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.client.TestUtils.TEXT_TURTLE;
+import static org.fcrepo.client.TestUtils.rdfTtl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockserver.client.MockServerClient;
+import org.mockserver.junit.MockServerRule;
+
+/**
+ * Tests for asynchronous request execution with {@link RequestBuilder#performAsync()}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class FcrepoClientAsyncTest {
+
+    @Rule
+    public MockServerRule mockServerRule = new MockServerRule(this);
+
+    private MockServerClient mockServerClient;
+
+    private FcrepoClient client;
+
+    private String baseUri;
+
+    @Before
+    public void setUp() {
+        mockServerClient.when(request().withPath("/ok"))
+                .respond(response(rdfTtl).withStatusCode(HttpStatus.SC_OK)
+                        .withHeader("Content-Type", TEXT_TURTLE));
+        mockServerClient.when(request().withPath("/created"))
+                .respond(response().withStatusCode(HttpStatus.SC_CREATED)
+                        .withHeader("Location", "http://localhost/created/1"));
+        mockServerClient.when(request().withPath("/error"))
+                .respond(response().withStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR));
+        mockServerClient.when(request().withPath("/slow"))
+                .respond(response().withStatusCode(HttpStatus.SC_OK).withDelay(MILLISECONDS, 200));
+
+        baseUri = "http://localhost:" + mockServerRule.getPort();
+        client = FcrepoClient.client()
+                .throwExceptionOnFailure()
+                .maxConnectionsPerRoute(20)
+                .maxTotalConnections(20)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+    }
+
+    @Test
+    public void testGetAsync() throws Exception {
+        try (final FcrepoResponse response = client.get(URI.create(baseUri + "/ok"))
+                .accept(TEXT_TURTLE)
+                .performAsync()
+                .get(5, SECONDS)) {
+            assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+            assertEquals(TEXT_TURTLE, response.getContentType());
+            assertEquals(rdfTtl, IOUtils.toString(response.getBody(), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void testPostAsyncWithBody() throws Exception {
+        try (final FcrepoResponse response = client.post(URI.create(baseUri + "/created"))
+                .body(new ByteArrayInputStream(rdfTtl.getBytes()), TEXT_TURTLE)
+                .performAsync()
+                .get(5, SECONDS)) {
+            assertEquals(HttpStatus.SC_CREATED, response.getStatusCode());
+            assertEquals(URI.create("http://localhost/created/1"), response.getLocation());
+        }
+    }
+
+    @Test
+    public void testErrorStatusCompletesExceptionally() throws Exception {
+        final CompletableFuture<FcrepoResponse> future = client.head(URI.create(baseUri + "/error")).performAsync();
+        try {
+            future.get(5, SECONDS);
+            fail("Expected the future to complete exceptionally");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof FcrepoOperationFailedException);
+            assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+                    ((FcrepoOperationFailedException) ex.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testErrorStatusWithoutThrowing() throws Exception {
+        try (final FcrepoClient lenient = FcrepoClient.client().build();
+             final FcrepoResponse response = lenient.get(URI.create(baseUri + "/error"))
+                     .performAsync()
+                     .get(5, SECONDS)) {
+            assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testConnectionFailureCompletesExceptionally() throws Exception {
+        mockServerRule.getClient().stop();
+        try {
+            client.get(URI.create(baseUri + "/ok")).performAsync().get(5, SECONDS);
+            fail("Expected the future to complete exceptionally");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof FcrepoOperationFailedException);
+            assertEquals(-1, ((FcrepoOperationFailedException) ex.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsDoNotBlockCaller() throws Exception {
+        final int count = 20;
+        final long start = System.nanoTime();
+        final List<CompletableFuture<FcrepoResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(client.head(URI.create(baseUri + "/slow")).performAsync());
+        }
+        final long submitted = NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, SECONDS);
+        for (final CompletableFuture<FcrepoResponse> future : futures) {
+            assertEquals(HttpStatus.SC_OK, future.get().getStatusCode());
+        }
+
+        assertTrue("Submitting requests should not wait on responses, took " + submitted + "ms", submitted < 200);
+    }
+
+    @Test
+    public void testTransactionalClientSharesAsyncClient() throws Exception {
+        final FcrepoResponse txResponse = new FcrepoResponse(URI.create(baseUri + "/fcr:tx"), 201,
+                Map.of("Location", List.of(baseUri + "/fcr:tx/1234")), null);
+        final TransactionalFcrepoClient txClient = client.transactionalClient(txResponse);
+        try (final FcrepoResponse response = txClient.get(URI.create(baseUri + "/ok")).performAsync()
+                .get(5, SECONDS)) {
+            assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        }
+        txClient.close();
+
+        // the parent async client remains usable once the transactional client is closed
+        final CompletableFuture<FcrepoResponse> future = client.get(URI.create(baseUri + "/ok")).performAsync();
+        assertFalse(future.get(5, SECONDS).isClosed());
+    }
+}
@@ -36,4 +36,37 @@ public class FcrepoClientBuilderTest {
             assertNotNull(client);
         }
     }
+
+    @Test
+    public void testBuildWithConnectionPool() throws Exception {
+        try (final FcrepoClient client = FcrepoClient.client()
+                .credentials("user", "password")
+                .maxTotalConnections(40)
+                .maxConnectionsPerRoute(20)
+                .connectTimeout(1000)
+                .socketTimeout(10000)
+                .build()) {
+            assertNotNull(client);
+        }
+    }
+
+    @Test
+    public void testBuildHttp2() throws Exception {
+        try (final FcrepoClient client = FcrepoClient.client()
+                .credentials("user", "password")
+                .connectTimeout(1000)
+                .http2()
+                .build()) {
+            assertNotNull(client);
+        }
+    }
+
+    @Test
+    public void testBuildWithRetryPolicy() throws Exception {
+        try (final FcrepoClient client = FcrepoClient.client()
+                .retryPolicy(new RetryPolicy().maxAttempts(5).backoff(50, 2000))
+                .build()) {
+            assertNotNull(client);
+        }
+    }
 }
@@ -13,6 +13,8 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.TimeUnit;
+
 import org.apache.http.HttpHost;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.AuthState;
@@ -67,6 +69,32 @@ public class FcrepoHttpClientBuilderTest {
         assertNotNull(client);
     }
 
+    @Test
+    public void testBuildWithPoolConfiguration() throws Exception {
+        final FcrepoHttpClientBuilder builder = new FcrepoHttpClientBuilder(null, null, null)
+                .maxTotalConnections(50)
+                .maxConnectionsPerRoute(25)
+                .validateAfterInactivity(2000)
+                .connectionTimeToLive(5, TimeUnit.MINUTES)
+                .connectTimeout(1000)
+                .connectionRequestTimeout(1000)
+                .socketTimeout(30000)
+                .tcpNoDelay(true)
+                .socketBufferSizes(65536, 65536);
+        try (final CloseableHttpClient client = builder.build()) {
+            assertNotNull(client);
+        }
+    }
+
+    @Test
+    public void testBuildWithPoolConfigurationAndCredentials() throws Exception {
+        final FcrepoHttpClientBuilder builder = new FcrepoHttpClientBuilder("user", "password", "localhost")
+                .maxConnectionsPerRoute(10);
+        try (final CloseableHttpClient client = builder.build()) {
+            assertNotNull(client);
+        }
+    }
+
     @Test
     public void testPreemptiveAuthInterceptorInitializesAuthScheme() throws Exception {
         final FcrepoHttpClientBuilder.PreemptiveAuthInterceptor interceptor =
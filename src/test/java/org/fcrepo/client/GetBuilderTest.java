@@ -178,6 +178,15 @@ public class GetBuilderTest {
         assertEquals("no-cache", request.getFirstHeader(CACHE_CONTROL).getValue());
     }
 
+    @Test
+    public void testStaleDirectives() throws Exception {
+        testBuilder.staleWhileRevalidate(30).staleIfError(600).perform();
+
+        final HttpRequestBase request = getRequest();
+        assertEquals("stale-while-revalidate=30, stale-if-error=600",
+                request.getFirstHeader(CACHE_CONTROL).getValue());
+    }
+
     @Test
     public void testAcceptDatetime() throws Exception {
         testBuilder.acceptDatetime(HISTORIC_DATETIME).perform();
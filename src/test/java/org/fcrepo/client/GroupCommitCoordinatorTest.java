@@ -0,0 +1,226 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link GroupCommitCoordinator}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GroupCommitCoordinatorTest {
+
+    private final URI base = URI.create("http://localhost/rest");
+
+    private final URI txEndpoint = URI.create("http://localhost/rest/fcr:tx");
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    private final AtomicInteger flakyAttempts = new AtomicInteger();
+
+    // status of the responses starting a transaction
+    private volatile int startStatus = 201;
+
+    // number of the transaction whose commit conflicts, if any
+    private volatile int conflictingCommit;
+
+    // when set, the commits wait for it
+    private volatile CompletableFuture<Void> commitGate;
+
+    // counted down once a commit waits for the gate
+    private final CountDownLatch commitWaiting = new CountDownLatch(1);
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private FcrepoClient client;
+
+    @Before
+    public void setUp() {
+        when(transport.executeAsync(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            final String method = request.getMethod();
+            final String path = request.getURI().getPath();
+            requests.add(method + " " + request.getURI());
+            final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            int status = 204;
+            if (request.getURI().equals(txEndpoint)) {
+                status = startStatus;
+                if (status == 201) {
+                    headers.put("Location", List.of(txEndpoint + "/" + transactions.incrementAndGet()));
+                }
+            } else if ("PUT".equals(method) && path.endsWith("fcr:tx/" + conflictingCommit)) {
+                status = 409;
+            } else if (path.endsWith("/bad")) {
+                status = 500;
+            } else if (path.endsWith("/flaky") && flakyAttempts.getAndIncrement() == 0) {
+                status = 409;
+            }
+            final FcrepoResponse response = new FcrepoResponse(request.getURI(), status, headers, null);
+            final CompletableFuture<Void> gate = commitGate;
+            if (gate != null && "PUT".equals(method) && path.contains("fcr:tx/")) {
+                commitWaiting.countDown();
+                return gate.thenApply(v -> response);
+            }
+            return CompletableFuture.completedFuture(response);
+        });
+        client = FcrepoClient.client().transport(transport).build();
+    }
+
+    @Test
+    public void testOperationsShareTransaction() throws Exception {
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base)
+                .maxGroupSize(3).maxDelay(5000)) {
+            final List<CompletableFuture<FcrepoResponse>> results = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                final URI uri = URI.create(base + "/object" + i);
+                results.add(coordinator.submit(tx -> tx.put(uri)));
+            }
+            for (final CompletableFuture<FcrepoResponse> result : results) {
+                assertEquals(204, result.get(5, TimeUnit.SECONDS).getStatusCode());
+            }
+            assertEquals(1, transactions.get());
+            assertEquals(1, coordinator.getCommittedGroups());
+            assertEquals(3.0, coordinator.getAverageGroupSize(), 0.001);
+        }
+    }
+
+    @Test
+    public void testCallersCompleteWhenGroupCommits() throws Exception {
+        commitGate = new CompletableFuture<>();
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base).maxGroupSize(1)) {
+            final CompletableFuture<FcrepoResponse> result = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+            assertTrue(commitWaiting.await(5, TimeUnit.SECONDS));
+            assertTrue(requests.contains("PUT " + txEndpoint + "/1"));
+            assertFalse(result.isDone());
+            commitGate.complete(null);
+            assertEquals(204, result.get(5, TimeUnit.SECONDS).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testCommitsAfterMaxDelay() throws Exception {
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base).maxDelay(20)) {
+            final CompletableFuture<FcrepoResponse> result = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+            assertEquals(204, result.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(1, coordinator.getCommittedGroups());
+        }
+    }
+
+    @Test
+    public void testFailedOperationIsIsolated() throws Exception {
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base)
+                .maxGroupSize(3).maxDelay(20)) {
+            final CompletableFuture<FcrepoResponse> good = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+            final CompletableFuture<FcrepoResponse> bad = coordinator.submit(tx -> tx.put(URI.create(base + "/bad")));
+            final CompletableFuture<FcrepoResponse> other = coordinator.submit(tx -> tx.put(URI.create(base + "/b")));
+
+            assertEquals(204, good.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(204, other.get(5, TimeUnit.SECONDS).getStatusCode());
+            try {
+                bad.get(5, TimeUnit.SECONDS);
+                fail("Expected the failing operation to fail its caller");
+            } catch (final ExecutionException ex) {
+                assertEquals(500, ((FcrepoOperationFailedException) ex.getCause()).getStatusCode());
+            }
+            assertEquals(2, coordinator.getIsolatedOperations());
+            assertEquals(1, coordinator.getCommittedGroups());
+            assertEquals(2, coordinator.getCommittedOperations());
+        }
+        assertTrue(requests.contains("DELETE " + txEndpoint + "/1"));
+    }
+
+    @Test
+    public void testTransientFailureSucceedsInIsolation() throws Exception {
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base)
+                .maxGroupSize(2).maxDelay(20)) {
+            final CompletableFuture<FcrepoResponse> good = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+            final CompletableFuture<FcrepoResponse> flaky =
+                    coordinator.submit(tx -> tx.put(URI.create(base + "/flaky")));
+
+            assertEquals(204, good.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(204, flaky.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(1, coordinator.getIsolatedOperations());
+            assertEquals(1, coordinator.getRolledBackGroups());
+        }
+    }
+
+    @Test
+    public void testFailedCommitRetriesOperationsOneByOne() throws Exception {
+        conflictingCommit = 1;
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base)
+                .maxGroupSize(2).maxDelay(20)) {
+            final CompletableFuture<FcrepoResponse> a = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+            final CompletableFuture<FcrepoResponse> b = coordinator.submit(tx -> tx.put(URI.create(base + "/b")));
+
+            assertEquals(204, a.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(204, b.get(5, TimeUnit.SECONDS).getStatusCode());
+            assertEquals(1, coordinator.getRolledBackGroups());
+            assertEquals(2, coordinator.getIsolatedOperations());
+            assertEquals(2, coordinator.getCommittedGroups());
+            assertEquals(3, transactions.get());
+        }
+    }
+
+    @Test
+    public void testFailedTransactionStartFailsOperations() throws Exception {
+        startStatus = 503;
+        try (final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base)
+                .maxGroupSize(2).maxDelay(20)) {
+            final CompletableFuture<FcrepoResponse> a = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+            final CompletableFuture<FcrepoResponse> b = coordinator.submit(tx -> tx.put(URI.create(base + "/b")));
+
+            for (final CompletableFuture<FcrepoResponse> result : List.of(a, b)) {
+                try {
+                    result.get(5, TimeUnit.SECONDS);
+                    fail("Expected the operation to fail with the transaction");
+                } catch (final ExecutionException ex) {
+                    assertEquals(503, ((FcrepoOperationFailedException) ex.getCause()).getStatusCode());
+                }
+            }
+        }
+        assertEquals(List.of("POST " + txEndpoint), requests);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSubmitAfterClose() throws Exception {
+        final GroupCommitCoordinator coordinator = new GroupCommitCoordinator(client, base);
+        final CompletableFuture<FcrepoResponse> result = coordinator.submit(tx -> tx.put(URI.create(base + "/a")));
+        coordinator.close();
+        // closing committed the open group
+        assertTrue(result.isDone());
+        assertEquals(204, result.get().getStatusCode());
+        coordinator.submit(tx -> tx.put(URI.create(base + "/late")));
+    }
+}
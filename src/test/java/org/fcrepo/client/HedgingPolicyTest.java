@@ -0,0 +1,111 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for hedged requests with {@link HedgingPolicy}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HedgingPolicyTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private FcrepoClient client;
+
+    @Before
+    public void setUp() {
+        client = FcrepoClient.client().transport(transport).throwExceptionOnFailure().build();
+    }
+
+    @Test
+    public void testHedgeWinsOverSlowRequest() throws Exception {
+        final HedgingPolicy policy = new HedgingPolicy().delayBounds(1, 1).budget(1, 10);
+        final CompletableFuture<FcrepoResponse> slow = new CompletableFuture<>();
+        when(transport.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(slow, CompletableFuture.completedFuture(response(200)));
+
+        assertEquals(200, client.get(uri).hedge(policy).perform().getStatusCode());
+        verify(transport, times(2)).executeAsync(eq(uri), any(HttpRequestBase.class));
+        assertTrue(slow.isCancelled());
+        assertEquals(1, policy.getHedges());
+        assertEquals(1, policy.getHedgeWins());
+    }
+
+    @Test
+    public void testNoHedgeForFastRequest() throws Exception {
+        final HedgingPolicy policy = new HedgingPolicy().delayBounds(1000, 1000).budget(1, 10);
+        when(transport.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(200)));
+
+        assertEquals(200, client.head(uri).hedge(policy).performAsync().get(5, SECONDS).getStatusCode());
+        verify(transport).executeAsync(eq(uri), any(HttpRequestBase.class));
+        assertEquals(0, policy.getHedges());
+        assertEquals(1, policy.getRequests());
+    }
+
+    @Test
+    public void testHedgeBudgetExhausted() throws Exception {
+        final HedgingPolicy policy = new HedgingPolicy().delayBounds(1, 1).budget(0, 0);
+        final CompletableFuture<FcrepoResponse> slow = new CompletableFuture<>();
+        when(transport.executeAsync(eq(uri), any(HttpRequestBase.class))).thenReturn(slow);
+
+        final CompletableFuture<FcrepoResponse> result = client.get(uri).hedge(policy).performAsync();
+        Thread.sleep(50);
+        slow.complete(response(200));
+        assertEquals(200, result.get(5, SECONDS).getStatusCode());
+        verify(transport).executeAsync(eq(uri), any(HttpRequestBase.class));
+        assertEquals(0, policy.getHedges());
+    }
+
+    @Test(expected = FcrepoOperationFailedException.class)
+    public void testErrorStatus() throws Exception {
+        final HedgingPolicy policy = new HedgingPolicy();
+        when(transport.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(404)));
+
+        client.get(uri).hedge(policy).perform();
+    }
+
+    @Test
+    public void testLatencyWindow() {
+        final HedgingPolicy.LatencyWindow window = new HedgingPolicy.LatencyWindow(10);
+        for (int i = 1; i <= 20; i++) {
+            window.record(i);
+        }
+        assertEquals(10, window.size());
+        assertEquals(20, window.percentile(0.99));
+        assertEquals(15, window.percentile(0.5));
+    }
+
+    private FcrepoResponse response(final int status) {
+        return new FcrepoResponse(uri, status, emptyMap(), null);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.fcrepo.client.TestUtils.TEXT_TURTLE;
+import static org.fcrepo.client.TestUtils.rdfTtl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link Http2Transport} against a local h2c server.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class Http2TransportTest {
+
+    private static final String PROTOCOL_HEADER = "X-Protocol";
+
+    private Server server;
+
+    private FcrepoClient client;
+
+    private String baseUri;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new Server();
+        final HttpConfiguration config = new HttpConfiguration();
+        final ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config),
+                new HTTP2CServerConnectionFactory(config));
+        connector.setPort(0);
+        server.addConnector(connector);
+        server.setHandler(new StandInHandler());
+        server.start();
+
+        baseUri = "http://localhost:" + connector.getLocalPort();
+        client = FcrepoClient.client()
+                .credentials("user", "password")
+                .throwExceptionOnFailure()
+                .http2()
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        try (final FcrepoResponse response = client.get(URI.create(baseUri + "/rest/resource"))
+                .accept(TEXT_TURTLE)
+                .perform()) {
+            assertEquals(200, response.getStatusCode());
+            assertEquals(TEXT_TURTLE, response.getContentType());
+            assertEquals("Basic dXNlcjpwYXNzd29yZA==", response.getHeaderValue("X-Authorization"));
+            assertEquals(rdfTtl, IOUtils.toString(response.getBody(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsAreMultiplexed() throws Exception {
+        // The first request negotiates the upgrade to h2c, later requests share the HTTP/2 connection
+        client.head(URI.create(baseUri + "/rest/resource")).perform().close();
+
+        final List<CompletableFuture<FcrepoResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.head(URI.create(baseUri + "/rest/resource")).performAsync());
+        }
+        for (final CompletableFuture<FcrepoResponse> future : futures) {
+            try (final FcrepoResponse response = future.get(5, SECONDS)) {
+                assertEquals(200, response.getStatusCode());
+                assertEquals("HTTP/2.0", response.getHeaderValue(PROTOCOL_HEADER));
+            }
+        }
+    }
+
+    @Test
+    public void testPutWithBody() throws Exception {
+        try (final FcrepoResponse response = client.put(URI.create(baseUri + "/rest/resource"))
+                .body(new ByteArrayInputStream(rdfTtl.getBytes(UTF_8)), TEXT_TURTLE)
+                .perform()) {
+            assertEquals(201, response.getStatusCode());
+            assertEquals(String.valueOf(rdfTtl.length()), response.getHeaderValue("X-Received"));
+        }
+
+        // once the h2c connection is established, requests with a body are multiplexed over it too
+        client.head(URI.create(baseUri + "/rest/resource")).perform().close();
+        try (final FcrepoResponse response = client.put(URI.create(baseUri + "/rest/resource"))
+                .body(new ByteArrayInputStream(rdfTtl.getBytes(UTF_8)), TEXT_TURTLE)
+                .perform()) {
+            assertEquals(201, response.getStatusCode());
+            assertEquals("HTTP/2.0", response.getHeaderValue(PROTOCOL_HEADER));
+        }
+    }
+
+    @Test
+    public void testDisableRedirects() throws Exception {
+        try (final FcrepoResponse response = client.get(URI.create(baseUri + "/rest/redirect"))
+                .disableRedirects()
+                .perform()) {
+            assertEquals(303, response.getStatusCode());
+            assertEquals(URI.create(baseUri + "/rest/resource"), response.getLocation());
+        }
+        try (final FcrepoResponse response = client.get(URI.create(baseUri + "/rest/redirect")).perform()) {
+            assertEquals(200, response.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testStreamedBodyIsNotRedirected() throws Exception {
+        try (final FcrepoResponse response = client.put(URI.create(baseUri + "/rest/moved"))
+                .body(new ByteArrayInputStream(rdfTtl.getBytes(UTF_8)), TEXT_TURTLE)
+                .perform()) {
+            assertEquals(307, response.getStatusCode());
+            assertEquals(URI.create(baseUri + "/rest/resource"), response.getLocation());
+        }
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        try {
+            client.get(URI.create(baseUri + "/rest/missing")).perform();
+            fail("Expected a FcrepoOperationFailedException");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(404, ex.getStatusCode());
+            assertEquals("Not Found", ex.getStatusText());
+        }
+    }
+
+    @Test
+    public void testErrorStatusAsync() throws Exception {
+        try {
+            client.get(URI.create(baseUri + "/rest/missing")).performAsync().get(5, SECONDS);
+            fail("Expected the future to complete exceptionally");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof FcrepoOperationFailedException);
+            assertEquals(404, ((FcrepoOperationFailedException) ex.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        server.stop();
+        try {
+            client.get(URI.create(baseUri + "/rest/resource")).perform();
+            fail("Expected a FcrepoOperationFailedException");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(-1, ex.getStatusCode());
+        }
+    }
+
+    @Test
+    public void testCustomTransport() throws Exception {
+        try (final FcrepoClient custom = FcrepoClient.client()
+                .transport(new FcrepoHttpClientBuilder(null, null, null).buildHttp2Transport())
+                .build();
+             final FcrepoResponse response = custom.get(URI.create(baseUri + "/rest/resource")).perform()) {
+            assertEquals(200, response.getStatusCode());
+            assertNull(response.getHeaderValue("X-Authorization"));
+        }
+    }
+
+    @Test
+    public void testAbortCancelsExchange() throws Exception {
+        final URI uri = URI.create(baseUri + "/rest/slow");
+        final HttpGet request = new HttpGet(uri);
+        try (final FcrepoTransport transport = new FcrepoHttpClientBuilder(null, null, null).buildHttp2Transport()) {
+            CompletableFuture.runAsync(request::abort, CompletableFuture.delayedExecutor(200, MILLISECONDS));
+            final long start = System.nanoTime();
+            try {
+                transport.execute(uri, request);
+                fail("Expected the aborted request to fail");
+            } catch (final IOException ex) {
+                assertTrue(System.nanoTime() - start < SECONDS.toNanos(2));
+            }
+        }
+    }
+
+    /**
+     * Stand-in for Fedora, echoing details of the request in response headers
+     */
+    private static class StandInHandler extends AbstractHandler {
+
+        @Override
+        public void handle(final String target, final Request baseRequest, final HttpServletRequest request,
+                           final HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            response.setHeader(PROTOCOL_HEADER, request.getProtocol());
+            if (request.getHeader("Authorization") != null) {
+                response.setHeader("X-Authorization", request.getHeader("Authorization"));
+            }
+
+            switch (target) {
+                case "/rest/resource":
+                    if ("PUT".equals(request.getMethod())) {
+                        final byte[] body = IOUtils.toByteArray(request.getInputStream());
+                        response.setHeader("X-Received", String.valueOf(body.length));
+                        response.setStatus(201);
+                    } else {
+                        response.setStatus(200);
+                        response.setContentType(TEXT_TURTLE);
+                        if (!"HEAD".equals(request.getMethod())) {
+                            response.getOutputStream().write(rdfTtl.getBytes(UTF_8));
+                        }
+                    }
+                    break;
+                case "/rest/moved":
+                    response.setStatus(307);
+                    response.setHeader("Location", request.getScheme() + "://" + request.getServerName() + ":" +
+                            request.getServerPort() + "/rest/resource");
+                    break;
+                case "/rest/slow":
+                    try {
+                        Thread.sleep(3000);
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    response.setStatus(200);
+                    break;
+                case "/rest/redirect":
+                    response.setStatus(303);
+                    response.setHeader("Location", request.getScheme() + "://" + request.getServerName() + ":" +
+                            request.getServerPort() + "/rest/resource");
+                    break;
+                default:
+                    response.setStatus(404);
+            }
+        }
+    }
+}
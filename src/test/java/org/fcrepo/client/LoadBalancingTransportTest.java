@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link LoadBalancingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LoadBalancingTransportTest {
+
+    private final URI node1 = URI.create("http://fedora1:8080/rest");
+
+    private final URI node2 = URI.create("http://fedora2:8080/rest");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testRewriteToSelectedNode() throws Exception {
+        final LoadBalancer balancer = new LoadBalancer(node1, node2).ejection(1, 60000);
+        final LoadBalancingTransport transport = new LoadBalancingTransport(delegate, balancer);
+        final URI onNode2 = URI.create("http://fedora2:8080/rest/foo");
+        when(delegate.execute(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation ->
+                response(invocation.getArgument(0), 200));
+        balancer.eject(balancer.nodeOf(node1));
+
+        final URI url = URI.create("http://fedora1:8080/rest/foo");
+        final HttpGet request = new HttpGet(url);
+        assertEquals(onNode2, transport.execute(url, request).getUrl());
+        verify(delegate).execute(eq(onNode2), eq(request));
+        // the caller's request is left as it was
+        assertEquals(url, request.getURI());
+    }
+
+    @Test
+    public void testCacheAboveBalancerInvalidatesRequestedUri() throws Exception {
+        final LoadBalancer balancer = new LoadBalancer(node1, node2);
+        balancer.eject(balancer.nodeOf(node1));
+        final ResponseCache cache = new ResponseCache().freshness(60000);
+        final CachingTransport[] transport = new CachingTransport[1];
+        transport[0] = new CachingTransport(new LoadBalancingTransport(delegate, balancer), cache);
+        final URI url = URI.create("http://fedora1:8080/rest/foo");
+        final AtomicInteger reads = new AtomicInteger();
+        when(delegate.execute(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            if ("PUT".equals(request.getMethod())) {
+                // a read racing with the write caches the state from before it
+                transport[0].execute(url, new HttpGet(url)).close();
+                return response(invocation.getArgument(0), 204);
+            }
+            final FcrepoResponse response = response(invocation.getArgument(0), 200);
+            response.setBody(new ByteArrayInputStream(("version " + reads.incrementAndGet()).getBytes(UTF_8)));
+            return response;
+        });
+
+        transport[0].execute(url, new HttpPut(url)).close();
+        try (final FcrepoResponse response = transport[0].execute(url, new HttpGet(url))) {
+            assertEquals("version 2", IOUtils.toString(response.getBody(), UTF_8));
+        }
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    public void testEjectAfterFailures() throws Exception {
+        final LoadBalancer balancer = new LoadBalancer(node1).ejection(2, 60000);
+        final LoadBalancingTransport transport = new LoadBalancingTransport(delegate, balancer);
+        final URI url = URI.create("http://fedora1:8080/rest/foo");
+        when(delegate.execute(eq(url), any(HttpRequestBase.class)))
+                .thenReturn(response(url, 503))
+                .thenThrow(new SocketException("Connection reset"));
+
+        assertEquals(503, transport.execute(url, new HttpGet(url)).getStatusCode());
+        assertEquals(singletonList(node1), balancer.getHealthyEndpoints());
+        try {
+            transport.execute(url, new HttpGet(url));
+            fail("Expected the connection to fail");
+        } catch (final SocketException ex) {
+            assertEquals(0, balancer.getHealthyEndpoints().size());
+        }
+    }
+
+    @Test
+    public void testTransactionAffinity() throws Exception {
+        final LoadBalancer balancer = new LoadBalancer(node1, node2);
+        final LoadBalancingTransport transport = new LoadBalancingTransport(delegate, balancer);
+        when(delegate.execute(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation ->
+                response(invocation.getArgument(0), 204));
+        balancer.eject(balancer.nodeOf(node2));
+
+        final URI url = URI.create("http://fedora1:8080/rest/foo");
+        final HttpPut request = new HttpPut(url);
+        request.addHeader(ATOMIC_ID, "http://fedora2:8080/rest/fcr:tx/abc");
+        transport.execute(url, request);
+        verify(delegate).execute(eq(URI.create("http://fedora2:8080/rest/foo")), eq(request));
+    }
+
+    @Test
+    public void testPassThroughOtherHosts() throws Exception {
+        final LoadBalancingTransport transport = new LoadBalancingTransport(delegate, new LoadBalancer(node1));
+        final URI url = URI.create("http://elsewhere/rest/foo");
+        when(delegate.execute(eq(url), any(HttpRequestBase.class))).thenReturn(response(url, 200));
+
+        assertEquals(url, transport.execute(url, new HttpGet(url)).getUrl());
+    }
+
+    private static FcrepoResponse response(final URI url, final int status) {
+        return new FcrepoResponse(url, status, emptyMap(), null);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link MetadataCachingTransport} and {@link MetadataCache}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class MetadataCachingTransportTest {
+
+    private static final String BASIC_CONTAINER = "http://www.w3.org/ns/ldp#BasicContainer";
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testServeHeadFromCache() throws Exception {
+        final MetadataCache cache = new MetadataCache();
+        final MetadataCachingTransport transport = new MetadataCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "\"abc\"", "tok1"));
+
+        assertFalse(transport.execute(uri, new HttpHead(uri)).isFromCache());
+        final FcrepoResponse response = transport.execute(uri, new HttpHead(uri));
+        assertTrue(response.isFromCache());
+        assertEquals("\"abc\"", response.getHeaderValue("ETag"));
+        assertTrue(response.hasType(BASIC_CONTAINER));
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+
+        final ResourceMetadata metadata = cache.get(uri);
+        assertEquals("\"abc\"", metadata.getEtag());
+        assertEquals("tok1", metadata.getStateToken());
+        assertTrue(metadata.hasType(BASIC_CONTAINER));
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testExpiredMetadataIsNotServed() throws Exception {
+        final MetadataCache cache = new MetadataCache().ttl(0);
+        final MetadataCachingTransport transport = new MetadataCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "\"abc\"", null));
+
+        transport.execute(uri, new HttpHead(uri));
+        assertFalse(transport.execute(uri, new HttpHead(uri)).isFromCache());
+        assertNull(cache.get(uri));
+    }
+
+    @Test
+    public void testAgeOfCachedResponseCountsAgainstTtl() throws Exception {
+        final MetadataCache cache = new MetadataCache().ttl(10000);
+        final MetadataCachingTransport transport = new MetadataCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            // served by a cache below, from a response received a minute ago
+            final FcrepoResponse response = response(200, "\"abc\"", null);
+            response.setFromCache(true);
+            response.setAge(Duration.ofMinutes(1));
+            return response;
+        });
+
+        transport.execute(uri, new HttpGet(uri));
+        assertNull(cache.get(uri));
+        transport.execute(uri, new HttpHead(uri));
+        verify(delegate, times(2)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testTransactionalRequestBypassesCache() throws Exception {
+        final MetadataCache cache = new MetadataCache();
+        final MetadataCachingTransport transport = new MetadataCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(200, "\"abc\"", null));
+
+        final HttpHead request = new HttpHead(uri);
+        request.setHeader("Atomic-ID", "http://localhost/rest/fcr:tx/1");
+        transport.execute(uri, request);
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testWriteInvalidatesResourceAndParent() throws Exception {
+        final MetadataCache cache = new MetadataCache();
+        final MetadataCachingTransport transport = new MetadataCachingTransport(delegate, cache);
+        final URI parent = URI.create("http://localhost/rest");
+        when(delegate.execute(any(URI.class), any(HttpHead.class)))
+                .thenAnswer(invocation -> response(200, "\"abc\"", null));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, null, null));
+
+        transport.execute(uri, new HttpHead(uri));
+        transport.execute(parent, new HttpHead(parent));
+        assertEquals(2, cache.getEntryCount());
+        transport.execute(uri, new HttpPut(uri));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testIfMatchCurrentUsesCachedEtag() throws Exception {
+        final FcrepoClient client = FcrepoClient.client().transport(delegate).metadataCache(new MetadataCache())
+                .build();
+        final List<String> ifMatch = new ArrayList<>();
+        when(delegate.execute(eq(uri), any(HttpHead.class)))
+                .thenAnswer(invocation -> response(200, "\"abc\"", null));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> {
+            ifMatch.add(((HttpRequestBase) invocation.getArgument(1)).getFirstHeader("If-Match").getValue());
+            return response(204, null, null);
+        });
+
+        client.head(uri).perform();
+        client.put(uri).ifMatchCurrent().perform();
+        assertEquals(List.of("\"abc\""), ifMatch);
+        verify(delegate, times(1)).execute(eq(uri), any(HttpHead.class));
+    }
+
+    @Test
+    public void testIfMatchCurrentRetriesOnceWhenCachedEtagIsOutdated() throws Exception {
+        final FcrepoClient client = FcrepoClient.client().transport(delegate).metadataCache(new MetadataCache())
+                .throwExceptionOnFailure().build();
+        final AtomicInteger heads = new AtomicInteger();
+        final List<String> ifMatch = new ArrayList<>();
+        when(delegate.execute(eq(uri), any(HttpHead.class)))
+                .thenAnswer(invocation -> response(200, heads.incrementAndGet() == 1 ? "\"old\"" : "\"new\"", null));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> {
+            final String etag = ((HttpRequestBase) invocation.getArgument(1)).getFirstHeader("If-Match").getValue();
+            ifMatch.add(etag);
+            return response(etag.equals("\"new\"") ? 204 : 412, null, null);
+        });
+
+        client.head(uri).perform();
+        assertEquals(204, client.put(uri).ifMatchCurrent().perform().getStatusCode());
+        assertEquals(List.of("\"old\"", "\"new\""), ifMatch);
+        assertEquals(2, heads.get());
+    }
+
+    private FcrepoResponse response(final int status, final String etag, final String stateToken) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (etag != null) {
+            headers.put("ETag", List.of(etag));
+        }
+        if (stateToken != null) {
+            headers.put("X-State-Token", List.of(stateToken));
+        }
+        headers.put("Link", List.of("<" + BASIC_CONTAINER + ">;rel=\"type\""));
+        return new FcrepoResponse(uri, status, headers, null);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.TreeMap;
+
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link NegativeCachingTransport} and {@link NegativeCache}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class NegativeCachingTransportTest {
+
+    private final URI parent = URI.create("http://localhost/rest/parent");
+
+    private final URI uri = URI.create("http://localhost/rest/parent/child");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testServeMissingResourceFromCache() throws Exception {
+        final NegativeCache cache = new NegativeCache();
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> response(404));
+
+        assertFalse(transport.execute(uri, new HttpHead(uri)).isFromCache());
+        final FcrepoResponse response = transport.execute(uri, new HttpGet(uri));
+        assertEquals(404, response.getStatusCode());
+        assertTrue(response.isFromCache());
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testServeTombstoneFromCache() throws Exception {
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, new NegativeCache());
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> response(410));
+
+        transport.execute(uri, new HttpHead(uri));
+        assertEquals(410, transport.execute(uri, new HttpHead(uri)).getStatusCode());
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testExistingResourceIsNotCached() throws Exception {
+        final NegativeCache cache = new NegativeCache();
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> response(200));
+
+        transport.execute(uri, new HttpHead(uri));
+        transport.execute(uri, new HttpHead(uri));
+        verify(delegate, times(2)).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testExpiredAnswerIsNotServed() throws Exception {
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, new NegativeCache().ttl(0));
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> response(404));
+
+        transport.execute(uri, new HttpHead(uri));
+        assertFalse(transport.execute(uri, new HttpHead(uri)).isFromCache());
+    }
+
+    @Test
+    public void testPutInvalidatesResource() throws Exception {
+        final NegativeCache cache = new NegativeCache();
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        when(delegate.execute(eq(uri), any(HttpHead.class))).thenAnswer(invocation -> response(404));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(201));
+
+        transport.execute(uri, new HttpHead(uri));
+        transport.execute(uri, new HttpPut(uri));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testPostToParentInvalidatesChildren() throws Exception {
+        final NegativeCache cache = new NegativeCache();
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        final URI other = URI.create("http://localhost/rest/parentless");
+        when(delegate.execute(any(URI.class), any(HttpHead.class))).thenAnswer(invocation -> response(404));
+        when(delegate.execute(eq(parent), any(HttpPost.class))).thenAnswer(invocation -> response(201));
+
+        transport.execute(uri, new HttpHead(uri));
+        transport.execute(other, new HttpHead(other));
+        transport.execute(parent, new HttpPost(parent));
+        assertEquals(1, cache.getEntryCount());
+        assertTrue(transport.execute(other, new HttpHead(other)).isFromCache());
+    }
+
+    @Test
+    public void testPutToChildInvalidatesParent() throws Exception {
+        final NegativeCache cache = new NegativeCache();
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        when(delegate.execute(eq(parent), any(HttpHead.class))).thenAnswer(invocation -> response(404));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(201));
+
+        transport.execute(parent, new HttpHead(parent));
+        transport.execute(uri, new HttpPut(uri));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testRollbackInvalidatesWritesMadeInTransaction() throws Exception {
+        final NegativeCache cache = new NegativeCache();
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        final URI txUri = URI.create("http://localhost/rest/fcr:tx/1234");
+        when(delegate.execute(eq(uri), any(HttpHead.class))).thenAnswer(invocation -> response(404));
+        when(delegate.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(201));
+        when(delegate.execute(eq(txUri), any(HttpDelete.class))).thenAnswer(invocation -> response(204));
+
+        final HttpPut write = new HttpPut(uri);
+        write.setHeader("Atomic-ID", txUri.toString());
+        transport.execute(uri, write);
+        // the resource does not exist outside the transaction yet
+        transport.execute(uri, new HttpHead(uri));
+        assertEquals(1, cache.getEntryCount());
+
+        final HttpDelete rollback = new HttpDelete(txUri);
+        rollback.setHeader("Atomic-ID", txUri.toString());
+        transport.execute(txUri, rollback);
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testEvictOldestAnswer() throws Exception {
+        final NegativeCache cache = new NegativeCache().maxEntries(1);
+        final NegativeCachingTransport transport = new NegativeCachingTransport(delegate, cache);
+        when(delegate.execute(any(URI.class), any(HttpHead.class))).thenAnswer(invocation -> response(404));
+
+        transport.execute(parent, new HttpHead(parent));
+        transport.execute(uri, new HttpHead(uri));
+        assertEquals(1, cache.getEntryCount());
+        assertTrue(transport.execute(uri, new HttpHead(uri)).isFromCache());
+        assertFalse(transport.execute(parent, new HttpHead(parent)).isFromCache());
+    }
+
+    @Test
+    public void testClientThrowsForCachedMiss() throws Exception {
+        final FcrepoClient client = FcrepoClient.client().transport(delegate).negativeCache(new NegativeCache())
+                .throwExceptionOnFailure().build();
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> response(404));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.head(uri).perform();
+            } catch (final FcrepoOperationFailedException ex) {
+                assertEquals(404, ex.getStatusCode());
+            }
+        }
+        verify(delegate, times(1)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    private FcrepoResponse response(final int status) {
+        return new FcrepoResponse(uri, status, new TreeMap<>(String.CASE_INSENSITIVE_ORDER), null);
+    }
+}
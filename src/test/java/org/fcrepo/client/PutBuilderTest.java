@@ -23,12 +23,14 @@ import static org.fcrepo.client.LinkHeaderConstants.TYPE_REL;
 import static org.fcrepo.client.TestUtils.baseUrl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.io.InputStream;
 import java.net.URI;
 
@@ -131,6 +133,15 @@ public class PutBuilderTest {
         assertEquals("attachment", request.getFirstHeader(CONTENT_DISPOSITION).getValue());
     }
 
+    @Test
+    public void testBodyNullFile() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> testBuilder.body((File) null, "text/plain"));
+        testBuilder.perform();
+
+        verify(client).executeRequest(eq(uri), requestCaptor.capture());
+        assertNull(((HttpEntityEnclosingRequestBase) requestCaptor.getValue()).getEntity());
+    }
+
     @Test(expected = FcrepoOperationFailedException.class)
     public void testPostClientError() throws Exception {
         when(client.executeRequest(any(URI.class), any(HttpRequestBase.class)))
@@ -0,0 +1,148 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link RateLimitingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RateLimitingTransportTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    @Test
+    public void testRequestRate() throws Exception {
+        final RateLimiter limiter = new RateLimiter().requestsPerSecond(20, 1);
+        final RateLimitingTransport transport = new RateLimitingTransport(delegate, limiter);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(null));
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            transport.execute(uri, new HttpGet(uri));
+        }
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    @Test
+    public void testAdjustAtRuntime() throws Exception {
+        final RateLimiter limiter = new RateLimiter().requestsPerSecond(0.1, 1);
+        final RateLimitingTransport transport = new RateLimitingTransport(delegate, limiter);
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(null)));
+
+        transport.executeAsync(uri, new HttpGet(uri)).get();
+        limiter.requestsPerSecond(0, 1);
+        final long start = System.nanoTime();
+        transport.executeAsync(uri, new HttpGet(uri)).get();
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test
+    public void testDownloadRate() throws Exception {
+        final RateLimiter limiter = new RateLimiter().bytesPerSecond(10000, 1000);
+        final RateLimitingTransport transport = new RateLimitingTransport(delegate, limiter);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(response(new ByteArrayInputStream(new byte[2000])));
+
+        final long start = System.nanoTime();
+        final FcrepoResponse response = transport.execute(uri, new HttpGet(uri));
+        assertEquals(2000, IOUtils.toByteArray(response.getBody()).length);
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    @Test
+    public void testUploadRate() throws Exception {
+        final RateLimiter limiter = new RateLimiter().bytesPerSecond(10000, 1000);
+        final RateLimitingTransport transport = new RateLimitingTransport(delegate, limiter);
+        final ByteArrayEntity entity = new ByteArrayEntity(new byte[2000]);
+        final HttpPut put = new HttpPut(uri);
+        put.setEntity(entity);
+        when(delegate.execute(eq(uri), eq(put))).thenAnswer(invocation -> {
+            put.getEntity().writeTo(new ByteArrayOutputStream());
+            return response(null);
+        });
+
+        final long start = System.nanoTime();
+        transport.execute(uri, put);
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+        assertSame(entity, put.getEntity());
+    }
+
+    @Test
+    public void testUploadPacedBeforeDispatch() throws Exception {
+        final RateLimiter limiter = new RateLimiter().bytesPerSecond(10000, 1000);
+        final RateLimitingTransport transport = new RateLimitingTransport(delegate, limiter);
+        final HttpPut put = new HttpPut(uri);
+        put.setEntity(new ByteArrayEntity(new byte[2000]));
+        final long start = System.nanoTime();
+        final AtomicLong dispatched = new AtomicLong();
+        when(delegate.executeAsync(eq(uri), eq(put))).thenAnswer(invocation -> {
+            dispatched.set(System.nanoTime());
+            return CompletableFuture.completedFuture(response(null));
+        });
+
+        transport.executeAsync(uri, put).get();
+        // the whole wait happened before the request reached the transport below
+        assertTrue(NANOSECONDS.toMillis(dispatched.get() - start) >= 90);
+    }
+
+    @Test
+    public void testStreamedUploadDelaysNextRequest() throws Exception {
+        final RateLimiter limiter = new RateLimiter().bytesPerSecond(10000, 1000);
+        final RateLimitingTransport transport = new RateLimitingTransport(delegate, limiter);
+        final HttpPut put = new HttpPut(uri);
+        put.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[2000])));
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            if (request instanceof HttpPut) {
+                ((HttpPut) request).getEntity().writeTo(new ByteArrayOutputStream());
+            }
+            return CompletableFuture.completedFuture(response(null));
+        });
+
+        final long start = System.nanoTime();
+        transport.executeAsync(uri, put).get();
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) < 90);
+        transport.executeAsync(uri, new HttpGet(uri)).get();
+        assertTrue(NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+    }
+
+    private FcrepoResponse response(final InputStream body) {
+        return new FcrepoResponse(uri, 200, emptyMap(), body);
+    }
+}
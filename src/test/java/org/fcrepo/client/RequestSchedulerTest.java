@@ -0,0 +1,210 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyMap;
+import static org.fcrepo.client.RequestScheduler.Priority.BATCH;
+import static org.fcrepo.client.RequestScheduler.Priority.INTERACTIVE;
+import static org.fcrepo.client.RequestScheduler.Priority.NORMAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link RequestScheduler}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RequestSchedulerTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport transport;
+
+    @Test
+    public void testQueueOverLimit() {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+
+        assertTrue(scheduler.acquire(NORMAL, null).isDone());
+        final CompletableFuture<Void> queued = scheduler.acquire(NORMAL, null);
+        assertFalse(queued.isDone());
+        assertEquals(1, scheduler.getQueueDepth(NORMAL));
+
+        scheduler.release();
+        assertTrue(queued.isDone());
+        assertEquals(1, scheduler.getInFlight());
+        assertEquals(0, scheduler.getQueueDepth(NORMAL));
+    }
+
+    @Test
+    public void testInteractiveOvertakesBatch() {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        scheduler.acquire(BATCH, null);
+
+        final CompletableFuture<Void> batch = scheduler.acquire(BATCH, "job");
+        final CompletableFuture<Void> interactive = scheduler.acquire(INTERACTIVE, "user");
+
+        scheduler.release();
+        assertTrue(interactive.isDone());
+        assertFalse(batch.isDone());
+
+        scheduler.release();
+        assertTrue(batch.isDone());
+    }
+
+    @Test
+    public void testFairShareBetweenCallers() {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        scheduler.acquire(NORMAL, null);
+
+        final List<CompletableFuture<Void>> busy = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            busy.add(scheduler.acquire(NORMAL, "busy"));
+        }
+        final CompletableFuture<Void> quiet = scheduler.acquire(NORMAL, "quiet");
+
+        // the quiet caller is served after the first request of the busy caller, not after all five
+        scheduler.release();
+        assertTrue(busy.get(0).isDone());
+        scheduler.release();
+        assertTrue(quiet.isDone());
+        assertFalse(busy.get(1).isDone());
+    }
+
+    @Test
+    public void testWeightedShare() {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1)
+                .weight(NORMAL, 3).weight(BATCH, 1);
+        scheduler.acquire(NORMAL, null);
+
+        final List<CompletableFuture<Void>> normal = new ArrayList<>();
+        final List<CompletableFuture<Void>> batch = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            batch.add(scheduler.acquire(BATCH, null));
+            normal.add(scheduler.acquire(NORMAL, null));
+        }
+        for (int i = 0; i < 8; i++) {
+            scheduler.release();
+        }
+        assertEquals(6, normal.stream().filter(CompletableFuture::isDone).count());
+        assertEquals(2, batch.stream().filter(CompletableFuture::isDone).count());
+    }
+
+    @Test
+    public void testCancelledRequestGivesUpItsPlace() {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        scheduler.acquire(NORMAL, null);
+
+        final CompletableFuture<Void> cancelled = scheduler.acquire(NORMAL, null);
+        final CompletableFuture<Void> next = scheduler.acquire(NORMAL, null);
+        cancelled.cancel(true);
+        assertEquals(1, scheduler.getQueueDepth(NORMAL));
+
+        scheduler.release();
+        assertTrue(next.isDone());
+        assertEquals(1, scheduler.getInFlight());
+
+        // an abandoned queue does not hold back later requests
+        final CompletableFuture<Void> abandoned = scheduler.acquire(NORMAL, null);
+        abandoned.cancel(true);
+        scheduler.release();
+        assertTrue(scheduler.acquire(NORMAL, null).isDone());
+    }
+
+    @Test
+    public void testQueueWait() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        scheduler.acquire(BATCH, null);
+        final CompletableFuture<Void> queued = scheduler.acquire(BATCH, null);
+
+        Thread.sleep(20);
+        scheduler.release();
+        assertTrue(queued.isDone());
+        assertTrue(scheduler.getMaxQueueWait(BATCH) >= 20);
+        assertTrue(scheduler.getAverageQueueWait(BATCH) >= 10);
+        assertEquals(0, scheduler.getMaxQueueWait(INTERACTIVE));
+    }
+
+    @Test
+    public void testClientReleasesSlots() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        final FcrepoClient client = FcrepoClient.client().transport(transport).scheduler(scheduler).build();
+        when(transport.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(200));
+        when(transport.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(200)));
+
+        assertEquals(200, client.get(uri).priority(INTERACTIVE).caller("user").perform().getStatusCode());
+        assertEquals(200, client.head(uri).priority(BATCH).performAsync().get().getStatusCode());
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void testClientHoldsSlotUntilBodyClosed() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        final FcrepoClient client = FcrepoClient.client().transport(transport).scheduler(scheduler).build();
+        when(transport.execute(eq(uri), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final FcrepoResponse response = response(200);
+            response.setBody(new ByteArrayInputStream("binary".getBytes(UTF_8)));
+            return response;
+        });
+
+        final FcrepoResponse response = client.get(uri).priority(BATCH).perform();
+        assertEquals(1, scheduler.getInFlight());
+        response.close();
+        assertEquals(0, scheduler.getInFlight());
+
+        try (final FcrepoResponse read = client.get(uri).priority(BATCH).perform()) {
+            assertEquals("binary", IOUtils.toString(read.getBody(), UTF_8));
+            // read to its end, the connection is back in the pool
+            assertEquals(0, scheduler.getInFlight());
+        }
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void testClientQueuesAsyncRequests() throws Exception {
+        final RequestScheduler scheduler = new RequestScheduler().maxConcurrent(1);
+        final FcrepoClient client = FcrepoClient.client().transport(transport).scheduler(scheduler).build();
+        when(transport.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.completedFuture(response(200)));
+        scheduler.acquire(NORMAL, null);
+
+        final CompletableFuture<FcrepoResponse> queued = client.get(uri).performAsync();
+        assertFalse(queued.isDone());
+
+        scheduler.release();
+        assertEquals(200, queued.get().getStatusCode());
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWeight() {
+        new RequestScheduler().weight(NORMAL, 0);
+    }
+
+    private FcrepoResponse response(final int status) {
+        return new FcrepoResponse(uri, status, emptyMap(), null);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.singletonList;
+import static org.fcrepo.client.HeaderHelpers.UTC_RFC_1123_FORMATTER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RetryPolicy}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class RetryPolicyTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Test
+    public void testRetryableMethods() {
+        final RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.isRetryable(HttpMethods.GET.createRequest(uri)));
+        assertTrue(policy.isRetryable(HttpMethods.DELETE.createRequest(uri)));
+        assertTrue(policy.isRetryable(new HttpPut(uri)));
+        assertFalse(policy.isRetryable(new HttpPost(uri)));
+        assertFalse(policy.isRetryable(HttpMethods.PATCH.createRequest(uri)));
+    }
+
+    @Test
+    public void testRetryableOnlyWithRepeatableBody() {
+        final RetryPolicy policy = new RetryPolicy();
+        final HttpPut fromFile = new HttpPut(uri);
+        fromFile.setEntity(new FileEntity(new File("pom.xml")));
+        assertTrue(policy.isRetryable(fromFile));
+
+        final HttpPut fromStream = new HttpPut(uri);
+        fromStream.setEntity(new InputStreamEntity(InputStream.nullInputStream()));
+        assertFalse(policy.isRetryable(fromStream));
+    }
+
+    @Test
+    public void testRetryableStatuses() {
+        final RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.isRetryableStatus(503));
+        assertTrue(policy.isRetryableStatus(429));
+        assertFalse(policy.isRetryableStatus(500));
+
+        policy.retryOnStatus(500);
+        assertTrue(policy.isRetryableStatus(500));
+        assertFalse(policy.isRetryableStatus(503));
+    }
+
+    @Test
+    public void testFullJitterDelay() {
+        final RetryPolicy policy = new RetryPolicy().backoff(100, 1000);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.delayBeforeRetry(1, null) <= 100);
+            assertTrue(policy.delayBeforeRetry(3, null) <= 400);
+            final long capped = policy.delayBeforeRetry(20, null);
+            assertTrue(capped >= 0 && capped <= 1000);
+        }
+    }
+
+    @Test
+    public void testRetryAfterSeconds() {
+        final RetryPolicy policy = new RetryPolicy().backoff(100, 5000);
+        assertEquals(2000, policy.delayBeforeRetry(1, response("2")));
+        assertEquals(-1, policy.delayBeforeRetry(1, response("60")));
+    }
+
+    @Test
+    public void testRetryAfterDate() {
+        final String date = UTC_RFC_1123_FORMATTER.format(Instant.now().plusSeconds(3));
+        final long delay = RetryPolicy.retryAfter(response(date));
+        assertTrue(delay > 1000 && delay <= 3000);
+        assertNull(RetryPolicy.retryAfter(response("soon")));
+    }
+
+    @Test
+    public void testRetryBudget() {
+        final RetryPolicy.RetryBudget budget = new RetryPolicy.RetryBudget(0.5, 0);
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    private FcrepoResponse response(final String retryAfter) {
+        final Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Retry-After", singletonList(retryAfter));
+        return new FcrepoResponse(uri, 503, headers, null);
+    }
+}
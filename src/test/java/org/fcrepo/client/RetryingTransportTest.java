@@ -0,0 +1,185 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.InputStreamEntity;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link RetryingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RetryingTransportTest {
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport delegate;
+
+    private RetryingTransport transport;
+
+    @Before
+    public void setUp() {
+        transport = new RetryingTransport(delegate, new RetryPolicy().maxAttempts(3).backoff(1, 5));
+    }
+
+    @Test
+    public void testRetryOnStatus() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(response(503), response(502), response(200));
+
+        assertEquals(200, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+        verify(delegate, times(3)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testGiveUpAfterMaxAttempts() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(503));
+
+        assertEquals(503, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+        verify(delegate, times(3)).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testNoRetryOnOtherStatus() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(500));
+
+        assertEquals(500, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+        verify(delegate).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testRetryOnConnectionFailure() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenThrow(new SocketException("Connection reset")).thenReturn(response(200));
+
+        assertEquals(200, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+    }
+
+    @Test(expected = SocketException.class)
+    public void testConnectionFailureAfterMaxAttempts() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenThrow(new SocketException("Connection reset"));
+
+        transport.execute(uri, new HttpGet(uri));
+    }
+
+    @Test
+    public void testNoRetryOfPost() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(503));
+
+        assertEquals(503, transport.execute(uri, new HttpPost(uri)).getStatusCode());
+        verify(delegate).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testNoRetryOfStreamedBody() throws Exception {
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(503));
+
+        final HttpPut put = new HttpPut(uri);
+        put.setEntity(new InputStreamEntity(InputStream.nullInputStream()));
+        assertEquals(503, transport.execute(uri, put).getStatusCode());
+        verify(delegate).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testRetryAfterTooLong() throws Exception {
+        final Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Retry-After", singletonList("120"));
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(new FcrepoResponse(uri, 503, headers, null));
+
+        assertEquals(503, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+        verify(delegate).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testRetryBudgetExhausted() throws Exception {
+        transport = new RetryingTransport(delegate, new RetryPolicy().backoff(1, 5).budget(0, 0));
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class))).thenReturn(response(503));
+
+        assertEquals(503, transport.execute(uri, new HttpGet(uri)).getStatusCode());
+        verify(delegate).execute(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testInterruptDoesNotSpendBudget() throws Exception {
+        final RetryPolicy policy = new RetryPolicy().backoff(1, 5).budget(1, 0);
+        transport = new RetryingTransport(delegate, policy);
+        when(delegate.execute(eq(uri), any(HttpRequestBase.class)))
+                .thenThrow(new InterruptedIOException("Interrupted"));
+
+        try {
+            transport.execute(uri, new HttpGet(uri));
+            fail("Expected the request to be given up");
+        } catch (final InterruptedIOException ex) {
+            // expected
+        }
+        verify(delegate).execute(eq(uri), any(HttpRequestBase.class));
+        assertEquals(1.0, policy.getBudget().getAvailable(), 0.001);
+    }
+
+    @Test
+    public void testRetryAsync() throws Exception {
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.failedFuture(new SocketException("Connection reset")))
+                .thenReturn(CompletableFuture.completedFuture(response(503)))
+                .thenReturn(CompletableFuture.completedFuture(response(200)));
+
+        assertEquals(200, transport.executeAsync(uri, new HttpGet(uri)).get().getStatusCode());
+        verify(delegate, times(3)).executeAsync(eq(uri), any(HttpRequestBase.class));
+    }
+
+    @Test
+    public void testAsyncFailureAfterMaxAttempts() throws Exception {
+        when(delegate.executeAsync(eq(uri), any(HttpRequestBase.class)))
+                .thenReturn(CompletableFuture.failedFuture(new SocketException("Connection reset")));
+
+        try {
+            transport.executeAsync(uri, new HttpGet(uri)).get();
+            fail("Expected the request to fail");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        verify(delegate, times(3)).executeAsync(eq(uri), any(HttpRequestBase.class));
+    }
+
+    private FcrepoResponse response(final int status) {
+        return new FcrepoResponse(uri, status, emptyMap(), null);
+    }
+}
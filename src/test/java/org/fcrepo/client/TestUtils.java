@@ -5,7 +5,11 @@
  */
 package org.fcrepo.client;
 
+import static org.junit.Assert.fail;
+
 import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * @author acoburn
@@ -48,6 +52,22 @@ public class TestUtils {
         }
     }
 
+    /**
+     * Wait for a condition brought about by other threads, failing the test if it does not hold within five seconds
+     *
+     * @param condition the condition
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for the condition");
+            }
+            Thread.sleep(5);
+        }
+    }
+
     private static Field findField(final Class<?> clazz, final String name)
             throws NoSuchFieldException {
         for (final Field f : clazz.getDeclaredFields()) {
@@ -0,0 +1,177 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link TransactionCachingTransport} and {@link TransactionCache}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionCachingTransportTest {
+
+    private final URI txUri = URI.create("http://localhost/rest/fcr:tx/1234");
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private FcrepoClient client;
+
+    private TransactionalFcrepoClient txClient;
+
+    @Before
+    public void setUp() {
+        client = FcrepoClient.client().transport(transport).build();
+        txClient = new TransactionalFcrepoClient(txUri, client).enableCache();
+    }
+
+    @Test
+    public void testHeadAfterPutServedFromWriteResponse() throws Exception {
+        when(transport.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, "\"v2\"", null));
+
+        txClient.put(uri).perform();
+        final FcrepoResponse response = txClient.head(uri).perform();
+        assertTrue(response.isFromCache());
+        assertEquals("\"v2\"", response.getHeaderValue("ETag"));
+        verify(transport, times(0)).execute(eq(uri), any(HttpHead.class));
+        assertEquals(1, txClient.getCache().getHits());
+    }
+
+    @Test
+    public void testGetServedWithinTransaction() throws Exception {
+        when(transport.execute(eq(uri), any(HttpGet.class))).thenAnswer(invocation -> response(200, "\"v1\"", "body"));
+
+        assertEquals("body", read(txClient.get(uri).perform()));
+        final FcrepoResponse response = txClient.get(uri).perform();
+        assertTrue(response.isFromCache());
+        assertEquals("body", read(response));
+        verify(transport, times(1)).execute(eq(uri), any(HttpGet.class));
+    }
+
+    @Test
+    public void testWriteInvalidatesCachedRead() throws Exception {
+        when(transport.execute(eq(uri), any(HttpGet.class))).thenAnswer(invocation -> response(200, "\"v1\"", "body"));
+        when(transport.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, null, null));
+
+        txClient.get(uri).perform().close();
+        txClient.put(uri).perform();
+        assertFalse(txClient.get(uri).perform().isFromCache());
+        verify(transport, times(2)).execute(eq(uri), any(HttpGet.class));
+    }
+
+    @Test
+    public void testDeleteInvalidatesResourcesBelow() throws Exception {
+        final URI child = URI.create(uri + "/a/b");
+        when(transport.execute(eq(child), any(HttpGet.class)))
+                .thenAnswer(invocation -> response(200, "\"v1\"", "body"));
+        when(transport.execute(eq(uri), any(HttpDelete.class))).thenAnswer(invocation -> response(204, null, null));
+
+        txClient.get(child).perform().close();
+        txClient.delete(uri).perform();
+        assertEquals(0, txClient.getCache().getEntryCount());
+        assertFalse(txClient.get(child).perform().isFromCache());
+        verify(transport, times(2)).execute(eq(child), any(HttpGet.class));
+    }
+
+    @Test
+    public void testPostRecordsCreatedResource() throws Exception {
+        final URI child = URI.create(uri + "/child");
+        when(transport.execute(eq(uri), any(HttpPost.class))).thenAnswer(invocation -> {
+            final FcrepoResponse response = response(201, "\"c1\"", null);
+            response.getHeaders().put("Location", List.of(child.toString()));
+            return response;
+        });
+
+        txClient.post(uri).perform();
+        assertEquals("\"c1\"", txClient.head(child).perform().getHeaderValue("ETag"));
+    }
+
+    @Test
+    public void testNonTransactionalClientDoesNotSeeCache() throws Exception {
+        when(transport.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, "\"v2\"", null));
+        when(transport.execute(eq(uri), any(HttpHead.class))).thenAnswer(invocation -> response(200, "\"v1\"", null));
+
+        txClient.put(uri).perform();
+        final FcrepoResponse response = client.head(uri).perform();
+        assertFalse(response.isFromCache());
+        assertEquals("\"v1\"", response.getHeaderValue("ETag"));
+    }
+
+    @Test
+    public void testCommitDiscardsCache() throws Exception {
+        when(transport.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, "\"v2\"", null));
+        when(transport.execute(eq(txUri), any(HttpRequestBase.class)))
+                .thenAnswer(invocation -> response(204, null, null));
+
+        txClient.put(uri).perform();
+        assertEquals(1, txClient.getCache().getEntryCount());
+        txClient.keepAlive().perform();
+        assertEquals(1, txClient.getCache().getEntryCount());
+        txClient.commit().perform();
+        assertEquals(0, txClient.getCache().getEntryCount());
+    }
+
+    @Test
+    public void testRollbackDiscardsCache() throws Exception {
+        when(transport.execute(eq(uri), any(HttpPut.class))).thenAnswer(invocation -> response(204, "\"v2\"", null));
+        when(transport.execute(eq(txUri), any(HttpDelete.class))).thenAnswer(invocation -> response(204, null, null));
+
+        txClient.put(uri).perform();
+        txClient.rollback().perform();
+        assertEquals(0, txClient.getCache().getEntryCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEnableCacheTwice() {
+        txClient.enableCache();
+    }
+
+    private FcrepoResponse response(final int status, final String etag, final String body) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (etag != null) {
+            headers.put("ETag", List.of(etag));
+        }
+        return new FcrepoResponse(uri, status, headers,
+                body == null ? null : new ByteArrayInputStream(body.getBytes(UTF_8)));
+    }
+
+    private static String read(final FcrepoResponse response) throws Exception {
+        try (response) {
+            return IOUtils.toString(response.getBody(), "UTF-8");
+        }
+    }
+}
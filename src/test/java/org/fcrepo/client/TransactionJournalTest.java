@@ -0,0 +1,232 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link TransactionJournal} and {@link JournalingTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionJournalTest {
+
+    private final URI base = URI.create("http://localhost/rest");
+
+    private final URI txUri = URI.create("http://localhost/rest/fcr:tx/1");
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    private final List<Sent> sent = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger transactions = new AtomicInteger(1);
+
+    private final AtomicInteger children = new AtomicInteger();
+
+    // status of the commit of the first transaction
+    private int firstCommitStatus = 204;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private TransactionJournal journal;
+
+    private TransactionalFcrepoClient tx;
+
+    @Before
+    public void setUp() throws Exception {
+        when(transport.execute(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            final Sent received = new Sent(request);
+            sent.add(received);
+            final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            int status = 204;
+            final String target = request.getURI().toString();
+            if ("POST".equals(received.method) && target.endsWith("fcr:tx/")) {
+                status = 201;
+                headers.put("Location", List.of(base + "/fcr:tx/" + transactions.incrementAndGet()));
+            } else if ("PUT".equals(received.method) && target.equals(txUri.toString())) {
+                status = firstCommitStatus;
+            } else if ("POST".equals(received.method)) {
+                status = 201;
+                headers.put("Location", List.of(target + "/child" + children.incrementAndGet()));
+            } else if ("HEAD".equals(received.method)) {
+                status = 200;
+                headers.put("ETag", List.of("\"current\""));
+            } else if (target.endsWith("/bad")) {
+                status = 500;
+            }
+            return new FcrepoResponse(request.getURI(), status, headers, null);
+        });
+        journal = new TransactionJournal(folder.getRoot().toPath());
+        tx = new TransactionalFcrepoClient(txUri, FcrepoClient.client().transport(transport).build())
+                .enableJournal(journal);
+    }
+
+    @Test
+    public void testRecordsSuccessfulWrites() throws Exception {
+        tx.put(uri).body(new ByteArrayInputStream("content".getBytes(UTF_8)), "text/plain").perform();
+        tx.put(URI.create(base + "/bad")).perform();
+        tx.get(uri).perform();
+
+        assertEquals(1, journal.getEntryCount());
+        assertEquals(7, journal.getSpooledBytes());
+        // the stream was spooled, and the spooled copy sent
+        assertEquals("content", sent.get(0).body);
+    }
+
+    @Test
+    public void testFileBodiesAreReferenced() throws Exception {
+        final File file = folder.newFile("binary");
+        Files.write(file.toPath(), "binary content".getBytes(UTF_8));
+        tx.put(uri).body(file, "application/octet-stream").perform();
+
+        assertEquals(1, journal.getEntryCount());
+        assertEquals(0, journal.getSpooledBytes());
+    }
+
+    @Test
+    public void testCommitClearsJournal() throws Exception {
+        tx.put(uri).body(new ByteArrayInputStream("content".getBytes(UTF_8)), "text/plain").perform();
+        tx.keepAlive().perform();
+        assertEquals(1, journal.getEntryCount());
+        tx.commit().perform();
+        assertEquals(0, journal.getEntryCount());
+        assertEquals(0, journal.getSpooledBytes());
+    }
+
+    @Test
+    public void testReplayOnConflict() throws Exception {
+        firstCommitStatus = 409;
+        tx.put(uri).body(new ByteArrayInputStream("content".getBytes(UTF_8)), "text/plain").ifMatch("\"old\"")
+                .perform();
+
+        final FcrepoResponse response = tx.commitWithReplay(1);
+        assertEquals(204, response.getStatusCode());
+        assertEquals(1, journal.getReplays());
+
+        final URI fresh = URI.create(base + "/fcr:tx/2");
+        final Sent replayed = sent.stream()
+                .filter(s -> "PUT".equals(s.method) && s.uri.equals(uri) && fresh.toString().equals(s.atomicId))
+                .findFirst().orElseThrow();
+        assertEquals("content", replayed.body);
+        assertEquals("\"current\"", replayed.ifMatch);
+        assertTrue(sent.stream().anyMatch(s -> "PUT".equals(s.method) && s.uri.equals(fresh)));
+    }
+
+    @Test
+    public void testReplayFollowsCreatedResources() throws Exception {
+        final URI created = tx.post(uri).perform().getLocation();
+        tx.put(URI.create(created + "/part")).perform();
+
+        final TransactionalFcrepoClient fresh = journal.replay(FcrepoClient.client().transport(transport).build());
+        assertEquals(URI.create(base + "/fcr:tx/2"), fresh.getTransactionURI());
+        assertTrue(sent.stream().anyMatch(s -> "PUT".equals(s.method) &&
+                s.uri.equals(URI.create(uri + "/child2/part")) && fresh.getTransactionURI().toString()
+                .equals(s.atomicId)));
+        assertEquals(2, journal.getEntryCount());
+        assertEquals(fresh.getTransactionURI(), journal.getTransactionUri());
+    }
+
+    @Test
+    public void testOverflowStopsRecording() throws Exception {
+        journal.maxSpoolBytes(4);
+        tx.put(uri).body(new ByteArrayInputStream("too much content".getBytes(UTF_8)), "text/plain").perform();
+
+        assertTrue(journal.isOverflowed());
+        assertEquals(0, journal.getEntryCount());
+        // the body was still sent whole
+        assertEquals("too much content", sent.get(0).body);
+        try (final var files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOverflowedJournalCannotReplay() throws Exception {
+        journal.maxSpoolBytes(4);
+        tx.put(uri).body(new ByteArrayInputStream("too much content".getBytes(UTF_8)), "text/plain").perform();
+        journal.replay(FcrepoClient.client().transport(transport).build());
+    }
+
+    @Test
+    public void testCloseDeletesSpool() throws Exception {
+        tx.put(uri).body(new ByteArrayInputStream("content".getBytes(UTF_8)), "text/plain").perform();
+        journal.close();
+        try (final var files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(0, files.count());
+        }
+        assertFalse(journal.isOverflowed());
+    }
+
+    /**
+     * What the repository received
+     */
+    private static class Sent {
+
+        private final String method;
+
+        private final URI uri;
+
+        private final String atomicId;
+
+        private final String ifMatch;
+
+        private final String body;
+
+        Sent(final HttpRequestBase request) throws Exception {
+            method = request.getMethod();
+            uri = request.getURI();
+            final Header atomic = request.getFirstHeader("Atomic-ID");
+            atomicId = atomic == null ? null : atomic.getValue();
+            final Header condition = request.getFirstHeader("If-Match");
+            ifMatch = condition == null ? null : condition.getValue();
+            final HttpEntity entity = request instanceof HttpEntityEnclosingRequestBase ?
+                    ((HttpEntityEnclosingRequestBase) request).getEntity() : null;
+            if (entity == null) {
+                body = null;
+            } else {
+                try (final InputStream content = entity.getContent()) {
+                    body = IOUtils.toString(content, UTF_8);
+                }
+            }
+        }
+    }
+}
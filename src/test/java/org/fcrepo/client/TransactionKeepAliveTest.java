@@ -0,0 +1,218 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.HeaderHelpers.UTC_RFC_1123_FORMATTER;
+import static org.fcrepo.client.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link TransactionKeepAlive} and {@link TransactionGuardTransport}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionKeepAliveTest {
+
+    private final URI txUri = URI.create("http://localhost/rest/fcr:tx/1234");
+
+    private final URI uri = URI.create("http://localhost/rest/foo");
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private TransactionKeepAlive keepAlive;
+
+    private TransactionalFcrepoClient txClient;
+
+    @Before
+    public void setUp() {
+        keepAlive = new TransactionKeepAlive().margin(2500).retryInterval(100).defaultInterval(100);
+        txClient = new TransactionalFcrepoClient(txUri, FcrepoClient.client().transport(transport).build());
+        txClient.setExpires(Instant.now().plusSeconds(600));
+    }
+
+    @After
+    public void tearDown() {
+        keepAlive.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRenewsBeforeExpiry() throws Exception {
+        final Instant expires = Instant.now().plusSeconds(3);
+        txClient.setExpires(expires);
+        when(transport.executeAsync(eq(txUri), any(HttpPost.class))).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(response(204, Instant.now().plusSeconds(180))));
+
+        txClient.autoKeepAlive(keepAlive);
+        await(() -> keepAlive.getRenewals() > 0);
+        assertEquals(1, keepAlive.getRenewals());
+        assertTrue(txClient.getExpires().isAfter(expires.plusSeconds(60)));
+        assertFalse(txClient.isExpired());
+    }
+
+    @Test
+    public void testResponsesExtendExpiry() throws Exception {
+        final Instant expires = Instant.now().plusSeconds(180).truncatedTo(ChronoUnit.SECONDS);
+        when(transport.execute(eq(uri), any(HttpGet.class))).thenAnswer(invocation -> response(200, expires));
+
+        txClient.autoKeepAlive(keepAlive);
+        txClient.get(uri).perform();
+        assertEquals(expires, txClient.getExpires());
+    }
+
+    @Test
+    public void testGoneTransactionFailsFast() throws Exception {
+        txClient.setExpires(null);
+        when(transport.executeAsync(eq(txUri), any(HttpPost.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(response(410, null)));
+
+        txClient.autoKeepAlive(keepAlive);
+        await(txClient::isExpired);
+        assertEquals(1, keepAlive.getExpirations());
+        assertEquals(0, keepAlive.getActiveTransactions());
+        try {
+            txClient.get(uri).perform();
+            fail("Expected the request to fail without being sent");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(410, ex.getStatusCode());
+        }
+        verify(transport, never()).execute(eq(uri), any(HttpGet.class));
+    }
+
+    @Test
+    public void testFailedRenewalsUntilExpiry() throws Exception {
+        txClient.setExpires(Instant.now().plusSeconds(1));
+        when(transport.executeAsync(eq(txUri), any(HttpPost.class)))
+                .thenAnswer(invocation -> CompletableFuture.failedFuture(new IOException("connection refused")));
+
+        txClient.autoKeepAlive(keepAlive);
+        await(txClient::isExpired);
+        assertTrue(keepAlive.getFailures() > 0);
+    }
+
+    @Test
+    public void testStuckRenewalIsGivenUp() throws Exception {
+        txClient.setExpires(Instant.now().plusSeconds(3));
+        final List<CompletableFuture<FcrepoResponse>> renewals = new CopyOnWriteArrayList<>();
+        when(transport.executeAsync(eq(txUri), any(HttpPost.class))).thenAnswer(invocation -> {
+            final CompletableFuture<FcrepoResponse> renewal = new CompletableFuture<>();
+            renewals.add(renewal);
+            return renewal;
+        });
+
+        txClient.autoKeepAlive(keepAlive.timeout(100));
+        await(() -> keepAlive.getFailures() > 0);
+        assertTrue(renewals.get(0).isCancelled());
+        await(() -> renewals.size() > 1);
+    }
+
+    @Test
+    public void testInFlightRequestAborted() throws Exception {
+        final CountDownLatch sent = new CountDownLatch(1);
+        when(transport.execute(eq(uri), any(HttpGet.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            sent.countDown();
+            await(request::isAborted);
+            throw new IOException("Request aborted");
+        });
+        txClient.autoKeepAlive(keepAlive);
+
+        final Future<FcrepoResponse> result = executor.submit(() -> txClient.get(uri).perform());
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        ((TransactionGuardTransport) txClient.getTransport()).expire("Transaction " + txUri + " is gone");
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("Expected the in-flight request to be aborted");
+        } catch (final ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof FcrepoOperationFailedException);
+            assertEquals(410, ((FcrepoOperationFailedException) ex.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testCommitEndsRenewals() throws Exception {
+        when(transport.execute(eq(txUri), any(HttpPut.class))).thenAnswer(invocation -> response(204, null));
+
+        txClient.autoKeepAlive(keepAlive);
+        assertEquals(1, keepAlive.getActiveTransactions());
+        txClient.commit().perform();
+        assertEquals(0, keepAlive.getActiveTransactions());
+    }
+
+    @Test
+    public void testCloseEndsRenewals() throws Exception {
+        txClient.autoKeepAlive(keepAlive);
+        assertEquals(1, keepAlive.getActiveTransactions());
+        txClient.close();
+        assertEquals(0, keepAlive.getActiveTransactions());
+        verify(transport, never()).close();
+    }
+
+    @Test
+    public void testExpiresOf() {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Atomic-Expires", List.of("Fri, 16 Oct 2026 10:15:30 GMT"));
+        assertEquals(Instant.parse("2026-10-16T10:15:30Z"),
+                TransactionKeepAlive.expiresOf(new FcrepoResponse(txUri, 204, headers, null)));
+
+        headers.put("Atomic-Expires", List.of("soon"));
+        assertNull(TransactionKeepAlive.expiresOf(new FcrepoResponse(txUri, 204, headers, null)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testKeepAliveTwice() {
+        txClient.autoKeepAlive(keepAlive);
+        txClient.autoKeepAlive(keepAlive);
+    }
+
+    private FcrepoResponse response(final int status, final Instant expires) {
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (expires != null) {
+            headers.put("Atomic-Expires", List.of(UTC_RFC_1123_FORMATTER.format(expires)));
+        }
+        return new FcrepoResponse(uri, status, headers, null);
+    }
+}
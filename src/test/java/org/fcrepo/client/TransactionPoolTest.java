@@ -0,0 +1,170 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_EXPIRES;
+import static org.fcrepo.client.HeaderHelpers.UTC_RFC_1123_FORMATTER;
+import static org.fcrepo.client.TestUtils.await;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link TransactionPool}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionPoolTest {
+
+    private final URI base = URI.create("http://localhost/rest");
+
+    private final URI txEndpoint = URI.create("http://localhost/rest/fcr:tx");
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger transactions = new AtomicInteger();
+
+    // how long the transactions started live, or null if the repository does not announce it
+    private volatile Long lifetime;
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private FcrepoClient client;
+
+    @Before
+    public void setUp() {
+        client = FcrepoClient.client().transport(transport).build();
+    }
+
+    private void stubAsync() {
+        when(transport.executeAsync(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(respond(invocation.getArgument(1))));
+    }
+
+    private void stubSync() throws Exception {
+        when(transport.execute(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation ->
+                respond(invocation.getArgument(1)));
+    }
+
+    private FcrepoResponse respond(final HttpRequestBase request) {
+        requests.add(request.getMethod() + " " + request.getURI());
+        final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int status = 204;
+        if (request.getURI().equals(txEndpoint)) {
+            status = 201;
+            headers.put("Location", List.of(txEndpoint + "/" + transactions.incrementAndGet()));
+            final Long millis = lifetime;
+            if (millis != null) {
+                headers.put(ATOMIC_EXPIRES, List.of(UTC_RFC_1123_FORMATTER.format(Instant.now().plusMillis(millis))));
+            }
+        }
+        return new FcrepoResponse(request.getURI(), status, headers, null);
+    }
+
+    @Test
+    public void testAcquireFromPrestartedPool() throws Exception {
+        stubAsync();
+        try (final TransactionPool pool = new TransactionPool(client, base).size(3).prestart()) {
+            await(() -> pool.getIdle() == 3);
+            final TransactionalFcrepoClient tx = pool.acquire();
+            assertEquals(URI.create(txEndpoint + "/1"), tx.getTransactionURI());
+            assertEquals(1, pool.getHits());
+            assertEquals(0, pool.getMisses());
+            // refilled in the background
+            await(() -> pool.getIdle() == 3);
+            assertEquals(4, transactions.get());
+        }
+    }
+
+    @Test
+    public void testAcquireFromEmptyPool() throws Exception {
+        stubAsync();
+        stubSync();
+        try (final TransactionPool pool = new TransactionPool(client, base).size(2)) {
+            final TransactionalFcrepoClient tx = pool.acquire();
+            assertEquals(1, pool.getMisses());
+            assertTrue(requests.contains("POST " + txEndpoint));
+            assertTrue(tx.getTransactionURI().toString().startsWith(txEndpoint + "/"));
+            await(() -> pool.getIdle() == 2);
+        }
+    }
+
+    @Test
+    public void testIdleTransactionsAreReplaced() throws Exception {
+        stubAsync();
+        try (final TransactionPool pool = new TransactionPool(client, base).size(1).maxIdle(50).prestart()) {
+            await(() -> requests.contains("DELETE " + txEndpoint + "/1"));
+            await(() -> pool.getIdle() == 1 && transactions.get() >= 2);
+            assertTrue(pool.getEvictions() >= 1);
+        }
+    }
+
+    @Test
+    public void testTransactionsAreRolledBackBeforeExpiry() throws Exception {
+        stubAsync();
+        lifetime = 300L;
+        try (final TransactionPool pool = new TransactionPool(client, base).size(1).expiryMargin(200).prestart()) {
+            await(() -> requests.contains("DELETE " + txEndpoint + "/1"));
+            assertTrue(pool.getEvictions() >= 1);
+        }
+    }
+
+    @Test
+    public void testCloseRollsBackIdleTransactions() throws Exception {
+        stubAsync();
+        stubSync();
+        final TransactionPool pool = new TransactionPool(client, base).size(2).prestart();
+        await(() -> pool.getIdle() == 2);
+        pool.close();
+
+        assertTrue(requests.contains("DELETE " + txEndpoint + "/1"));
+        assertTrue(requests.contains("DELETE " + txEndpoint + "/2"));
+        assertEquals(0, pool.getIdle());
+        assertEquals(2, transactions.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAcquireAfterClose() throws Exception {
+        final TransactionPool pool = new TransactionPool(client, base);
+        pool.close();
+        pool.acquire();
+    }
+
+    @Test
+    public void testHandedOutTransactionIsNotRolledBack() throws Exception {
+        stubAsync();
+        stubSync();
+        final TransactionPool pool = new TransactionPool(client, base).size(1).prestart();
+        await(() -> pool.getIdle() == 1);
+        final TransactionalFcrepoClient tx = pool.acquire();
+        await(() -> pool.getIdle() == 1);
+        pool.close();
+
+        assertFalse(requests.contains("DELETE " + tx.getTransactionURI()));
+        assertTrue(requests.contains("DELETE " + txEndpoint + "/2"));
+    }
+}
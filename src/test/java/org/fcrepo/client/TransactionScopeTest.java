@@ -0,0 +1,239 @@
+/*
+ * The contents of this file are subject to the license and copyright
+ * detailed in the LICENSE and NOTICE files at the root of the source
+ * tree.
+ */
+package org.fcrepo.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests for {@link TransactionScope}.
+ *
+ * @author agent
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionScopeTest {
+
+    private final URI base = URI.create("http://localhost/rest");
+
+    private final URI txUri = URI.create("http://localhost/rest/fcr:tx/1");
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private int commitStatus = 204;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @Mock
+    private FcrepoTransport transport;
+
+    private FcrepoClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        when(transport.execute(any(URI.class), any(HttpRequestBase.class))).thenAnswer(invocation -> {
+            final HttpRequestBase request = invocation.getArgument(1);
+            final String method = request.getMethod();
+            final String target = request.getURI().toString();
+            events.add(method + " " + target);
+            final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            int status = 204;
+            if ("POST".equals(method) && target.endsWith("fcr:tx")) {
+                status = 201;
+                headers.put("Location", List.of(txUri.toString()));
+            } else if ("PUT".equals(method) && target.equals(txUri.toString())) {
+                status = commitStatus;
+            } else if (target.endsWith("/bad")) {
+                status = 500;
+            }
+            return new FcrepoResponse(request.getURI(), status, headers, null);
+        });
+        client = FcrepoClient.client().transport(transport).build();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCommitsWhenAllSucceed() throws Exception {
+        final String value = client.inTransaction(base, executor, scope -> {
+            for (int i = 0; i < 10; i++) {
+                final URI uri = URI.create(base + "/foo" + i);
+                scope.forkRequest(tx -> tx.put(uri));
+            }
+            return "done";
+        });
+
+        assertEquals("done", value);
+        assertEquals(10, events.stream().filter(e -> e.startsWith("PUT " + base + "/foo")).count());
+        assertEquals("PUT " + txUri, events.get(events.size() - 1));
+        assertFalse(events.contains("DELETE " + txUri));
+    }
+
+    @Test
+    public void testFailedRequestRollsBack() throws Exception {
+        try {
+            client.inTransaction(base, executor, scope -> {
+                scope.forkRequest(tx -> tx.put(URI.create(base + "/foo")));
+                scope.forkRequest(tx -> tx.put(URI.create(base + "/bad")));
+                return null;
+            });
+            fail("The transaction should not commit");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(500, ex.getStatusCode());
+        }
+        assertEquals("DELETE " + txUri, events.get(events.size() - 1));
+        assertFalse(events.contains("PUT " + txUri));
+    }
+
+    @Test
+    public void testFailedBodyRollsBack() throws Exception {
+        try {
+            client.inTransaction(base, scope -> {
+                scope.forkRequest(tx -> tx.put(URI.create(base + "/foo"))).join();
+                throw new IllegalStateException("body failed");
+            });
+            fail("The transaction should not commit");
+        } catch (final IllegalStateException ex) {
+            assertEquals("body failed", ex.getMessage());
+        }
+        assertEquals("DELETE " + txUri, events.get(events.size() - 1));
+    }
+
+    @Test
+    public void testFailureCancelsRunningTasks() throws Exception {
+        final CountDownLatch running = new CountDownLatch(1);
+        final List<CompletableFuture<?>> forked = new ArrayList<>();
+        try {
+            client.inTransaction(base, executor, scope -> {
+                forked.add(scope.fork(tx -> {
+                    running.countDown();
+                    try {
+                        Thread.sleep(60000);
+                    } catch (final InterruptedException ex) {
+                        events.add("interrupted");
+                        throw new InterruptedIOException();
+                    }
+                    return null;
+                }));
+                try {
+                    running.await();
+                } catch (final InterruptedException ex) {
+                    throw new InterruptedIOException();
+                }
+                forked.add(scope.forkRequest(tx -> tx.delete(URI.create(base + "/bad"))));
+                scope.join();
+                // not reached
+                forked.add(scope.forkRequest(tx -> tx.put(URI.create(base + "/foo"))));
+                return null;
+            });
+            fail("The transaction should not commit");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(500, ex.getStatusCode());
+        }
+        assertEquals(2, forked.size());
+        assertTrue(forked.get(0).isCancelled());
+        // the rollback waits for the interrupted task
+        assertTrue(events.indexOf("interrupted") < events.indexOf("DELETE " + txUri));
+        assertFalse(events.contains("PUT " + base + "/foo"));
+    }
+
+    @Test
+    public void testForkAfterFailureIsCancelled() throws Exception {
+        final List<CompletableFuture<?>> forked = new ArrayList<>();
+        try {
+            client.inTransaction(base, executor, scope -> {
+                try {
+                    scope.forkRequest(tx -> tx.put(URI.create(base + "/bad"))).get();
+                } catch (final InterruptedException | ExecutionException ex) {
+                    // the failure is seen by the scope
+                }
+                assertTrue(scope.isFailed());
+                forked.add(scope.forkRequest(tx -> tx.put(URI.create(base + "/foo"))));
+                return null;
+            });
+            fail("The transaction should not commit");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(500, ex.getStatusCode());
+        }
+        try {
+            forked.get(0).join();
+            fail("The fork should be cancelled");
+        } catch (final CancellationException ex) {
+            // expected
+        }
+        assertFalse(events.contains("PUT " + base + "/foo"));
+    }
+
+    @Test
+    public void testFailedCommitRollsBack() throws Exception {
+        commitStatus = 409;
+        try {
+            client.inTransaction(base, executor, scope -> {
+                scope.forkRequest(tx -> tx.put(URI.create(base + "/foo")));
+                return null;
+            });
+            fail("The transaction should not commit");
+        } catch (final FcrepoOperationFailedException ex) {
+            assertEquals(409, ex.getStatusCode());
+        }
+        assertEquals("DELETE " + txUri, events.get(events.size() - 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testForkAfterCommit() throws Exception {
+        final TransactionScope[] escaped = new TransactionScope[1];
+        client.inTransaction(base, executor, scope -> {
+            escaped[0] = scope;
+            return null;
+        });
+        escaped[0].fork(tx -> null);
+    }
+
+    @Test
+    public void testTaskExceptionIsRethrown() throws Exception {
+        try {
+            client.inTransaction(base, executor, scope -> {
+                scope.fork(tx -> {
+                    throw new IOException("lost");
+                });
+                return null;
+            });
+            fail("The transaction should not commit");
+        } catch (final IOException ex) {
+            assertEquals("lost", ex.getMessage());
+        }
+        assertEquals("DELETE " + txUri, events.get(events.size() - 1));
+    }
+}
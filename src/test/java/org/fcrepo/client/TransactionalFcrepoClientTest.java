@@ -10,6 +10,8 @@ import static org.fcrepo.client.FedoraHeaderConstants.ATOMIC_ID;
 import static org.fcrepo.client.TestUtils.baseUrl;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -154,6 +156,28 @@ public class TransactionalFcrepoClientTest {
         assertEquals(txUri, derived.getTransactionURI());
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullTransactionUriWithParent() {
+        new TransactionalFcrepoClient(null, txClient);
+    }
+
+    @Test
+    public void testTransactionalClientSharesHttpClient() throws Exception {
+        try (final FcrepoClient parent = new FcrepoClient(httpClientBuilder, true)) {
+            final FcrepoResponse response = mock(FcrepoResponse.class);
+            when(response.getTransactionUri()).thenReturn(txUri);
+
+            final TransactionalFcrepoClient shared = parent.transactionalClient(response);
+            shared.get(resourceUri).perform();
+            shared.close();
+
+            // the shared pool survives closing the transactional client
+            verify(httpClient, never()).close();
+            assertRequestAddsAtomicId("GET", resourceUri);
+        }
+        verify(httpClient).close();
+    }
+
     /**
      * Capture the request issued to the underlying http client and assert its method, target uri, and that the
      * transaction atomic-id header was added.